@@ -13,25 +13,76 @@ import androidx.core.app.ActivityCompat;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class BluetoothHelper {
     private static final String TAG = "BluetoothHelper";
     private static final UUID MY_UUID = UUID.fromString("00001101-0000-1000-8000-00805F9B34FB");
+
+    // Ways to open the RFCOMM socket. Which one works depends on the module and the phone: some
+    // HC-05/HC-06 firmwares refuse the secure SPP socket, and some phones fail the SDP lookup and
+    // only connect on channel 1 directly. The one that worked is remembered per device so a
+    // reconnect does not wait for the others to time out first.
+    public enum SocketStrategy {
+        SECURE, INSECURE, CHANNEL_1;
+
+        BluetoothSocket create(BluetoothDevice device) throws IOException {
+            switch (this) {
+                case INSECURE:
+                    return device.createInsecureRfcommSocketToServiceRecord(MY_UUID);
+                case CHANNEL_1:
+                    try {
+                        Method method = device.getClass().getMethod("createRfcommSocket", int.class);
+                        return (BluetoothSocket) method.invoke(device, 1);
+                    } catch (ReflectiveOperationException e) {
+                        throw new IOException("Channel 1 socket not available", e);
+                    }
+                case SECURE:
+                default:
+                    return device.createRfcommSocketToServiceRecord(MY_UUID);
+            }
+        }
+
+        // null for a missing or unknown name
+        public static SocketStrategy fromName(String name) {
+            if (name == null) return null;
+            for (SocketStrategy strategy : values()) {
+                if (strategy.name().equals(name)) return strategy;
+            }
+            return null;
+        }
+    }
+
     private BluetoothAdapter bluetoothAdapter;
     private BluetoothSocket bluetoothSocket;
     private Context context;
     private OutputStream outputStream;
     private InputStream inputStream;
-    private boolean isConnected = false;
+    private volatile boolean isConnected = false;
+    private String deviceAddress;
+    private SocketStrategy socketStrategy;
     private boolean stopReading = false;
-    private Handler handler = new Handler(Looper.getMainLooper());
+    private Handler handler;
     private MessageCallback messageCallback;
     private ConnectionStatusCallback statusCallback;
+    // one writer thread keeps the commands in the order they were sent
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
 
     public BluetoothHelper(Context context) {
+        this(context, Looper.getMainLooper());
+    }
+
+    // callbacks are delivered on callbackLooper
+    public BluetoothHelper(Context context, Looper callbackLooper) {
         this.context = context;
+        this.handler = new Handler(callbackLooper);
         bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
     }
 
@@ -66,6 +117,11 @@ public class BluetoothHelper {
     }
 
     public void connectToDevice(BluetoothDevice device, ConnectionCallback callback) {
+        connectToDevice(device, null, callback);
+    }
+
+    // tries preferred first (the strategy that worked last time, or null), then the others
+    public void connectToDevice(BluetoothDevice device, SocketStrategy preferred, ConnectionCallback callback) {
         new Thread(() -> {
             try {
                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
@@ -81,16 +137,48 @@ public class BluetoothHelper {
                     }
                 }
 
-                if (bluetoothSocket != null) {
-                    bluetoothSocket.close();
+                closeSocket();
+
+                List<SocketStrategy> strategies = new ArrayList<>();
+                if (preferred != null) strategies.add(preferred);
+                for (SocketStrategy strategy : SocketStrategy.values()) {
+                    if (strategy != preferred) strategies.add(strategy);
                 }
 
-                bluetoothSocket = device.createRfcommSocketToServiceRecord(MY_UUID);
-                bluetoothSocket.connect();
+                BluetoothSocket socket = null;
+                SocketStrategy connectedWith = null;
+                IOException lastError = null;
+                for (SocketStrategy strategy : strategies) {
+                    BluetoothSocket candidate = null;
+                    try {
+                        candidate = strategy.create(device);
+                        candidate.connect();
+                        socket = candidate;
+                        connectedWith = strategy;
+                        break;
+                    } catch (IOException e) {
+                        Log.w(TAG, "Connect with " + strategy + " failed: " + e.getMessage());
+                        lastError = e;
+                        if (candidate != null) {
+                            try {
+                                candidate.close();
+                            } catch (IOException ignored) {
+                            }
+                        }
+                    }
+                }
+                if (socket == null) {
+                    throw lastError != null ? lastError : new IOException("No socket strategy left");
+                }
 
-                outputStream = bluetoothSocket.getOutputStream();
-                inputStream = bluetoothSocket.getInputStream();
-                isConnected = true;
+                synchronized (this) {
+                    bluetoothSocket = socket;
+                    outputStream = socket.getOutputStream();
+                    inputStream = socket.getInputStream();
+                    deviceAddress = device.getAddress();
+                    socketStrategy = connectedWith;
+                    isConnected = true;
+                }
 
                 if (statusCallback != null) {
                     handler.post(() -> statusCallback.onStatusChanged(true));
@@ -99,7 +187,7 @@ public class BluetoothHelper {
                 handler.post(() -> callback.onSuccess());
 
                 // Starte den Lese-Thread
-                startReadingData();
+                startReadingData(socket, inputStream);
 
             } catch (IOException e) {
                 isConnected = false;
@@ -112,7 +200,25 @@ public class BluetoothHelper {
         }).start();
     }
 
-    private void startReadingData() {
+    // connects again to the last device, e.g. after the radio link dropped
+    public void reconnect(ConnectionCallback callback) {
+        if (deviceAddress == null || bluetoothAdapter == null) {
+            handler.post(() -> callback.onFailure("No previous device"));
+            return;
+        }
+        connectToDevice(bluetoothAdapter.getRemoteDevice(deviceAddress), socketStrategy, callback);
+    }
+
+    // connects to a device known only by its address, e.g. the one remembered from the last session
+    public void connectToAddress(String address, SocketStrategy preferred, ConnectionCallback callback) {
+        if (bluetoothAdapter == null || !BluetoothAdapter.checkBluetoothAddress(address)) {
+            handler.post(() -> callback.onFailure("Invalid device address"));
+            return;
+        }
+        connectToDevice(bluetoothAdapter.getRemoteDevice(address), preferred, callback);
+    }
+
+    private void startReadingData(BluetoothSocket socket, InputStream in) {
         stopReading = false;
         new Thread(() -> {
             byte[] buffer = new byte[1024];
@@ -120,9 +226,9 @@ public class BluetoothHelper {
 
             while (!stopReading) {
                 try {
-                    if (inputStream == null) break;
+                    if (in == null) break;
 
-                    bytes = inputStream.read(buffer);
+                    bytes = in.read(buffer);
                     if (bytes > 0) {
                         String receivedData = new String(buffer, 0, bytes);
 
@@ -132,6 +238,7 @@ public class BluetoothHelper {
                     }
                 } catch (IOException e) {
                     Log.e(TAG, "Error when reading the data: " + e.getMessage());
+                    connectionLost(socket);
                     break;
                 }
             }
@@ -139,28 +246,51 @@ public class BluetoothHelper {
     }
 
     public boolean sendData(String message) {
-        if (!isConnected || outputStream == null) {
+        if (!isConnected || outputStream == null || writer.isShutdown()) {
             Log.e(TAG, "Not connected or OutputStream is zero");
             return false;
         }
 
-        new Thread(() -> {
+        BluetoothSocket socket = bluetoothSocket;
+        OutputStream out = outputStream;
+        writer.execute(() -> {
             try {
-                outputStream.write(message.getBytes());
-                outputStream.flush();
+                // one byte per char, so realtime bytes above 0x7F such as jog cancel go out as they are
+                out.write(message.getBytes(StandardCharsets.ISO_8859_1));
+                out.flush();
             } catch (IOException e) {
                 Log.e(TAG, "Error during transmission: " + e.getMessage());
-                isConnected = false;
-
-                if (statusCallback != null) {
-                    handler.post(() -> statusCallback.onStatusChanged(false));
-                }
+                connectionLost(socket);
             }
-        }).start();
+        });
         return true;
     }
 
-    public void disconnect() {
+    // reports a dropped link once; errors from an older socket after a reconnect are ignored
+    private void connectionLost(BluetoothSocket socket) {
+        synchronized (this) {
+            if (!isConnected || socket != bluetoothSocket) return;
+            isConnected = false;
+        }
+        if (statusCallback != null) {
+            handler.post(() -> statusCallback.onStatusChanged(false));
+        }
+    }
+
+    private synchronized void closeSocket() {
+        try {
+            if (bluetoothSocket != null) {
+                bluetoothSocket.close();
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error closing old socket: " + e.getMessage());
+        }
+        bluetoothSocket = null;
+        inputStream = null;
+        outputStream = null;
+    }
+
+    public synchronized void disconnect() {
         stopReading = true;
         isConnected = false;
 
@@ -188,10 +318,26 @@ public class BluetoothHelper {
         }
     }
 
+    // disconnects and stops the writer thread; the helper is not used again afterwards
+    public void close() {
+        disconnect();
+        writer.shutdownNow();
+    }
+
     public boolean isConnected() {
         return isConnected;
     }
 
+    // address of the last successfully connected device, null before the first connection
+    public String getDeviceAddress() {
+        return deviceAddress;
+    }
+
+    // how the current (or last) connection was opened, null before the first connection
+    public SocketStrategy getSocketStrategy() {
+        return socketStrategy;
+    }
+
     public void setMessageCallback(MessageCallback callback) {
         this.messageCallback = callback;
     }
@@ -7,82 +7,151 @@ import androidx.core.content.ContextCompat;
 
 import android.bluetooth.BluetoothAdapter;
 import android.bluetooth.BluetoothDevice;
+import android.content.ComponentName;
 import android.content.Intent;
+import android.content.ServiceConnection;
 import android.content.pm.PackageManager;
+import android.graphics.Typeface;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.os.Handler;
-import android.os.Looper;
+import android.os.IBinder;
+import android.text.InputType;
 import android.text.method.ScrollingMovementMethod;
 import android.util.Log;
+import android.view.Gravity;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.Button;
+import android.widget.CheckBox;
 import android.widget.EditText;
+import android.widget.LinearLayout;
 import android.widget.ScrollView;
 import android.widget.Spinner;
 import android.widget.TextView;
 import android.widget.Toast;
 
-import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 
+// Terminal and job controls. The connections and streamers live in PlotterService, one per plotter;
+// this activity shows the snapshots and terminal lines of the plotter picked in the device spinner
+// and forwards button presses to it. Plotters that are not shown keep drawing.
 public class BluetoothTerminalActivity extends AppCompatActivity {
+    // absolute path of a generated G-code file to load on start (see ImageToGcodeActivity)
+    public static final String EXTRA_GCODE_FILE = "com.example.drawbot.EXTRA_GCODE_FILE";
+
     private static final String TAG = "BluetoothTerminalActivity";
     private static final int REQUEST_BLUETOOTH_PERMISSIONS = 100;
     private static final int REQUEST_ENABLE_BT = 101;
     private static final int REQUEST_SELECT_GCODE_FILE = 102;
-    private static final int COMMAND_TIMEOUT_MS = 10000;
-   // private static final int INTER_COMMAND_DELAY_MS = 50; // Optimized for 28BYJ-48
-    private static final int GCODE_DELAY_MS = 75;
     private static final int MAX_TERMINAL_LINES = 500; // for phone memory issues
+    // larger files are only shown; an EditText gets slow long before this
+    private static final int MAX_EDIT_BYTES = 64 * 1024;
 
-    private static BluetoothHelper bluetoothHelper;
-    private static BluetoothTerminalActivity instance;
+    private PlotterService plotterService;
+    private PlotterConnection plotter;
+    private PlotterService.Snapshot lastSnapshot;
 
     // UI components
     private TextView tvTerminal, tvSelectedFile, tvGCodeProgress;
     private Button btnConnect, btnDisconnect, btnClearTerminal, btnRefreshDevices,
-            btnUploadGCode, btnSendGCode, btnStopGCode, btnHome;
-    private EditText etGCodeInput;
+            btnUploadGCode, btnSendGCode, btnResumeGCode, btnStopGCode, btnHome, btnFleet, btnNextSheet,
+            btnQueueAdd, btnQueueRun, btnEditGCode, btnFitGCode;
+    private Button[] jogButtons;
+    private TextView tvQueueTitle;
+    private LinearLayout queueList;
+    // the queue currently shown, rows are only rebuilt when it changes
+    private List<JobQueue.Entry> shownQueue;
+    private GCodeView gCodeView;
+    private TextView tvTransform;
     private Spinner spinnerDevices;
 
-    // G-code execution state
-    private final List<String> gCodeQueue = new ArrayList<>();
+    // the file picked or typed in; the viewer shows it unless the shown plotter is drawing
+    private GCodeDocument loadedDocument = GCodeDocument.EMPTY;
+    // the running job's stored lines, for following it; opened off the main thread
+    private GCodeDocument jobDocument;
+    private boolean jobDocumentLoading = false;
+    // Fit to page settings for the next job started here, kept until changed
+    private double fitScalePercent = 100, fitRotation = 0, fitOffsetX = 0, fitOffsetY = 0;
+    private boolean fitMirror = false;
+
     private final ArrayList<BluetoothDevice> deviceList = new ArrayList<>();
-    private final StringBuilder terminalOutput = new StringBuilder();
-    private final Handler gCodeHandler = new Handler(Looper.getMainLooper());
-    private int currentGCodeIndex = 0, commandsProcessed = 0;
-    private boolean isGCodeRunning = false, waitingForOk = false;
-    private long lastCommandTime = 0;
-    private String estimatedTimeString = "";
+    private final TerminalBuffer terminalOutput = new TerminalBuffer(MAX_TERMINAL_LINES);
+
+    private final PlotterService.Client serviceClient = new PlotterService.Client() {
+        @Override
+        public void onLog(String message) {
+            addToTerminal(message);
+            // fleet lines come with a change of the fleet job, which is not part of the snapshot
+            if (message.startsWith("[FLEET")) updateGCodeButtons();
+        }
+
+        @Override
+        public void onSnapshot(PlotterService.Snapshot snapshot) {
+            applySnapshot(snapshot);
+        }
+
+        @Override
+        public void onJobFinished() {
+            Toast.makeText(BluetoothTerminalActivity.this, "Drawing completed.", Toast.LENGTH_LONG).show();
+        }
+    };
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            plotterService = ((PlotterService.LocalBinder) binder).getService();
+            onPlotterServiceConnected();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            plotterService = null;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_bluetooth_terminal);
 
-        instance = this;
+        initializeViews();
+        tvTerminal.setMovementMethod(new ScrollingMovementMethod());
+        setupButtonListeners();
+        updateUIConnectionState(false);
 
-        if (bluetoothHelper == null) {
-            bluetoothHelper = new BluetoothHelper(this);
+        String gCodeFile = getIntent().getStringExtra(EXTRA_GCODE_FILE);
+        if (gCodeFile != null) {
+            loadGCodeFromFile(Uri.fromFile(new File(gCodeFile)));
         }
 
-        initializeViews();
-        tvTerminal.setMovementMethod(new ScrollingMovementMethod());
+        bindService(new Intent(this, PlotterService.class), serviceConnection, BIND_AUTO_CREATE);
+    }
 
-        if (!bluetoothHelper.isBluetoothSupported()) {
+    private void onPlotterServiceConnected() {
+        if (!plotterService.isBluetoothSupported()) {
             Toast.makeText(this, "Bluetooth is not supported on this device", Toast.LENGTH_LONG).show();
             finish();
             return;
         }
 
+        PlotterConnection last = plotterService.getSelected();
+        if (last != null) {
+            showPlotter(last);
+        }
+
         checkBluetoothPermissions();
-        if (!bluetoothHelper.isBluetoothEnabled()) {
+        if (!plotterService.isBluetoothEnabled()) {
             requestBluetoothEnable();
         } else {
             if (hasBluetoothPermissions()) {
@@ -90,8 +159,30 @@ public class BluetoothTerminalActivity extends AppCompatActivity {
             }
         }
 
-        setupCallbacks();
-        setupButtonListeners();
+    }
+
+    // switches terminal, progress and buttons over to another plotter
+    private void showPlotter(PlotterConnection next) {
+        if (next == plotter) return;
+        if (plotter != null) {
+            plotter.removeClient(serviceClient);
+        }
+        plotter = next;
+        jobDocument = null;
+
+        // the service keeps the terminal history while this activity is gone
+        terminalOutput.clear();
+        for (String line : plotter.getTerminalLines()) {
+            terminalOutput.append(line);
+        }
+        tvTerminal.setText(terminalOutput.toString());
+        if (tvGCodeProgress != null) {
+            tvGCodeProgress.setText("0/0 commands");
+        }
+
+        lastSnapshot = plotter.getSnapshot();
+        plotter.addClient(serviceClient);
+        applySnapshot(plotter.getSnapshot());
     }
 
     private void initializeViews() {
@@ -103,88 +194,145 @@ public class BluetoothTerminalActivity extends AppCompatActivity {
         btnUploadGCode = findViewById(R.id.btnUploadGCode);
         tvSelectedFile = findViewById(R.id.tvSelectedFile);
         spinnerDevices = findViewById(R.id.spinnerDevices);
-        etGCodeInput = findViewById(R.id.etGCodeInput);
+        gCodeView = findViewById(R.id.gCodeView);
+        gCodeView.setEmptyText("No G-code yet, upload a file or press Edit");
+        btnEditGCode = findViewById(R.id.btnEditGCode);
+        btnFitGCode = findViewById(R.id.btnFitGCode);
+        tvTransform = findViewById(R.id.tvTransform);
         btnSendGCode = findViewById(R.id.btnSendGCode);
+        btnResumeGCode = findViewById(R.id.btnResumeGCode);
         btnStopGCode = findViewById(R.id.btnStopGCode);
         tvGCodeProgress = findViewById(R.id.tvGCodeProgress);
         btnHome = findViewById(R.id.btnHome);
+        btnFleet = findViewById(R.id.btnFleet);
+        btnNextSheet = findViewById(R.id.btnNextSheet);
+        btnQueueAdd = findViewById(R.id.btnQueueAdd);
+        btnQueueRun = findViewById(R.id.btnQueueRun);
+        tvQueueTitle = findViewById(R.id.tvQueueTitle);
+        queueList = findViewById(R.id.queueList);
+        jogButtons = new Button[]{findViewById(R.id.btnJogXMinus), findViewById(R.id.btnJogXPlus),
+                findViewById(R.id.btnJogYMinus), findViewById(R.id.btnJogYPlus)};
 
     }
 
-    private void setupCallbacks() {
-        if (bluetoothHelper == null) return;
+    private void applySnapshot(PlotterService.Snapshot snapshot) {
+        PlotterService.Snapshot previous = lastSnapshot;
+        lastSnapshot = snapshot;
 
-        bluetoothHelper.setMessageCallback(message -> {
-            String cleanMsg = message.replace("\r", "").replace("\n", "").trim();
-            if (!cleanMsg.isEmpty()) {
-                addToTerminal("< " + cleanMsg);
+        if (previous != null && previous.connected != snapshot.connected && !snapshot.reconnecting) {
+            Toast.makeText(this, snapshot.connected ? "Connected" : "Disconnected", Toast.LENGTH_SHORT).show();
+        }
+        updateUIConnectionState(snapshot.connected);
+        updateGCodeProgress(snapshot);
+        updateGCodeView(snapshot);
+        updateQueue(snapshot);
+    }
 
-                if (cleanMsg.equals("ok") || cleanMsg.equals("ook") || cleanMsg.equals("k")) {
-                    waitingForOk = false;
-                    commandsProcessed++;
-                    updateGCodeProgress();
-                } else if (cleanMsg.startsWith("Error:") || cleanMsg.equals("error")) {
-                    waitingForOk = false;
-                    Log.e(TAG, "GRBL error: " + cleanMsg);
-                    commandsProcessed++; // Count errors to keep progress moving
-                    addToTerminal("[ERROR DETECTED - CONTINUING]");
-                }
+    // while the shown plotter draws, its stored job is shown with the last line GRBL took highlighted;
+    // that line is planned, the pen is at most GRBL's planner depth of lines behind it
+    private void updateGCodeView(PlotterService.Snapshot snapshot) {
+        if (snapshot.running && plotter != null) {
+            if (jobDocument != null && jobDocument.getLineCount() == snapshot.total) {
+                gCodeView.setDocument(jobDocument);
+                gCodeView.setHighlightedLine(snapshot.currentLine);
+                return;
             }
-        });
-
-        bluetoothHelper.setStatusCallback(connected -> {
-            if (this != null && !isFinishing() && !isDestroyed()) {
-                updateUIConnectionState(connected);
-
-                if (connected) {
-                    runOnUiThread(() -> {
-                        Toast.makeText(BluetoothTerminalActivity.this, "Connected", Toast.LENGTH_SHORT).show();
-                        addToTerminal("[CONNECTED - Ready for G-code commands]");
-                    });
-                } else {
-                    runOnUiThread(() -> {
-                        Toast.makeText(BluetoothTerminalActivity.this, "Disconnected", Toast.LENGTH_SHORT).show();
-                        addToTerminal("[DISCONNECTED]");
-                        if (isGCodeRunning) {
-                            stopGCodeCommands();
-                        }
-                    });
-                }
+            openJobDocument(plotter);
+        } else {
+            jobDocument = null;
+        }
+        gCodeView.setDocument(loadedDocument);
+    }
+
+    // the job file is written shortly after the job starts, so this is tried again on later snapshots
+    // until its line count matches the job's
+    private void openJobDocument(PlotterConnection owner) {
+        if (jobDocumentLoading) return;
+        jobDocumentLoading = true;
+        File file = owner.getJobFile();
+        new Thread(() -> {
+            GCodeDocument document = null;
+            try {
+                if (file.exists()) document = GCodeDocument.open(file);
+            } catch (IOException e) {
+                Log.w(TAG, "Could not open " + file, e);
             }
-        });
+            GCodeDocument opened = document;
+            runOnUiThread(() -> {
+                jobDocumentLoading = false;
+                if (owner != plotter || opened == null) return;
+                jobDocument = opened;
+                if (lastSnapshot != null) updateGCodeView(lastSnapshot);
+            });
+        }).start();
     }
 
     private void setupButtonListeners() {
         btnConnect.setOnClickListener(v -> connectToSelectedDevice());
-        btnDisconnect.setOnClickListener(v -> bluetoothHelper.disconnect());
+        btnDisconnect.setOnClickListener(v -> {
+            if (plotter != null) plotter.disconnect();
+        });
 
         btnClearTerminal.setOnClickListener(v -> {
-            terminalOutput.setLength(0);
+            terminalOutput.clear();
             tvTerminal.setText("");
-            clearGCodeState();
+            if (plotter != null) {
+                plotter.clearTerminal();
+                plotter.clearJob();
+            }
+        });
+
+        spinnerDevices.setOnItemSelectedListener(new AdapterView.OnItemSelectedListener() {
+            @Override
+            public void onItemSelected(AdapterView<?> parent, View view, int position, long id) {
+                if (plotterService != null && position < deviceList.size()) {
+                    showPlotter(plotterService.select(deviceList.get(position).getAddress()));
+                }
+            }
+
+            @Override
+            public void onNothingSelected(AdapterView<?> parent) {
+            }
         });
 
         btnRefreshDevices.setOnClickListener(v -> loadPairedDevices());
         btnUploadGCode.setOnClickListener(v -> openGCodeFileChooser());
+        btnEditGCode.setOnClickListener(v -> openEditor());
+        btnFitGCode.setOnClickListener(v -> openFitDialog());
         btnSendGCode.setOnClickListener(v -> sendGCodeCommands());
+        btnResumeGCode.setOnClickListener(v -> {
+            if (plotter != null) plotter.resumeJob();
+        });
         btnStopGCode.setOnClickListener(v -> stopGCodeCommands());
         btnHome.setOnClickListener(v -> goHome());
+        setupJogButton(jogButtons[0], -1, 0);
+        setupJogButton(jogButtons[1], 1, 0);
+        setupJogButton(jogButtons[2], 0, -1);
+        setupJogButton(jogButtons[3], 0, 1);
+        btnFleet.setOnClickListener(v -> startOrStopFleetJob());
+        btnQueueAdd.setOnClickListener(v -> addToQueue());
+        btnQueueRun.setOnClickListener(v -> {
+            if (plotter == null) return;
+            if (lastSnapshot != null && lastSnapshot.queueRunning) {
+                plotter.stopQueue();
+            } else {
+                plotter.startQueue();
+            }
+        });
+        btnNextSheet.setOnClickListener(v -> {
+            if (plotterService != null && plotter != null) plotterService.sheetChanged(plotter);
+        });
+        findViewById(R.id.btnLive).setOnClickListener(v ->
+                startActivity(new Intent(this, LiveDrawActivity.class)));
+        findViewById(R.id.btnDiagnostics).setOnClickListener(v ->
+                startActivity(new Intent(this, DiagnosticsActivity.class)));
 
     }
 
     //terminal
     private void addToTerminal(String message) {
-        terminalOutput.append(message).append("\n");
-
-        // Prevent memory code
-        String[] lines = terminalOutput.toString().split("\n");
-        if (lines.length > MAX_TERMINAL_LINES) {
-            terminalOutput.setLength(0);
-
-            for (int i = lines.length - MAX_TERMINAL_LINES; i < lines.length; i++) {
-                terminalOutput.append(lines[i]).append("\n");
-            }
-        }
+        // Prevent memory code: keeps the last MAX_TERMINAL_LINES lines
+        terminalOutput.append(message);
 
         runOnUiThread(() -> {
             tvTerminal.setText(terminalOutput.toString());
@@ -198,218 +346,292 @@ public class BluetoothTerminalActivity extends AppCompatActivity {
         });
     }
 
-// g code z- axis converter to fix faulty g-code from converter
-    private String convertGCodeForPenPlotter(String line) {
-        String originalLine = line.trim();
-        if (originalLine.isEmpty() || originalLine.startsWith(";") || originalLine.startsWith("(")) {
-            return originalLine;
-        }
-        String upperLine = originalLine.toUpperCase();
-
-        if (upperLine.startsWith("G0 ") || upperLine.startsWith("G00 ")) {
-            String convertedLine = originalLine.replaceFirst("(?i)G0+", "G1");
-            convertedLine = removeZCoordinate(convertedLine);
-            return convertedLine + " Z1";
-        }
-
-        if (upperLine.startsWith("G1 ") || upperLine.startsWith("G01 ")) {
-            String convertedLine = removeZCoordinate(originalLine);
-            return convertedLine + " Z0";
-        }
-
-        return originalLine;
-    }
-
-// Remove Z coordinate from G-code lines incase we have different G-Code
-    private String removeZCoordinate(String line) {
-        // Remove any Z coordinate (Z followed by optional minus and digits/decimal)
-        return line.replaceAll("(?i)\\s*Z-?[0-9]*\\.?[0-9]*", "").trim();
-    }
-
     private void sendGCodeCommands() {
-        String gCodeText = etGCodeInput.getText().toString().trim();
+        String gCodeText = loadedDocument.getText().trim();
         if (gCodeText.isEmpty()) {
             Toast.makeText(this, "Please enter G-code commands or upload a file", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        if (!bluetoothHelper.isConnected()) {
+        if (plotter == null || !plotter.isConnected()) {
             Toast.makeText(this, "Not connected to device!", Toast.LENGTH_SHORT).show();
             return;
         }
-        //pass converted g-code
-        gCodeQueue.clear();
-        String[] lines = gCodeText.split("\n");
-        int g0Converted = 0;
-        int g1Converted = 0;
-        int linesUnchanged = 0;
-
-        for (String line : lines) {
-            String originalLine = line.trim();
-            if (originalLine.isEmpty()) {
-                continue;
-            }
-
-            String convertedLine = convertGCodeForPenPlotter(originalLine);
-
-            String upperOriginal = originalLine.toUpperCase();
-            if (upperOriginal.startsWith("G0 ") || upperOriginal.startsWith("G00 ")) {
-                g0Converted++;
-            } else if (upperOriginal.startsWith("G1 ") || upperOriginal.startsWith("G01 ")) {
-                g1Converted++;
-            } else if (!originalLine.startsWith(";") && !originalLine.startsWith("(")) {
-                linesUnchanged++;
-            }
-
-            gCodeQueue.add(convertedLine);
-        }
-
-        if (gCodeQueue.isEmpty()) {
-            Toast.makeText(this, "No valid G-code commands found", Toast.LENGTH_SHORT).show();
+        JobTransform transform = getFitTransform();
+        if (transform.isIdentity()) {
+            // conversion and streaming happen in the service
+            plotter.startJob(gCodeText);
             return;
         }
-
-        // execution
-        currentGCodeIndex = 0;
-        commandsProcessed = 0;
-        waitingForOk = false;
-        isGCodeRunning = true;
-
-        updateGCodeProgress();
-        updateGCodeButtons();
-
-        addToTerminal("[STARTING G-CODE EXECUTION - " + gCodeQueue.size() + " commands]");
-
-        // Calculate estimated time
-        int totalMovementCommands = g0Converted + g1Converted;
-        int estimatedTimeSeconds = calculateEstimatedTime(totalMovementCommands);
-        estimatedTimeString = formatTime(estimatedTimeSeconds);
-
-        // Initialize with grbl commands for better workflow
-        initializePenPlotter();
-        gCodeHandler.postDelayed(this::sendNextGCodeCommand, 1000);
-    }
-
-    //Initialize the DrawBot
-    private void initializePenPlotter() {
-        sendGrblCommand("~");   // Resume from any feed hold
-        sendGrblCommand("$X");  // Clear alarm lock
-        sendGrblCommand("G21"); // Millimeters
-        sendGrblCommand("G90"); // Absolute positioning
-        sendGrblCommand("G92 X0 Y0 Z0"); // Set current position as origin
-        sendGrblCommand("M17"); // Enable steppers (if supported)
-        sendGrblCommand("G1 Z1"); // Ensure pen is up initially (Z1 = pen up)
-
-        addToTerminal("[PEN PLOTTER INITIALIZED]");
+        // the drawing is run through the transform once, without sending, to show where it lands
+        PlotterConnection target = plotter;
+        JobTransform fitted = target.fitToWorkArea(transform);
+        btnSendGCode.setEnabled(false);
+        target.previewTransform(gCodeText, fitted, preview -> {
+            updateGCodeButtons();
+            if (isFinishing() || isDestroyed()) return;
+            confirmTransformedJob(target, gCodeText, fitted, preview);
+        });
     }
 
-    private void sendNextGCodeCommand() {
-        if (!isGCodeRunning || !bluetoothHelper.isConnected()) {
-            return;
-        }
-
-        // Check if more g-code to send
-        if (currentGCodeIndex >= gCodeQueue.size()) {
-            finishGCodeExecution();
+    private void confirmTransformedJob(PlotterConnection target, String gCodeText, JobTransform transform,
+                                       JobTransform.Stage preview) {
+        StringBuilder message = new StringBuilder();
+        JobTransform.Bounds drawn = preview.getDrawnBounds();
+        message.append(drawn.isEmpty() ? "Nothing is drawn inside the work area." : "Drawn: " + drawn);
+        if (transform.isClipped()) {
+            message.append(String.format(Locale.US, "\nWork area: %.0f x %.0f mm",
+                    transform.clipWidth, transform.clipHeight));
+            if (preview.getCutMoves() > 0) {
+                message.append("\n\nThe drawing leaves the work area (").append(preview.getUnclippedBounds())
+                        .append("), ").append(preview.getCutMoves())
+                        .append(preview.getCutMoves() == 1 ? " line is cut." : " lines are cut.");
+            }
+        } else {
+            message.append("\n\nThe work area is not known yet ($130/$131), nothing is cut.");
+        }
+        new AlertDialog.Builder(this)
+                .setTitle("Start transformed job?")
+                .setMessage(message.toString())
+                .setPositiveButton("Start", (dialog, which) -> {
+                    if (target.isConnected()) target.startJob(gCodeText, transform);
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private JobTransform getFitTransform() {
+        return JobTransform.of(fitScalePercent / 100, fitMirror, fitRotation, fitOffsetX, fitOffsetY);
+    }
+
+    // scale, rotation and offset for drawings that do not fit the paper as they are; applies to
+    // Send only, queued and fleet jobs are drawn as they are
+    private void openFitDialog() {
+        LinearLayout form = new LinearLayout(this);
+        form.setOrientation(LinearLayout.VERTICAL);
+        int padding = Math.round(16 * getResources().getDisplayMetrics().density);
+        form.setPadding(padding, padding / 2, padding, 0);
+        EditText scale = fitField(form, "Scale (%)", fitScalePercent, false);
+        EditText rotation = fitField(form, "Rotation (degrees, counter-clockwise)", fitRotation, true);
+        EditText offsetX = fitField(form, "Offset X (mm)", fitOffsetX, true);
+        EditText offsetY = fitField(form, "Offset Y (mm)", fitOffsetY, true);
+        CheckBox mirror = new CheckBox(this);
+        mirror.setText("Mirror left to right");
+        mirror.setChecked(fitMirror);
+        form.addView(mirror);
+
+        new AlertDialog.Builder(this)
+                .setTitle("Fit to page")
+                .setView(form)
+                .setPositiveButton("OK", (dialog, which) -> {
+                    double[] values = new double[4];
+                    EditText[] fields = {scale, rotation, offsetX, offsetY};
+                    for (int i = 0; i < fields.length; i++) {
+                        try {
+                            values[i] = Double.parseDouble(fields[i].getText().toString().trim());
+                        } catch (NumberFormatException e) {
+                            values[i] = Double.NaN;
+                        }
+                    }
+                    if (!(values[0] > 0) || Double.isNaN(values[1] + values[2] + values[3])) {
+                        Toast.makeText(this, "Please enter a positive scale and numbers for the rest",
+                                Toast.LENGTH_SHORT).show();
+                        return;
+                    }
+                    setFit(values[0], mirror.isChecked(), values[1], values[2], values[3]);
+                })
+                .setNeutralButton("Reset", (dialog, which) -> setFit(100, false, 0, 0, 0))
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
+
+    private EditText fitField(LinearLayout form, String label, double value, boolean signed) {
+        TextView title = new TextView(this);
+        title.setText(label);
+        title.setTextSize(12);
+        form.addView(title);
+        EditText field = new EditText(this);
+        field.setInputType(InputType.TYPE_CLASS_NUMBER | InputType.TYPE_NUMBER_FLAG_DECIMAL
+                | (signed ? InputType.TYPE_NUMBER_FLAG_SIGNED : 0));
+        field.setText(formatFit(value));
+        form.addView(field);
+        return field;
+    }
+
+    private void setFit(double scalePercent, boolean mirror, double rotation, double offsetX, double offsetY) {
+        fitScalePercent = scalePercent;
+        fitMirror = mirror;
+        fitRotation = rotation;
+        fitOffsetX = offsetX;
+        fitOffsetY = offsetY;
+        if (getFitTransform().isIdentity()) {
+            tvTransform.setText("As drawn");
             return;
         }
-
-        // Wait for previous command case
-        if (waitingForOk) {
-            if (System.currentTimeMillis() - lastCommandTime > COMMAND_TIMEOUT_MS) {
-                Log.w(TAG, "Command timeout, continuing...");
-                addToTerminal("[TIMEOUT - CONTINUING]");
-                waitingForOk = false;
-                commandsProcessed++;
-            } else {
-                // Check again in 20ms
-                gCodeHandler.postDelayed(this::sendNextGCodeCommand, 20);
-                return;
-            }
+        StringBuilder text = new StringBuilder(formatFit(scalePercent)).append("%");
+        if (mirror) text.append(", mirrored");
+        if (rotation != 0) text.append(", ").append(formatFit(rotation)).append("\u00B0");
+        if (offsetX != 0 || offsetY != 0) {
+            text.append(", offset ").append(formatFit(offsetX)).append(", ").append(formatFit(offsetY)).append(" mm");
         }
-
-
-        String command = gCodeQueue.get(currentGCodeIndex);
-        sendGrblCommand(command);
-        currentGCodeIndex++;
-        gCodeHandler.postDelayed(this::sendNextGCodeCommand, GCODE_DELAY_MS);
+        tvTransform.setText(text.toString());
     }
 
+    private static String formatFit(double value) {
+        return value == Math.rint(value) ? String.valueOf((long) value) : String.format(Locale.US, "%.2f", value);
+    }
 
-    // MAIN GRBL SENDER METHOD
-    private void sendGrblCommand(String command) {
-        if (!bluetoothHelper.isConnected()) {
+    private void addToQueue() {
+        String gCodeText = loadedDocument.getText().trim();
+        if (gCodeText.isEmpty()) {
+            Toast.makeText(this, "Please enter G-code commands or upload a file", Toast.LENGTH_SHORT).show();
             return;
         }
-
-        lastCommandTime = System.currentTimeMillis();
-        waitingForOk = true;
-
-        bluetoothHelper.sendData(command + "\n");
-        addToTerminal("> " + command);
+        if (plotter == null) return;
+        CharSequence fileName = tvSelectedFile.getText();
+        String name = "No file selected".contentEquals(fileName) || "File loaded".contentEquals(fileName)
+                ? "Job " + new SimpleDateFormat("HH:mm:ss", Locale.US).format(new Date())
+                : fileName.toString();
+        plotter.queueJob(name, gCodeText);
     }
 
-    private void finishGCodeExecution() {
-        isGCodeRunning = false;
-        waitingForOk = false;
-        updateGCodeButtons();
-
-        sendGrblCommand("G1 Z1");
-        sendGrblCommand("M400");
-
+    // one row per queued job: name, estimate, up, down, pause/resume and remove
+    private void updateQueue(PlotterService.Snapshot snapshot) {
         runOnUiThread(() -> {
-            addToTerminal("[G-CODE EXECUTION COMPLETED - PEN UP (Z1)]");
-            Toast.makeText(this, "Drawing completed.", Toast.LENGTH_LONG).show();
+            if (btnQueueRun != null) {
+                btnQueueRun.setText(snapshot.queueRunning ? "Stop queue" : "Run queue");
+                btnQueueRun.setEnabled(snapshot.queueRunning || (snapshot.connected && !snapshot.queue.isEmpty()));
+            }
+            if (queueList == null || snapshot.queue == shownQueue) return;
+            shownQueue = snapshot.queue;
+            queueList.removeAllViews();
+            tvQueueTitle.setText(snapshot.queue.isEmpty() ? "Queue is empty"
+                    : "Queue (" + snapshot.queue.size() + (snapshot.queue.size() == 1 ? " job)" : " jobs)"));
+            for (JobQueue.Entry entry : snapshot.queue) {
+                queueList.addView(createQueueRow(entry));
+            }
         });
     }
 
-    private void stopGCodeCommands() {
-        isGCodeRunning = false;
-        waitingForOk = false;
-        gCodeHandler.removeCallbacksAndMessages(null);
-
-        updateGCodeButtons();
-        addToTerminal("DrawBot stopped");
-
-        if (bluetoothHelper.isConnected()) {
-            sendGrblCommand("G1 Z1");
-            sendGrblCommand("!");
+    private View createQueueRow(JobQueue.Entry entry) {
+        LinearLayout row = new LinearLayout(this);
+        row.setOrientation(LinearLayout.HORIZONTAL);
+        row.setGravity(Gravity.CENTER_VERTICAL);
+
+        TextView label = new TextView(this);
+        String text = entry.name;
+        if (entry.estimatedSeconds >= 0) {
+            text += " (" + entry.lines + " lines, ~" + formatTime(entry.estimatedSeconds) + ")";
+        }
+        if (entry.paused) text += " - paused";
+        label.setText(text);
+        label.setTextSize(12);
+        label.setTextColor(entry.paused ? 0xFF999999 : 0xFF333333);
+        row.addView(label, new LinearLayout.LayoutParams(0, LinearLayout.LayoutParams.WRAP_CONTENT, 1));
+
+        row.addView(queueButton("\u25B2", v -> plotter.moveQueuedJob(entry.id, -1)));
+        row.addView(queueButton("\u25BC", v -> plotter.moveQueuedJob(entry.id, 1)));
+        row.addView(queueButton(entry.paused ? "Go" : "Hold", v -> plotter.setQueuedJobPaused(entry.id, !entry.paused)));
+        row.addView(queueButton("\u2715", v -> plotter.removeQueuedJob(entry.id)));
+        return row;
+    }
+
+    private Button queueButton(String text, View.OnClickListener listener) {
+        Button button = new Button(this, null, android.R.attr.buttonStyleSmall);
+        button.setText(text);
+        button.setMinWidth(0);
+        button.setMinimumWidth(0);
+        button.setOnClickListener(v -> {
+            if (plotter != null) listener.onClick(v);
+        });
+        return button;
+    }
 
-            // Wait a moment then reset and re-enable motors
-            gCodeHandler.postDelayed(() -> {
-                sendGrblCommand("~");
-                sendGrblCommand("$X");
-                sendGrblCommand("M17");
-                addToTerminal("[MOTORS RE-ENABLED - Ready for new commands, pen up (Z1)]");
-            }, 500);
+    // splits the drawing over every connected plotter that is not drawing, or stops such a job
+    private void startOrStopFleetJob() {
+        if (plotterService == null) return;
+        if (plotterService.isFleetJobRunning()) {
+            plotterService.stopFleetJob();
+            Toast.makeText(this, "Stopping all plotters", Toast.LENGTH_SHORT).show();
+            return;
         }
+        String gCodeText = loadedDocument.getText().trim();
+        if (gCodeText.isEmpty()) {
+            Toast.makeText(this, "Please enter G-code commands or upload a file", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        int idle = plotterService.getIdlePlotters().size();
+        if (idle == 0) {
+            Toast.makeText(this, "No connected plotter is free", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        String[] options = {
+                "Tiles of A4 (210 x 297 mm)",
+                "Tiles of A5 (148 x 210 mm)",
+                "Interleaved stroke sets"
+        };
+        new AlertDialog.Builder(this)
+                .setTitle("Split over " + idle + (idle == 1 ? " plotter" : " plotters"))
+                .setItems(options, (dialog, which) -> {
+                    if (which == 0) {
+                        plotterService.startTiledJob(gCodeText, 210, 297);
+                    } else if (which == 1) {
+                        plotterService.startTiledJob(gCodeText, 148, 210);
+                    } else {
+                        plotterService.startInterleavedJob(gCodeText);
+                    }
+                    updateGCodeButtons();
+                })
+                .setNegativeButton("Cancel", null)
+                .show();
+    }
 
+    private void stopGCodeCommands() {
+        if (plotter == null) return;
+        plotter.stopJob();
         Toast.makeText(this, "Execution stopped - Motors re-enabled", Toast.LENGTH_SHORT).show();
     }
 
+    // moves while held down; lifting the finger, sliding off or the button being disabled stops it
+    private void setupJogButton(Button button, int dx, int dy) {
+        button.setOnTouchListener((v, event) -> {
+            if (plotter == null) return false;
+            switch (event.getActionMasked()) {
+                case MotionEvent.ACTION_DOWN:
+                    v.setPressed(true);
+                    plotter.jogStart(dx, dy);
+                    return true;
+                case MotionEvent.ACTION_UP:
+                case MotionEvent.ACTION_CANCEL:
+                    v.setPressed(false);
+                    plotter.jogStop();
+                    return true;
+                default:
+                    return true;
+            }
+        });
+    }
 
     private void goHome() {
-        if (!bluetoothHelper.isConnected()) {
+        if (plotter == null || !plotter.isConnected()) {
             Toast.makeText(this, "Not connected!", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        if (isGCodeRunning) {
+        if (plotter.isJobRunning()) {
             Toast.makeText(this, "Cannot home while G-code is running", Toast.LENGTH_SHORT).show();
             return;
         }
 
-        addToTerminal("[MOVING TO HOME POSITION]");
-        sendGrblCommand("~");
-        sendGrblCommand("$X");
-        sendGrblCommand("G1 Z1");
-        sendGrblCommand("G1 X0 Y0 Z1");
+        plotter.goHome();
     }
 
     private void connectToSelectedDevice() {
+        if (plotterService == null) return;
         int position = spinnerDevices.getSelectedItemPosition();
         if (position >= 0 && position < deviceList.size()) {
             BluetoothDevice device = deviceList.get(position);
+            showPlotter(plotterService.select(device.getAddress()));
             connectToDeviceWithGrbl(device);
         } else {
             Toast.makeText(this, "Please select a device", Toast.LENGTH_SHORT).show();
@@ -420,7 +642,7 @@ public class BluetoothTerminalActivity extends AppCompatActivity {
         String deviceName = getDeviceName(device);
         addToTerminal("[CONNECTING TO: " + deviceName + "]");
 
-        bluetoothHelper.connectToDevice(device, new BluetoothHelper.ConnectionCallback() {
+        plotter.connect(device, new BluetoothHelper.ConnectionCallback() {
             @Override
             public void onSuccess() {
                 addToTerminal("[CONNECTION SUCCESSFUL]");
@@ -437,36 +659,54 @@ public class BluetoothTerminalActivity extends AppCompatActivity {
     private void updateUIConnectionState(boolean connected) {
         runOnUiThread(() -> {
 
-            if (btnConnect != null) btnConnect.setEnabled(!connected);
+            boolean connecting = lastSnapshot != null && lastSnapshot.connecting;
+            if (btnConnect != null) btnConnect.setEnabled(!connected && !connecting);
             if (btnDisconnect != null) btnDisconnect.setEnabled(connected);
             if (btnUploadGCode != null) btnUploadGCode.setEnabled(connected);
-            if (etGCodeInput != null) etGCodeInput.setEnabled(connected);
+            if (btnEditGCode != null) btnEditGCode.setEnabled(connected);
             updateGCodeButtons();
         });
     }
-    // Add null check for bluetoothHelper to prevent crash
-    private void updateGCodeButtons() {
 
-        boolean connected = (bluetoothHelper != null && bluetoothHelper.isConnected());
+    private void updateGCodeButtons() {
+        PlotterService.Snapshot s = lastSnapshot;
+        boolean connected = s != null && s.connected;
+        boolean running = s != null && s.running;
+        boolean hasSavedJob = s != null && s.hasSavedJob;
 
         runOnUiThread(() -> {
-            if (btnSendGCode != null) btnSendGCode.setEnabled(connected && !isGCodeRunning);
-            if (btnStopGCode != null) btnStopGCode.setEnabled(connected && isGCodeRunning);
-            if (btnHome != null) btnHome.setEnabled(connected && !isGCodeRunning);
+            if (btnSendGCode != null) btnSendGCode.setEnabled(connected && !running);
+            if (btnResumeGCode != null) btnResumeGCode.setEnabled(connected && !running && hasSavedJob);
+            if (btnStopGCode != null) btnStopGCode.setEnabled(connected && running);
+            if (btnHome != null) btnHome.setEnabled(connected && !running);
+            if (jogButtons != null) {
+                for (Button jog : jogButtons) jog.setEnabled(connected && !running);
+            }
+            if (btnFleet != null && plotterService != null) {
+                boolean fleetRunning = plotterService.isFleetJobRunning();
+                btnFleet.setText(fleetRunning ? "Stop all" : "All plotters");
+                btnFleet.setEnabled(fleetRunning || connected);
+            }
+            if (btnQueueAdd != null) btnQueueAdd.setEnabled(plotter != null);
+            if (btnNextSheet != null) {
+                btnNextSheet.setEnabled(plotterService != null && plotter != null
+                        && plotterService.isWaitingForSheet(plotter));
+            }
         });
     }
 
-    private void updateGCodeProgress() {
-        if (gCodeQueue.isEmpty()) return;
+    private void updateGCodeProgress(PlotterService.Snapshot snapshot) {
+        if (snapshot.total == 0) return;
 
-        int totalCommands = gCodeQueue.size();
+        int totalCommands = snapshot.total;
+        int commandsProcessed = snapshot.processed;
         String progress = commandsProcessed + "/" + totalCommands + " commands processed";
         int percentage = totalCommands > 0 ? (commandsProcessed * 100) / totalCommands : 0;
 
         // Add estimated time to progress display
         String progressText = progress + " (" + percentage + "%)";
-        if (!estimatedTimeString.isEmpty()) {
-            progressText += " | Estimated: " + estimatedTimeString;
+        if (snapshot.estimatedSeconds > 0) {
+            progressText += " | Estimated: " + formatTime(snapshot.estimatedSeconds);
         }
 
         String finalProgressText = progressText;
@@ -475,8 +715,6 @@ public class BluetoothTerminalActivity extends AppCompatActivity {
                 tvGCodeProgress.setText(finalProgressText);
             }
         });
-
-        Log.d(TAG, "Progress: " + percentage + "% (" + progress + ")");
     }
 
     private void openGCodeFileChooser() {
@@ -488,31 +726,63 @@ public class BluetoothTerminalActivity extends AppCompatActivity {
         startActivityForResult(Intent.createChooser(intent, "Select G-code file"), REQUEST_SELECT_GCODE_FILE);
     }
 
+    // reads the file in the background; only the lines on screen are ever turned into text
     private void loadGCodeFromFile(Uri uri) {
-        try {
-            InputStream inputStream = getContentResolver().openInputStream(uri);
-            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream));
-            StringBuilder gCodeContent = new StringBuilder();
-            String line;
-
-            while ((line = reader.readLine()) != null) {
-                gCodeContent.append(line).append("\n");
+        String fileName = getFileName(uri);
+        tvSelectedFile.setText("Loading...");
+        new Thread(() -> {
+            try (InputStream inputStream = getContentResolver().openInputStream(uri)) {
+                if (inputStream == null) throw new IOException("cannot open " + uri);
+                GCodeDocument document = GCodeDocument.read(inputStream);
+                runOnUiThread(() -> {
+                    showLoadedDocument(document);
+                    tvSelectedFile.setText(fileName != null ? fileName : "File loaded");
+                    Toast.makeText(this, "G-code file loaded successfully ("
+                            + document.getLineCount() + " lines)", Toast.LENGTH_SHORT).show();
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Error loading G-code file", e);
+                runOnUiThread(() -> {
+                    tvSelectedFile.setText("No file selected");
+                    Toast.makeText(this, "Error loading file: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                });
             }
+        }).start();
+    }
 
-            reader.close();
-            inputStream.close();
-
-            etGCodeInput.setText(gCodeContent.toString());
-
-            String fileName = getFileName(uri);
-            tvSelectedFile.setText(fileName != null ? fileName : "File loaded");
-
-            Toast.makeText(this, "G-code file loaded successfully", Toast.LENGTH_SHORT).show();
+    private void showLoadedDocument(GCodeDocument document) {
+        loadedDocument = document;
+        if (lastSnapshot != null) {
+            updateGCodeView(lastSnapshot);
+        } else {
+            gCodeView.setDocument(document);
+        }
+    }
 
-        } catch (Exception e) {
-            Toast.makeText(this, "Error loading file: " + e.getMessage(), Toast.LENGTH_LONG).show();
-            Log.e(TAG, "Error loading G-code file", e);
+    // typing or fixing a few commands; large files are left to an editor on a computer
+    private void openEditor() {
+        if (loadedDocument.getByteLength() > MAX_EDIT_BYTES) {
+            Toast.makeText(this, "This file has " + loadedDocument.getLineCount()
+                    + " lines, too many to edit here", Toast.LENGTH_LONG).show();
+            return;
         }
+        EditText editor = new EditText(this);
+        editor.setInputType(InputType.TYPE_CLASS_TEXT | InputType.TYPE_TEXT_FLAG_MULTI_LINE
+                | InputType.TYPE_TEXT_FLAG_NO_SUGGESTIONS);
+        editor.setGravity(Gravity.TOP | Gravity.START);
+        editor.setTypeface(Typeface.MONOSPACE);
+        editor.setTextSize(12);
+        editor.setMinLines(8);
+        editor.setMaxLines(16);
+        editor.setHint("G-code commands (one per line)");
+        editor.setText(loadedDocument.getText());
+        new AlertDialog.Builder(this)
+                .setTitle("Edit G-code")
+                .setView(editor)
+                .setPositiveButton("Done", (dialog, which) ->
+                        showLoadedDocument(GCodeDocument.fromText(editor.getText().toString())))
+                .setNegativeButton("Cancel", null)
+                .show();
     }
 
     private String getFileName(Uri uri) {
@@ -584,6 +854,7 @@ public class BluetoothTerminalActivity extends AppCompatActivity {
     }
 
     private void loadPairedDevices() {
+        if (plotterService == null) return;
         deviceList.clear();
         List<String> deviceNames = new ArrayList<>();
 
@@ -594,7 +865,7 @@ public class BluetoothTerminalActivity extends AppCompatActivity {
             return;
         }
 
-        Set<BluetoothDevice> pairedDevices = bluetoothHelper.getPairedDevices();
+        Set<BluetoothDevice> pairedDevices = plotterService.getPairedDevices();
         if (pairedDevices != null && !pairedDevices.isEmpty()) {
             addToTerminal("[FOUND " + pairedDevices.size() + " PAIRED DEVICES:]");
 
@@ -615,6 +886,15 @@ public class BluetoothTerminalActivity extends AppCompatActivity {
         ArrayAdapter<String> adapter = new ArrayAdapter<>(this, android.R.layout.simple_spinner_item, deviceNames);
         adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         spinnerDevices.setAdapter(adapter);
+
+        // preselect the plotter shown so far, or the one the last session used
+        String selected = plotter != null ? plotter.getAddress() : PlotterService.getLastDeviceAddress(this);
+        for (int i = 0; i < deviceList.size(); i++) {
+            if (deviceList.get(i).getAddress().equals(selected)) {
+                spinnerDevices.setSelection(i);
+                break;
+            }
+        }
     }
 
     private String getDeviceName(BluetoothDevice device) {
@@ -640,14 +920,6 @@ public class BluetoothTerminalActivity extends AppCompatActivity {
         }
     }
 
-    private int calculateEstimatedTime(int movementCommands) {
-        int avgSecondsPerCommand = 2; //change this to adjust speed. 0.25 is more accurate after testing
-        int commandProcessingTime = (gCodeQueue.size() * GCODE_DELAY_MS) / 1000;
-
-        return (movementCommands * avgSecondsPerCommand) + commandProcessingTime + 5;
-    }
-
-
     private String formatTime(int totalSeconds) {
         int hours = totalSeconds / 3600;
         int minutes = (totalSeconds % 3600) / 60;
@@ -659,18 +931,6 @@ public class BluetoothTerminalActivity extends AppCompatActivity {
             return String.format("%d:%02d", minutes, seconds);
         }
     }
-    private void clearGCodeState() {
-        gCodeQueue.clear();
-    currentGCodeIndex = 0;
-    commandsProcessed = 0;
-    isGCodeRunning = false;
-    waitingForOk = false;
-        if (gCodeHandler != null) {
-        gCodeHandler.removeCallbacksAndMessages(null);
-    }
-    updateGCodeButtons();
-    updateGCodeProgress();
-}
 
 @Override
 public void onRequestPermissionsResult(int requestCode, String[] permissions, int[] grantResults) {
@@ -711,69 +971,24 @@ protected void onActivityResult(int requestCode, int resultCode, Intent data) {
     }
 }
 
-@Override
-protected void onDestroy() {
-
-    if (bluetoothHelper != null) {
-        bluetoothHelper.setMessageCallback(null);
-        bluetoothHelper.setStatusCallback(null);
-    }
-
-    // Only disconnect if the entire app is being closed
-    if (isFinishing() && isTaskRoot()) {
-        if (bluetoothHelper != null) {
-            bluetoothHelper.disconnect();
-            bluetoothHelper = null;
-        }
-    }
-
-    if (gCodeHandler != null) {
-        gCodeHandler.removeCallbacksAndMessages(null);
-    }
-
-    // Only clear static references when the app is truly finishing
-    if (isFinishing() && isTaskRoot()) {
-        instance = null;
-    }
-
-    super.onDestroy();
-}
-
 @Override
 protected void onPause() {
+    // a jog button held while the screen goes away would never see its release
+    if (plotter != null) plotter.jogStop();
     super.onPause();
 }
 
 @Override
-protected void onResume() {
-    super.onResume();
-    if (bluetoothHelper != null && this == instance) {
-        setupCallbacks(); // Re-establish callbacks
-        updateUIConnectionState(bluetoothHelper.isConnected());
-    }
-}
-
-public static BluetoothHelper getBluetoothHelper() {
-    return bluetoothHelper;
-}
+protected void onDestroy() {
 
-public static boolean isBluetoothConnected() {
-    try {
-        return bluetoothHelper != null && bluetoothHelper.isConnected();
-    } catch (Exception e) {
-        return false;
+    if (plotter != null) {
+        plotter.removeClient(serviceClient);
+        plotter = null;
     }
-}
+    plotterService = null;
+    // the service keeps the connection and a running job alive on its own
+    unbindService(serviceConnection);
 
-
-public static String getConnectionStatus() {
-    if (bluetoothHelper == null) {
-        return "BluetoothHelper not initialized";
-    }
-    try {
-        return bluetoothHelper.isConnected() ? "Connected" : "Disconnected";
-    } catch (Exception e) {
-        return "Connection check failed: " + e.getMessage();
-    }
+    super.onDestroy();
+}
 }
-}
\ No newline at end of file
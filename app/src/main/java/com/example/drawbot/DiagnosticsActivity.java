@@ -0,0 +1,137 @@
+package com.example.drawbot;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.widget.Button;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.util.List;
+import java.util.Locale;
+
+// Live view of the streaming counters of the plotter picked in the terminal, with one status line for
+// every other plotter. Reads the lock-free metrics twice a second, so it never slows a streamer down.
+public class DiagnosticsActivity extends AppCompatActivity {
+    private static final long REFRESH_MS = 500;
+
+    private TextView tvDiagnostics;
+    private final Handler refreshHandler = new Handler(Looper.getMainLooper());
+    private PlotterService plotterService;
+
+    // previous sample for the current byte rates
+    private long lastSampleNanos = 0, lastBytesSent = 0, lastBytesReceived = 0;
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            plotterService = ((PlotterService.LocalBinder) binder).getService();
+            refresh();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            plotterService = null;
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_diagnostics);
+
+        tvDiagnostics = findViewById(R.id.tvDiagnostics);
+        Button btnExportMetrics = findViewById(R.id.btnExportMetrics);
+        btnExportMetrics.setOnClickListener(v -> {
+            PlotterConnection plotter = plotterService != null ? plotterService.getSelected() : null;
+            if (plotter != null) plotter.exportMetrics("manual");
+        });
+
+        bindService(new Intent(this, PlotterService.class), serviceConnection, BIND_AUTO_CREATE);
+    }
+
+    private void refresh() {
+        refreshHandler.removeCallbacksAndMessages(null);
+        if (plotterService == null) return;
+        PlotterConnection plotter = plotterService.getSelected();
+        if (plotter == null) {
+            tvDiagnostics.setText("No plotter selected\n\nStartup of this process\n" + StartupTrace.getSummary());
+            refreshHandler.postDelayed(this::refresh, REFRESH_MS);
+            return;
+        }
+
+        StreamMetrics m = plotter.getMetrics();
+        PlotterService.Snapshot s = plotter.getSnapshot();
+        long now = System.nanoTime();
+        double seconds = m.getElapsedNanos(now) / 1e9;
+        long sent = m.bytesSent.sum();
+        long received = m.bytesReceived.sum();
+
+        double sendRate = 0, receiveRate = 0;
+        if (lastSampleNanos != 0) {
+            double interval = (now - lastSampleNanos) / 1e9;
+            sendRate = Math.max(0, sent - lastBytesSent) / interval;
+            receiveRate = Math.max(0, received - lastBytesReceived) / interval;
+        }
+        lastSampleNanos = now;
+        lastBytesSent = sent;
+        lastBytesReceived = received;
+
+        LatencyHistogram latency = m.ackLatency;
+        StringBuilder sb = new StringBuilder();
+        sb.append(s.deviceAddress).append(": ").append(s.running ? "Job running" : "No job running")
+                .append(s.connected ? ", connected" : ", not connected").append('\n');
+        sb.append(String.format(Locale.US, "Elapsed:        %.1f s%n", seconds));
+        sb.append(String.format(Locale.US, "Lines:          %d sent / %d ok%n",
+                m.linesSent.sum(), m.linesAcknowledged.sum()));
+        sb.append('\n').append("Send -> ok latency (ms)\n");
+        sb.append(String.format(Locale.US, "  p50 %.1f  p90 %.1f  p99 %.1f%n",
+                latency.getPercentile(50) / 1000.0, latency.getPercentile(90) / 1000.0,
+                latency.getPercentile(99) / 1000.0));
+        sb.append(String.format(Locale.US, "  max %.1f  mean %.1f  (n=%d)%n",
+                latency.getMax() / 1000.0, latency.getMean() / 1000.0, latency.getCount()));
+        sb.append('\n');
+        sb.append(String.format(Locale.US, "Bytes out:      %d (%.0f B/s now, %.0f B/s avg)%n",
+                sent, sendRate, seconds > 0 ? sent / seconds : 0));
+        sb.append(String.format(Locale.US, "Bytes in:       %d (%.0f B/s now, %.0f B/s avg)%n",
+                received, receiveRate, seconds > 0 ? received / seconds : 0));
+        sb.append(String.format(Locale.US, "Queue depth:    %d (max %d)%n", m.getQueueDepth(), m.getMaxQueueDepth()));
+        sb.append(String.format(Locale.US, "Timeouts:       %d%n", m.timeouts.sum()));
+        sb.append(String.format(Locale.US, "Errors:         %d%n", m.errors.sum()));
+        sb.append(String.format(Locale.US, "Planner idle:   %d of %d status reports%n",
+                m.plannerStarvation.sum(), m.statusReports.sum()));
+
+        String lastFile = plotter.getLastMetricsFile();
+        if (lastFile != null) {
+            sb.append('\n').append("Last export: ").append(lastFile);
+        }
+
+        List<PlotterConnection> plotters = plotterService.getPlotters();
+        if (plotters.size() > 1) {
+            sb.append("\n\n").append("All plotters\n");
+            for (PlotterConnection other : plotters) {
+                PlotterService.Snapshot o = other.getSnapshot();
+                sb.append(String.format(Locale.US, "  %s  %s  %d/%d  %d lines/s%n", o.deviceAddress,
+                        o.running ? "drawing" : o.connected ? "connected" : "idle", o.processed, o.total,
+                        Math.round(other.getMetrics().linesAcknowledged.sum()
+                                / Math.max(1e-9, other.getMetrics().getElapsedNanos(now) / 1e9))));
+            }
+        }
+        sb.append("\n\n").append("Startup of this process\n").append(StartupTrace.getSummary());
+        tvDiagnostics.setText(sb.toString());
+
+        refreshHandler.postDelayed(this::refresh, REFRESH_MS);
+    }
+
+    @Override
+    protected void onDestroy() {
+        refreshHandler.removeCallbacksAndMessages(null);
+        unbindService(serviceConnection);
+        super.onDestroy();
+    }
+}
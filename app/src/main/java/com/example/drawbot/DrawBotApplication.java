@@ -0,0 +1,16 @@
+package com.example.drawbot;
+
+import android.app.Application;
+
+// Process-wide startup. Keeps the main thread free of Firebase: the first screen is chosen from
+// SessionCache and Firebase comes up in the background (see FirebaseLoader).
+public class DrawBotApplication extends Application {
+    @Override
+    public void onCreate() {
+        StartupTrace.mark("application start");
+        StartupTrace.begin("DrawBotApplication.onCreate");
+        super.onCreate();
+        FirebaseLoader.start(this);
+        StartupTrace.end("application created");
+    }
+}
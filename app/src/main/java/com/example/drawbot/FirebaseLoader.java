@@ -0,0 +1,77 @@
+package com.example.drawbot;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.analytics.FirebaseAnalytics;
+import com.google.firebase.auth.FirebaseAuth;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Initializes Firebase on a background thread instead of through its content provider on the main
+// thread before the first activity (the provider is removed in the manifest, analytics collection
+// starts disabled there and is switched on here). Code that needs FirebaseAuth asks for it with
+// whenReady(), which runs on the main thread as soon as initialization is done.
+public final class FirebaseLoader {
+    public interface Callback {
+        void onReady(FirebaseAuth auth);
+    }
+
+    private static final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private static final List<Callback> waiting = new ArrayList<>();
+    private static FirebaseAuth auth;   // set once, on the main thread
+    private static boolean started = false;
+
+    private FirebaseLoader() {
+    }
+
+    // main thread; safe to call more than once
+    public static void start(Context context) {
+        if (started) return;
+        started = true;
+        Context app = context.getApplicationContext();
+        Thread thread = new Thread(() -> {
+            android.os.Process.setThreadPriority(android.os.Process.THREAD_PRIORITY_BACKGROUND);
+            StartupTrace.begin("FirebaseLoader");
+            FirebaseApp.initializeApp(app);
+            FirebaseAuth loaded = FirebaseAuth.getInstance();
+            // reads the persisted user, so the check below does not hit the disk on the main thread
+            loaded.getCurrentUser();
+            StartupTrace.end("firebase auth ready");
+            mainHandler.post(() -> ready(app, loaded));
+
+            StartupTrace.begin("FirebaseAnalytics");
+            FirebaseAnalytics.getInstance(app).setAnalyticsCollectionEnabled(true);
+            StartupTrace.end("firebase analytics ready");
+        }, "firebase-init");
+        thread.start();
+    }
+
+    private static void ready(Context app, FirebaseAuth loaded) {
+        auth = loaded;
+        // the cache only decides the first screen, Firebase has the final word from here on
+        loaded.addAuthStateListener(changed -> SessionCache.save(app, changed.getCurrentUser()));
+        List<Callback> callbacks = new ArrayList<>(waiting);
+        waiting.clear();
+        for (Callback callback : callbacks) {
+            callback.onReady(loaded);
+        }
+    }
+
+    // main thread; runs the callback right away if Firebase is already up
+    public static void whenReady(Callback callback) {
+        if (auth != null) {
+            callback.onReady(auth);
+        } else {
+            waiting.add(callback);
+        }
+    }
+
+    // drops a callback of an activity that is going away before Firebase was ready
+    public static void cancel(Callback callback) {
+        waiting.remove(callback);
+    }
+}
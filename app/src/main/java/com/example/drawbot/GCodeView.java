@@ -0,0 +1,184 @@
+package com.example.drawbot;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.GestureDetector;
+import android.view.MotionEvent;
+import android.view.View;
+import android.widget.OverScroller;
+
+// Read-only G-code viewer for files of any size. Only the rows on screen are drawn and only their
+// lines are decoded from the GCodeDocument, so a million line file scrolls like a short one.
+// One line can be highlighted (the one being drawn); the view keeps it in sight unless the user
+// scrolled in the last FOLLOW_PAUSE_MS. Dragging along the right edge scrolls through the whole file.
+public class GCodeView extends View {
+    private static final long FOLLOW_PAUSE_MS = 4000;
+
+    private final Paint textPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint numberPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint highlightPaint = new Paint();
+    private final Paint thumbPaint = new Paint();
+    private final OverScroller scroller;
+    private final GestureDetector gestures;
+    private final float density;
+
+    private GCodeDocument document = GCodeDocument.EMPTY;
+    private String emptyText = "";
+    private int highlighted = -1;
+    private int scrollPx = 0;
+    private final int lineHeight;
+    private final float baseline;
+    private boolean draggingThumb = false;
+    private long lastTouch = 0;
+
+    public GCodeView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        density = getResources().getDisplayMetrics().density;
+        float textSize = 12 * getResources().getDisplayMetrics().scaledDensity;
+        textPaint.setTypeface(Typeface.MONOSPACE);
+        textPaint.setTextSize(textSize);
+        textPaint.setColor(0xFF333333);
+        numberPaint.setTypeface(Typeface.MONOSPACE);
+        numberPaint.setTextSize(textSize);
+        numberPaint.setColor(Color.GRAY);
+        numberPaint.setTextAlign(Paint.Align.RIGHT);
+        highlightPaint.setColor(0xFFFFE082);
+        thumbPaint.setColor(0x66000000);
+        Paint.FontMetrics metrics = textPaint.getFontMetrics();
+        lineHeight = (int) Math.ceil(metrics.descent - metrics.ascent + 2 * density);
+        baseline = density - metrics.ascent;
+
+        scroller = new OverScroller(context);
+        gestures = new GestureDetector(context, new GestureDetector.SimpleOnGestureListener() {
+            @Override
+            public boolean onDown(MotionEvent e) {
+                return true;
+            }
+
+            @Override
+            public boolean onScroll(MotionEvent e1, MotionEvent e2, float distanceX, float distanceY) {
+                scrollToPx((long) scrollPx + Math.round(distanceY));
+                return true;
+            }
+
+            @Override
+            public boolean onFling(MotionEvent e1, MotionEvent e2, float velocityX, float velocityY) {
+                scroller.fling(0, scrollPx, 0, -Math.round(velocityY), 0, 0, 0, maxScroll());
+                postInvalidateOnAnimation();
+                return true;
+            }
+        });
+    }
+
+    // shows another document from its first line; nothing happens if it is the one shown
+    public void setDocument(GCodeDocument document) {
+        if (document == this.document) return;
+        this.document = document;
+        highlighted = -1;
+        scroller.forceFinished(true);
+        scrollPx = 0;
+        invalidate();
+    }
+
+    // drawn when the document is empty
+    public void setEmptyText(String text) {
+        emptyText = text;
+        invalidate();
+    }
+
+    // highlights a line, -1 for none, and brings it into view unless the user is looking elsewhere
+    public void setHighlightedLine(int line) {
+        if (line == highlighted) return;
+        highlighted = line;
+        if (line >= 0 && scroller.isFinished() && SystemClock.uptimeMillis() - lastTouch > FOLLOW_PAUSE_MS) {
+            // scroll in steps, with the line a third down, so the text is not moving on every line
+            long top = (long) line * lineHeight;
+            if (top < scrollPx || top + lineHeight > scrollPx + getHeight() * 2L / 3) {
+                scrollPx = clamp(top - getHeight() / 3);
+            }
+        }
+        invalidate();
+    }
+
+    private int maxScroll() {
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, (long) document.getLineCount() * lineHeight - getHeight()));
+    }
+
+    private int clamp(long px) {
+        return (int) Math.max(0, Math.min(maxScroll(), px));
+    }
+
+    private void scrollToPx(long px) {
+        int next = clamp(px);
+        if (next == scrollPx) return;
+        scrollPx = next;
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        scrollPx = clamp(scrollPx);
+    }
+
+    @Override
+    public void computeScroll() {
+        if (scroller.computeScrollOffset()) {
+            scrollPx = clamp(scroller.getCurrY());
+            postInvalidateOnAnimation();
+        }
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        int count = document.getLineCount();
+        int width = getWidth(), height = getHeight();
+        float padding = 6 * density;
+        if (count == 0) {
+            canvas.drawText(emptyText, padding, padding + baseline, textPaint);
+            return;
+        }
+
+        float gutter = numberPaint.measureText(String.valueOf(count)) + 2 * padding;
+        int first = scrollPx / lineHeight;
+        float y = (float) ((long) first * lineHeight - scrollPx);
+        for (int i = first; i < count && y < height; i++, y += lineHeight) {
+            if (i == highlighted) canvas.drawRect(0, y, width, y + lineHeight, highlightPaint);
+            canvas.drawText(String.valueOf(i + 1), gutter - padding, y + baseline, numberPaint);
+            canvas.drawText(document.line(i), gutter, y + baseline, textPaint);
+        }
+
+        int max = maxScroll();
+        if (max > 0) {
+            float thumbHeight = Math.max(24 * density, (float) height * height / (height + max));
+            float thumbTop = (height - thumbHeight) * scrollPx / max;
+            canvas.drawRect(width - 4 * density, thumbTop, width, thumbTop + thumbHeight, thumbPaint);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        int action = event.getActionMasked();
+        lastTouch = SystemClock.uptimeMillis();
+        if (action == MotionEvent.ACTION_DOWN) {
+            // the terminal screen scrolls too; this view keeps the gesture
+            getParent().requestDisallowInterceptTouchEvent(true);
+            scroller.forceFinished(true);
+            draggingThumb = maxScroll() > 0 && event.getX() > getWidth() - 24 * density;
+        }
+        if (draggingThumb) {
+            float fraction = Math.max(0, Math.min(1, event.getY() / Math.max(1, getHeight())));
+            scrollToPx(Math.round(fraction * maxScroll()));
+            if (action == MotionEvent.ACTION_UP || action == MotionEvent.ACTION_CANCEL) draggingThumb = false;
+            return true;
+        }
+        gestures.onTouchEvent(event);
+        return true;
+    }
+}
@@ -1,44 +1,56 @@
 package com.example.drawbot;
 
+import android.Manifest;
 import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Bundle;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.widget.Button;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
-
-import com.google.firebase.auth.FirebaseAuth;
-import com.google.firebase.auth.FirebaseUser;
+import androidx.core.app.ActivityCompat;
+import androidx.core.content.ContextCompat;
 
 public class HomeActivity extends AppCompatActivity {
 
+    private static final int REQUEST_BLUETOOTH_PERMISSIONS = 100;
+
     private Button bluetoothTerminalButton;
     private TextView welcomeTextView;
-    private FirebaseAuth mAuth;
+
+    // Firebase disagrees with the cached session: signed out elsewhere or the token was revoked
+    private final FirebaseLoader.Callback sessionCheck = auth -> {
+        if (auth.getCurrentUser() == null) {
+            startActivity(new Intent(HomeActivity.this, LoginActivity.class));
+            finish();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        setContentView(R.layout.activity_home);
 
-        mAuth = FirebaseAuth.getInstance();
-
-        FirebaseUser currentUser = mAuth.getCurrentUser();
-        if (currentUser == null) {
+        if (!SessionCache.isSignedIn(this)) {
             startActivity(new Intent(HomeActivity.this, LoginActivity.class));
             finish();
             return;
         }
 
+        StartupTrace.begin("HomeActivity.onCreate");
+        setContentView(R.layout.activity_home);
+
         bluetoothTerminalButton = findViewById(R.id.bluetooth_terminal_button);
         welcomeTextView = findViewById(R.id.welcome_text_view);
         Button settingsButton = findViewById(R.id.settings_button);
         Button imageToGcodeButton = findViewById(R.id.image_to_gcode_button);
+        Button textToGcodeButton = findViewById(R.id.text_to_gcode_button);
 
-        String email = currentUser.getEmail();
+        String email = SessionCache.getEmail(this);
         if (email != null) {
             welcomeTextView.setText("Welcome, " + email);
         } else {
@@ -59,6 +71,70 @@ public class HomeActivity extends AppCompatActivity {
                 startActivity(new Intent(HomeActivity.this, ImageToGcodeActivity.class));
             });
         }
+
+        if (textToGcodeButton != null) {
+            textToGcodeButton.setOnClickListener(v -> {
+                startActivity(new Intent(HomeActivity.this, TextToGcodeActivity.class));
+            });
+        }
+        StartupTrace.end("home created");
+        StartupTrace.onFirstFrame(this);
+
+        FirebaseLoader.whenReady(sessionCheck);
+        if (savedInstanceState == null) {
+            // after the first frame, the permission dialog should not hold up the screen behind it;
+            // with the permissions in place this connects to the last device in the background
+            getWindow().getDecorView().post(this::checkBluetoothPermissions);
+        }
+    }
+
+    private void checkBluetoothPermissions() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            if (ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_CONNECT) !=
+                    PackageManager.PERMISSION_GRANTED ||
+                    ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_SCAN) !=
+                    PackageManager.PERMISSION_GRANTED) {
+
+                ActivityCompat.requestPermissions(this,
+                        new String[]{Manifest.permission.BLUETOOTH_CONNECT, Manifest.permission.BLUETOOTH_SCAN},
+                        REQUEST_BLUETOOTH_PERMISSIONS);
+                return;
+            }
+        } else {
+            if (ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH) !=
+                    PackageManager.PERMISSION_GRANTED ||
+                    ContextCompat.checkSelfPermission(this, Manifest.permission.BLUETOOTH_ADMIN) !=
+                    PackageManager.PERMISSION_GRANTED ||
+                    ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION) !=
+                    PackageManager.PERMISSION_GRANTED) {
+
+                ActivityCompat.requestPermissions(this,
+                        new String[]{Manifest.permission.BLUETOOTH, Manifest.permission.BLUETOOTH_ADMIN,
+                                Manifest.permission.ACCESS_FINE_LOCATION},
+                        REQUEST_BLUETOOTH_PERMISSIONS);
+                return;
+            }
+        }
+        PlotterService.connectLastDevice(this);
+    }
+
+    @Override
+    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
+        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+        if (requestCode == REQUEST_BLUETOOTH_PERMISSIONS) {
+            boolean allPermissionsGranted = true;
+            for (int result : grantResults) {
+                if (result != PackageManager.PERMISSION_GRANTED) {
+                    allPermissionsGranted = false;
+                    break;
+                }
+            }
+            if (!allPermissionsGranted) {
+                Toast.makeText(this, "Bluetooth permissions are required for this app", Toast.LENGTH_LONG).show();
+            } else {
+                PlotterService.connectLastDevice(this);
+            }
+        }
     }
 
     @Override
@@ -72,7 +148,9 @@ public class HomeActivity extends AppCompatActivity {
         int id = item.getItemId();
 
         if (id == R.id.action_logout) {
-            mAuth.signOut();
+            SessionCache.clear(this);
+            FirebaseLoader.cancel(sessionCheck);
+            FirebaseLoader.whenReady(auth -> auth.signOut());
             startActivity(new Intent(HomeActivity.this, LoginActivity.class));
             finish();
             return true;
@@ -80,4 +158,10 @@ public class HomeActivity extends AppCompatActivity {
 
         return super.onOptionsItemSelected(item);
     }
-}
\ No newline at end of file
+
+    @Override
+    protected void onDestroy() {
+        FirebaseLoader.cancel(sessionCheck);
+        super.onDestroy();
+    }
+}
@@ -1,13 +1,40 @@
 package com.example.drawbot;
 
 import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Bundle;
+import android.util.Log;
 import android.widget.Button;
+import android.widget.EditText;
+import android.widget.TextView;
+import android.widget.Toast;
 
 import androidx.appcompat.app.AppCompatActivity;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
 public class ImageToGcodeActivity extends AppCompatActivity {
+    private static final String TAG = "ImageToGcodeActivity";
+    private static final int REQUEST_SELECT_SVG_FILE = 201;
+    private static final int REQUEST_SELECT_TRACE_IMAGE = 202;
+    private static final int REQUEST_SELECT_HATCH_IMAGE = 203;
+    private static final int MAX_IMAGE_SIZE = 1200; // px, longest side after decoding
+
+    private TextView tvConvertStatus;
+    private EditText etDrawingWidth, etHatchSpacing;
+    private Button btnSvgOnDevice, btnTraceImage, btnHatchImage;
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -16,6 +43,12 @@ public class ImageToGcodeActivity extends AppCompatActivity {
         Button btnToSvg = findViewById(R.id.btnToSvg);
         Button btnToGcode = findViewById(R.id.btnToGcode);
         Button btnToTerminal = findViewById(R.id.btnToTerminal);
+        btnSvgOnDevice = findViewById(R.id.btnSvgOnDevice);
+        btnTraceImage = findViewById(R.id.btnTraceImage);
+        btnHatchImage = findViewById(R.id.btnHatchImage);
+        etDrawingWidth = findViewById(R.id.etDrawingWidth);
+        etHatchSpacing = findViewById(R.id.etHatchSpacing);
+        tvConvertStatus = findViewById(R.id.tvConvertStatus);
 
         btnToSvg.setOnClickListener(v -> {
             Intent browserIntent = new Intent(Intent.ACTION_VIEW, Uri.parse("https://picsvg.com/"));
@@ -25,9 +58,171 @@ public class ImageToGcodeActivity extends AppCompatActivity {
             Intent browserIntent = new Intent(Intent.ACTION_VIEW, Uri.parse("https://sameer.github.io/svg2gcode/"));
             startActivity(browserIntent);
         });
+        btnSvgOnDevice.setOnClickListener(v -> openFileChooser(
+                new String[]{"image/svg+xml", "text/xml", "*/*"}, "Select SVG file", REQUEST_SELECT_SVG_FILE));
+        btnTraceImage.setOnClickListener(v -> openFileChooser(
+                new String[]{"image/*"}, "Select image", REQUEST_SELECT_TRACE_IMAGE));
+        btnHatchImage.setOnClickListener(v -> openFileChooser(
+                new String[]{"image/*"}, "Select image", REQUEST_SELECT_HATCH_IMAGE));
         btnToTerminal.setOnClickListener(v -> {
             Intent intent = new Intent(ImageToGcodeActivity.this, BluetoothTerminalActivity.class);
             startActivity(intent);
         });
     }
+
+    private void openFileChooser(String[] mimeTypes, String title, int requestCode) {
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("*/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        intent.putExtra(Intent.EXTRA_MIME_TYPES, mimeTypes);
+
+        startActivityForResult(Intent.createChooser(intent, title), requestCode);
+    }
+
+    // one on-device conversion, returns a short summary for the status line
+    private interface Conversion {
+        String run(PenPlotterGCodeWriter writer) throws Exception;
+    }
+
+    // conversions run off the UI thread, the result is handed to the terminal as a file
+    private void runConversion(String status, Conversion conversion) {
+        setConvertButtonsEnabled(false);
+        tvConvertStatus.setText(status);
+
+        File output = new File(getCacheDir(), "converted.gcode");
+        new Thread(() -> {
+            long start = System.currentTimeMillis();
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output)))) {
+                String summary = conversion.run(new PenPlotterGCodeWriter(out));
+                long elapsed = System.currentTimeMillis() - start;
+
+                runOnUiThread(() -> {
+                    setConvertButtonsEnabled(true);
+                    tvConvertStatus.setText(summary + " in " + elapsed + " ms");
+                    openInTerminal(output);
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Error converting to G-code", e);
+                runOnUiThread(() -> {
+                    setConvertButtonsEnabled(true);
+                    tvConvertStatus.setText("Conversion failed: " + e.getMessage());
+                    Toast.makeText(this, "Error converting: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                });
+            }
+        }).start();
+    }
+
+    private void convertSvg(Uri uri) {
+        runConversion("Converting SVG...", writer -> {
+            SvgToGcodeConverter converter = new SvgToGcodeConverter();
+            converter.convert(() -> new BufferedReader(new InputStreamReader(
+                    getContentResolver().openInputStream(uri))), writer);
+            return converter.getShapesConverted() + " shapes, "
+                    + (writer.getDrawMoves() + writer.getTravelMoves()) + " moves";
+        });
+    }
+
+    private void traceImage(Uri uri) {
+        double widthMm = readDrawingWidth();
+        if (widthMm <= 0) return;
+
+        runConversion("Tracing image...", writer -> {
+            Bitmap bitmap = decodeScaledBitmap(uri);
+            int width = bitmap.getWidth(), height = bitmap.getHeight();
+            int[] pixels = new int[width * height];
+            bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+            bitmap.recycle();
+
+            List<int[]> paths = new ImageTracer().trace(pixels, width, height);
+            ImageTracer.writeGCode(paths, height, widthMm / width, writer);
+            return paths.size() + " strokes, " + writer.getDrawMoves() + " moves";
+        });
+    }
+
+    private void hatchImage(Uri uri) {
+        double widthMm = readDrawingWidth();
+        double spacingMm = readPositive(etHatchSpacing, "Please enter a positive hatch spacing");
+        if (widthMm <= 0 || spacingMm <= 0) return;
+
+        runConversion("Hatching image...", writer -> {
+            Bitmap bitmap = decodeScaledBitmap(uri);
+            int width = bitmap.getWidth(), height = bitmap.getHeight();
+            int[] pixels = new int[width * height];
+            bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
+            bitmap.recycle();
+
+            HatchGenerator generator = new HatchGenerator();
+            generator.setLineSpacingMm(spacingMm);
+            int segments = generator.generate(pixels, width, height, widthMm / width, writer);
+            return segments + " hatch lines, " + writer.getTravelMoves() + " pen lifts";
+        });
+    }
+
+    private double readDrawingWidth() {
+        return readPositive(etDrawingWidth, "Please enter a positive drawing width");
+    }
+
+    private double readPositive(EditText field, String error) {
+        try {
+            double value = Double.parseDouble(field.getText().toString().trim());
+            if (value > 0) return value;
+        } catch (NumberFormatException ignored) {
+            // handled below
+        }
+        Toast.makeText(this, error, Toast.LENGTH_SHORT).show();
+        return -1;
+    }
+
+    // photos are downsampled while decoding, full camera resolution is far finer than a pen line
+    private Bitmap decodeScaledBitmap(Uri uri) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = getContentResolver().openInputStream(uri)) {
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+
+        int sampleSize = 1;
+        while (Math.max(bounds.outWidth, bounds.outHeight) / sampleSize > MAX_IMAGE_SIZE) {
+            sampleSize *= 2;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize;
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        try (InputStream in = getContentResolver().openInputStream(uri)) {
+            Bitmap bitmap = BitmapFactory.decodeStream(in, null, options);
+            if (bitmap == null) {
+                throw new IOException("Unsupported image format");
+            }
+            return bitmap;
+        }
+    }
+
+    private void setConvertButtonsEnabled(boolean enabled) {
+        btnSvgOnDevice.setEnabled(enabled);
+        btnTraceImage.setEnabled(enabled);
+        btnHatchImage.setEnabled(enabled);
+    }
+
+    private void openInTerminal(File gCodeFile) {
+        Intent intent = new Intent(ImageToGcodeActivity.this, BluetoothTerminalActivity.class);
+        intent.putExtra(BluetoothTerminalActivity.EXTRA_GCODE_FILE, gCodeFile.getAbsolutePath());
+        startActivity(intent);
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+
+        if (resultCode != RESULT_OK || data == null || data.getData() == null) {
+            return;
+        }
+        if (requestCode == REQUEST_SELECT_SVG_FILE) {
+            convertSvg(data.getData());
+        } else if (requestCode == REQUEST_SELECT_TRACE_IMAGE) {
+            traceImage(data.getData());
+        } else if (requestCode == REQUEST_SELECT_HATCH_IMAGE) {
+            hatchImage(data.getData());
+        }
+    }
 }
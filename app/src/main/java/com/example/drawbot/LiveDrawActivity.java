@@ -0,0 +1,106 @@
+package com.example.drawbot;
+
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
+import android.widget.TextView;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.util.Locale;
+
+// Draw with a finger on the plotter picked in the terminal. Touches go to PlotterConnection.liveTouch
+// as they come; the pen position and the latency counters of the session are read four times a second.
+// Leaving the screen stops live drawing.
+public class LiveDrawActivity extends AppCompatActivity {
+    private static final long REFRESH_MS = 250;
+    private static final double DEFAULT_AREA_MM = 100;
+
+    private LivePadView livePad;
+    private TextView tvLiveStats;
+    private final Handler refreshHandler = new Handler(Looper.getMainLooper());
+    private PlotterService plotterService;
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            plotterService = ((PlotterService.LocalBinder) binder).getService();
+            PlotterConnection plotter = plotterService.getSelected();
+            if (plotter != null) {
+                double[] area = plotter.getWorkArea();
+                livePad.setWorkArea(area[0] > 0 ? area[0] : DEFAULT_AREA_MM, area[1] > 0 ? area[1] : DEFAULT_AREA_MM);
+            }
+            refresh();
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            plotterService = null;
+        }
+    };
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_live_draw);
+
+        livePad = findViewById(R.id.livePad);
+        tvLiveStats = findViewById(R.id.tvLiveStats);
+        livePad.setTouchListener((action, x, y, nanos) -> {
+            PlotterConnection plotter = selected();
+            if (plotter != null && plotter.getLive() != null) plotter.liveTouch(action, x, y, nanos);
+        });
+        findViewById(R.id.btnLiveStart).setOnClickListener(v -> {
+            PlotterConnection plotter = selected();
+            if (plotter != null) plotter.startLive();
+        });
+        findViewById(R.id.btnLiveStop).setOnClickListener(v -> {
+            PlotterConnection plotter = selected();
+            if (plotter != null) plotter.stopLive();
+        });
+        findViewById(R.id.btnLiveClear).setOnClickListener(v -> livePad.clear());
+
+        bindService(new Intent(this, PlotterService.class), serviceConnection, BIND_AUTO_CREATE);
+    }
+
+    private PlotterConnection selected() {
+        return plotterService != null ? plotterService.getSelected() : null;
+    }
+
+    private void refresh() {
+        refreshHandler.removeCallbacksAndMessages(null);
+        PlotterConnection plotter = selected();
+        LiveSession live = plotter != null ? plotter.getLive() : null;
+        if (plotter == null) {
+            tvLiveStats.setText("No plotter selected");
+        } else if (live == null) {
+            tvLiveStats.setText(plotter.isConnected() ? "Press Start, then draw in the box"
+                    : "Connect the plotter in the terminal first");
+        } else {
+            livePad.setPen(live.getPenX(), live.getPenY());
+            tvLiveStats.setText(String.format(Locale.US,
+                    "Pen %.1f, %.1f mm   behind by %.0f ms%n"
+                            + "Touch -> queued  p50 %.0f  p95 %.0f ms%n"
+                            + "Touch -> drawn   p50 %.0f  p95 %.0f ms%n"
+                            + "%d touch points, %d lines sent, %d thinned out",
+                    live.getPenX(), live.getPenY(), live.getLagNanos(System.nanoTime()) / 1e6,
+                    live.queuedLatency.getPercentile(50) / 1000.0, live.queuedLatency.getPercentile(95) / 1000.0,
+                    live.drawnLatency.getPercentile(50) / 1000.0, live.drawnLatency.getPercentile(95) / 1000.0,
+                    live.getSamples(), live.getMovesSent(), live.getThinnedOut()));
+        }
+        refreshHandler.postDelayed(this::refresh, REFRESH_MS);
+    }
+
+    @Override
+    protected void onDestroy() {
+        refreshHandler.removeCallbacksAndMessages(null);
+        PlotterConnection plotter = selected();
+        if (plotter != null) plotter.stopLive();
+        unbindService(serviceConnection);
+        super.onDestroy();
+    }
+}
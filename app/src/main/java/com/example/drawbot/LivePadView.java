@@ -0,0 +1,131 @@
+package com.example.drawbot;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Path;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+// The work area as a touch pad for live drawing. Keeps the plotter's aspect ratio, origin bottom left
+// like the machine, and passes every touch sample (the batched historical ones too) on in mm with the
+// time it was sampled. Draws the finger's strokes and the last pen position GRBL reported.
+public class LivePadView extends View {
+    public interface TouchListener {
+        // action: ACTION_DOWN, ACTION_MOVE or ACTION_UP; nanos on the System.nanoTime clock
+        void onTouch(int action, double xMm, double yMm, long nanos);
+    }
+
+    private final Paint borderPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint strokePaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Paint penPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final Path strokes = new Path();
+
+    private TouchListener listener;
+    private double widthMm = 100, heightMm = 100;
+    private float left, top, scale = 1;   // scale: px per mm
+    private double penX = Double.NaN, penY = Double.NaN;
+
+    public LivePadView(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        borderPaint.setStyle(Paint.Style.STROKE);
+        borderPaint.setColor(Color.GRAY);
+        borderPaint.setStrokeWidth(2);
+        strokePaint.setStyle(Paint.Style.STROKE);
+        strokePaint.setColor(Color.BLACK);
+        strokePaint.setStrokeWidth(4);
+        strokePaint.setStrokeJoin(Paint.Join.ROUND);
+        strokePaint.setStrokeCap(Paint.Cap.ROUND);
+        penPaint.setColor(Color.RED);
+    }
+
+    public void setTouchListener(TouchListener listener) {
+        this.listener = listener;
+    }
+
+    public void setWorkArea(double widthMm, double heightMm) {
+        this.widthMm = widthMm;
+        this.heightMm = heightMm;
+        layoutArea(getWidth(), getHeight());
+        invalidate();
+    }
+
+    public void setPen(double xMm, double yMm) {
+        if (xMm == penX && yMm == penY) return;
+        penX = xMm;
+        penY = yMm;
+        invalidate();
+    }
+
+    public void clear() {
+        strokes.reset();
+        invalidate();
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        layoutArea(w, h);
+    }
+
+    private void layoutArea(int w, int h) {
+        float padding = 8;
+        scale = (float) Math.max(1e-3, Math.min((w - 2 * padding) / widthMm, (h - 2 * padding) / heightMm));
+        left = (w - (float) (widthMm * scale)) / 2;
+        top = (h - (float) (heightMm * scale)) / 2;
+        strokes.reset();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        canvas.drawRect(left, top, left + (float) (widthMm * scale), top + (float) (heightMm * scale), borderPaint);
+        canvas.drawPath(strokes, strokePaint);
+        if (!Double.isNaN(penX)) {
+            canvas.drawCircle(toPxX(penX), toPxY(penY), 8, penPaint);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        int action = event.getActionMasked();
+        if (action != MotionEvent.ACTION_DOWN && action != MotionEvent.ACTION_MOVE
+                && action != MotionEvent.ACTION_UP && action != MotionEvent.ACTION_CANCEL) {
+            return true;
+        }
+        // event times are uptimeMillis, the session works on System.nanoTime
+        long offset = System.nanoTime() - SystemClock.uptimeMillis() * 1_000_000L;
+        if (action == MotionEvent.ACTION_MOVE) {
+            for (int i = 0; i < event.getHistorySize(); i++) {
+                sample(MotionEvent.ACTION_MOVE, event.getHistoricalX(i), event.getHistoricalY(i),
+                        event.getHistoricalEventTime(i) * 1_000_000L + offset);
+            }
+        }
+        sample(action == MotionEvent.ACTION_CANCEL ? MotionEvent.ACTION_UP : action, event.getX(), event.getY(),
+                event.getEventTime() * 1_000_000L + offset);
+        invalidate();
+        return true;
+    }
+
+    private void sample(int action, float px, float py, long nanos) {
+        double x = Math.max(0, Math.min(widthMm, (px - left) / scale));
+        double y = Math.max(0, Math.min(heightMm, heightMm - (py - top) / scale));
+        if (action == MotionEvent.ACTION_DOWN) {
+            strokes.moveTo(toPxX(x), toPxY(y));
+        } else {
+            strokes.lineTo(toPxX(x), toPxY(y));
+        }
+        if (listener != null) listener.onTouch(action, x, y, nanos);
+    }
+
+    private float toPxX(double x) {
+        return left + (float) (x * scale);
+    }
+
+    private float toPxY(double y) {
+        return top + (float) ((heightMm - y) * scale);
+    }
+}
@@ -15,7 +15,6 @@ import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.Task;
 import com.google.android.material.textfield.TextInputEditText;
 import com.google.firebase.auth.AuthResult;
-import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 
 public class LoginActivity extends AppCompatActivity {
@@ -23,16 +22,22 @@ public class LoginActivity extends AppCompatActivity {
     private TextInputEditText editTextEmail, editTextPassword;
     private Button buttonLogin, buttonRegister;
     private ProgressBar progressBar;
-    private FirebaseAuth mAuth;
+
+    // Check if user is signed in (non-null) and update UI accordingly
+    private final FirebaseLoader.Callback signedInCheck = auth -> {
+        if (auth.getCurrentUser() != null) {
+            // User is already logged in, navigate to main activity
+            SessionCache.save(this, auth.getCurrentUser());
+            navigateToMainActivity();
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupTrace.begin("LoginActivity.onCreate");
         setContentView(R.layout.activity_login);
 
-        // Initialize Firebase Auth
-        mAuth = FirebaseAuth.getInstance();
-
         // Initialize views
         editTextEmail = findViewById(R.id.editTextEmail);
         editTextPassword = findViewById(R.id.editTextPassword);
@@ -56,17 +61,21 @@ public class LoginActivity extends AppCompatActivity {
                 startActivity(intent);
             }
         });
+        StartupTrace.end("login created");
+        StartupTrace.onFirstFrame(this);
     }
 
     @Override
     protected void onStart() {
         super.onStart();
-        // Check if user is signed in (non-null) and update UI accordingly
-        FirebaseUser currentUser = mAuth.getCurrentUser();
-        if (currentUser != null) {
-            // User is already logged in, navigate to main activity
-            navigateToMainActivity();
-        }
+        // Firebase may still be starting in the background, the check runs once it is up
+        FirebaseLoader.whenReady(signedInCheck);
+    }
+
+    @Override
+    protected void onStop() {
+        FirebaseLoader.cancel(signedInCheck);
+        super.onStop();
     }
 
     private void loginUser() {
@@ -94,19 +103,20 @@ public class LoginActivity extends AppCompatActivity {
         buttonLogin.setEnabled(false);
 
 
-        mAuth.signInWithEmailAndPassword(email, password)
+        FirebaseLoader.whenReady(auth -> auth.signInWithEmailAndPassword(email, password)
                 .addOnCompleteListener(this, task -> {
                     progressBar.setVisibility(View.GONE);
                     buttonLogin.setEnabled(true);
 
                     if (task.isSuccessful()) {
-                        FirebaseUser user = mAuth.getCurrentUser();
+                        FirebaseUser user = auth.getCurrentUser();
+                        SessionCache.save(LoginActivity.this, user);
                         Toast.makeText(LoginActivity.this, "Registration successful", Toast.LENGTH_SHORT).show();
                         navigateToMainActivity();
                     } else {
                         Toast.makeText(LoginActivity.this, "Login failed: " + task.getException().getMessage(), Toast.LENGTH_LONG).show();
                     }
-                });
+                }));
     }
 
     private void navigateToMainActivity() {
@@ -0,0 +1,972 @@
+package com.example.drawbot;
+
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.MotionEvent;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+
+// One plotter: its Bluetooth link, streamer, reconnect supervisor, saved job, job queue and terminal lines.
+// PlotterService keeps one per device address, so several machines draw at the same time without
+// sharing any state. Everything except the public getters runs on the looper the service assigned
+// to this plotter (one of a few streamer threads shared by all plotters); clients get terminal
+// lines and snapshots on the main thread.
+public class PlotterConnection {
+    private static final String TAG = "PlotterConnection";
+    private static final int MAX_LOG_LINES = 500;
+    private static final int MAX_METRICS_FILES = 20;
+    // StreamTuner parameters per device address
+    static final String LINK_TUNING_PREFS = "link_tuning";
+    // address and socket strategy of the last device a connection succeeded with
+    static final String LAST_DEVICE_PREFS = "last_device";
+    // written by SettingsActivity: GRBL settings per device address and the calibration values
+    private static final String GRBL_SETTINGS_PREFS = "grbl_settings";
+    private static final String CALIBRATION_PREFS = "calibration";
+    private static final int MAX_LOGGED_ISSUES = 10;
+
+    // the service side: keeps the process in the foreground while any plotter is busy
+    interface Host {
+        // a connection is about to be opened
+        void onConnecting(PlotterConnection plotter);
+        // called on the plotter's thread after every snapshot
+        void onStateChanged(PlotterConnection plotter);
+        // a job started with startJob ended: drawn to the end, or stopped, rejected or given up on
+        void onJobEnded(PlotterConnection plotter, boolean completed);
+    }
+
+    private final Context context;
+    private final String address;
+    private final Host host;
+    private final Handler handler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<PlotterService.Client> clients = new CopyOnWriteArrayList<>();
+    private final ArrayDeque<String> terminalLines = new ArrayDeque<>();
+
+    private final BluetoothHelper bluetoothHelper;
+    private final JobCheckpointStore checkpointStore;
+    private final ReconnectSupervisor reconnectSupervisor;
+    private final GCodeStreamer streamer;
+    private final Jogger jogger;
+    private final JobQueue jobQueue;
+    // reads, converts, validates and estimates the next queued job while the current one draws
+    private final ExecutorService prepareExecutor;
+    private final ScheduledExecutorService fileExecutor;
+
+    private volatile PlotterService.Snapshot snapshot;
+    private volatile BluetoothHelper.MessageCallback dataTap;
+    private volatile String lastMetricsFile;
+    // the next queued job, ready to stream; written on the preparation thread
+    private volatile PreparedJob prepared;
+
+    // set on the calling thread the moment a connect is asked for, so the service does not leave
+    // the foreground before the plotter thread has started on it
+    private volatile boolean connectPending = false;
+
+    // plotter thread only
+    private boolean userDisconnected = false, hasSavedJob = false, connecting = false;
+    // queueRunning: start the next queued job whenever the plotter is free; returningHome: the pen
+    // goes back to X0 Y0 before it; waitingForPrepared: the next job is still being prepared
+    private boolean queueRunning = false, returningHome = false, waitingForPrepared = false;
+    private List<JobQueue.Entry> queueEntries = new ArrayList<>();
+    // drawing along with a finger; null outside live mode
+    private volatile LiveSession live;
+
+    private static final class PreparedJob {
+        final long id;
+        final GCodeStreamer.Job job;
+
+        PreparedJob(long id, GCodeStreamer.Job job) {
+            this.id = id;
+            this.job = job;
+        }
+    }
+
+    PlotterConnection(Context context, String address, Looper looper, File directory,
+                      ScheduledExecutorService fileExecutor, ExecutorService prepareExecutor, Host host) {
+        this.context = context;
+        this.address = address;
+        this.host = host;
+        this.handler = new Handler(looper);
+        this.prepareExecutor = prepareExecutor;
+        this.fileExecutor = fileExecutor;
+        this.snapshot = new PlotterService.Snapshot(false, false, false, false, false, address, 0, 0, 0,
+                queueEntries, false, -1);
+
+        bluetoothHelper = new BluetoothHelper(context, looper);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create " + directory);
+        }
+        checkpointStore = new JobCheckpointStore(directory, fileExecutor);
+        jobQueue = new JobQueue(new File(directory, "queue"));
+
+        streamer = new GCodeStreamer(new GCodeStreamer.Transport() {
+            @Override
+            public boolean isConnected() {
+                return bluetoothHelper.isConnected();
+            }
+
+            @Override
+            public boolean send(String data) {
+                return bluetoothHelper.sendData(data);
+            }
+        }, createScheduler(), checkpointStore, new GCodeStreamer.Listener() {
+            @Override
+            public void onLog(String message) {
+                log(message);
+            }
+
+            @Override
+            public void onReply(String line) {
+                reconnectSupervisor.onReply(line);
+                LiveSession session = live;
+                if (session != null) session.onReply(line);
+                jogger.onReply(line);
+            }
+
+            @Override
+            public void onProgress(int processed, int total) {
+                publish();
+            }
+
+            @Override
+            public void onRunningChanged(boolean running) {
+                if (running) hasSavedJob = true;
+                publish();
+            }
+
+            @Override
+            public void onFinished() {
+                hasSavedJob = false;
+                rememberTuning();
+                publish();
+                exportMetrics("completed");
+                for (PlotterService.Client client : clients) {
+                    mainHandler.post(client::onJobFinished);
+                }
+                host.onJobEnded(PlotterConnection.this, true);
+            }
+
+            @Override
+            public void onSettled() {
+                onMachineSettled();
+            }
+        });
+
+        jogger = new Jogger(new Jogger.Output() {
+            @Override
+            public void send(String line) {
+                streamer.send(line);
+            }
+
+            @Override
+            public void sendRealtime(char command) {
+                streamer.send(String.valueOf(command));
+            }
+
+            @Override
+            public void onRejected(String error) {
+                log("[JOG REJECTED - " + error + ", at the end of the work area or not idle]");
+            }
+        }, createScheduler());
+
+        reconnectSupervisor = new ReconnectSupervisor(bluetoothHelper, looper,
+                new ReconnectSupervisor.Listener() {
+                    @Override
+                    public void onAttempt(int attempt, long delayMs) {
+                        log("[RECONNECT ATTEMPT " + attempt + " IN " + (delayMs / 100) / 10.0 + "s]");
+                        publish();
+                    }
+
+                    @Override
+                    public void onReconnected() {
+                        streamer.continueAfterReconnect();
+                        publish();
+                    }
+
+                    @Override
+                    public void onControllerReset() {
+                        streamer.discardReplay();
+                        log("[RECONNECTED BUT CONTROLLER WAS RESET - position lost, check the pen and press Resume]");
+                        publish();
+                    }
+
+                    @Override
+                    public void onGaveUp(int attempts) {
+                        streamer.discardReplay();
+                        log("[RECONNECT FAILED AFTER " + attempts + " ATTEMPTS - connect and press Resume]");
+                        stopQueueRun("[QUEUE STOPPED - connection lost]");
+                        publish();
+                        host.onJobEnded(PlotterConnection.this, false);
+                    }
+                });
+
+        bluetoothHelper.setMessageCallback(data -> {
+            streamer.onData(data);
+            BluetoothHelper.MessageCallback tap = dataTap;
+            if (tap != null) {
+                mainHandler.post(() -> tap.onMessageReceived(data));
+            }
+        });
+        bluetoothHelper.setStatusCallback(this::onConnectionChanged);
+
+        handler.post(() -> {
+            JobCheckpoint saved = checkpointStore.load();
+            hasSavedJob = saved != null;
+            if (hasSavedJob) {
+                log("[UNFINISHED JOB FOUND - " + saved.nextLine() + "/" + saved.totalLines
+                        + " lines done, connect and press Resume]");
+            }
+            publish();
+        });
+        prepareExecutor.execute(() -> {
+            jobQueue.load();
+            prepareNext();
+            handler.post(this::refreshQueue);
+        });
+    }
+
+    // called by the service on the main thread when it is destroyed
+    void close() {
+        reconnectSupervisor.cancel();
+        bluetoothHelper.setMessageCallback(null);
+        bluetoothHelper.setStatusCallback(null);
+        bluetoothHelper.close();
+        if (streamer.isRunning()) {
+            checkpointStore.flush();
+        }
+        checkpointStore.close();
+    }
+
+    // ---- called by activities on the main thread ----
+
+    public void addClient(PlotterService.Client client) {
+        clients.add(client);
+    }
+
+    public void removeClient(PlotterService.Client client) {
+        clients.remove(client);
+    }
+
+    public String getAddress() {
+        return address;
+    }
+
+    // the running (or last unfinished) job as it is streamed, for the job viewer
+    public File getJobFile() {
+        return checkpointStore.getJobFile();
+    }
+
+    public PlotterService.Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    public boolean isConnected() {
+        return bluetoothHelper.isConnected();
+    }
+
+    public boolean isJobRunning() {
+        return snapshot.running;
+    }
+
+    // connected, connecting, drawing or reconnecting: the service has to stay in the foreground
+    public boolean isBusy() {
+        PlotterService.Snapshot s = snapshot;
+        return connectPending || s.connected || s.connecting || s.running || s.reconnecting;
+    }
+
+    public String getDeviceAddress() {
+        return bluetoothHelper.getDeviceAddress();
+    }
+
+    // live counters of the current (or last) job, safe to read from the main thread
+    public StreamMetrics getMetrics() {
+        return streamer.getMetrics();
+    }
+
+    public String getLastMetricsFile() {
+        return lastMetricsFile;
+    }
+
+    public List<String> getTerminalLines() {
+        synchronized (terminalLines) {
+            return new ArrayList<>(terminalLines);
+        }
+    }
+
+    public void clearTerminal() {
+        synchronized (terminalLines) {
+            terminalLines.clear();
+        }
+    }
+
+    // raw controller output on the main thread, used by the settings sync next to the streamer
+    public void setDataTap(BluetoothHelper.MessageCallback tap) {
+        dataTap = tap;
+    }
+
+    public void connect(BluetoothDevice device, BluetoothHelper.ConnectionCallback callback) {
+        // keep the process alive for as long as we hold the connection
+        connectPending = true;
+        host.onConnecting(this);
+        handler.post(() -> {
+            if (connecting) {
+                mainHandler.post(() -> callback.onFailure("Already connecting"));
+                return;
+            }
+            userDisconnected = false;
+            connecting = true;
+            connectPending = false;
+            reconnectSupervisor.cancel();
+            publish();
+            bluetoothHelper.connectToDevice(device, rememberedStrategy(), new BluetoothHelper.ConnectionCallback() {
+                @Override
+                public void onSuccess() {
+                    connecting = false;
+                    publish();
+                    mainHandler.post(callback::onSuccess);
+                }
+
+                @Override
+                public void onFailure(String error) {
+                    connecting = false;
+                    publish();
+                    mainHandler.post(() -> callback.onFailure(error));
+                }
+            });
+        });
+    }
+
+    // connects in the background with the socket strategy remembered for this device
+    void connectRemembered() {
+        connectPending = true;
+        handler.post(() -> {
+            if (bluetoothHelper.isConnected() || connecting || reconnectSupervisor.isRunning()) {
+                connectPending = false;
+                publish();
+                return;
+            }
+            userDisconnected = false;
+            connecting = true;
+            connectPending = false;
+            log("[CONNECTING TO LAST DEVICE: " + address + "]");
+            publish();
+            bluetoothHelper.connectToAddress(address, rememberedStrategy(), new BluetoothHelper.ConnectionCallback() {
+                @Override
+                public void onSuccess() {
+                    connecting = false;
+                    publish();
+                }
+
+                @Override
+                public void onFailure(String error) {
+                    connecting = false;
+                    log("[LAST DEVICE NOT REACHABLE: " + error + " - select a device and press Connect]");
+                    publish();
+                }
+            });
+        });
+    }
+
+    public void disconnect() {
+        handler.post(() -> {
+            userDisconnected = true;
+            reconnectSupervisor.cancel();
+            bluetoothHelper.disconnect();
+        });
+    }
+
+    public void startJob(String gCodeText) {
+        startJob(gCodeText, JobTransform.IDENTITY);
+    }
+
+    // draws the job through the transform, see fitToWorkArea; the job is stored untransformed
+    public void startJob(String gCodeText, JobTransform transform) {
+        // converting, planning and validating a large file takes a while and the plotter thread is
+        // shared with other plotters, so it is done on the preparation thread and only the start is posted
+        prepareExecutor.execute(() -> {
+            GCodeStreamer.Job job = prepare(gCodeText, transform);
+            handler.post(() -> startPrepared(job, transform));
+        });
+    }
+
+    // converted, planned and validated as startJob draws it with the transform
+    private GCodeStreamer.Job prepare(String gCodeText, JobTransform transform) {
+        // the travel limits apply after the transform, where the stage clips to them
+        boolean transformed = !transform.isIdentity();
+        return GCodeStreamer.prepare(gCodeText, createFeedPlanner(transform.getScale()),
+                transformed ? createValidator(false) : createValidator());
+    }
+
+    private void startPrepared(GCodeStreamer.Job job, JobTransform transform) {
+        if (streamer.isRunning() || live != null) {
+            if (live != null) log("[LIVE DRAWING IS ON - stop it before starting a job]");
+            host.onJobEnded(this, false);
+            return;
+        }
+        if (jogger.isHolding()) {
+            log("[JOGGING - release the jog button before starting a job]");
+            host.onJobEnded(this, false);
+            return;
+        }
+        logFeeds(job.feeds);
+        logValidation(job.validation);
+        if (job.lines.isEmpty()) {
+            log("[NO VALID G-CODE COMMANDS FOUND]");
+            host.onJobEnded(this, false);
+            return;
+        }
+        if (!transform.isIdentity()) log("[TRANSFORMED - " + transform + "]");
+        reconnectSupervisor.cancel();
+        streamer.setRememberedTuning(loadTuning());
+        // the link can drop while the job is prepared
+        if (!streamer.start(job, transform)) {
+            log("[NOT CONNECTED - the job could not start]");
+            host.onJobEnded(this, false);
+        }
+    }
+
+    public void resumeJob() {
+        handler.post(() -> {
+            reconnectSupervisor.cancel();
+            streamer.discardReplay();
+
+            JobCheckpoint saved = checkpointStore.load();
+            if (saved == null) {
+                hasSavedJob = false;
+                log("[NO UNFINISHED JOB TO RESUME]");
+                publish();
+                return;
+            }
+            // only the rest of the job is read, starting at the stored byte offset
+            try {
+                streamer.setRememberedTuning(loadTuning());
+                streamer.resume(saved, checkpointStore.readRemainingLines(saved));
+            } catch (Exception e) {
+                Log.e(TAG, "Error reading saved job", e);
+                log("[COULD NOT READ SAVED JOB: " + e.getMessage() + "]");
+            }
+        });
+    }
+
+    public void stopJob() {
+        handler.post(() -> {
+            reconnectSupervisor.cancel();
+            hasSavedJob = false;
+            stopQueueRun(queueRunning ? "[QUEUE STOPPED - the queued jobs stay in the queue]" : null);
+            boolean wasRunning = streamer.isRunning();
+            if (wasRunning) rememberTuning();
+            streamer.stop();
+            publish();
+            if (wasRunning) {
+                exportMetrics("stopped");
+                host.onJobEnded(this, false);
+            }
+        });
+    }
+
+    public void goHome() {
+        handler.post(() -> {
+            if (!streamer.isRunning()) streamer.goHome();
+        });
+    }
+
+    public void clearJob() {
+        handler.post(() -> {
+            streamer.clear();
+            publish();
+        });
+    }
+
+    // press-and-hold jogging in the direction (dx, dy) at the calibrated speed; not while a job
+    // draws or live drawing is on
+    public void jogStart(double dx, double dy) {
+        handler.post(() -> {
+            if (streamer.isRunning() || live != null) return;
+            double feed = getDefaultSpeed();
+            jogger.press(dx, dy, feed > 0 ? feed : 800);
+        });
+    }
+
+    public void jogStop() {
+        handler.post(jogger::release);
+    }
+
+    public void sendCommand(String command) {
+        handler.post(() -> streamer.send(command));
+    }
+
+    // ---- live drawing ----
+
+    // the pen follows touches passed to liveTouch until stopLive; not while a job draws
+    public void startLive() {
+        handler.post(() -> {
+            if (live != null) return;
+            if (streamer.isRunning() || !bluetoothHelper.isConnected()) {
+                log("[LIVE DRAWING NEEDS A CONNECTED PLOTTER WITHOUT A JOB]");
+                return;
+            }
+            jogger.release();
+            double feed = getDefaultSpeed();
+            LiveSession session = new LiveSession(new LiveSession.Output() {
+                @Override
+                public void send(String line) {
+                    streamer.send(line);
+                }
+
+                @Override
+                public void requestStatus() {
+                    streamer.requestStatus();
+                }
+            }, createScheduler(), feed > 0 ? feed : 800, LiveSession.DEFAULT_AHEAD_MS);
+            live = session;
+            log("[LIVE DRAWING - the pen follows your finger]");
+            session.start();
+        });
+    }
+
+    // action: MotionEvent ACTION_DOWN, ACTION_MOVE or ACTION_UP; x, y in mm of the work area;
+    // eventNanos when the touch was sampled, on the System.nanoTime clock
+    public void liveTouch(int action, double x, double y, long eventNanos) {
+        handler.post(() -> {
+            LiveSession session = live;
+            if (session == null) return;
+            if (action == MotionEvent.ACTION_DOWN) session.touchDown(x, y, eventNanos);
+            else if (action == MotionEvent.ACTION_MOVE) session.touchMove(x, y, eventNanos);
+            else session.touchUp(x, y, eventNanos);
+        });
+    }
+
+    public void stopLive() {
+        handler.post(() -> {
+            LiveSession session = live;
+            if (session == null) return;
+            session.stop();
+            live = null;
+            log("[LIVE DRAWING STOPPED - " + session.getSummary() + "]");
+        });
+    }
+
+    // null outside live mode; its statistics can be read on any thread
+    public LiveSession getLive() {
+        return live;
+    }
+
+    // work area in mm from the last $$ read of this device, 0 if unknown
+    public double[] getWorkArea() {
+        GrblSettings settings = GrblSettings.deserialize(
+                context.getSharedPreferences(GRBL_SETTINGS_PREFS, Context.MODE_PRIVATE).getString(address, null));
+        Double maxX = settings.get(130);
+        Double maxY = settings.get(131);
+        return new double[]{maxX != null ? maxX : 0, maxY != null ? maxY : 0};
+    }
+
+    // the transform clipped to this plotter's work area, or as it is while the area is unknown
+    public JobTransform fitToWorkArea(JobTransform transform) {
+        double[] area = getWorkArea();
+        return area[0] > 0 && area[1] > 0 ? transform.clippedTo(area[0], area[1]) : transform;
+    }
+
+    public interface PreviewCallback {
+        // main thread; bounds and cut moves of the drawing as the transform would draw it
+        void onPreview(JobTransform.Stage preview);
+    }
+
+    // prepares the job like startJob and runs it through the transform in the background, keeping only
+    // the stage
+    public void previewTransform(String gCodeText, JobTransform transform, PreviewCallback callback) {
+        prepareExecutor.execute(() -> {
+            JobTransform.Stage preview = GCodeStreamer.preview(prepare(gCodeText, transform), transform);
+            mainHandler.post(() -> callback.onPreview(preview));
+        });
+    }
+
+    // a line in this plotter's terminal that did not come from the link, e.g. from a fleet job
+    public void note(String message) {
+        handler.post(() -> log(message));
+    }
+
+    // ---- job queue ----
+
+    public List<JobQueue.Entry> getQueue() {
+        return snapshot.queue;
+    }
+
+    // adds a job at the end of the queue; the text is stored and prepared in the background
+    public void queueJob(String name, String gCodeText) {
+        prepareExecutor.execute(() -> {
+            try {
+                JobQueue.Entry entry = jobQueue.add(name, gCodeText);
+                handler.post(() -> log("[QUEUED - " + entry.name + "]"));
+            } catch (Exception e) {
+                Log.e(TAG, "Could not queue job", e);
+                handler.post(() -> log("[COULD NOT QUEUE JOB: " + e.getMessage() + "]"));
+            }
+            queueChanged();
+        });
+    }
+
+    public void removeQueuedJob(long id) {
+        editQueue(() -> jobQueue.remove(id));
+    }
+
+    // places < 0 moves the job towards the front
+    public void moveQueuedJob(long id, int places) {
+        editQueue(() -> jobQueue.move(id, places));
+    }
+
+    public void setQueuedJobPaused(long id, boolean paused) {
+        editQueue(() -> jobQueue.setPaused(id, paused));
+    }
+
+    // draws the queued jobs one after the other until the queue is empty or Stop is pressed
+    public void startQueue() {
+        handler.post(() -> {
+            if (queueRunning) return;
+            queueRunning = true;
+            log("[QUEUE STARTED]");
+            publish();
+            // a finished job or a home move may still be settling, onMachineSettled goes on from there
+            startNextQueued();
+        });
+    }
+
+    // lets the current job finish but starts no further one
+    public void stopQueue() {
+        handler.post(() -> {
+            stopQueueRun(queueRunning ? "[QUEUE STOPPED AFTER THE CURRENT JOB]" : null);
+            publish();
+        });
+    }
+
+    private interface QueueEdit {
+        boolean apply() throws Exception;
+    }
+
+    private void editQueue(QueueEdit edit) {
+        prepareExecutor.execute(() -> {
+            try {
+                if (!edit.apply()) return;
+            } catch (Exception e) {
+                Log.e(TAG, "Could not change the queue", e);
+                handler.post(() -> log("[COULD NOT CHANGE THE QUEUE: " + e.getMessage() + "]"));
+                return;
+            }
+            queueChanged();
+        });
+    }
+
+    // preparation thread: the order or content changed, so the job to prepare may be another one
+    private void queueChanged() {
+        handler.post(this::refreshQueue);
+        prepareNext();
+        handler.post(this::startNextQueued);
+    }
+
+    // preparation thread: converts, plans feeds, validates and estimates the first job that is not paused,
+    // unless that one is ready already
+    private void prepareNext() {
+        JobQueue.Entry next = jobQueue.next();
+        PreparedJob current = prepared;
+        if (next == null) {
+            prepared = null;
+            return;
+        }
+        if (current != null && current.id == next.id) return;
+        try {
+            GCodeStreamer.Job job = GCodeStreamer.prepare(jobQueue.readText(next.id), createFeedPlanner(),
+                    createValidator());
+            jobQueue.setEstimate(next.id, job.lines.size(),
+                    GCodeStreamer.estimateSeconds(job.movementCommands, job.lines.size()));
+            prepared = new PreparedJob(next.id, job);
+        } catch (Exception e) {
+            Log.e(TAG, "Could not prepare queued job", e);
+            handler.post(() -> log("[COULD NOT PREPARE " + next.name + ": " + e.getMessage() + " - job paused]"));
+            try {
+                jobQueue.setPaused(next.id, true);
+            } catch (Exception ignored) {
+                // the job stays first; it is tried again on the next change
+            }
+        }
+        handler.post(() -> {
+            refreshQueue();
+            if (waitingForPrepared) {
+                waitingForPrepared = false;
+                startNextQueued();
+            }
+        });
+    }
+
+    // plotter thread: the pen is up and the machine stopped after a job or a move home
+    private void onMachineSettled() {
+        if (!queueRunning) {
+            returningHome = false;
+            return;
+        }
+        if (returningHome) {
+            returningHome = false;
+            startNextQueued();
+        } else if (jobQueue.next() != null) {
+            // every job starts by making the pen position its origin, so start from where the last one did
+            returningHome = true;
+            streamer.goHome();
+        } else {
+            startNextQueued();
+        }
+    }
+
+    // starts the next job only while the plotter is idle: after a job the pen goes up and home first, and
+    // onMachineSettled comes back here once it has
+    private void startNextQueued() {
+        if (!queueRunning || streamer.isRunning() || streamer.isSettling() || returningHome
+                || !bluetoothHelper.isConnected()) {
+            return;
+        }
+        JobQueue.Entry next = jobQueue.next();
+        if (next == null) {
+            stopQueueRun("[QUEUE DONE]");
+            publish();
+            return;
+        }
+        PreparedJob ready = prepared;
+        if (ready == null || ready.id != next.id) {
+            waitingForPrepared = true;
+            log("[QUEUE - PREPARING " + next.name + "]");
+            return;
+        }
+        prepared = null;
+        log("[QUEUE - STARTING " + next.name + "]");
+        logFeeds(ready.job.feeds);
+        logValidation(ready.job.validation);
+        reconnectSupervisor.cancel();
+        streamer.setRememberedTuning(loadTuning());
+        if (!streamer.start(ready.job)) {
+            stopQueueRun("[QUEUE STOPPED - the job could not start]");
+            publish();
+            return;
+        }
+        // off the queue and on to the one after it
+        editQueue(() -> jobQueue.remove(next.id));
+    }
+
+    private void stopQueueRun(String message) {
+        if (message != null) log(message);
+        queueRunning = false;
+        returningHome = false;
+        waitingForPrepared = false;
+    }
+
+    private void refreshQueue() {
+        queueEntries = jobQueue.getEntries();
+        publish();
+    }
+
+    // feed rate from the calibration in mm/min, NaN if it is not a number
+    double getDefaultSpeed() {
+        return readCalibration("default_speed", "800.0");
+    }
+
+    private double readCalibration(String key, String fallback) {
+        try {
+            return Double.parseDouble(context.getSharedPreferences(CALIBRATION_PREFS, Context.MODE_PRIVATE)
+                    .getString(key, fallback));
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid calibration value " + key, e);
+            return Double.NaN;
+        }
+    }
+
+    // max rate and acceleration as written to $110 and $120 by the settings screen,
+    // null (feeds left as they are) if either is not a positive number
+    private FeedPlanner createFeedPlanner() {
+        return createFeedPlanner(1);
+    }
+
+    // for a job drawn scaled: every planned speed goes with sqrt(acceleration * length), so planning
+    // the job as it is with the acceleration times the scale plans the scaled drawing
+    private FeedPlanner createFeedPlanner(double scale) {
+        double maxRate = getDefaultSpeed();
+        double acceleration = readCalibration("max_speed", "10.0") * scale;
+        if (!(maxRate > 0) || !(acceleration > 0)) return null;
+        return new FeedPlanner(maxRate, acceleration);
+    }
+
+    private GCodeValidator createValidator() {
+        return createValidator(true);
+    }
+
+    // travel limits from the last $$ read of this device (unless limits is false), feed from the calibration
+    private GCodeValidator createValidator(boolean limits) {
+        double[] area = limits ? getWorkArea() : new double[]{0, 0};
+        return new GCodeValidator(area[0] > 0 ? area[0] : Double.NaN, area[1] > 0 ? area[1] : Double.NaN,
+                getDefaultSpeed());
+    }
+
+    private void logFeeds(FeedPlanner.Result feeds) {
+        if (feeds == null || feeds.feedWords == 0) return;
+        log("[FEEDS PLANNED - " + feeds.feedWords + " F words, " + feeds.slowedSegments
+                + " drawing moves slowed for curves and short moves]");
+    }
+
+    private void logValidation(GCodeValidator.Result validation) {
+        if (validation == null || validation.isClean()) return;
+        log("[CHECKED FOR GRBL 1.1 - " + validation.removed + " lines removed, " + validation.rewritten
+                + " rewritten, " + validation.warnings + " warnings]");
+        int shown = Math.min(MAX_LOGGED_ISSUES, validation.issues.size());
+        for (int i = 0; i < shown; i++) {
+            log("  " + validation.issues.get(i));
+        }
+        int more = validation.removed + validation.rewritten + validation.warnings - shown;
+        if (more > 0) {
+            log("  ... and " + more + " more");
+        }
+    }
+
+    // what the last job learned about the link to this device
+    private StreamTuner.Parameters loadTuning() {
+        return StreamTuner.Parameters.deserialize(
+                context.getSharedPreferences(LINK_TUNING_PREFS, Context.MODE_PRIVATE).getString(address, null));
+    }
+
+    private void rememberTuning() {
+        if (!streamer.isTuned()) return;
+        context.getSharedPreferences(LINK_TUNING_PREFS, Context.MODE_PRIVATE)
+                .edit()
+                .putString(address, streamer.getTuning().serialize())
+                .apply();
+    }
+
+    private BluetoothHelper.SocketStrategy rememberedStrategy() {
+        SharedPreferences prefs = context.getSharedPreferences(LAST_DEVICE_PREFS, Context.MODE_PRIVATE);
+        return BluetoothHelper.SocketStrategy.fromName(prefs.getString("strategy." + address, null));
+    }
+
+    private void rememberDevice() {
+        BluetoothHelper.SocketStrategy strategy = bluetoothHelper.getSocketStrategy();
+        if (strategy == null) return;
+        context.getSharedPreferences(LAST_DEVICE_PREFS, Context.MODE_PRIVATE)
+                .edit()
+                .putString("address", address)
+                .putString("strategy." + address, strategy.name())
+                .apply();
+    }
+
+    // writes the job metrics as JSON to files/metrics, keeping the newest MAX_METRICS_FILES
+    public void exportMetrics(String result) {
+        String json = streamer.getMetrics().toJson(result, System.currentTimeMillis(), System.nanoTime());
+        File directory = new File(context.getFilesDir(), "metrics");
+        String name = "job-" + new SimpleDateFormat("yyyyMMdd-HHmmss", Locale.US).format(new Date())
+                + "-" + address.replace(":", "") + ".json";
+
+        // same single file thread as the checkpoints, so exports never race each other's pruning
+        fileExecutor.execute(() -> {
+            if (!directory.isDirectory() && !directory.mkdirs()) return;
+            File file = new File(directory, name);
+            try (Writer out = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
+                out.write(json);
+            } catch (Exception e) {
+                Log.e(TAG, "Could not write metrics", e);
+                return;
+            }
+            lastMetricsFile = file.getAbsolutePath();
+            log("[METRICS SAVED: " + file.getName() + "]");
+
+            File[] files = directory.listFiles();
+            if (files != null && files.length > MAX_METRICS_FILES) {
+                Arrays.sort(files, (a, b) -> a.getName().compareTo(b.getName()));
+                for (int i = 0; i < files.length - MAX_METRICS_FILES; i++) {
+                    files[i].delete();
+                }
+            }
+        });
+    }
+
+    // ---- plotter thread ----
+
+    // timers on the plotter thread; cancelAll only drops the ones scheduled through this instance
+    private GCodeStreamer.Scheduler createScheduler() {
+        return new GCodeStreamer.Scheduler() {
+            private final Object token = new Object();
+
+            @Override
+            public void schedule(Runnable task, long delayMs) {
+                handler.postAtTime(task, token, SystemClock.uptimeMillis() + delayMs);
+            }
+
+            @Override
+            public void cancelAll() {
+                handler.removeCallbacksAndMessages(token);
+            }
+        };
+    }
+
+    private void onConnectionChanged(boolean connected) {
+        if (connected) {
+            log("[CONNECTED - Ready for G-code commands]");
+            rememberDevice();
+        } else {
+            log("[DISCONNECTED]");
+            jogger.release();
+            LiveSession session = live;
+            if (session != null) {
+                session.stop();
+                live = null;
+                log("[LIVE DRAWING STOPPED - " + session.getSummary() + "]");
+            }
+            if (streamer.isRunning()) {
+                rememberTuning();
+                streamer.suspend();
+                if (!userDisconnected) {
+                    reconnectSupervisor.start();
+                }
+            } else if (streamer.isSettling() || returningHome) {
+                // the pen may not be up or home, so the next job must not make this its origin
+                streamer.abandonSettling();
+                stopQueueRun(queueRunning ? "[QUEUE STOPPED - the link was lost before the plotter was home]" : null);
+            }
+        }
+        publish();
+    }
+
+    private void log(String message) {
+        synchronized (terminalLines) {
+            terminalLines.add(message);
+            if (terminalLines.size() > MAX_LOG_LINES) {
+                terminalLines.poll();
+            }
+        }
+        for (PlotterService.Client client : clients) {
+            mainHandler.post(() -> client.onLog(message));
+        }
+    }
+
+    private void publish() {
+        PlotterService.Snapshot s = new PlotterService.Snapshot(bluetoothHelper.isConnected(), connecting,
+                streamer.isRunning(), reconnectSupervisor.isRunning(), hasSavedJob, address,
+                streamer.getProcessed(), streamer.getTotal(), streamer.getEstimatedSeconds(),
+                queueEntries, queueRunning, streamer.getNextLine() - 1);
+        snapshot = s;
+        for (PlotterService.Client client : clients) {
+            mainHandler.post(() -> client.onSnapshot(s));
+        }
+        host.onStateChanged(this);
+    }
+}
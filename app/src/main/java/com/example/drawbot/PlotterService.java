@@ -0,0 +1,542 @@
+package com.example.drawbot;
+
+import android.app.Notification;
+import android.app.NotificationChannel;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.app.Service;
+import android.bluetooth.BluetoothAdapter;
+import android.bluetooth.BluetoothDevice;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ServiceInfo;
+import android.os.Binder;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.IBinder;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.ServiceCompat;
+import androidx.core.content.ContextCompat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+// Owns the plotter connections so jobs keep running at full rate while the screen is off or another
+// app is in front. There is one PlotterConnection per device, each with its own link, streamer,
+// progress and terminal, so several machines draw at the same time. Their streamers, reconnect
+// supervisors and socket callbacks run on a small pool of streamer threads; each plotter stays on
+// one thread so its callbacks never race, and no plotter waits for the main thread or for another
+// plotter's work. Activities bind to the service, pick a plotter and get its snapshots and terminal
+// lines on the main thread.
+public class PlotterService extends Service {
+    private static final String TAG = "PlotterService";
+    private static final String CHANNEL_ID = "plotter_connection";
+    private static final int NOTIFICATION_ID = 1;
+    private static final String ACTION_DISCONNECT = "com.example.drawbot.ACTION_DISCONNECT";
+    private static final String ACTION_CONNECT_LAST = "com.example.drawbot.ACTION_CONNECT_LAST";
+    private static final long NOTIFICATION_INTERVAL_MS = 1000;
+    // a streamer thread is mostly idle waiting for ok replies, a few of them carry a whole shop
+    private static final int MAX_STREAMER_THREADS = 4;
+
+    public interface Client {
+        void onLog(String message);
+        void onSnapshot(Snapshot snapshot);
+        void onJobFinished();
+    }
+
+    // state of one plotter's connection and job at one moment, safe to keep and read on any thread
+    public static final class Snapshot {
+        public final boolean connected, connecting, running, reconnecting, hasSavedJob;
+        public final String deviceAddress;
+        public final int processed, total, estimatedSeconds;
+        // the waiting jobs (unmodifiable) and whether they are being drawn one after the other
+        public final List<JobQueue.Entry> queue;
+        public final boolean queueRunning;
+        // line of the stored job (PlotterConnection.getJobFile) GRBL confirmed last, -1 before the first
+        public final int currentLine;
+
+        Snapshot(boolean connected, boolean connecting, boolean running, boolean reconnecting, boolean hasSavedJob,
+                 String deviceAddress, int processed, int total, int estimatedSeconds,
+                 List<JobQueue.Entry> queue, boolean queueRunning, int currentLine) {
+            this.connected = connected;
+            this.connecting = connecting;
+            this.running = running;
+            this.reconnecting = reconnecting;
+            this.hasSavedJob = hasSavedJob;
+            this.deviceAddress = deviceAddress;
+            this.processed = processed;
+            this.total = total;
+            this.estimatedSeconds = estimatedSeconds;
+            this.queue = queue;
+            this.queueRunning = queueRunning;
+            this.currentLine = currentLine;
+        }
+    }
+
+    public class LocalBinder extends Binder {
+        public PlotterService getService() {
+            return PlotterService.this;
+        }
+    }
+
+    private final IBinder binder = new LocalBinder();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private HandlerThread[] streamerThreads;
+    private int[] plottersPerThread;
+    // checkpoint writes of all plotters, one thread is plenty for a few small positional writes
+    private ScheduledExecutorService fileExecutor;
+    // queued jobs of all plotters are stored and prepared here, away from the checkpoint writes
+    private ExecutorService prepareExecutor;
+    private BluetoothAdapter bluetoothAdapter;
+
+    // main thread only
+    private final Map<String, PlotterConnection> plotters = new LinkedHashMap<>();
+    private PlotterConnection selected;
+    private boolean foreground = false, stateUpdatePosted = false;
+    private long lastNotificationTime = 0;
+    private FleetDispatcher fleet;
+    private boolean fleetNewSheets, fleetPartitioning;
+    private final Map<PlotterConnection, FleetMember> fleetMembers = new LinkedHashMap<>();
+
+    private final PlotterConnection.Host host = new PlotterConnection.Host() {
+        @Override
+        public void onConnecting(PlotterConnection plotter) {
+            ContextCompat.startForegroundService(PlotterService.this, new Intent(PlotterService.this, PlotterService.class));
+        }
+
+        @Override
+        public void onStateChanged(PlotterConnection plotter) {
+            mainHandler.post(PlotterService.this::onPlotterStateChanged);
+        }
+
+        @Override
+        public void onJobEnded(PlotterConnection plotter, boolean completed) {
+            mainHandler.post(() -> onFleetJobEnded(plotter, completed));
+        }
+    };
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        int threads = Math.max(1, Math.min(MAX_STREAMER_THREADS, Runtime.getRuntime().availableProcessors()));
+        streamerThreads = new HandlerThread[threads];
+        plottersPerThread = new int[threads];
+        fileExecutor = Executors.newSingleThreadScheduledExecutor();
+        prepareExecutor = Executors.newSingleThreadExecutor(task -> new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            task.run();
+        }, "job-prepare"));
+        bluetoothAdapter = BluetoothAdapter.getDefaultAdapter();
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null && ACTION_DISCONNECT.equals(intent.getAction())) {
+            for (PlotterConnection plotter : plotters.values()) {
+                plotter.disconnect();
+            }
+            return START_NOT_STICKY;
+        }
+        enterForeground();
+        if (intent != null && ACTION_CONNECT_LAST.equals(intent.getAction())) {
+            String address = getLastDeviceAddress(this);
+            if (address != null) select(address).connectRemembered();
+        }
+        // a connect may have failed before the service got here
+        onPlotterStateChanged();
+        return START_NOT_STICKY;
+    }
+
+    // Called once the app is up: connects to the device of the last session in the background, so
+    // the link is usually ready by the time the terminal opens. Does nothing without a remembered
+    // device, without the Bluetooth permission or with Bluetooth off.
+    public static void connectLastDevice(Context context) {
+        if (getLastDeviceAddress(context) == null) return;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S
+                && ContextCompat.checkSelfPermission(context, android.Manifest.permission.BLUETOOTH_CONNECT)
+                != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        BluetoothAdapter adapter = BluetoothAdapter.getDefaultAdapter();
+        if (adapter == null || !adapter.isEnabled()) return;
+        ContextCompat.startForegroundService(context,
+                new Intent(context, PlotterService.class).setAction(ACTION_CONNECT_LAST));
+    }
+
+    // null if no connection has succeeded yet
+    public static String getLastDeviceAddress(Context context) {
+        return context.getSharedPreferences(PlotterConnection.LAST_DEVICE_PREFS, MODE_PRIVATE)
+                .getString("address", null);
+    }
+
+    @Override
+    public IBinder onBind(Intent intent) {
+        return binder;
+    }
+
+    @Override
+    public void onDestroy() {
+        if (fleet != null) fleet.cancel();
+        for (PlotterConnection plotter : plotters.values()) {
+            plotter.close();
+        }
+        plotters.clear();
+        for (HandlerThread thread : streamerThreads) {
+            if (thread != null) thread.quitSafely();
+        }
+        fileExecutor.shutdown();
+        prepareExecutor.shutdown();
+        super.onDestroy();
+    }
+
+    // ---- called by activities on the main thread ----
+
+    // the plotter for a device, created on first use; it also becomes the selected one
+    public PlotterConnection select(String address) {
+        PlotterConnection plotter = plotters.get(address);
+        if (plotter == null) {
+            int thread = leastBusyThread();
+            File directory = new File(new File(getFilesDir(), "plotters"), address.replace(":", ""));
+            if (address.equals(getLastDeviceAddress(this))) {
+                // a job saved before there was one directory per plotter belongs to the last device
+                JobCheckpointStore.moveStoredJob(getFilesDir(), directory);
+            }
+            plotter = new PlotterConnection(getApplicationContext(), address, streamerLooper(thread),
+                    directory, fileExecutor, prepareExecutor, host);
+            plotters.put(address, plotter);
+            plottersPerThread[thread]++;
+        }
+        selected = plotter;
+        return plotter;
+    }
+
+    // the plotter the screens work with: the last one selected, else the last device used;
+    // null before any device was chosen
+    public PlotterConnection getSelected() {
+        if (selected == null) {
+            String address = getLastDeviceAddress(this);
+            if (address != null) select(address);
+        }
+        return selected;
+    }
+
+    public List<PlotterConnection> getPlotters() {
+        return new ArrayList<>(plotters.values());
+    }
+
+    public boolean isBluetoothSupported() {
+        return bluetoothAdapter != null;
+    }
+
+    public boolean isBluetoothEnabled() {
+        return bluetoothAdapter != null && bluetoothAdapter.isEnabled();
+    }
+
+    public Set<BluetoothDevice> getPairedDevices() {
+        if (bluetoothAdapter == null) return null;
+        try {
+            return bluetoothAdapter.getBondedDevices();
+        } catch (SecurityException e) {
+            Log.e(TAG, "BLUETOOTH_CONNECT ERROR: Authorisation missing");
+            return null;
+        }
+    }
+
+    // ---- fleet jobs: one drawing over all idle connected plotters, main thread ----
+
+    // page-sized tiles, each drawn on its own sheet from X0 Y0; tileWidth and tileHeight in mm
+    public void startTiledJob(String gCodeText, double tileWidth, double tileHeight) {
+        startFleetJob(gCodeText, (partitioner, count) -> partitioner.tiles(tileWidth, tileHeight), true);
+    }
+
+    // the strokes dealt into a few sets per plotter, all drawn at the same spot of the plotters' sheets
+    public void startInterleavedJob(String gCodeText) {
+        startFleetJob(gCodeText, (partitioner, count) ->
+                partitioner.strokeSets(count * FleetDispatcher.SETS_PER_PLOTTER), false);
+    }
+
+    public boolean isFleetJobRunning() {
+        return fleetPartitioning || (fleet != null && !fleet.isDone());
+    }
+
+    public void stopFleetJob() {
+        if (fleet == null) return;
+        fleet.cancel();
+        for (FleetMember member : fleetMembers.values()) {
+            if (member.waitingForSheet) {
+                member.waitingForSheet = false;
+                fleet.onFinished(member);
+            } else if (fleet.isRunning(member)) {
+                member.plotter.stopJob();
+            }
+        }
+    }
+
+    // the plotters a fleet job can use right now
+    public List<PlotterConnection> getIdlePlotters() {
+        List<PlotterConnection> idle = new ArrayList<>();
+        for (PlotterConnection plotter : plotters.values()) {
+            if (plotter.isConnected() && !plotter.isJobRunning()) idle.add(plotter);
+        }
+        return idle;
+    }
+
+    // a plotter that finished a tile waits here until its sheet was changed
+    public boolean isWaitingForSheet(PlotterConnection plotter) {
+        FleetMember member = fleetMembers.get(plotter);
+        return member != null && member.waitingForSheet;
+    }
+
+    public void sheetChanged(PlotterConnection plotter) {
+        FleetMember member = fleetMembers.get(plotter);
+        if (fleet == null || member == null || !member.waitingForSheet) return;
+        member.waitingForSheet = false;
+        fleet.onFinished(member);
+    }
+
+    private interface Partition {
+        List<DrawingPartitioner.Piece> apply(DrawingPartitioner partitioner, int plotters);
+    }
+
+    private void startFleetJob(String gCodeText, Partition partition, boolean newSheetPerPiece) {
+        if (isFleetJobRunning()) return;
+        List<PlotterConnection> idle = getIdlePlotters();
+        if (idle.isEmpty()) return;
+        fleet = null;
+        fleetMembers.clear();
+        fleetPartitioning = true;
+        // reading and clipping a large drawing takes a while, the main thread only starts the jobs
+        prepareExecutor.execute(() -> {
+            DrawingPartitioner partitioner = new DrawingPartitioner(GCodeStreamer.prepare(gCodeText).lines);
+            List<DrawingPartitioner.Piece> pieces = partition.apply(partitioner, idle.size());
+            mainHandler.post(() -> dispatch(pieces, idle, newSheetPerPiece));
+        });
+    }
+
+    private void dispatch(List<DrawingPartitioner.Piece> pieces, List<PlotterConnection> candidates,
+                          boolean newSheetPerPiece) {
+        fleetPartitioning = false;
+        fleetNewSheets = newSheetPerPiece;
+        List<FleetMember> members = new ArrayList<>();
+        for (PlotterConnection plotter : candidates) {
+            // a plotter may have started its own job or dropped its link while the drawing was split
+            if (plotter.isConnected() && !plotter.isJobRunning() && plotters.containsValue(plotter)) {
+                FleetMember member = new FleetMember(plotter);
+                members.add(member);
+                fleetMembers.put(plotter, member);
+            }
+        }
+        if (members.isEmpty() || pieces.isEmpty()) {
+            for (PlotterConnection plotter : candidates) {
+                plotter.note(pieces.isEmpty() ? "[FLEET - NOTHING TO DRAW]" : "[FLEET - NO PLOTTER LEFT TO DRAW ON]");
+            }
+            fleetMembers.clear();
+            return;
+        }
+        double feed = members.get(0).plotter.getDefaultSpeed();
+        if (!(feed > 0)) feed = 800.0;
+        for (FleetMember member : members) {
+            member.plotter.note("[FLEET - " + pieces.size() + " pieces over " + members.size() + " plotters]");
+        }
+        fleet = new FleetDispatcher(members, new FleetDispatcher.Listener() {
+            @Override
+            public void onAssigned(FleetDispatcher.Plotter plotter, DrawingPartitioner.Piece piece, boolean stolen) {
+                ((FleetMember) plotter).plotter.note("[FLEET - drawing " + piece.name
+                        + (stolen ? ", taken over from a busier plotter" : "") + "]");
+            }
+
+            @Override
+            public void onAllDone(int finished, int failed) {
+                for (PlotterConnection plotter : fleetMembers.keySet()) {
+                    plotter.note("[FLEET DONE - " + finished + " pieces drawn"
+                            + (failed > 0 ? ", " + failed + " not drawn" : "") + "]");
+                }
+            }
+        }, feed, feed, 0);
+        fleet.start(pieces);
+    }
+
+    private void onFleetJobEnded(PlotterConnection plotter, boolean completed) {
+        FleetMember member = fleetMembers.get(plotter);
+        if (fleet == null || member == null || !fleet.isRunning(member) || member.waitingForSheet) return;
+        if (completed && fleetNewSheets && fleet.hasWaitingPieces()) {
+            // the next tile would land on top of this one
+            member.waitingForSheet = true;
+            plotter.note("[FLEET - tile done, put in a fresh sheet and press Next sheet]");
+            onPlotterStateChanged();
+        } else if (completed) {
+            fleet.onFinished(member);
+        } else {
+            plotter.note("[FLEET - piece handed to the other plotters]");
+            fleet.onFailed(member);
+        }
+    }
+
+    private static final class FleetMember implements FleetDispatcher.Plotter {
+        final PlotterConnection plotter;
+        boolean waitingForSheet;
+
+        FleetMember(PlotterConnection plotter) {
+            this.plotter = plotter;
+        }
+
+        @Override
+        public String getName() {
+            return plotter.getAddress();
+        }
+
+        @Override
+        public void start(DrawingPartitioner.Piece piece) {
+            plotter.startJob(piece.gCode);
+        }
+    }
+
+    // ---- streamer threads ----
+
+    private int leastBusyThread() {
+        int best = 0;
+        for (int i = 1; i < plottersPerThread.length; i++) {
+            if (plottersPerThread[i] < plottersPerThread[best]) best = i;
+        }
+        return best;
+    }
+
+    private Looper streamerLooper(int index) {
+        if (streamerThreads[index] == null) {
+            HandlerThread thread = new HandlerThread("gcode-streamer-" + index, Process.THREAD_PRIORITY_URGENT_DISPLAY);
+            thread.start();
+            streamerThreads[index] = thread;
+        }
+        return streamerThreads[index].getLooper();
+    }
+
+    // ---- foreground and notification, main thread ----
+
+    private void onPlotterStateChanged() {
+        boolean busy = false;
+        for (PlotterConnection plotter : plotters.values()) {
+            busy |= plotter.isBusy();
+        }
+        if (!busy) {
+            leaveForeground();
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        if (!foreground) return;
+        if (now - lastNotificationTime >= NOTIFICATION_INTERVAL_MS) {
+            updateNotification();
+        } else if (!stateUpdatePosted) {
+            // the last change inside an interval still shows up
+            stateUpdatePosted = true;
+            mainHandler.postDelayed(() -> {
+                stateUpdatePosted = false;
+                if (foreground) updateNotification();
+            }, NOTIFICATION_INTERVAL_MS);
+        }
+    }
+
+    private void updateNotification() {
+        lastNotificationTime = System.currentTimeMillis();
+        NotificationManager manager = getSystemService(NotificationManager.class);
+        if (manager != null) {
+            manager.notify(NOTIFICATION_ID, buildNotification());
+        }
+    }
+
+    private void leaveForeground() {
+        if (!foreground) return;
+        foreground = false;
+        ServiceCompat.stopForeground(this, ServiceCompat.STOP_FOREGROUND_REMOVE);
+        // the service lives on while activities are bound
+        stopSelf();
+    }
+
+    private void enterForeground() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            NotificationChannel channel = new NotificationChannel(CHANNEL_ID, "Plotter connection",
+                    NotificationManager.IMPORTANCE_LOW);
+            NotificationManager manager = getSystemService(NotificationManager.class);
+            if (manager != null) {
+                manager.createNotificationChannel(channel);
+            }
+        }
+        try {
+            ServiceCompat.startForeground(this, NOTIFICATION_ID, buildNotification(),
+                    Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q ? ServiceInfo.FOREGROUND_SERVICE_TYPE_CONNECTED_DEVICE : 0);
+            foreground = true;
+        } catch (Exception e) {
+            // e.g. Bluetooth permission not granted yet; the connection still works while an activity is bound
+            Log.e(TAG, "Could not start foreground service", e);
+        }
+    }
+
+    private Notification buildNotification() {
+        List<Snapshot> busy = new ArrayList<>();
+        for (PlotterConnection plotter : plotters.values()) {
+            if (plotter.isBusy()) busy.add(plotter.getSnapshot());
+        }
+
+        String text;
+        if (busy.isEmpty()) {
+            text = "Not connected";
+        } else if (busy.size() == 1) {
+            text = describe(busy.get(0));
+        } else {
+            int drawing = 0;
+            for (Snapshot s : busy) {
+                if (s.running) drawing++;
+            }
+            text = busy.size() + " plotters, " + drawing + " drawing";
+        }
+
+        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
+                .setSmallIcon(android.R.drawable.stat_sys_data_bluetooth)
+                .setContentTitle("DrawBot")
+                .setContentText(text)
+                .setOngoing(true)
+                .setOnlyAlertOnce(true)
+                .setContentIntent(PendingIntent.getActivity(this, 0,
+                        new Intent(this, BluetoothTerminalActivity.class).addFlags(Intent.FLAG_ACTIVITY_SINGLE_TOP),
+                        PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT))
+                .addAction(0, busy.size() > 1 ? "Disconnect all" : "Disconnect", PendingIntent.getService(this, 1,
+                        new Intent(this, PlotterService.class).setAction(ACTION_DISCONNECT),
+                        PendingIntent.FLAG_IMMUTABLE | PendingIntent.FLAG_UPDATE_CURRENT));
+        if (busy.size() > 1) {
+            NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle();
+            for (Snapshot s : busy) {
+                style.addLine(s.deviceAddress + ": " + describe(s));
+            }
+            builder.setStyle(style);
+        }
+        return builder.build();
+    }
+
+    private static String describe(Snapshot s) {
+        if (s.running) {
+            int percentage = s.total > 0 ? (s.processed * 100) / s.total : 0;
+            return "Drawing " + s.processed + "/" + s.total + " (" + percentage + "%)";
+        } else if (s.reconnecting) {
+            return "Connection lost - reconnecting...";
+        } else if (s.connected) {
+            return "Connected to " + s.deviceAddress;
+        } else if (s.connecting) {
+            return "Connecting to " + s.deviceAddress + "...";
+        }
+        return "Not connected";
+    }
+}
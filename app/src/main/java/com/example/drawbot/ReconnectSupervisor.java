@@ -0,0 +1,125 @@
+package com.example.drawbot;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.Random;
+
+// Reconnects to the last device after an unexpected drop, waiting 1s, 2s, 4s ... (max 30s) between tries.
+// A connection only counts once the controller answers a "?" status query, so a socket that opens
+// but does not reach GRBL is retried like a failed connect.
+public class ReconnectSupervisor {
+    private static final long INITIAL_DELAY_MS = 1000;
+    private static final long MAX_DELAY_MS = 30000;
+    private static final int MAX_ATTEMPTS = 8;
+    private static final long VERIFY_TIMEOUT_MS = 3000;
+
+    public interface Listener {
+        void onAttempt(int attempt, long delayMs);
+        // link is back and the controller answered
+        void onReconnected();
+        // link is back but GRBL restarted (banner or alarm), its position can not be trusted
+        void onControllerReset();
+        void onGaveUp(int attempts);
+    }
+
+    private final BluetoothHelper bluetoothHelper;
+    private final Listener listener;
+    private final Handler handler;
+    private final Random random = new Random();
+    private final Runnable verifyTimeout = this::onVerifyTimeout;
+
+    private boolean running = false, verifying = false;
+    private int attempt = 0;
+
+    // all callbacks and retries run on the given looper, it must be the one the helper reports on
+    public ReconnectSupervisor(BluetoothHelper bluetoothHelper, Looper looper, Listener listener) {
+        this.bluetoothHelper = bluetoothHelper;
+        this.handler = new Handler(looper);
+        this.listener = listener;
+    }
+
+    public void start() {
+        if (running) return;
+        running = true;
+        attempt = 0;
+        scheduleNext();
+    }
+
+    public void cancel() {
+        running = false;
+        verifying = false;
+        handler.removeCallbacksAndMessages(null);
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // controller reply lines while verifying; returns true if the reply was the one being waited for
+    public boolean onReply(String line) {
+        if (!verifying) return false;
+
+        if (line.startsWith("Grbl ") || line.startsWith("<Alarm") || line.startsWith("ALARM")) {
+            finish();
+            listener.onControllerReset();
+            return true;
+        }
+        if (line.startsWith("<")) {
+            finish();
+            listener.onReconnected();
+            return true;
+        }
+        return false;
+    }
+
+    // exponential backoff with +-20% jitter so several phones do not retry in lockstep
+    long delayFor(int attempt) {
+        long delay = Math.min(MAX_DELAY_MS, INITIAL_DELAY_MS << Math.min(attempt - 1, 16));
+        return (long) (delay * (0.8 + 0.4 * random.nextDouble()));
+    }
+
+    private void scheduleNext() {
+        if (!running) return;
+        if (attempt >= MAX_ATTEMPTS) {
+            running = false;
+            listener.onGaveUp(attempt);
+            return;
+        }
+        attempt++;
+        long delay = delayFor(attempt);
+        listener.onAttempt(attempt, delay);
+        handler.postDelayed(this::tryConnect, delay);
+    }
+
+    private void tryConnect() {
+        if (!running) return;
+        bluetoothHelper.reconnect(new BluetoothHelper.ConnectionCallback() {
+            @Override
+            public void onSuccess() {
+                if (!running) return;
+                verifying = true;
+                bluetoothHelper.sendData("?");
+                handler.postDelayed(verifyTimeout, VERIFY_TIMEOUT_MS);
+            }
+
+            @Override
+            public void onFailure(String error) {
+                scheduleNext();
+            }
+        });
+    }
+
+    private void onVerifyTimeout() {
+        if (!verifying) return;
+        verifying = false;
+        bluetoothHelper.disconnect();
+        scheduleNext();
+    }
+
+    private void finish() {
+        running = false;
+        verifying = false;
+        handler.removeCallbacks(verifyTimeout);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.drawbot;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import com.google.firebase.auth.FirebaseUser;
+
+// The signed-in account as Firebase last reported it, so startup can pick the first screen from one
+// small preference file instead of waiting for Firebase. FirebaseLoader corrects it once Firebase
+// is up (a session revoked elsewhere, or a login from before this cache existed).
+public final class SessionCache {
+    private static final String PREFS = "session";
+    private static final String KEY_UID = "uid";
+    private static final String KEY_EMAIL = "email";
+
+    private SessionCache() {
+    }
+
+    private static SharedPreferences prefs(Context context) {
+        return context.getApplicationContext().getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+    }
+
+    public static boolean isSignedIn(Context context) {
+        return prefs(context).getString(KEY_UID, null) != null;
+    }
+
+    // null if the account has none or nobody is signed in
+    public static String getEmail(Context context) {
+        return prefs(context).getString(KEY_EMAIL, null);
+    }
+
+    public static void save(Context context, FirebaseUser user) {
+        if (user == null) {
+            clear(context);
+            return;
+        }
+        prefs(context).edit()
+                .putString(KEY_UID, user.getUid())
+                .putString(KEY_EMAIL, user.getEmail())
+                .apply();
+    }
+
+    public static void clear(Context context) {
+        prefs(context).edit().clear().apply();
+    }
+}
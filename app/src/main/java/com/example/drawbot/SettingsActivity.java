@@ -1,16 +1,47 @@
 package com.example.drawbot;
 
+import android.content.ComponentName;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.content.SharedPreferences;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.IBinder;
+import android.os.Looper;
 import android.util.Log;
 import android.widget.Button;
 import android.widget.EditText;
+import android.widget.TextView;
 import android.widget.Toast;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.appcompat.app.AlertDialog;
 
+import java.util.LinkedHashMap;
+
 public class SettingsActivity extends AppCompatActivity {
+    private static final long SYNC_TIMEOUT_MS = 5000;
+    private static final String GRBL_SETTINGS_PREFS = "grbl_settings";
+    private static final String KEY_LAST_DEVICE = "last_device";
+
     private EditText etStepsPerMm, etDefaultSpeed, etMaxSpeed;
     private Button btnSendCalibration, btnDeleteProfile;
+    private TextView tvSyncStatus;
+    private final Handler syncHandler = new Handler(Looper.getMainLooper());
+    private GrblSettingsSync settingsSync;
+    private PlotterService plotterService;
+
+    private final ServiceConnection serviceConnection = new ServiceConnection() {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder binder) {
+            plotterService = ((PlotterService.LocalBinder) binder).getService();
+            Log.d("SettingsActivity", "Service bound - Connection status: " + getConnectionStatus());
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name) {
+            plotterService = null;
+        }
+    };
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -21,8 +52,27 @@ public class SettingsActivity extends AppCompatActivity {
         loadCalibration();
         setupButtonListeners();
 
-        String status = BluetoothTerminalActivity.getConnectionStatus();
-        Log.d("SettingsActivity", "onCreate - Connection status: " + status);
+        // the connection lives in PlotterService; binding does not start a connection by itself
+        bindService(new Intent(this, PlotterService.class), serviceConnection, BIND_AUTO_CREATE);
+    }
+
+    // the plotter picked in the terminal, the settings are read from and written to it
+    private PlotterConnection plotter() {
+        return plotterService != null ? plotterService.getSelected() : null;
+    }
+
+    private boolean isConnected() {
+        return plotter() != null && plotter().isConnected();
+    }
+
+    private String getConnectionStatus() {
+        if (plotterService == null) {
+            return "PlotterService not bound";
+        }
+        if (plotter() == null) {
+            return "No device selected";
+        }
+        return plotter().isConnected() ? "Connected" : "Disconnected";
     }
 
     private void initializeViews() {
@@ -31,6 +81,7 @@ public class SettingsActivity extends AppCompatActivity {
         etMaxSpeed = findViewById(R.id.etMaxSpeed);
         btnSendCalibration = findViewById(R.id.btnSendCalibration);
         btnDeleteProfile = findViewById(R.id.btnDeleteProfile);
+        tvSyncStatus = findViewById(R.id.tvSyncStatus);
     }
 
     // created with AI for debugging purposes
@@ -39,10 +90,9 @@ public class SettingsActivity extends AppCompatActivity {
         btnDeleteProfile.setOnClickListener(v -> deleteProfile());
 
         btnSendCalibration.setOnLongClickListener(v -> {
-            BluetoothHelper helper = BluetoothTerminalActivity.getBluetoothHelper();
-            String debugInfo = "BluetoothHelper: " + (helper != null ? "exists" : "null") + "\n" +
-                    "Connection: " + BluetoothTerminalActivity.getConnectionStatus() + "\n" +
-                    "isConnected(): " + BluetoothTerminalActivity.isBluetoothConnected();
+            String debugInfo = "PlotterService: " + (plotterService != null ? "bound" : "null") + "\n" +
+                    "Connection: " + getConnectionStatus() + "\n" +
+                    "isConnected(): " + isConnected();
 
             new AlertDialog.Builder(this)
                     .setTitle("Bluetooth Debug Info")
@@ -65,14 +115,45 @@ public class SettingsActivity extends AppCompatActivity {
         etStepsPerMm.setText(steps);
         etDefaultSpeed.setText(defSpeed);
         etMaxSpeed.setText(maxSpeed);
+
+        // last values read from the controller, no round trip needed to show them
+        String address = currentDeviceAddress();
+        GrblSettings cached = loadCachedSettings(address);
+        if (cached.get(100) != null && cached.get(110) != null && cached.get(120) != null) {
+            etStepsPerMm.setText(GrblSettings.format(cached.get(100)));
+            etDefaultSpeed.setText(GrblSettings.format(cached.get(110)));
+            etMaxSpeed.setText(GrblSettings.format(cached.get(120)));
+            tvSyncStatus.setText("Controller values (cached) for " + address);
+        }
+    }
+
+    private String currentDeviceAddress() {
+        if (plotter() != null) {
+            return plotter().getAddress();
+        }
+        return getSharedPreferences(GRBL_SETTINGS_PREFS, MODE_PRIVATE).getString(KEY_LAST_DEVICE, null);
+    }
+
+    private GrblSettings loadCachedSettings(String address) {
+        if (address == null) return new GrblSettings();
+        return GrblSettings.deserialize(
+                getSharedPreferences(GRBL_SETTINGS_PREFS, MODE_PRIVATE).getString(address, null));
+    }
+
+    private void cacheSettings(String address, GrblSettings settings) {
+        if (address == null) return;
+        getSharedPreferences(GRBL_SETTINGS_PREFS, MODE_PRIVATE)
+                .edit()
+                .putString(address, settings.serialize())
+                .putString(KEY_LAST_DEVICE, address)
+                .apply();
     }
 
     private void sendCalibrationToArduino() {
-        BluetoothHelper helper = BluetoothTerminalActivity.getBluetoothHelper();
-        boolean isConnected = BluetoothTerminalActivity.isBluetoothConnected();
-        String status = BluetoothTerminalActivity.getConnectionStatus();
+        boolean isConnected = isConnected();
+        String status = getConnectionStatus();
 
-        Log.d("SettingsActivity", "BluetoothHelper: " + (helper != null ? "exists" : "null"));
+        Log.d("SettingsActivity", "PlotterService: " + (plotterService != null ? "bound" : "null"));
         Log.d("SettingsActivity", "Connection status: " + status);
         Log.d("SettingsActivity", "isConnected: " + isConnected);
 
@@ -124,43 +205,109 @@ public class SettingsActivity extends AppCompatActivity {
                 .show();
     }
 
+    // reads "$$" first and only writes what differs, each write waits for its ok
     private void sendGRBLCommands(String steps, String maxRate, String acceleration) {
-        try {
-            Toast.makeText(this, "Sending calibration to Arduino...", Toast.LENGTH_LONG).show();
+        PlotterConnection service = plotter();
+        if (service == null || !service.isConnected()) {
+            Toast.makeText(this, "Bluetooth connection lost", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (service.isJobRunning()) {
+            Toast.makeText(this, "Cannot change settings while G-code is running", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (settingsSync != null && settingsSync.isRunning()) {
+            return;
+        }
 
-            BluetoothHelper helper = BluetoothTerminalActivity.getBluetoothHelper();
-            if (helper == null || !helper.isConnected()) {
-                Toast.makeText(this, "Bluetooth connection lost", Toast.LENGTH_SHORT).show();
-                return;
+        double stepsVal = Double.parseDouble(steps);
+        double rateVal = Double.parseDouble(maxRate);
+        double accelVal = Double.parseDouble(acceleration);
+
+        // GRBL configuration for 28BYJ-48 steppers, in the order they are written
+        LinkedHashMap<Integer, Double> desired = new LinkedHashMap<>();
+        desired.put(100, stepsVal);  // X steps/mm
+        desired.put(101, stepsVal);  // Y steps/mm
+        desired.put(102, 200.0);     // Z steps/mm (fixed for pen control)
+        desired.put(110, rateVal);   // X max rate mm/min
+        desired.put(111, rateVal);   // Y max rate mm/min
+        desired.put(112, rateVal);   // Z max rate mm/min
+        desired.put(120, accelVal);  // X acceleration mm/sec²
+        desired.put(121, accelVal);  // Y acceleration mm/sec²
+        desired.put(122, accelVal);  // Z acceleration mm/sec²
+
+        String address = service.getAddress();
+        tvSyncStatus.setText("Reading controller settings ($$)...");
+        btnSendCalibration.setEnabled(false);
+
+        // commands go through the service streamer so its ok bookkeeping stays in step
+        GrblSettingsSync.Sender sender = line -> {
+            if (!service.isConnected()) return false;
+            service.sendCommand(line.trim());
+            return true;
+        };
+        settingsSync = new GrblSettingsSync(desired, sender, new GrblSettingsSync.Listener() {
+            @Override
+            public void onSettingsRead(GrblSettings current, int changes) {
+                cacheSettings(address, current);
+                tvSyncStatus.setText(changes == 0
+                        ? "Controller already up to date"
+                        : "Writing " + changes + " changed setting(s)...");
             }
 
-            // Send GRBL configuration commands for 28BYJ-48 steppers
-            // Steps per mm (your input applies to X and Y axes)
-            helper.sendData("$100=" + steps + "\n");      // X steps/mm
-            helper.sendData("$101=" + steps + "\n");      // Y steps/mm
-            helper.sendData("$102=200.0\n");              // Z steps/mm (fixed for pen control)
+            @Override
+            public void onSettingWritten(int number, double value, int written, int total) {
+                tvSyncStatus.setText("$" + number + "=" + GrblSettings.format(value) + " ok (" + written + "/" + total + ")");
+            }
 
-            // Max rates (your speed input applies to all axes)
-            helper.sendData("$110=" + maxRate + "\n");    // X max rate mm/min
-            helper.sendData("$111=" + maxRate + "\n");    // Y max rate mm/min
-            helper.sendData("$112=" + maxRate + "\n");    // Z max rate mm/min
+            @Override
+            public void onComplete(GrblSettings result, int written) {
+                finishSync();
+                cacheSettings(address, result);
+                getSharedPreferences("calibration", MODE_PRIVATE)
+                        .edit()
+                        .putString("steps_per_mm", steps)
+                        .putString("default_speed", maxRate)
+                        .putString("max_speed", acceleration)
+                        .apply();
+
+                String message = written == 0
+                        ? "Controller already had these settings.\nSettings saved locally."
+                        : written + " setting(s) written and confirmed.\nSettings saved locally.";
+                tvSyncStatus.setText(message);
+                Toast.makeText(SettingsActivity.this, message, Toast.LENGTH_LONG).show();
+            }
 
-            // Acceleration (your acceleration input applies to all axes)
-            helper.sendData("$120=" + acceleration + "\n"); // X acceleration mm/sec²
-            helper.sendData("$121=" + acceleration + "\n"); // Y acceleration mm/sec²
-            helper.sendData("$122=" + acceleration + "\n"); // Z acceleration mm/sec²
+            @Override
+            public void onError(String message) {
+                finishSync();
+                tvSyncStatus.setText("Sync failed: " + message);
+                Toast.makeText(SettingsActivity.this, "Error sending calibration: " + message, Toast.LENGTH_LONG).show();
+            }
+        });
 
-            getSharedPreferences("calibration", MODE_PRIVATE)
-                    .edit()
-                    .putString("steps_per_mm", steps)
-                    .putString("default_speed", maxRate)
-                    .putString("max_speed", acceleration)
-                    .apply();
+        // the terminal keeps receiving the replies as well
+        service.setDataTap(data -> {
+            if (settingsSync != null) {
+                settingsSync.onData(data, System.currentTimeMillis());
+            }
+        });
+        settingsSync.start(System.currentTimeMillis());
+        syncHandler.postDelayed(this::checkSyncTimeout, 500);
+    }
 
-            Toast.makeText(this, "Calibration sent successfully!\nSettings saved locally.", Toast.LENGTH_LONG).show();
+    private void checkSyncTimeout() {
+        if (settingsSync == null || !settingsSync.isRunning()) return;
+        if (!settingsSync.checkTimeout(System.currentTimeMillis(), SYNC_TIMEOUT_MS)) {
+            syncHandler.postDelayed(this::checkSyncTimeout, 500);
+        }
+    }
 
-        } catch (Exception e) {
-            Toast.makeText(this, "Error sending calibration: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+    private void finishSync() {
+        syncHandler.removeCallbacksAndMessages(null);
+        btnSendCalibration.setEnabled(true);
+        if (plotter() != null) {
+            plotter().setDataTap(null);
         }
     }
 
@@ -172,6 +319,10 @@ public class SettingsActivity extends AppCompatActivity {
                     // Clear all saved preferences
                     getSharedPreferences("user_profile", MODE_PRIVATE).edit().clear().apply();
                     getSharedPreferences("calibration", MODE_PRIVATE).edit().clear().apply();
+                    getSharedPreferences(GRBL_SETTINGS_PREFS, MODE_PRIVATE).edit().clear().apply();
+                    getSharedPreferences("link_tuning", MODE_PRIVATE).edit().clear().apply();
+                    getSharedPreferences("last_device", MODE_PRIVATE).edit().clear().apply();
+                    tvSyncStatus.setText("");
 
                     // Reset fields to optimized defaults for 28BYJ-48
                     etStepsPerMm.setText("65.0");    // Optimized for 28BYJ-48 steppers
@@ -184,6 +335,16 @@ public class SettingsActivity extends AppCompatActivity {
                 .show();
     }
 
+    @Override
+    protected void onDestroy() {
+        if (settingsSync != null && settingsSync.isRunning()) {
+            finishSync();
+        }
+        syncHandler.removeCallbacksAndMessages(null);
+        unbindService(serviceConnection);
+        super.onDestroy();
+    }
+
     @Override
     public boolean onSupportNavigateUp() {
         finish();
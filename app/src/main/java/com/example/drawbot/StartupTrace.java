@@ -0,0 +1,76 @@
+package com.example.drawbot;
+
+import android.app.Activity;
+import android.os.Process;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import java.util.Locale;
+
+// Time of every startup phase since the process was created, written to logcat once the first
+// screen has drawn ("adb logcat -s StartupTrace"). Sections also show up in a Perfetto/systrace
+// capture. Phases from other threads (Firebase) are recorded as they finish and may come after
+// the first frame, which is the point.
+public final class StartupTrace {
+    private static final String TAG = "StartupTrace";
+
+    private static final StringBuilder phases = new StringBuilder();
+    private static long lastMarkMs = -1;
+    private static boolean firstFrameDrawn = false;
+
+    private StartupTrace() {
+    }
+
+    // start of a synchronous phase on the calling thread, always paired with end()
+    public static void begin(String section) {
+        Trace.beginSection(section);
+    }
+
+    public static void end(String phase) {
+        Trace.endSection();
+        mark(phase);
+    }
+
+    public static synchronized void mark(String phase) {
+        long now = SystemClock.uptimeMillis();
+        long sinceStart = now - Process.getStartUptimeMillis();
+        long sinceLast = lastMarkMs < 0 ? sinceStart : now - lastMarkMs;
+        lastMarkMs = now;
+        String line = String.format(Locale.US, "%-24s +%5d ms  (at %5d ms, %s)",
+                phase, sinceLast, sinceStart, Thread.currentThread().getName());
+        phases.append(line).append('\n');
+        if (firstFrameDrawn) Log.i(TAG, line);
+    }
+
+    // records the first frame of the first screen of this process and logs all phases so far;
+    // later screens are ignored
+    public static void onFirstFrame(Activity activity) {
+        synchronized (StartupTrace.class) {
+            if (firstFrameDrawn) return;
+        }
+        View decor = activity.getWindow().getDecorView();
+        decor.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+            @Override
+            public boolean onPreDraw() {
+                decor.getViewTreeObserver().removeOnPreDrawListener(this);
+                // posted so the frame that is about to be drawn is included
+                decor.post(() -> firstFrame(activity.getClass().getSimpleName()));
+                return true;
+            }
+        });
+    }
+
+    private static synchronized void firstFrame(String screen) {
+        if (firstFrameDrawn) return;
+        mark("first frame " + screen);
+        firstFrameDrawn = true;
+        Log.i(TAG, "Cold start\n" + phases);
+    }
+
+    public static synchronized String getSummary() {
+        return phases.toString();
+    }
+}
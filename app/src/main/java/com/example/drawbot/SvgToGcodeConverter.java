@@ -0,0 +1,440 @@
+package com.example.drawbot;
+
+import org.xmlpull.v1.XmlPullParser;
+import org.xmlpull.v1.XmlPullParserException;
+import org.xmlpull.v1.XmlPullParserFactory;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+
+// On-device replacement for picsvg/svg2gcode: reads the SVG with a pull parser (no DOM,
+// so multi-megabyte files are fine), flattens curves adaptively (SvgPathFlattener) and writes
+// pen-plotter G-code.
+public class SvgToGcodeConverter {
+    private static final double PX_TO_MM = 25.4 / 96.0;
+
+    // opened once, or twice for an SVG that has to be placed by its content (see rootTransform)
+    public interface Source {
+        Reader open() throws IOException;
+    }
+
+    // current transform from user units to plotter millimetres (a, b, c, d, e, f like SVG matrix())
+    private final ArrayDeque<double[]> transformStack = new ArrayDeque<>();
+    private double[] ctm = identity();
+    private boolean rootSeen = false;
+    private int skipDepth = 0;
+
+    private PenPlotterGCodeWriter writer;
+    private int shapesConverted = 0;
+
+    // without a viewBox or height the page's bottom edge is unknown: a first pass only measures the
+    // lowest point (flipped about Y0), the second one writes the drawing moved up so it is on Y0
+    private boolean measuring;
+    private double lowestY;
+    private double contentOffsetY;
+
+    private final SvgPathFlattener flattener = new SvgPathFlattener(new SvgPathFlattener.Sink() {
+        @Override
+        public void moveTo(double x, double y) throws IOException {
+            if (measuring) {
+                lowestY = Math.min(lowestY, y);
+            } else {
+                writer.moveTo(x, y);
+            }
+        }
+
+        @Override
+        public void lineTo(double x, double y) throws IOException {
+            if (measuring) {
+                lowestY = Math.min(lowestY, y);
+            } else {
+                writer.lineTo(x, y);
+            }
+        }
+    });
+
+    public void setToleranceMm(double toleranceMm) {
+        flattener.setToleranceMm(toleranceMm);
+    }
+
+    public int getShapesConverted() {
+        return shapesConverted;
+    }
+
+    public void convert(Source svg, PenPlotterGCodeWriter out) throws IOException {
+        writer = out;
+        measuring = false;
+        lowestY = Double.POSITIVE_INFINITY;
+        contentOffsetY = Double.NaN;
+        try (Reader in = svg.open()) {
+            parse(in);
+        }
+        if (measuring) {
+            contentOffsetY = Double.isInfinite(lowestY) ? 0 : -lowestY;
+            measuring = false;
+            try (Reader in = svg.open()) {
+                parse(in);
+            }
+        }
+        out.finish();
+    }
+
+    private void parse(Reader svg) throws IOException {
+        transformStack.clear();
+        setCtm(identity());
+        rootSeen = false;
+        skipDepth = 0;
+        shapesConverted = 0;
+
+        try {
+            XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
+            factory.setNamespaceAware(false);
+            XmlPullParser parser = factory.newPullParser();
+            parser.setInput(svg);
+
+            int event = parser.getEventType();
+            while (event != XmlPullParser.END_DOCUMENT) {
+                if (event == XmlPullParser.START_TAG) {
+                    startElement(parser);
+                } else if (event == XmlPullParser.END_TAG) {
+                    endElement();
+                }
+                event = parser.next();
+            }
+        } catch (XmlPullParserException e) {
+            throw new IOException("Invalid SVG: " + e.getMessage(), e);
+        }
+    }
+
+    private void setCtm(double[] m) {
+        ctm = m;
+        flattener.setTransform(m);
+    }
+
+    private void startElement(XmlPullParser parser) throws IOException {
+        transformStack.push(ctm);
+        String name = localName(parser.getName());
+
+        if (skipDepth > 0 || isNonRendering(name) || isHidden(parser)) {
+            skipDepth++;
+            return;
+        }
+
+        if (!rootSeen && name.equals("svg")) {
+            rootSeen = true;
+            setCtm(rootTransform(parser));
+        }
+
+        String transform = attr(parser, "transform");
+        if (transform != null) {
+            setCtm(multiply(ctm, parseTransform(transform)));
+        }
+
+        switch (name) {
+            case "path":
+                String d = attr(parser, "d");
+                if (d != null) {
+                    flattener.path(d);
+                    shapesConverted++;
+                }
+                break;
+            case "line":
+                flattener.moveTo(num(parser, "x1"), num(parser, "y1"));
+                flattener.lineTo(num(parser, "x2"), num(parser, "y2"));
+                shapesConverted++;
+                break;
+            case "polyline":
+            case "polygon":
+                convertPoints(attr(parser, "points"), name.equals("polygon"));
+                break;
+            case "rect":
+                convertRect(num(parser, "x"), num(parser, "y"), num(parser, "width"), num(parser, "height"));
+                break;
+            case "circle":
+                double r = num(parser, "r");
+                convertEllipse(num(parser, "cx"), num(parser, "cy"), r, r);
+                break;
+            case "ellipse":
+                convertEllipse(num(parser, "cx"), num(parser, "cy"), num(parser, "rx"), num(parser, "ry"));
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void endElement() {
+        if (skipDepth > 0) {
+            skipDepth--;
+        }
+        setCtm(transformStack.isEmpty() ? identity() : transformStack.pop());
+    }
+
+    private static boolean isNonRendering(String name) {
+        switch (name) {
+            case "defs":
+            case "clipPath":
+            case "mask":
+            case "symbol":
+            case "pattern":
+            case "marker":
+            case "metadata":
+            case "title":
+            case "desc":
+            case "style":
+            case "text":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    // display="none" or display:none in style="..."
+    private static boolean isHidden(XmlPullParser parser) {
+        String display = attr(parser, "display");
+        String style = attr(parser, "style");
+        if (style != null) {
+            for (String declaration : style.split(";")) {
+                int colon = declaration.indexOf(':');
+                if (colon > 0 && declaration.substring(0, colon).trim().equals("display")) {
+                    // inline style wins over the attribute
+                    display = declaration.substring(colon + 1).trim();
+                }
+            }
+        }
+        return display != null && display.trim().startsWith("none");
+    }
+
+    // maps the outer viewBox to millimetres and flips Y, plotter origin is bottom-left
+    private double[] rootTransform(XmlPullParser parser) {
+        double[] viewBox = parseNumbers(attr(parser, "viewBox"));
+        double widthMm = lengthToMm(attr(parser, "width"));
+        double heightMm = lengthToMm(attr(parser, "height"));
+
+        double vbX = 0, vbY = 0, vbW = Double.NaN, vbH = Double.NaN;
+        if (viewBox.length == 4 && viewBox[2] > 0 && viewBox[3] > 0) {
+            vbX = viewBox[0];
+            vbY = viewBox[1];
+            vbW = viewBox[2];
+            vbH = viewBox[3];
+        }
+
+        double sx = PX_TO_MM, sy = PX_TO_MM;
+        if (!Double.isNaN(vbW)) {
+            if (Double.isNaN(widthMm)) widthMm = vbW * PX_TO_MM;
+            if (Double.isNaN(heightMm)) heightMm = vbH * PX_TO_MM;
+            sx = widthMm / vbW;
+            sy = heightMm / vbH;
+        } else if (Double.isNaN(heightMm)) {
+            // placed by the content's bounds instead, see convert
+            if (Double.isNaN(contentOffsetY)) {
+                measuring = true;
+                heightMm = 0;
+            } else {
+                heightMm = contentOffsetY;
+            }
+        }
+
+        return new double[]{sx, 0, 0, -sy, -vbX * sx, heightMm + vbY * sy};
+    }
+
+    private static double lengthToMm(String value) {
+        if (value == null) return Double.NaN;
+        String v = value.trim();
+        double factor = PX_TO_MM;
+        if (v.endsWith("mm")) {
+            factor = 1.0;
+        } else if (v.endsWith("cm")) {
+            factor = 10.0;
+        } else if (v.endsWith("in")) {
+            factor = 25.4;
+        } else if (v.endsWith("pt")) {
+            factor = 25.4 / 72.0;
+        } else if (v.endsWith("pc")) {
+            factor = 25.4 / 6.0;
+        } else if (v.endsWith("%")) {
+            return Double.NaN;
+        }
+        int end = v.length();
+        while (end > 0 && Character.isLetter(v.charAt(end - 1))) {
+            end--;
+        }
+        try {
+            return Double.parseDouble(v.substring(0, end)) * factor;
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    // ---- shapes ----
+
+    private void convertPoints(String points, boolean close) throws IOException {
+        double[] p = parseNumbers(points);
+        if (p.length < 4) return;
+        flattener.moveTo(p[0], p[1]);
+        for (int i = 2; i + 1 < p.length; i += 2) {
+            flattener.lineTo(p[i], p[i + 1]);
+        }
+        if (close) {
+            flattener.lineTo(p[0], p[1]);
+        }
+        shapesConverted++;
+    }
+
+    private void convertRect(double x, double y, double w, double h) throws IOException {
+        if (w <= 0 || h <= 0) return;
+        flattener.moveTo(x, y);
+        flattener.lineTo(x + w, y);
+        flattener.lineTo(x + w, y + h);
+        flattener.lineTo(x, y + h);
+        flattener.lineTo(x, y);
+        shapesConverted++;
+    }
+
+    private void convertEllipse(double cx, double cy, double rx, double ry) throws IOException {
+        if (rx <= 0 || ry <= 0) return;
+        flattener.ellipse(cx, cy, rx, ry);
+        shapesConverted++;
+    }
+
+    // ---- attribute helpers ----
+
+    private static String localName(String name) {
+        int colon = name.indexOf(':');
+        return colon >= 0 ? name.substring(colon + 1) : name;
+    }
+
+    private static String attr(XmlPullParser parser, String name) {
+        for (int i = 0; i < parser.getAttributeCount(); i++) {
+            if (localName(parser.getAttributeName(i)).equals(name)) {
+                return parser.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    private static double num(XmlPullParser parser, String name) {
+        String value = attr(parser, name);
+        if (value == null) return 0;
+        double mm = lengthToMm(value);
+        // plain user units are returned as-is, the transform takes care of scaling
+        String v = value.trim();
+        if (v.endsWith("mm") || v.endsWith("cm") || v.endsWith("in") || v.endsWith("pt") || v.endsWith("pc")) {
+            return Double.isNaN(mm) ? 0 : mm / PX_TO_MM;
+        }
+        double[] parsed = parseNumbers(v);
+        return parsed.length > 0 ? parsed[0] : 0;
+    }
+
+    static double[] parseNumbers(String text) {
+        if (text == null) return new double[0];
+        double[] values = new double[16];
+        int count = 0;
+        int pos = 0, len = text.length();
+        while (pos < len) {
+            char c = text.charAt(pos);
+            if (!(c == '-' || c == '+' || c == '.' || (c >= '0' && c <= '9'))) {
+                pos++;
+                continue;
+            }
+            int start = pos;
+            pos++;
+            boolean dot = c == '.';
+            while (pos < len) {
+                char n = text.charAt(pos);
+                if (n >= '0' && n <= '9') {
+                    pos++;
+                } else if (n == '.' && !dot) {
+                    dot = true;
+                    pos++;
+                } else if (n == 'e' || n == 'E') {
+                    pos++;
+                    if (pos < len && (text.charAt(pos) == '-' || text.charAt(pos) == '+')) pos++;
+                } else {
+                    break;
+                }
+            }
+            try {
+                double v = Double.parseDouble(text.substring(start, pos));
+                if (count == values.length) {
+                    double[] grown = new double[count * 2];
+                    System.arraycopy(values, 0, grown, 0, count);
+                    values = grown;
+                }
+                values[count++] = v;
+            } catch (NumberFormatException ignored) {
+                // lone sign or dot, skip it
+            }
+        }
+        double[] result = new double[count];
+        System.arraycopy(values, 0, result, 0, count);
+        return result;
+    }
+
+    // ---- transforms ----
+
+    private static double[] identity() {
+        return new double[]{1, 0, 0, 1, 0, 0};
+    }
+
+    private static double[] multiply(double[] m, double[] n) {
+        return new double[]{
+                m[0] * n[0] + m[2] * n[1],
+                m[1] * n[0] + m[3] * n[1],
+                m[0] * n[2] + m[2] * n[3],
+                m[1] * n[2] + m[3] * n[3],
+                m[0] * n[4] + m[2] * n[5] + m[4],
+                m[1] * n[4] + m[3] * n[5] + m[5]
+        };
+    }
+
+    static double[] parseTransform(String value) {
+        double[] result = identity();
+        int pos = 0;
+        while (pos < value.length()) {
+            int open = value.indexOf('(', pos);
+            int close = open < 0 ? -1 : value.indexOf(')', open);
+            if (open < 0 || close < 0) break;
+
+            String name = value.substring(pos, open).replace(",", " ").trim();
+            double[] a = parseNumbers(value.substring(open + 1, close));
+            double[] m = null;
+
+            switch (name) {
+                case "matrix":
+                    if (a.length == 6) m = a;
+                    break;
+                case "translate":
+                    if (a.length >= 1) m = new double[]{1, 0, 0, 1, a[0], a.length > 1 ? a[1] : 0};
+                    break;
+                case "scale":
+                    if (a.length >= 1) m = new double[]{a[0], 0, 0, a.length > 1 ? a[1] : a[0], 0, 0};
+                    break;
+                case "rotate":
+                    if (a.length >= 1) {
+                        double r = Math.toRadians(a[0]);
+                        double cos = Math.cos(r), sin = Math.sin(r);
+                        m = new double[]{cos, sin, -sin, cos, 0, 0};
+                        if (a.length == 3) {
+                            m = multiply(multiply(new double[]{1, 0, 0, 1, a[1], a[2]}, m),
+                                    new double[]{1, 0, 0, 1, -a[1], -a[2]});
+                        }
+                    }
+                    break;
+                case "skewX":
+                    if (a.length >= 1) m = new double[]{1, 0, Math.tan(Math.toRadians(a[0])), 1, 0, 0};
+                    break;
+                case "skewY":
+                    if (a.length >= 1) m = new double[]{1, Math.tan(Math.toRadians(a[0])), 0, 1, 0, 0};
+                    break;
+                default:
+                    break;
+            }
+            if (m != null) {
+                result = multiply(result, m);
+            }
+            pos = close + 1;
+        }
+        return result;
+    }
+}
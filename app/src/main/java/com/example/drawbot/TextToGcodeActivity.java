@@ -0,0 +1,91 @@
+package com.example.drawbot;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.util.Log;
+import android.widget.Button;
+import android.widget.EditText;
+import android.widget.TextView;
+import android.widget.Toast;
+
+import androidx.appcompat.app.AppCompatActivity;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+public class TextToGcodeActivity extends AppCompatActivity {
+    private static final String TAG = "TextToGcodeActivity";
+
+    private EditText etPlotText, etCharHeight, etLineWidth;
+    private Button btnTextToGcode;
+    private TextView tvTextStatus;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_text_to_gcode);
+
+        etPlotText = findViewById(R.id.etPlotText);
+        etCharHeight = findViewById(R.id.etCharHeight);
+        etLineWidth = findViewById(R.id.etLineWidth);
+        btnTextToGcode = findViewById(R.id.btnTextToGcode);
+        tvTextStatus = findViewById(R.id.tvTextStatus);
+
+        btnTextToGcode.setOnClickListener(v -> createGCode());
+    }
+
+    private void createGCode() {
+        String text = etPlotText.getText().toString();
+        if (text.trim().isEmpty()) {
+            Toast.makeText(this, "Please enter some text", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        double charHeight, lineWidth;
+        try {
+            charHeight = Double.parseDouble(etCharHeight.getText().toString().trim());
+            lineWidth = Double.parseDouble(etLineWidth.getText().toString().trim());
+        } catch (NumberFormatException e) {
+            Toast.makeText(this, "Please enter valid numbers only", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        if (charHeight <= 0 || lineWidth <= 0) {
+            Toast.makeText(this, "Please enter positive numbers only", Toast.LENGTH_SHORT).show();
+            return;
+        }
+
+        btnTextToGcode.setEnabled(false);
+        File output = new File(getCacheDir(), "text.gcode");
+        new Thread(() -> {
+            long start = System.currentTimeMillis();
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(output)))) {
+                TextToolpath toolpath = new TextToolpath();
+                toolpath.setCharHeightMm(charHeight);
+                toolpath.setLineWidthMm(lineWidth);
+                PenPlotterGCodeWriter writer = new PenPlotterGCodeWriter(out);
+                int lines = toolpath.render(text, writer);
+
+                String summary = lines + " lines, " + writer.getDrawMoves() + " moves in "
+                        + (System.currentTimeMillis() - start) + " ms";
+                runOnUiThread(() -> {
+                    btnTextToGcode.setEnabled(true);
+                    tvTextStatus.setText(summary);
+
+                    // same path as uploaded files: the terminal loads and sends it
+                    Intent intent = new Intent(TextToGcodeActivity.this, BluetoothTerminalActivity.class);
+                    intent.putExtra(BluetoothTerminalActivity.EXTRA_GCODE_FILE, output.getAbsolutePath());
+                    startActivity(intent);
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Error creating text G-code", e);
+                runOnUiThread(() -> {
+                    btnTextToGcode.setEnabled(true);
+                    Toast.makeText(this, "Error creating G-code: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                });
+            }
+        }).start();
+    }
+}
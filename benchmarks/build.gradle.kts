@@ -0,0 +1,65 @@
+plugins {
+    java
+    alias(libs.plugins.jmh)
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    implementation(project(":core"))
+}
+
+// End-to-end plot time over a simulated serial link, see PlotTimeBenchmark for the options:
+// ./gradlew :benchmarks:plotBenchmark -PsimArgs="--latency 40 --jitter 20"
+tasks.register<JavaExec>("plotBenchmark") {
+    group = "benchmark"
+    description = "Streams the reference drawings to a simulated GRBL and reports plot time"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.example.drawbot.sim.PlotTimeBenchmark")
+    (findProperty("simArgs") as String?)?.let { args(it.trim().split(Regex("\\s+"))) }
+}
+
+// One drawing split over several simulated plotters, see FleetBenchmark for the options:
+// ./gradlew :benchmarks:fleetBenchmark -PsimArgs="--speeds 1,1,0.5 --tile 60x60"
+tasks.register<JavaExec>("fleetBenchmark") {
+    group = "benchmark"
+    description = "Splits the reference drawings over simulated plotters and checks the pieces"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.example.drawbot.sim.FleetBenchmark")
+    (findProperty("simArgs") as String?)?.let { args(it.trim().split(Regex("\\s+"))) }
+}
+
+// Touch-to-pen latency of live drawing for a synthetic finger trace, see LiveBenchmark for the options:
+// ./gradlew :benchmarks:liveBenchmark -PsimArgs="--baud 115200 --latency 10"
+tasks.register<JavaExec>("liveBenchmark") {
+    group = "benchmark"
+    description = "Replays a finger trace through live drawing on a simulated GRBL and reports latency"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.example.drawbot.sim.LiveBenchmark")
+    (findProperty("simArgs") as String?)?.let { args(it.trim().split(Regex("\\s+"))) }
+}
+
+// Motion after releasing a held jog button, see JogBenchmark for the options:
+// ./gradlew :benchmarks:jogBenchmark -PsimArgs="--latencies 10,50,150"
+tasks.register<JavaExec>("jogBenchmark") {
+    group = "benchmark"
+    description = "Holds and releases a jog button against a simulated GRBL and reports the overshoot"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set("com.example.drawbot.sim.JogBenchmark")
+    (findProperty("simArgs") as String?)?.let { args(it.trim().split(Regex("\\s+"))) }
+}
+
+// ./gradlew :benchmarks:jmh                              all benchmarks
+// ./gradlew :benchmarks:jmh -Pbench=LineConversion       only the ones matching the pattern
+// results: benchmarks/build/results/jmh/results.json
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    warmupIterations.set(3)
+    iterations.set(5)
+    fork.set(1)
+    resultFormat.set("JSON")
+    (findProperty("bench") as String?)?.let { includes.set(listOf(it)) }
+}
@@ -0,0 +1,57 @@
+package com.example.drawbot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Time estimate of a job: the formula itself is constant time, the cost is finding the movement
+// commands in every line. prepareConverted is the whole prepare step for a file made on the phone,
+// which only splits, trims and counts.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class EstimateBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int lines;
+
+    private String[] corpus;
+    private String convertedText;
+
+    @Setup
+    public void setUp() {
+        String text = GCodeCorpus.generate(lines);
+        corpus = text.split("\n");
+        convertedText = PenPlotterGCodeWriter.HEADER + "\n" + text;
+    }
+
+    @Benchmark
+    public int estimateUpperCase() {
+        int movementCommands = 0;
+        for (String line : corpus) {
+            if (LegacyPipeline.isMovement(line)) movementCommands++;
+        }
+        return GCodeStreamer.estimateSeconds(movementCommands, corpus.length);
+    }
+
+    @Benchmark
+    public int estimateRegionMatches() {
+        int movementCommands = 0;
+        for (String line : corpus) {
+            if (GCodeStreamer.isMovement(line)) movementCommands++;
+        }
+        return GCodeStreamer.estimateSeconds(movementCommands, corpus.length);
+    }
+
+    @Benchmark
+    public int prepareConverted() {
+        GCodeStreamer.Job job = GCodeStreamer.prepare(convertedText);
+        return GCodeStreamer.estimateSeconds(job.movementCommands, job.lines.size());
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.drawbot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Feed planning of a converted job, the step between conversion and the GRBL check.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FeedPlanBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int lines;
+
+    private List<String> converted;
+
+    @Setup
+    public void setUp() {
+        converted = new ArrayList<>(GCodeStreamer.prepare(GCodeCorpus.generate(lines)).lines);
+    }
+
+    @Benchmark
+    public FeedPlanner.Result plan() {
+        return new FeedPlanner(800, 10).plan(converted);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.drawbot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+// From a file on disk to a job that can be streamed. The file is read the way
+// BluetoothTerminalActivity.loadGCodeFromFile used to read a content URI, plus one bulk read to compare,
+// and the GCodeDocument the viewer shows instead, read from a stream or mapped, plus a screen of lines.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FileLoadBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int lines;
+
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = GCodeCorpus.writeTempFile(lines);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public String readLineByLine() throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file);
+             BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream))) {
+            StringBuilder gCodeContent = new StringBuilder();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                gCodeContent.append(line).append("\n");
+            }
+            return gCodeContent.toString();
+        }
+    }
+
+    @Benchmark
+    public String readAllBytes() throws IOException {
+        return new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public GCodeDocument readDocument() throws IOException {
+        try (InputStream inputStream = Files.newInputStream(file)) {
+            return GCodeDocument.read(inputStream);
+        }
+    }
+
+    @Benchmark
+    public int openDocumentAndShowScreen() throws IOException {
+        GCodeDocument document = GCodeDocument.open(file.toFile());
+        int chars = 0;
+        for (int i = document.getLineCount() / 2, end = Math.min(document.getLineCount(), i + 40); i < end; i++) {
+            chars += document.line(i).length();
+        }
+        return chars;
+    }
+
+    @Benchmark
+    public GCodeStreamer.Job readAndPrepare() throws IOException {
+        return GCodeStreamer.prepare(readLineByLine());
+    }
+}
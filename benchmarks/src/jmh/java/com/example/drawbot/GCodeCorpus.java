@@ -0,0 +1,77 @@
+package com.example.drawbot;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Random;
+
+// Synthetic G-code shaped like svg2gcode output: a short preamble, then paths of one rapid move,
+// a plunge, a run of short G1 segments and a retract, with the odd comment in between.
+// The same seed always gives the same text, so runs are comparable.
+final class GCodeCorpus {
+    private static final long SEED = 0x44726177L;
+
+    private GCodeCorpus() {
+    }
+
+    static String generate(int lineCount) {
+        Random random = new Random(SEED);
+        StringBuilder sb = new StringBuilder(lineCount * 24);
+        int lines = 0;
+
+        sb.append("; svg2gcode 0.0.12\n").append("G21\n").append("G90\n").append("G0 Z5\n");
+        lines += 4;
+
+        double x = 0, y = 0;
+        int path = 0;
+        while (lines < lineCount) {
+            path++;
+            if (path % 25 == 0) {
+                sb.append("(path ").append(path).append(")\n");
+                lines++;
+            }
+            x = clamp(x + (random.nextDouble() - 0.5) * 60);
+            y = clamp(y + (random.nextDouble() - 0.5) * 60);
+            appendMove(sb, "G0", x, y, null);
+            sb.append("G1 Z-1 F300\n");
+            lines += 2;
+
+            int segments = 5 + random.nextInt(60);
+            double heading = random.nextDouble() * Math.PI * 2;
+            for (int i = 0; i < segments && lines < lineCount - 1; i++) {
+                heading += (random.nextDouble() - 0.5) * 0.6;
+                x = clamp(x + Math.cos(heading) * 0.8);
+                y = clamp(y + Math.sin(heading) * 0.8);
+                appendMove(sb, "G1", x, y, i == 0 ? " F1000" : null);
+                lines++;
+            }
+            sb.append("G0 Z5\n");
+            lines++;
+        }
+        return sb.toString();
+    }
+
+    static String[] lines(int lineCount) {
+        return generate(lineCount).split("\n");
+    }
+
+    static Path writeTempFile(int lineCount) throws IOException {
+        Path file = Files.createTempFile("drawbot-corpus-" + lineCount + "-", ".gcode");
+        file.toFile().deleteOnExit();
+        Files.write(file, generate(lineCount).getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private static void appendMove(StringBuilder sb, String command, double x, double y, String suffix) {
+        sb.append(command).append(" X").append(String.format(Locale.US, "%.3f", x))
+                .append(" Y").append(String.format(Locale.US, "%.3f", y));
+        if (suffix != null) sb.append(suffix);
+        sb.append('\n');
+    }
+
+    private static double clamp(double value) {
+        return Math.max(0, Math.min(200, value));
+    }
+}
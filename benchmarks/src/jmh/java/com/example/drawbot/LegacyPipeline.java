@@ -0,0 +1,67 @@
+package com.example.drawbot;
+
+// The implementations the app used before the hand-written versions, kept here as the baseline
+// the benchmarks compare against.
+final class LegacyPipeline {
+    private LegacyPipeline() {
+    }
+
+    static String convertGCodeForPenPlotter(String line) {
+        String originalLine = line.trim();
+        if (originalLine.isEmpty() || originalLine.startsWith(";") || originalLine.startsWith("(")) {
+            return originalLine;
+        }
+        String upperLine = originalLine.toUpperCase();
+
+        if (upperLine.startsWith("G0 ") || upperLine.startsWith("G00 ")) {
+            String convertedLine = originalLine.replaceFirst("(?i)G0+", "G1");
+            convertedLine = removeZCoordinate(convertedLine);
+            return convertedLine + " Z1";
+        }
+
+        if (upperLine.startsWith("G1 ") || upperLine.startsWith("G01 ")) {
+            String convertedLine = removeZCoordinate(originalLine);
+            return convertedLine + " Z0";
+        }
+
+        return originalLine;
+    }
+
+    static String removeZCoordinate(String line) {
+        return line.replaceAll("(?i)\\s*Z-?[0-9]*\\.?[0-9]*", "").trim();
+    }
+
+    static boolean isMovement(String line) {
+        String upperOriginal = line.toUpperCase();
+        return upperOriginal.startsWith("G0 ") || upperOriginal.startsWith("G00 ")
+                || upperOriginal.startsWith("G1 ") || upperOriginal.startsWith("G01 ");
+    }
+
+    // terminal with a line limit as BluetoothTerminalActivity kept it: split and rebuild on every append
+    static final class Terminal {
+        private final int maxLines;
+        private final StringBuilder terminalOutput = new StringBuilder();
+
+        Terminal(int maxLines) {
+            this.maxLines = maxLines;
+        }
+
+        void append(String message) {
+            terminalOutput.append(message).append("\n");
+
+            String[] lines = terminalOutput.toString().split("\n");
+            if (lines.length > maxLines) {
+                terminalOutput.setLength(0);
+
+                for (int i = lines.length - maxLines; i < lines.length; i++) {
+                    terminalOutput.append(lines[i]).append("\n");
+                }
+            }
+        }
+
+        @Override
+        public String toString() {
+            return terminalOutput.toString();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.drawbot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+// Pen-plotter conversion of a whole file, one operation = every line of the corpus.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class LineConversionBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int lines;
+
+    private String[] corpus;
+
+    @Setup
+    public void setUp() {
+        corpus = GCodeCorpus.lines(lines);
+    }
+
+    @Benchmark
+    public void convertRegex(Blackhole blackhole) {
+        for (String line : corpus) {
+            blackhole.consume(LegacyPipeline.convertGCodeForPenPlotter(line));
+        }
+    }
+
+    @Benchmark
+    public void convertHandWritten(Blackhole blackhole) {
+        for (String line : corpus) {
+            blackhole.consume(GCodeStreamer.convertGCodeForPenPlotter(line));
+        }
+    }
+
+    @Benchmark
+    public void removeZRegex(Blackhole blackhole) {
+        for (String line : corpus) {
+            blackhole.consume(LegacyPipeline.removeZCoordinate(line));
+        }
+    }
+
+    @Benchmark
+    public void removeZHandWritten(Blackhole blackhole) {
+        for (String line : corpus) {
+            blackhole.consume(GCodeStreamer.removeZCoordinate(line));
+        }
+    }
+}
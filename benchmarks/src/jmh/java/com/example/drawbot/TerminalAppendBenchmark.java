@@ -0,0 +1,53 @@
+package com.example.drawbot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+// Terminal log of a whole job: every sent line is appended as "> line" to a terminal that keeps
+// the last 500 lines, like BluetoothTerminalActivity does.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class TerminalAppendBenchmark {
+    private static final int MAX_TERMINAL_LINES = 500;
+
+    @Param({"10000", "100000", "1000000"})
+    public int lines;
+
+    private String[] messages;
+
+    @Setup
+    public void setUp() {
+        String[] corpus = GCodeCorpus.lines(lines);
+        messages = new String[corpus.length];
+        for (int i = 0; i < corpus.length; i++) {
+            messages[i] = "> " + corpus[i];
+        }
+    }
+
+    @Benchmark
+    public String splitAndRebuild() {
+        LegacyPipeline.Terminal terminal = new LegacyPipeline.Terminal(MAX_TERMINAL_LINES);
+        for (String message : messages) {
+            terminal.append(message);
+        }
+        return terminal.toString();
+    }
+
+    @Benchmark
+    public String terminalBuffer() {
+        TerminalBuffer terminal = new TerminalBuffer(MAX_TERMINAL_LINES);
+        for (String message : messages) {
+            terminal.append(message);
+        }
+        return terminal.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package com.example.drawbot;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// GRBL 1.1 check of a converted job, the step between prepare and the first sent line.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ValidationBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int lines;
+
+    private List<String> converted;
+
+    @Setup
+    public void setUp() {
+        converted = new ArrayList<>(GCodeStreamer.prepare(GCodeCorpus.generate(lines)).lines);
+    }
+
+    @Benchmark
+    public GCodeValidator.Result validate() {
+        return new GCodeValidator(200, 200, 800).validate(converted);
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.drawbot.sim;
+
+import java.util.PriorityQueue;
+
+// Single-threaded discrete-event loop on a virtual clock. Nothing sleeps: the clock jumps to the
+// next event, so a plot that takes an hour on the machine is simulated in well under a second
+// and every run with the same seed gives the same numbers.
+public class EventLoop {
+    private static final class Event implements Comparable<Event> {
+        final long at;
+        final long sequence;
+        final Runnable task;
+
+        Event(long at, long sequence, Runnable task) {
+            this.at = at;
+            this.sequence = sequence;
+            this.task = task;
+        }
+
+        @Override
+        public int compareTo(Event other) {
+            if (at != other.at) return Long.compare(at, other.at);
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private long now = 0;
+    private long sequence = 0;
+
+    public long nanoTime() {
+        return now;
+    }
+
+    public void at(long atNanos, Runnable task) {
+        events.add(new Event(Math.max(atNanos, now), sequence++, task));
+    }
+
+    public void after(long delayNanos, Runnable task) {
+        at(now + delayNanos, task);
+    }
+
+    // runs events in time order until there are none left or the clock passes limitNanos;
+    // returns false if it stopped because of the limit
+    public boolean run(long limitNanos) {
+        Event event;
+        while ((event = events.poll()) != null) {
+            if (event.at > limitNanos) {
+                now = limitNanos;
+                return false;
+            }
+            now = event.at;
+            event.task.run();
+        }
+        return true;
+    }
+}
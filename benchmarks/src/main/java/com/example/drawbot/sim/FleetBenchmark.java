@@ -0,0 +1,109 @@
+package com.example.drawbot.sim;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// One drawing over several simulated plotters with the app's partitioner and dispatcher
+// (see FleetSimulation). Exits with 1 if a piece leaves its tile, drawn length is lost, or a
+// piece is never drawn, so it doubles as a check of the fleet code:
+//
+//   ./gradlew :benchmarks:fleetBenchmark -PsimArgs="--speeds 1,1,0.5 --tile 60x60 --drop 1:120"
+//
+// Options: --speeds F,F,... (feed override per plotter), --tile WxH (mm) or --sets (interleaved stroke
+//          sets), --sheet-change S, --drop INDEX:SECONDS (that plotter loses its link then),
+//          --baud N, --latency MS, --jitter MS, --seed N, --feed MM_PER_MIN, --rapid MM_PER_MIN,
+//          --pen-delay MS, --file PATH (repeatable), --only NAME
+public final class FleetBenchmark {
+    private FleetBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        FleetSimulation.Settings settings = new FleetSimulation.Settings();
+        Map<String, String> drawings = new LinkedHashMap<>(ReferenceDrawings.all());
+        Map<String, String> files = new LinkedHashMap<>();
+        String only = null;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--speeds": {
+                    String[] parts = args[++i].split(",");
+                    settings.speeds = new double[parts.length];
+                    for (int p = 0; p < parts.length; p++) {
+                        settings.speeds[p] = Double.parseDouble(parts[p]);
+                    }
+                    break;
+                }
+                case "--tile": {
+                    String[] size = args[++i].toLowerCase(Locale.US).split("x");
+                    settings.tileWidth = Double.parseDouble(size[0]);
+                    settings.tileHeight = Double.parseDouble(size[size.length - 1]);
+                    break;
+                }
+                case "--sets": settings.tileWidth = 0; break;
+                case "--sheet-change": settings.sheetChangeSeconds = Double.parseDouble(args[++i]); break;
+                case "--drop": {
+                    String[] drop = args[++i].split(":");
+                    settings.dropPlotter = Integer.parseInt(drop[0]);
+                    settings.dropAfterSeconds = Double.parseDouble(drop[1]);
+                    break;
+                }
+                case "--baud": settings.plotter.baud = Integer.parseInt(args[++i]); break;
+                case "--latency": settings.plotter.latencyMs = Double.parseDouble(args[++i]); break;
+                case "--jitter": settings.plotter.jitterMs = Double.parseDouble(args[++i]); break;
+                case "--seed": settings.plotter.seed = Long.parseLong(args[++i]); break;
+                case "--feed": settings.plotter.defaultFeed = Double.parseDouble(args[++i]); break;
+                case "--rapid": settings.plotter.rapidRate = Double.parseDouble(args[++i]); break;
+                case "--pen-delay": settings.plotter.penDelayMs = Double.parseDouble(args[++i]); break;
+                case "--only": only = args[++i]; break;
+                case "--file": {
+                    Path path = Paths.get(args[++i]);
+                    files.put(path.getFileName().toString(),
+                            new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+                    break;
+                }
+                default:
+                    System.err.println("Unknown option " + arg);
+                    System.exit(2);
+                    return;
+            }
+        }
+        drawings.putAll(files);
+
+        System.out.printf(Locale.US, "%d plotters, %s, link %d baud, latency %.1f ms%n%n",
+                settings.speeds.length,
+                settings.tileWidth > 0
+                        ? String.format(Locale.US, "tiles %.0f x %.0f mm, %.0f s sheet change",
+                                settings.tileWidth, settings.tileHeight, settings.sheetChangeSeconds)
+                        : "interleaved stroke sets",
+                settings.plotter.baud, settings.plotter.latencyMs);
+
+        boolean ok = true;
+        for (Map.Entry<String, String> drawing : drawings.entrySet()) {
+            if (only != null && !only.equals(drawing.getKey())) continue;
+            long wallStart = System.nanoTime();
+            FleetSimulation.Result r = FleetSimulation.run(drawing.getValue(), settings);
+            double wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+
+            System.out.printf(Locale.US, "%-12s %3d pieces, %3d drawn, %d not drawn, %d stolen, makespan %.1f s%n",
+                    drawing.getKey(), r.pieces, r.finished, r.failed, r.steals, r.makespanSeconds);
+            for (int i = 0; i < r.busySeconds.length; i++) {
+                System.out.printf(Locale.US, "%-12s   plotter %d (x%.2f): %3d pieces, %3d stolen, busy %.1f s%n",
+                        "", i + 1, settings.speeds[i], r.piecesPerPlotter[i], r.stolenPerPlotter[i],
+                        r.busySeconds[i]);
+            }
+            for (String problem : r.problems) {
+                System.out.printf("%-12s   PROBLEM: %s%n", "", problem);
+                ok = false;
+            }
+            System.err.printf(Locale.US, "  %s simulated in %.2f s%n", drawing.getKey(), wallSeconds);
+        }
+        if (!ok) System.exit(1);
+    }
+}
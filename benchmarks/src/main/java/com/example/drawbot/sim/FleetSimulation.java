@@ -0,0 +1,175 @@
+package com.example.drawbot.sim;
+
+import com.example.drawbot.DrawingPartitioner;
+import com.example.drawbot.FleetDispatcher;
+import com.example.drawbot.GCodeStreamer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+// One drawing split by the app's DrawingPartitioner and handed out by its FleetDispatcher to
+// several SimulatedPlotters on one virtual clock. The machines can run at different speeds, lose
+// their link part way through a piece, and need time for a sheet change between tiles, which is
+// where work stealing earns its keep. Besides the timing the run checks the pieces themselves:
+// tiles stay inside their rectangle, no drawn length is lost or added by clipping, and the stroke
+// sets together hold every stroke once.
+public class FleetSimulation {
+    public static final class Settings {
+        public PlotSimulation.Settings plotter = new PlotSimulation.Settings();
+        // one entry per plotter, its feed override (pen-plotter travel is G1 too, so all motion scales)
+        public double[] speeds = {1, 1, 1};
+        // tile size in mm, 0 for interleaved stroke sets
+        public double tileWidth = 100, tileHeight = 100;
+        public double sheetChangeSeconds = 20;
+        // plotter index whose link drops dropAfterSeconds into the run, -1 for none
+        public int dropPlotter = -1;
+        public double dropAfterSeconds = 60;
+    }
+
+    public static final class Result {
+        public int pieces, finished, failed, steals;
+        public double makespanSeconds;
+        public double[] busySeconds;
+        public int[] piecesPerPlotter, stolenPerPlotter;
+        public final List<String> problems = new ArrayList<>();
+    }
+
+    private static final double TOLERANCE_MM = 0.002;   // coordinates are written in 1/1000 mm
+
+    private static final class Member implements FleetDispatcher.Plotter {
+        final int index;
+        final SimulatedPlotter plotter;
+        long startedAt;
+        boolean dropped;
+
+        Member(int index, SimulatedPlotter plotter) {
+            this.index = index;
+            this.plotter = plotter;
+        }
+
+        @Override
+        public String getName() {
+            return "plotter " + (index + 1);
+        }
+
+        @Override
+        public void start(DrawingPartitioner.Piece piece) {
+            plotter.start(GCodeStreamer.prepare(piece.gCode));
+        }
+    }
+
+    private FleetSimulation() {
+    }
+
+    public static Result run(String gCodeText, Settings settings) {
+        DrawingPartitioner partitioner = new DrawingPartitioner(GCodeStreamer.prepare(gCodeText).lines);
+        boolean tiles = settings.tileWidth > 0;
+        List<DrawingPartitioner.Piece> pieces = tiles
+                ? partitioner.tiles(settings.tileWidth, settings.tileHeight)
+                : partitioner.strokeSets(settings.speeds.length * FleetDispatcher.SETS_PER_PLOTTER);
+
+        Result result = new Result();
+        result.pieces = pieces.size();
+        checkPieces(partitioner, pieces, settings, result);
+
+        EventLoop loop = new EventLoop();
+        Random random = new Random(settings.plotter.seed);
+        int count = settings.speeds.length;
+        result.busySeconds = new double[count];
+        result.piecesPerPlotter = new int[count];
+        result.stolenPerPlotter = new int[count];
+        long[] lastEnd = {0};
+
+        List<Member> members = new ArrayList<>();
+        FleetDispatcher[] dispatcher = new FleetDispatcher[1];
+        for (int i = 0; i < count; i++) {
+            Member member = new Member(i, new SimulatedPlotter(loop, settings.plotter, random));
+            member.plotter.getGrbl().setFeedOverride(settings.speeds[i]);
+            member.plotter.setOnFinished(() -> {
+                if (member.dropped) return;
+                long now = loop.nanoTime();
+                result.busySeconds[member.index] += (now - member.startedAt) / 1e9;
+                lastEnd[0] = Math.max(lastEnd[0], now);
+                // the operator swaps the sheet before the next tile, interleaved sets draw on the same one
+                long pause = tiles ? (long) (settings.sheetChangeSeconds * 1e9) : 0;
+                loop.after(pause, () -> dispatcher[0].onFinished(member));
+            });
+            members.add(member);
+        }
+
+        double feed = settings.plotter.defaultFeed, rapid = settings.plotter.rapidRate;
+        dispatcher[0] = new FleetDispatcher(members, new FleetDispatcher.Listener() {
+            @Override
+            public void onAssigned(FleetDispatcher.Plotter plotter, DrawingPartitioner.Piece piece, boolean stolen) {
+                Member member = (Member) plotter;
+                member.startedAt = loop.nanoTime();
+                result.piecesPerPlotter[member.index]++;
+                if (stolen) result.stolenPerPlotter[member.index]++;
+            }
+
+            @Override
+            public void onAllDone(int finished, int failed) {
+                result.finished = finished;
+                result.failed = failed;
+            }
+        }, feed, rapid, settings.plotter.penDelayMs);
+
+        if (settings.dropPlotter >= 0 && settings.dropPlotter < count) {
+            Member member = members.get(settings.dropPlotter);
+            loop.after((long) (settings.dropAfterSeconds * 1e9), () -> {
+                if (!dispatcher[0].isRunning(member)) return;
+                member.dropped = true;
+                member.plotter.getStreamer().stop();
+                dispatcher[0].onFailed(member);
+            });
+        }
+
+        dispatcher[0].start(pieces);
+        loop.run((long) (settings.plotter.limitHours * 3600e9));
+
+        result.makespanSeconds = lastEnd[0] / 1e9;
+        result.steals = dispatcher[0].getSteals();
+        if (!dispatcher[0].isDone()) {
+            result.problems.add("fleet did not finish within " + settings.plotter.limitHours + " h");
+        }
+        if (result.finished + result.failed != result.pieces) {
+            result.problems.add(result.finished + " finished + " + result.failed + " failed != "
+                    + result.pieces + " pieces");
+        }
+        return result;
+    }
+
+    private static void checkPieces(DrawingPartitioner source, List<DrawingPartitioner.Piece> pieces,
+                                    Settings settings, Result result) {
+        double clipped = 0;
+        int strokes = 0;
+        for (DrawingPartitioner.Piece piece : pieces) {
+            clipped += piece.drawLength;
+            // read the written G-code back, this is what the plotter actually gets
+            DrawingPartitioner written = new DrawingPartitioner(GCodeStreamer.prepare(piece.gCode).lines);
+            strokes += written.getStrokeCount();
+            if (Math.abs(written.getDrawLength() - piece.drawLength) > piece.drawLength * 1e-3 + TOLERANCE_MM) {
+                result.problems.add(String.format(Locale.US, "%s draws %.3f mm instead of %.3f mm",
+                        piece.name, written.getDrawLength(), piece.drawLength));
+            }
+            if (settings.tileWidth > 0) {
+                double[] b = written.getBounds();
+                if (b[0] < -TOLERANCE_MM || b[1] < -TOLERANCE_MM
+                        || b[2] > settings.tileWidth + TOLERANCE_MM || b[3] > settings.tileHeight + TOLERANCE_MM) {
+                    result.problems.add(piece.name + " leaves its tile: " + Arrays.toString(b));
+                }
+            }
+        }
+        double expected = source.getDrawLength();
+        if (Math.abs(clipped - expected) > expected * 1e-9 + 1e-6) {
+            result.problems.add(String.format(Locale.US,
+                    "clipping changed the drawn length from %.6f mm to %.6f mm", expected, clipped));
+        }
+        if (settings.tileWidth <= 0 && strokes != source.getStrokeCount()) {
+            result.problems.add("stroke sets hold " + strokes + " strokes, the drawing " + source.getStrokeCount());
+        }
+    }
+}
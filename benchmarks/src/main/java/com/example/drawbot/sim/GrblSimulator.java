@@ -0,0 +1,455 @@
+package com.example.drawbot.sim;
+
+import java.util.ArrayDeque;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+// Stand-in for a GRBL 1.1 controller that is good enough to time a sender against:
+// - a 128 byte serial receive buffer, characters beyond it are lost
+// - a planner of 15 blocks; a motion line is answered with ok as soon as it is planned, and while
+//   the planner is full GRBL stops reading from the receive buffer
+// - realtime ? ! ~ are handled the moment they arrive
+// - M17, M400 and other codes stock GRBL does not know are answered with error:20
+// - $J= jogs plan like moves; the jog cancel byte 0x85 stops the running jog where it is and drops
+//   the planned jog blocks, a jog line still in the receive buffer runs after it as in GRBL
+// Moves run at constant speed (no acceleration), every pen (Z) change costs penDelayMs, and a G1
+// without any F uses defaultFeed where real GRBL would answer error:22. Status reports give the
+// position along the move being executed, as GRBL does.
+public class GrblSimulator {
+    public static final int RX_BUFFER_SIZE = 128;
+    public static final int PLANNER_BLOCKS = 15;
+
+    private static final String SUPPORTED_G = ",0,1,2,3,4,17,18,19,20,21,28,30,40,49,54,55,56,57,58,59,"
+            + "80,90,91,92,93,94,";
+    private static final String SUPPORTED_M = ",0,1,2,3,4,5,7,8,9,30,56,";
+
+    private static final char JOG_CANCEL = 0x85;
+
+    private static final class Block {
+        final long durationNanos;
+        // machine position before and after it
+        final double fromX, fromY, fromZ, toX, toY, toZ;
+        final boolean jog;
+
+        Block(long durationNanos, double fromX, double fromY, double fromZ, double toX, double toY, double toZ) {
+            this(durationNanos, fromX, fromY, fromZ, toX, toY, toZ, false);
+        }
+
+        Block(long durationNanos, double fromX, double fromY, double fromZ, double toX, double toY, double toZ,
+              boolean jog) {
+            this.durationNanos = durationNanos;
+            this.jog = jog;
+            this.fromX = fromX;
+            this.fromY = fromY;
+            this.fromZ = fromZ;
+            this.toX = toX;
+            this.toY = toY;
+            this.toZ = toZ;
+        }
+    }
+
+    private final EventLoop loop;
+    private final double defaultFeed, rapidRate, penDelayMs;
+    private Consumer<String> output = data -> { };
+
+    private final StringBuilder rx = new StringBuilder();
+    private final ArrayDeque<Block> planner = new ArrayDeque<>();
+    private Block waitingForPlanner = null;
+    private boolean executing = false, hold = false;
+    private long blockStartedAt = 0;
+    // a jog cancel makes the end of the block that was running a no-op
+    private int blockGeneration = 0;
+
+    // machine state; x, y, z is where the planned moves end
+    private double x = 0, y = 0, z = 0, feed = Double.NaN;
+    private boolean absolute = true, metric = true, rapid = true;
+    private double feedOverride = 1;
+
+    // statistics
+    private long linesReceived = 0, errorsSent = 0, rxOverflowBytes = 0;
+    private long firstMotionStart = -1, lastMotionEnd = -1, idleSince = -1;
+    private long idleGaps = 0, idleNanos = 0, longestIdleNanos = 0;
+    private long jogCancelledAt = -1, jogBlocksAfterCancel = 0;
+
+    public GrblSimulator(EventLoop loop, double defaultFeed, double rapidRate, double penDelayMs) {
+        this.loop = loop;
+        this.defaultFeed = defaultFeed;
+        this.rapidRate = rapidRate;
+        this.penDelayMs = penDelayMs;
+    }
+
+    // where replies go, normally the return direction of a SimulatedLink
+    public void setOutput(Consumer<String> output) {
+        this.output = output;
+    }
+
+    public void receive(String data) {
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c == '?') {
+                output.accept(statusReport());
+            } else if (c == '!') {
+                hold = true;
+            } else if (c == '~') {
+                hold = false;
+                startNextBlock();
+            } else if (c == JOG_CANCEL) {
+                cancelJog();
+            } else if (rx.length() < RX_BUFFER_SIZE) {
+                rx.append(c);
+            } else {
+                rxOverflowBytes++;
+            }
+        }
+        processLines();
+    }
+
+    // GRBL's main loop: read complete lines while the planner has room for what they produce
+    private void processLines() {
+        while (waitingForPlanner == null) {
+            int newline = rx.indexOf("\n");
+            if (newline < 0) return;
+            String line = rx.substring(0, newline);
+            rx.delete(0, newline + 1);
+            linesReceived++;
+            execute(line);
+        }
+    }
+
+    private void execute(String rawLine) {
+        String line = strip(rawLine);
+        if (line.startsWith("$J=")) {
+            jog(line.substring(3));
+            return;
+        }
+        if (line.isEmpty() || line.charAt(0) == '$') {
+            reply("ok");
+            return;
+        }
+
+        double nx = Double.NaN, ny = Double.NaN, nz = Double.NaN, dwell = 0;
+        boolean setOrigin = false, isDwell = false;
+        int i = 0;
+        while (i < line.length()) {
+            char letter = line.charAt(i++);
+            int start = i;
+            while (i < line.length() && (Character.isDigit(line.charAt(i)) || line.charAt(i) == '.'
+                    || line.charAt(i) == '-' || line.charAt(i) == '+')) {
+                i++;
+            }
+            double value;
+            try {
+                value = Double.parseDouble(line.substring(start, i));
+            } catch (NumberFormatException e) {
+                reply("error:2");
+                return;
+            }
+            String code = "," + (value == Math.rint(value) ? String.valueOf((long) value) : String.valueOf(value)) + ",";
+
+            switch (letter) {
+                case 'G':
+                    if (SUPPORTED_G.indexOf(code) < 0) {
+                        reply("error:20");
+                        return;
+                    }
+                    if (value == 0) rapid = true;
+                    else if (value == 1 || value == 2 || value == 3) rapid = false;
+                    else if (value == 4) isDwell = true;
+                    else if (value == 20) metric = false;
+                    else if (value == 21) metric = true;
+                    else if (value == 90) absolute = true;
+                    else if (value == 91) absolute = false;
+                    else if (value == 92) setOrigin = true;
+                    break;
+                case 'M':
+                    if (SUPPORTED_M.indexOf(code) < 0) {
+                        reply("error:20");
+                        return;
+                    }
+                    break;
+                case 'X': nx = value; break;
+                case 'Y': ny = value; break;
+                case 'Z': nz = value; break;
+                case 'F': feed = metric ? value : value * 25.4; break;
+                case 'P': dwell = value; break;
+                case 'I': case 'J': case 'K': case 'R': case 'S': case 'T': case 'N':
+                    break;
+                default:
+                    reply("error:20");
+                    return;
+            }
+        }
+
+        if (setOrigin) {
+            // G92: the current position gets the given coordinates, nothing moves
+            if (!Double.isNaN(nx)) x = nx;
+            if (!Double.isNaN(ny)) y = ny;
+            if (!Double.isNaN(nz)) z = nz;
+            reply("ok");
+            return;
+        }
+        if (isDwell) {
+            plan(new Block((long) (dwell * 1e9), x, y, z, x, y, z));
+            return;
+        }
+        if (Double.isNaN(nx) && Double.isNaN(ny) && Double.isNaN(nz)) {
+            reply("ok");
+            return;
+        }
+
+        double scale = metric ? 1 : 25.4;
+        double tx = target(x, nx, scale), ty = target(y, ny, scale), tz = target(z, nz, scale);
+        double distance = Math.sqrt((tx - x) * (tx - x) + (ty - y) * (ty - y));
+        double rate = rapid ? rapidRate : (Double.isNaN(feed) ? defaultFeed : feed) * feedOverride;
+        double seconds = distance / rate * 60.0;
+        if (tz != z) seconds += penDelayMs / 1000.0;
+        Block block = new Block(Math.max(1_000_000L, (long) (seconds * 1e9)), x, y, z, tx, ty, tz);
+        x = tx;
+        y = ty;
+        z = tz;
+        plan(block);
+    }
+
+    // $J=G91 X.. Y.. F..: a move of its own modal G90/G91 and units that needs F, only when idle or jogging
+    private void jog(String words) {
+        boolean relative = false, inches = false;
+        double nx = Double.NaN, ny = Double.NaN, nz = Double.NaN, jogFeed = Double.NaN;
+        int i = 0;
+        while (i < words.length()) {
+            char letter = words.charAt(i++);
+            int start = i;
+            while (i < words.length() && (Character.isDigit(words.charAt(i)) || words.charAt(i) == '.'
+                    || words.charAt(i) == '-' || words.charAt(i) == '+')) {
+                i++;
+            }
+            double value;
+            try {
+                value = Double.parseDouble(words.substring(start, i));
+            } catch (NumberFormatException e) {
+                reply("error:2");
+                return;
+            }
+            switch (letter) {
+                case 'G':
+                    if (value == 90) relative = false;
+                    else if (value == 91) relative = true;
+                    else if (value == 20) inches = true;
+                    else if (value == 21) inches = false;
+                    else if (value != 53) {
+                        reply("error:16");
+                        return;
+                    }
+                    break;
+                case 'X': nx = value; break;
+                case 'Y': ny = value; break;
+                case 'Z': nz = value; break;
+                case 'F': jogFeed = value; break;
+                default:
+                    reply("error:16");
+                    return;
+            }
+        }
+        if (Double.isNaN(jogFeed)) {
+            reply("error:22");
+            return;
+        }
+        for (Block block : planner) {
+            if (!block.jog) {
+                reply("error:8");
+                return;
+            }
+        }
+        double scale = inches ? 25.4 : 1;
+        double tx = jogTarget(x, nx, scale, relative), ty = jogTarget(y, ny, scale, relative);
+        double tz = jogTarget(z, nz, scale, relative);
+        double distance = Math.sqrt((tx - x) * (tx - x) + (ty - y) * (ty - y) + (tz - z) * (tz - z));
+        double seconds = distance / (jogFeed * scale) * 60.0;
+        Block block = new Block(Math.max(1_000_000L, (long) (seconds * 1e9)), x, y, z, tx, ty, tz, true);
+        x = tx;
+        y = ty;
+        z = tz;
+        plan(block);
+    }
+
+    private static double jogTarget(double current, double word, double scale, boolean relative) {
+        if (Double.isNaN(word)) return current;
+        return relative ? current + word * scale : word * scale;
+    }
+
+    // stops where the pen is (no deceleration in this model) and drops every planned jog block
+    private void cancelJog() {
+        Block running = planner.peek();
+        if (running == null || !running.jog) return;
+        double[] position = position();
+        x = position[0];
+        y = position[1];
+        z = position[2];
+        planner.clear();
+        executing = false;
+        blockGeneration++;
+        long now = loop.nanoTime();
+        if (jogCancelledAt < 0) jogCancelledAt = now;
+        lastMotionEnd = now;
+        idleSince = now;
+        if (waitingForPlanner != null) {
+            Block block = waitingForPlanner;
+            waitingForPlanner = null;
+            planner.add(block);
+            reply("ok");
+        }
+        startNextBlock();
+        processLines();
+    }
+
+    private double target(double current, double word, double scale) {
+        if (Double.isNaN(word)) return current;
+        return absolute ? word * scale : current + word * scale;
+    }
+
+    private void plan(Block block) {
+        if (planner.size() >= PLANNER_BLOCKS) {
+            // the line stays with GRBL until a block finishes, no ok until then
+            waitingForPlanner = block;
+            return;
+        }
+        planner.add(block);
+        reply("ok");
+        startNextBlock();
+    }
+
+    private void startNextBlock() {
+        if (executing || hold) return;
+        Block block = planner.peek();
+        if (block == null) {
+            if (idleSince < 0) idleSince = loop.nanoTime();
+            return;
+        }
+
+        long now = loop.nanoTime();
+        if (firstMotionStart < 0) {
+            firstMotionStart = now;
+        } else if (idleSince >= 0 && now > idleSince) {
+            long gap = now - idleSince;
+            idleGaps++;
+            idleNanos += gap;
+            longestIdleNanos = Math.max(longestIdleNanos, gap);
+        }
+        idleSince = -1;
+        executing = true;
+        blockStartedAt = now;
+        if (block.jog && jogCancelledAt >= 0) jogBlocksAfterCancel++;
+        int generation = blockGeneration;
+        loop.after(block.durationNanos, () -> {
+            if (generation == blockGeneration) blockFinished();
+        });
+    }
+
+    private void blockFinished() {
+        planner.poll();
+        executing = false;
+        lastMotionEnd = loop.nanoTime();
+        if (waitingForPlanner != null) {
+            Block block = waitingForPlanner;
+            waitingForPlanner = null;
+            planner.add(block);
+            reply("ok");
+        }
+        if (planner.isEmpty() || hold) idleSince = loop.nanoTime();
+        startNextBlock();
+        processLines();
+    }
+
+    private String statusReport() {
+        Block block = planner.peek();
+        String state = hold ? "Hold:0" : block == null ? "Idle" : block.jog ? "Jog" : "Run";
+        double[] position = position();
+        return String.format(Locale.US, "<%s|MPos:%.3f,%.3f,%.3f|FS:0,0>\r\n", state,
+                position[0], position[1], position[2]);
+    }
+
+    // where the pen is now, along the block being executed
+    public double[] position() {
+        Block block = planner.peek();
+        if (block == null) return new double[]{x, y, z};
+        double done = executing
+                ? Math.min(1, (loop.nanoTime() - blockStartedAt) / (double) block.durationNanos) : 0;
+        return new double[]{block.fromX + (block.toX - block.fromX) * done,
+                block.fromY + (block.toY - block.fromY) * done, block.fromZ + (block.toZ - block.fromZ) * done};
+    }
+
+    private void reply(String line) {
+        if (line.startsWith("error")) errorsSent++;
+        output.accept(line + "\r\n");
+    }
+
+    // upper case, no spaces, no (comments) or ; comments
+    private static String strip(String line) {
+        StringBuilder sb = new StringBuilder(line.length());
+        boolean inComment = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inComment) {
+                if (c == ')') inComment = false;
+            } else if (c == '(') {
+                inComment = true;
+            } else if (c == ';') {
+                break;
+            } else if (c > ' ') {
+                sb.append(Character.toUpperCase(c));
+            }
+        }
+        return sb.toString();
+    }
+
+    // GRBL's feed override as a factor (0.1 to 2.0 there): scales G1/G2/G3 feeds, not G0 rapids
+    public void setFeedOverride(double factor) {
+        feedOverride = factor;
+    }
+
+    public boolean isIdle() {
+        return !executing && planner.isEmpty() && waitingForPlanner == null;
+    }
+
+    public long getLinesReceived() {
+        return linesReceived;
+    }
+
+    public long getErrorsSent() {
+        return errorsSent;
+    }
+
+    public long getRxOverflowBytes() {
+        return rxOverflowBytes;
+    }
+
+    public long getFirstMotionStart() {
+        return firstMotionStart;
+    }
+
+    public long getLastMotionEnd() {
+        return lastMotionEnd;
+    }
+
+    // pauses between two moves in which the machine stood still with nothing planned
+    public long getIdleGaps() {
+        return idleGaps;
+    }
+
+    public long getIdleNanos() {
+        return idleNanos;
+    }
+
+    public long getLongestIdleNanos() {
+        return longestIdleNanos;
+    }
+
+    // when the first jog cancel stopped a jog, -1 if none did
+    public long getJogCancelledAt() {
+        return jogCancelledAt;
+    }
+
+    // jog blocks that started after that: lines that were still in the receive buffer
+    public long getJogBlocksAfterCancel() {
+        return jogBlocksAfterCancel;
+    }
+}
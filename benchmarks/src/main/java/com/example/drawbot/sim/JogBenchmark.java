@@ -0,0 +1,101 @@
+package com.example.drawbot.sim;
+
+import com.example.drawbot.Jogger;
+
+import java.util.Locale;
+import java.util.Random;
+
+// Press-and-hold jogging with the app's Jogger on a simulated link to the GRBL stand-in: how far the
+// pen moves after the button comes up, how long until it stands still, and whether a jog line that
+// was still on its way started moving again after the cancel. Runs headless on the JVM:
+//
+//   ./gradlew :benchmarks:jogBenchmark -PsimArgs="--latencies 10,50,150"
+//
+// Options: --latencies MS,... (one way), --holds MS,..., --feed MM_PER_MIN, --baud N, --jitter MS, --seed N
+public final class JogBenchmark {
+    private JogBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        PlotSimulation.Settings settings = new PlotSimulation.Settings();
+        double[] latencies = {10, 20, 50, 100};
+        long[] holds = {80, 500, 2000};
+        double feed = 1000;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--latencies": {
+                    String[] parts = args[++i].split(",");
+                    latencies = new double[parts.length];
+                    for (int p = 0; p < parts.length; p++) {
+                        latencies[p] = Double.parseDouble(parts[p]);
+                    }
+                    break;
+                }
+                case "--holds": {
+                    String[] parts = args[++i].split(",");
+                    holds = new long[parts.length];
+                    for (int p = 0; p < parts.length; p++) {
+                        holds[p] = Long.parseLong(parts[p]);
+                    }
+                    break;
+                }
+                case "--feed": feed = Double.parseDouble(args[++i]); break;
+                case "--baud": settings.baud = Integer.parseInt(args[++i]); break;
+                case "--jitter": settings.jitterMs = Double.parseDouble(args[++i]); break;
+                case "--seed": settings.seed = Long.parseLong(args[++i]); break;
+                default:
+                    System.err.println("Unknown option " + arg);
+                    System.exit(2);
+                    return;
+            }
+        }
+
+        System.out.printf(Locale.US, "link %d baud, jitter %.1f ms, jog feed %.0f mm/min%n%n",
+                settings.baud, settings.jitterMs, feed);
+        System.out.printf(Locale.US, "%10s %8s %9s %10s %13s %14s %11s%n", "latency", "hold", "segments",
+                "moved mm", "after up mm", "stopped after", "late jogs");
+        for (double latency : latencies) {
+            for (long hold : holds) {
+                settings.latencyMs = latency;
+                EventLoop loop = new EventLoop();
+                SimulatedPlotter plotter = new SimulatedPlotter(loop, settings, new Random(settings.seed));
+                GrblSimulator grbl = plotter.getGrbl();
+                Jogger jogger = new Jogger(new Jogger.Output() {
+                    @Override
+                    public void send(String line) {
+                        plotter.getStreamer().send(line);
+                    }
+
+                    @Override
+                    public void sendRealtime(char command) {
+                        plotter.getStreamer().send(String.valueOf(command));
+                    }
+
+                    @Override
+                    public void onRejected(String error) {
+                        System.err.println("jog rejected: " + error);
+                    }
+                }, plotter.createScheduler());
+                plotter.setOnReply(jogger::onReply);
+
+                double jogFeed = feed;
+                double[] atRelease = new double[3];
+                loop.at(0, () -> jogger.press(1, 0, jogFeed));
+                loop.at(hold * 1_000_000L, () -> {
+                    System.arraycopy(grbl.position(), 0, atRelease, 0, 3);
+                    jogger.release();
+                });
+                loop.run(60_000_000_000L);
+
+                double[] end = grbl.position();
+                double after = Math.hypot(end[0] - atRelease[0], end[1] - atRelease[1]);
+                double stoppedMs = (grbl.getLastMotionEnd() - hold * 1_000_000L) / 1e6;
+                System.out.printf(Locale.US, "%7.0f ms %5d ms %9d %10.2f %13.2f %11.0f ms %11d%n", latency, hold,
+                        jogger.getSegments(), Math.hypot(end[0], end[1]), after, stoppedMs,
+                        grbl.getJogBlocksAfterCancel());
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.drawbot.sim;
+
+import java.util.Locale;
+
+// End-to-end latency of live drawing: a synthetic finger trace through the app's LiveSession to a
+// simulated GRBL, for a few finger speeds and in-flight budgets (drawing time on its way to the pen). Runs headless on the JVM:
+//
+//   ./gradlew :benchmarks:liveBenchmark -PsimArgs="--baud 115200 --latency 10"
+//
+// "queued" is touch until GRBL answered the move, "drawn" touch until a status report put the pen
+// there (so good to the 100 ms status interval), "lag" how far the pen was behind the oldest touch
+// point not drawn yet, sampled every 10 ms, "tail" last touch until the pen got there.
+//
+// Options: --speeds MM_PER_S,... (finger), --ahead MS,..., --strokes N, --sample-hz N,
+//          --baud N, --latency MS, --jitter MS, --seed N, --feed MM_PER_MIN, --pen-delay MS
+public final class LiveBenchmark {
+    private LiveBenchmark() {
+    }
+
+    public static void main(String[] args) {
+        LiveSimulation.Settings settings = new LiveSimulation.Settings();
+        double[] speeds = {15, 30, 60};
+        long[] aheads = {100, 250, 500, 1000};
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--speeds": {
+                    String[] parts = args[++i].split(",");
+                    speeds = new double[parts.length];
+                    for (int p = 0; p < parts.length; p++) {
+                        speeds[p] = Double.parseDouble(parts[p]);
+                    }
+                    break;
+                }
+                case "--ahead": {
+                    String[] parts = args[++i].split(",");
+                    aheads = new long[parts.length];
+                    for (int p = 0; p < parts.length; p++) {
+                        aheads[p] = Long.parseLong(parts[p]);
+                    }
+                    break;
+                }
+                case "--strokes": settings.strokes = Integer.parseInt(args[++i]); break;
+                case "--sample-hz": settings.sampleHz = Double.parseDouble(args[++i]); break;
+                case "--baud": settings.plotter.baud = Integer.parseInt(args[++i]); break;
+                case "--latency": settings.plotter.latencyMs = Double.parseDouble(args[++i]); break;
+                case "--jitter": settings.plotter.jitterMs = Double.parseDouble(args[++i]); break;
+                case "--seed": settings.plotter.seed = Long.parseLong(args[++i]); break;
+                case "--feed": settings.feed = Double.parseDouble(args[++i]); break;
+                case "--pen-delay": settings.plotter.penDelayMs = Double.parseDouble(args[++i]); break;
+                default:
+                    System.err.println("Unknown option " + arg);
+                    System.exit(2);
+                    return;
+            }
+        }
+
+        System.out.printf(Locale.US, "link %d baud, latency %.1f ms, jitter %.1f ms, feed %.0f mm/min, "
+                        + "%d strokes sampled at %.0f Hz%n%n", settings.plotter.baud, settings.plotter.latencyMs,
+                settings.plotter.jitterMs, settings.feed, settings.strokes, settings.sampleHz);
+        System.out.printf(Locale.US, "%8s %8s %7s %6s %7s %11s %11s %11s %11s %11s %9s%n",
+                "finger", "ahead", "touches", "lines", "thinned", "queued p50", "queued p95",
+                "drawn p50", "drawn p95", "lag max", "tail s");
+        for (double speed : speeds) {
+            for (long ahead : aheads) {
+                settings.fingerSpeed = speed;
+                settings.aheadMs = ahead;
+                LiveSimulation.Result r = LiveSimulation.run(settings);
+                System.out.printf(Locale.US, "%5.0f/s %5d ms %7d %6d %7d %8.0f ms %8.0f ms %8.0f ms %8.0f ms %8.0f ms %9.2f%s%n",
+                        speed, ahead, r.samples, r.linesSent, r.thinnedOut,
+                        r.queuedP50Micros / 1000.0, r.queuedP95Micros / 1000.0,
+                        r.drawnP50Micros / 1000.0, r.drawnP95Micros / 1000.0, r.lagMaxMicros / 1000.0,
+                        r.tailSeconds, r.errors + r.rxOverflowBytes > 0
+                                ? "  (" + r.errors + " errors, " + r.rxOverflowBytes + " bytes lost)" : "");
+            }
+        }
+    }
+}
@@ -0,0 +1,175 @@
+package com.example.drawbot.sim;
+
+import com.example.drawbot.LatencyHistogram;
+import com.example.drawbot.LiveSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// A finger drawing on the phone, replayed through the app's LiveSession on a SimulatedPlotter.
+// The trace is a few shapes (circle, zigzag, spiral, figure eight) traced at a constant finger
+// speed and sampled at sampleHz with a little jitter, with a pause between the strokes.
+public class LiveSimulation {
+    private static final double TRACE_STEP_MM = 0.05;
+    private static final double NOISE_MM = 0.05;
+    private static final long LAG_SAMPLE_NANOS = 10_000_000L;
+
+    public static final class Settings {
+        public PlotSimulation.Settings plotter = new PlotSimulation.Settings();
+        public double feed = 3000;          // mm/min, the machine's max rate as the app uses it
+        public double fingerSpeed = 30;     // mm/s on the work area
+        public double sampleHz = 120;
+        public double pauseMs = 400;        // finger up between strokes
+        public int strokes = 8;
+        public long aheadMs = LiveSession.DEFAULT_AHEAD_MS;
+    }
+
+    public static final class Result {
+        public int samples, linesSent, thinnedOut;
+        public long queuedP50Micros, queuedP95Micros;
+        public long drawnP50Micros, drawnP95Micros, drawnMaxMicros;
+        public long lagP95Micros, lagMaxMicros;     // oldest undrawn touch, sampled every 10 ms
+        public double tailSeconds;                  // last touch until the pen got there
+        public long rxOverflowBytes, errors;
+    }
+
+    private LiveSimulation() {
+    }
+
+    public static Result run(Settings settings) {
+        EventLoop loop = new EventLoop();
+        Random random = new Random(settings.plotter.seed);
+        SimulatedPlotter plotter = new SimulatedPlotter(loop, settings.plotter, random);
+        LiveSession session = new LiveSession(new LiveSession.Output() {
+            @Override
+            public void send(String line) {
+                plotter.getStreamer().send(line);
+            }
+
+            @Override
+            public void requestStatus() {
+                plotter.getStreamer().requestStatus();
+            }
+        }, plotter.createScheduler(), settings.feed, settings.aheadMs);
+        plotter.setOnReply(session::onReply);
+
+        session.start();
+        long t = 1_000_000_000L;
+        long periodNanos = (long) (1e9 / settings.sampleHz);
+        for (int s = 0; s < settings.strokes; s++) {
+            List<double[]> path = shape(s, random);
+            double length = 0;
+            for (int i = 1; i < path.size(); i++) {
+                length += Math.hypot(path.get(i)[0] - path.get(i - 1)[0], path.get(i)[1] - path.get(i - 1)[1]);
+            }
+            long duration = (long) (length / settings.fingerSpeed * 1e9);
+            int index = 0;
+            double walked = 0;
+            for (long at = 0; ; at += periodNanos) {
+                boolean last = at >= duration;
+                double target = last ? length : length * at / duration;
+                while (index + 1 < path.size()) {
+                    double step = Math.hypot(path.get(index + 1)[0] - path.get(index)[0],
+                            path.get(index + 1)[1] - path.get(index)[1]);
+                    if (walked + step > target) break;
+                    walked += step;
+                    index++;
+                }
+                double x = path.get(index)[0] + (random.nextDouble() * 2 - 1) * NOISE_MM;
+                double y = path.get(index)[1] + (random.nextDouble() * 2 - 1) * NOISE_MM;
+                long when = t + at;
+                if (at == 0) {
+                    loop.at(when, () -> session.touchDown(x, y, when));
+                } else if (last) {
+                    loop.at(when, () -> session.touchUp(x, y, when));
+                    t = when;
+                    break;
+                } else {
+                    loop.at(when, () -> session.touchMove(x, y, when));
+                }
+            }
+            t += (long) (settings.pauseMs * 1e6);
+        }
+        long lastTouch = t - (long) (settings.pauseMs * 1e6);
+
+        LatencyHistogram lag = new LatencyHistogram();
+        long[] caughtUp = {-1};
+        Runnable[] sampleLag = new Runnable[1];
+        sampleLag[0] = () -> {
+            long now = loop.nanoTime();
+            long behind = session.getLagNanos(now);
+            lag.record(behind / 1000);
+            if (now >= lastTouch && behind == 0) {
+                caughtUp[0] = now;
+                session.stop();
+                return;
+            }
+            loop.after(LAG_SAMPLE_NANOS, sampleLag[0]);
+        };
+        loop.at(1_000_000_000L, sampleLag[0]);
+        loop.run(lastTouch + (long) (settings.plotter.limitHours * 3600e9));
+
+        Result result = new Result();
+        result.samples = session.getSamples();
+        result.linesSent = session.getMovesSent();
+        result.thinnedOut = session.getThinnedOut();
+        result.queuedP50Micros = session.queuedLatency.getPercentile(50);
+        result.queuedP95Micros = session.queuedLatency.getPercentile(95);
+        result.drawnP50Micros = session.drawnLatency.getPercentile(50);
+        result.drawnP95Micros = session.drawnLatency.getPercentile(95);
+        result.drawnMaxMicros = session.drawnLatency.getMax();
+        result.lagP95Micros = lag.getPercentile(95);
+        result.lagMaxMicros = lag.getMax();
+        result.tailSeconds = caughtUp[0] >= 0 ? (caughtUp[0] - lastTouch) / 1e9 : Double.NaN;
+        result.rxOverflowBytes = plotter.getGrbl().getRxOverflowBytes();
+        result.errors = plotter.getGrbl().getErrorsSent();
+        return result;
+    }
+
+    // stroke s of the trace as a dense polyline in mm, somewhere on a 100 x 100 area
+    private static List<double[]> shape(int s, Random random) {
+        double cx = 25 + random.nextDouble() * 50, cy = 25 + random.nextDouble() * 50;
+        List<double[]> path = new ArrayList<>();
+        switch (s % 4) {
+            case 0: {   // circle, r = 12
+                int n = (int) (2 * Math.PI * 12 / TRACE_STEP_MM);
+                for (int i = 0; i <= n; i++) {
+                    double a = 2 * Math.PI * i / n;
+                    path.add(new double[]{cx + 12 * Math.cos(a), cy + 12 * Math.sin(a)});
+                }
+                break;
+            }
+            case 1: {   // zigzag, five 8 mm teeth
+                for (int k = 0; k < 10; k++) {
+                    double x0 = cx - 20 + 4 * k, y0 = cy + (k % 2 == 0 ? -4 : 4);
+                    double x1 = x0 + 4, y1 = cy + (k % 2 == 0 ? 4 : -4);
+                    int n = (int) (Math.hypot(x1 - x0, y1 - y0) / TRACE_STEP_MM);
+                    for (int i = 0; i < n; i++) {
+                        path.add(new double[]{x0 + (x1 - x0) * i / n, y0 + (y1 - y0) * i / n});
+                    }
+                }
+                break;
+            }
+            case 2: {   // spiral, three turns out to r = 15
+                double turns = 3;
+                path.add(new double[]{cx, cy});
+                for (double a = 0; a < 2 * Math.PI * turns; ) {
+                    a += TRACE_STEP_MM / Math.max(1, 15 * a / (2 * Math.PI * turns));
+                    double r = 15 * a / (2 * Math.PI * turns);
+                    path.add(new double[]{cx + r * Math.cos(a), cy + r * Math.sin(a)});
+                }
+                break;
+            }
+            default: {  // figure eight, 30 x 15
+                int n = (int) (2 * Math.PI * 12 / TRACE_STEP_MM);
+                for (int i = 0; i <= n; i++) {
+                    double a = 2 * Math.PI * i / n;
+                    path.add(new double[]{cx + 15 * Math.sin(a), cy + 7.5 * Math.sin(2 * a)});
+                }
+                break;
+            }
+        }
+        return path;
+    }
+}
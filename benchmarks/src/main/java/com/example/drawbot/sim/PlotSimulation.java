@@ -0,0 +1,74 @@
+package com.example.drawbot.sim;
+
+import com.example.drawbot.GCodeStreamer;
+import com.example.drawbot.StreamMetrics;
+import com.example.drawbot.StreamTuner;
+
+import java.util.Random;
+
+// One job streamed by the app's GCodeStreamer over a simulated serial link to a GrblSimulator
+// (a SimulatedPlotter), all on one virtual clock.
+public class PlotSimulation {
+    public static final class Settings {
+        public int baud = 9600;
+        public double latencyMs = 20;
+        public double jitterMs = 10;
+        public long seed = 1;
+        public double defaultFeed = 1000;   // mm/min for G1 without F
+        public double rapidRate = 3000;     // mm/min for G0
+        public double penDelayMs = 150;
+        public double limitHours = 24;
+        // StreamTuner parameters as remembered from an earlier job, null to start learning from the defaults
+        public StreamTuner.Parameters tuning = null;
+    }
+
+    public static final class Result {
+        public boolean finished;
+        public int lines;
+        public double plotSeconds;      // start of the job until the machine stopped after the last line
+        public double streamSeconds;    // start of the job until the streamer sent its last line
+        public long idleGaps;
+        public double idleSeconds;
+        public double longestIdleSeconds;
+        public long bytesSent, bytesReceived;
+        public long errors, timeouts, rxOverflowBytes;
+        public long ackP50Micros, ackP99Micros;
+        public long plannerStarvation;
+        public StreamTuner.Parameters tuning;   // what the streamer ended the job with
+    }
+
+    private PlotSimulation() {
+    }
+
+    public static Result run(String gCodeText, Settings settings) {
+        EventLoop loop = new EventLoop();
+        SimulatedPlotter plotter = new SimulatedPlotter(loop, settings, new Random(settings.seed));
+        GrblSimulator grbl = plotter.getGrbl();
+
+        GCodeStreamer.Job job = GCodeStreamer.prepare(gCodeText);
+        long startedAt = loop.nanoTime();
+        plotter.start(job);
+        loop.run(startedAt + (long) (settings.limitHours * 3600e9));
+
+        long finishedAt = plotter.getFinishedAt();
+        StreamMetrics metrics = plotter.getStreamer().getMetrics();
+        Result result = new Result();
+        result.finished = finishedAt >= 0 && grbl.isIdle();
+        result.lines = job.lines.size();
+        result.plotSeconds = (Math.max(grbl.getLastMotionEnd(), finishedAt) - startedAt) / 1e9;
+        result.streamSeconds = finishedAt >= 0 ? (finishedAt - startedAt) / 1e9 : Double.NaN;
+        result.idleGaps = grbl.getIdleGaps();
+        result.idleSeconds = grbl.getIdleNanos() / 1e9;
+        result.longestIdleSeconds = grbl.getLongestIdleNanos() / 1e9;
+        result.bytesSent = plotter.getBytesSent();
+        result.bytesReceived = plotter.getBytesReceived();
+        result.errors = grbl.getErrorsSent();
+        result.timeouts = metrics.timeouts.sum();
+        result.rxOverflowBytes = grbl.getRxOverflowBytes();
+        result.ackP50Micros = metrics.ackLatency.getPercentile(50);
+        result.ackP99Micros = metrics.ackLatency.getPercentile(99);
+        result.plannerStarvation = metrics.plannerStarvation.sum();
+        result.tuning = plotter.getTuning();
+        return result;
+    }
+}
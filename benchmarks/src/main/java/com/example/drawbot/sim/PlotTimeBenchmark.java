@@ -0,0 +1,105 @@
+package com.example.drawbot.sim;
+
+import com.example.drawbot.StreamTuner;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// End-to-end plot time of the reference drawings (and any --file) with the app's sender logic,
+// on a simulated serial link to a GRBL stand-in. Runs headless on the JVM:
+//
+//   ./gradlew :benchmarks:plotBenchmark -PsimArgs="--latency 40 --jitter 20 --csv"
+//
+// Options: --baud N, --latency MS, --jitter MS, --seed N, --feed MM_PER_MIN, --rapid MM_PER_MIN,
+//          --pen-delay MS, --tuning "window=4;delay=0;timeout=3000" (start with remembered parameters),
+//          --file PATH (repeatable), --only NAME, --csv
+public final class PlotTimeBenchmark {
+    private PlotTimeBenchmark() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        PlotSimulation.Settings settings = new PlotSimulation.Settings();
+        Map<String, String> drawings = new LinkedHashMap<>(ReferenceDrawings.all());
+        Map<String, String> files = new LinkedHashMap<>();
+        String only = null;
+        boolean csv = false;
+
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            switch (arg) {
+                case "--baud": settings.baud = Integer.parseInt(args[++i]); break;
+                case "--latency": settings.latencyMs = Double.parseDouble(args[++i]); break;
+                case "--jitter": settings.jitterMs = Double.parseDouble(args[++i]); break;
+                case "--seed": settings.seed = Long.parseLong(args[++i]); break;
+                case "--feed": settings.defaultFeed = Double.parseDouble(args[++i]); break;
+                case "--rapid": settings.rapidRate = Double.parseDouble(args[++i]); break;
+                case "--pen-delay": settings.penDelayMs = Double.parseDouble(args[++i]); break;
+                case "--tuning": {
+                    settings.tuning = StreamTuner.Parameters.deserialize(args[++i]);
+                    if (settings.tuning == null) {
+                        System.err.println("--tuning expects window=N;delay=MS;timeout=MS");
+                        System.exit(2);
+                        return;
+                    }
+                    break;
+                }
+                case "--only": only = args[++i]; break;
+                case "--csv": csv = true; break;
+                case "--file": {
+                    Path path = Paths.get(args[++i]);
+                    files.put(path.getFileName().toString(),
+                            new String(Files.readAllBytes(path), StandardCharsets.UTF_8));
+                    break;
+                }
+                default:
+                    System.err.println("Unknown option " + arg);
+                    System.exit(2);
+                    return;
+            }
+        }
+        drawings.putAll(files);
+
+        if (csv) {
+            System.out.println("drawing,lines,finished,plot_s,stream_s,idle_gaps,idle_s,longest_idle_s,"
+                    + "bytes_sent,bytes_received,errors,timeouts,rx_overflow,ack_p50_ms,ack_p99_ms,starvation,"
+                    + "window,delay_ms,timeout_ms");
+        } else {
+            System.out.printf(Locale.US, "link %d baud, latency %.1f ms, jitter %.1f ms, seed %d%n%n",
+                    settings.baud, settings.latencyMs, settings.jitterMs, settings.seed);
+            System.out.printf(Locale.US, "%-12s %7s %10s %10s %9s %9s %10s %9s %7s %8s %8s %9s%n",
+                    "drawing", "lines", "plot s", "stream s", "idle gaps", "idle s", "sent B", "recv B",
+                    "errors", "timeouts", "p50 ms", "p99 ms");
+        }
+
+        for (Map.Entry<String, String> drawing : drawings.entrySet()) {
+            if (only != null && !only.equals(drawing.getKey())) continue;
+            long wallStart = System.nanoTime();
+            PlotSimulation.Result r = PlotSimulation.run(drawing.getValue(), settings);
+            double wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+
+            if (csv) {
+                System.out.printf(Locale.US, "%s,%d,%b,%.3f,%.3f,%d,%.3f,%.3f,%d,%d,%d,%d,%d,%.3f,%.3f,%d,%d,%d,%d%n",
+                        drawing.getKey(), r.lines, r.finished, r.plotSeconds, r.streamSeconds, r.idleGaps,
+                        r.idleSeconds, r.longestIdleSeconds, r.bytesSent, r.bytesReceived, r.errors, r.timeouts,
+                        r.rxOverflowBytes, r.ackP50Micros / 1000.0, r.ackP99Micros / 1000.0, r.plannerStarvation,
+                        r.tuning.window, r.tuning.sendDelayMs, r.tuning.timeoutMs);
+            } else {
+                System.out.printf(Locale.US, "%-12s %7d %10.1f %10.1f %9d %9.1f %10d %9d %7d %8d %8.1f %9.1f%s%n",
+                        drawing.getKey(), r.lines, r.plotSeconds, r.streamSeconds, r.idleGaps, r.idleSeconds,
+                        r.bytesSent, r.bytesReceived, r.errors, r.timeouts, r.ackP50Micros / 1000.0,
+                        r.ackP99Micros / 1000.0, r.finished ? "" : "  (did not finish)");
+                if (r.rxOverflowBytes > 0) {
+                    System.out.printf(Locale.US, "%-12s %d bytes lost to a full receive buffer%n", "", r.rxOverflowBytes);
+                }
+                System.err.printf(Locale.US, "  %s simulated in %.2f s, ended with %s%n", drawing.getKey(),
+                        wallSeconds, r.tuning);
+            }
+        }
+    }
+}
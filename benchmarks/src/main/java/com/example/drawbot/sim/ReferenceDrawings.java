@@ -0,0 +1,99 @@
+package com.example.drawbot.sim;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+// Fixed drawings in svg2gcode style (G0 travel, G1 Z-1 plunge, G1 strokes, G0 Z5 retract), so the
+// full conversion path of the app runs too. They are generated, not stored, and never change:
+// - spiral: one long stroke of short segments, the case where the sender has to keep up
+// - hatch:  many short strokes, dominated by pen changes and travel
+// - sketch: random-walk paths of mixed length, close to a traced photo
+final class ReferenceDrawings {
+    private ReferenceDrawings() {
+    }
+
+    static Map<String, String> all() {
+        Map<String, String> drawings = new LinkedHashMap<>();
+        drawings.put("spiral", spiral());
+        drawings.put("hatch", hatch());
+        drawings.put("sketch", sketch());
+        return drawings;
+    }
+
+    static String spiral() {
+        StringBuilder sb = preamble();
+        double cx = 100, cy = 100;
+        travel(sb, cx, cy);
+        penDown(sb);
+        for (int i = 1; i <= 2000; i++) {
+            double angle = i * 0.05;
+            double radius = i * 0.045;
+            stroke(sb, cx + Math.cos(angle) * radius, cy + Math.sin(angle) * radius, i == 1);
+        }
+        penUp(sb);
+        return sb.toString();
+    }
+
+    static String hatch() {
+        StringBuilder sb = preamble();
+        for (int row = 0; row < 300; row++) {
+            double y = 20 + row * 0.5;
+            boolean forward = row % 2 == 0;
+            travel(sb, forward ? 70 : 130, y);
+            penDown(sb);
+            stroke(sb, forward ? 130 : 70, y, true);
+            penUp(sb);
+        }
+        return sb.toString();
+    }
+
+    static String sketch() {
+        Random random = new Random(0x5ce7c4L);
+        StringBuilder sb = preamble();
+        double x = 100, y = 100;
+        for (int path = 0; path < 120; path++) {
+            x = clamp(x + (random.nextDouble() - 0.5) * 40);
+            y = clamp(y + (random.nextDouble() - 0.5) * 40);
+            travel(sb, x, y);
+            penDown(sb);
+            double heading = random.nextDouble() * Math.PI * 2;
+            int segments = 3 + random.nextInt(40);
+            for (int i = 0; i < segments; i++) {
+                heading += (random.nextDouble() - 0.5) * 0.8;
+                x = clamp(x + Math.cos(heading) * (0.3 + random.nextDouble()));
+                y = clamp(y + Math.sin(heading) * (0.3 + random.nextDouble()));
+                stroke(sb, x, y, i == 0);
+            }
+            penUp(sb);
+        }
+        return sb.toString();
+    }
+
+    private static StringBuilder preamble() {
+        return new StringBuilder("; svg2gcode reference drawing\nG21\nG90\nG0 Z5\n");
+    }
+
+    private static void travel(StringBuilder sb, double x, double y) {
+        sb.append(String.format(Locale.US, "G0 X%.3f Y%.3f\n", x, y));
+    }
+
+    private static void penDown(StringBuilder sb) {
+        sb.append("G1 Z-1 F300\n");
+    }
+
+    private static void penUp(StringBuilder sb) {
+        sb.append("G0 Z5\n");
+    }
+
+    private static void stroke(StringBuilder sb, double x, double y, boolean withFeed) {
+        sb.append(String.format(Locale.US, "G1 X%.3f Y%.3f", x, y));
+        if (withFeed) sb.append(" F1000");
+        sb.append('\n');
+    }
+
+    private static double clamp(double value) {
+        return Math.max(5, Math.min(195, value));
+    }
+}
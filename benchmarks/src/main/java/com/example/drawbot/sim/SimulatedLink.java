@@ -0,0 +1,48 @@
+package com.example.drawbot.sim;
+
+import java.util.Random;
+import java.util.function.Consumer;
+
+// One direction of a serial link: bytes go over the wire one after another at the baud rate
+// (8N1, 10 bits per byte), then arrive after the link latency plus a random jitter.
+// Like an RFCOMM channel it never reorders, a chunk never arrives before the one sent before it.
+public class SimulatedLink {
+    private final EventLoop loop;
+    private final long nanosPerByte;
+    private final long latencyNanos;
+    private final long jitterNanos;
+    private final Random random;
+    private final Consumer<String> receiver;
+
+    private long wireFreeAt = 0;
+    private long lastArrival = 0;
+    private long bytes = 0;
+
+    public SimulatedLink(EventLoop loop, int baud, double latencyMs, double jitterMs, Random random,
+                         Consumer<String> receiver) {
+        this.loop = loop;
+        this.nanosPerByte = 10L * 1_000_000_000L / baud;
+        this.latencyNanos = (long) (latencyMs * 1_000_000);
+        this.jitterNanos = (long) (jitterMs * 1_000_000);
+        this.random = random;
+        this.receiver = receiver;
+    }
+
+    public void send(String data) {
+        if (data.isEmpty()) return;
+        bytes += data.length();
+
+        long wireStart = Math.max(loop.nanoTime(), wireFreeAt);
+        wireFreeAt = wireStart + data.length() * nanosPerByte;
+
+        long jitter = jitterNanos > 0 ? (long) ((random.nextDouble() * 2 - 1) * jitterNanos) : 0;
+        long arrival = wireFreeAt + Math.max(0, latencyNanos + jitter);
+        arrival = Math.max(arrival, lastArrival);
+        lastArrival = arrival;
+        loop.at(arrival, () -> receiver.accept(data));
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+}
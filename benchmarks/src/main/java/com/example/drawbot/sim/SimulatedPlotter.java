@@ -0,0 +1,147 @@
+package com.example.drawbot.sim;
+
+import com.example.drawbot.GCodeStreamer;
+import com.example.drawbot.StreamTuner;
+
+import java.util.Random;
+import java.util.function.Consumer;
+
+// One machine as the app sees it: the app's GCodeStreamer on a simulated serial link to a
+// GrblSimulator. Several of them can share one EventLoop (see FleetSimulation).
+public class SimulatedPlotter {
+    // the streamer's timer: tasks run on the event loop, cancelAll drops everything scheduled so far
+    private static final class Scheduler implements GCodeStreamer.Scheduler {
+        private final EventLoop loop;
+        private int generation = 0;
+
+        Scheduler(EventLoop loop) {
+            this.loop = loop;
+        }
+
+        @Override
+        public void schedule(Runnable task, long delayMs) {
+            int scheduledIn = generation;
+            loop.after(delayMs * 1_000_000L, () -> {
+                if (scheduledIn == generation) task.run();
+            });
+        }
+
+        @Override
+        public void cancelAll() {
+            generation++;
+        }
+
+        @Override
+        public long nanoTime() {
+            return loop.nanoTime();
+        }
+    }
+
+    private final EventLoop loop;
+    private final GrblSimulator grbl;
+    private final SimulatedLink toGrbl, fromGrbl;
+    private final GCodeStreamer streamer;
+    private Runnable onFinished;
+    private Consumer<String> onReply;
+    private long finishedAt = -1;
+
+    public SimulatedPlotter(EventLoop loop, PlotSimulation.Settings settings, Random random) {
+        this.loop = loop;
+        grbl = new GrblSimulator(loop, settings.defaultFeed, settings.rapidRate, settings.penDelayMs);
+        toGrbl = new SimulatedLink(loop, settings.baud, settings.latencyMs, settings.jitterMs,
+                random, grbl::receive);
+        GCodeStreamer[] self = new GCodeStreamer[1];
+        fromGrbl = new SimulatedLink(loop, settings.baud, settings.latencyMs, settings.jitterMs,
+                random, data -> self[0].onData(data));
+        grbl.setOutput(fromGrbl::send);
+
+        streamer = new GCodeStreamer(new GCodeStreamer.Transport() {
+            @Override
+            public boolean isConnected() {
+                return true;
+            }
+
+            @Override
+            public boolean send(String data) {
+                toGrbl.send(data);
+                return true;
+            }
+        }, new Scheduler(loop), null, new GCodeStreamer.Listener() {
+            @Override
+            public void onLog(String message) {
+            }
+
+            @Override
+            public void onReply(String line) {
+                if (onReply != null) onReply.accept(line);
+            }
+
+            @Override
+            public void onProgress(int processed, int total) {
+            }
+
+            @Override
+            public void onRunningChanged(boolean running) {
+            }
+
+            @Override
+            public void onFinished() {
+                finishedAt = loop.nanoTime();
+                // the next job starts from what this one learned, as PlotterConnection does
+                if (self[0].isTuned()) self[0].setRememberedTuning(self[0].getTuning());
+                if (onFinished != null) onFinished.run();
+            }
+
+            @Override
+            public void onSettled() {
+            }
+        });
+        self[0] = streamer;
+        streamer.setRememberedTuning(settings.tuning);
+    }
+
+    // called from the streamer's callback, so whatever it starts should go through the loop
+    public void setOnFinished(Runnable onFinished) {
+        this.onFinished = onFinished;
+    }
+
+    // every reply line from GRBL, status reports included
+    public void setOnReply(Consumer<String> onReply) {
+        this.onReply = onReply;
+    }
+
+    // a timer of its own on the plotter's event loop, as PlotterConnection gives a LiveSession
+    public GCodeStreamer.Scheduler createScheduler() {
+        return new Scheduler(loop);
+    }
+
+    public void start(GCodeStreamer.Job job) {
+        finishedAt = -1;
+        streamer.start(job);
+    }
+
+    // when the streamer got the ok for the last line of the current job, -1 while it runs
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public GCodeStreamer getStreamer() {
+        return streamer;
+    }
+
+    public GrblSimulator getGrbl() {
+        return grbl;
+    }
+
+    public long getBytesSent() {
+        return toGrbl.getBytes();
+    }
+
+    public long getBytesReceived() {
+        return fromGrbl.getBytes();
+    }
+
+    public StreamTuner.Parameters getTuning() {
+        return streamer.getTuning();
+    }
+}
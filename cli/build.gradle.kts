@@ -0,0 +1,19 @@
+plugins {
+    application
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+dependencies {
+    implementation(project(":core"))
+}
+
+// ./gradlew :cli:installDist, then cli/build/install/drawbot/bin/drawbot --port /dev/ttyUSB0 drawing.gcode
+// or straight from the build: ./gradlew :cli:run --args="--dry-run --optimize drawing.gcode"
+application {
+    applicationName = "drawbot"
+    mainClass.set("com.example.drawbot.cli.DrawBotCli")
+}
@@ -0,0 +1,512 @@
+package com.example.drawbot.cli;
+
+import com.example.drawbot.DrawingPartitioner;
+import com.example.drawbot.FeedPlanner;
+import com.example.drawbot.GCodeStreamer;
+import com.example.drawbot.GCodeValidator;
+import com.example.drawbot.JobTransform;
+import com.example.drawbot.StreamMetrics;
+import com.example.drawbot.StreamTuner;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Streams a G-code file to a plotter from a desktop or a workshop Linux box, with the app's
+// conversion, validation and GCodeStreamer (window, tuning and timeouts included):
+//
+//   drawbot --port /dev/ttyUSB0 --baud 115200 drawing.gcode
+//   drawbot --tcp 192.168.4.1:23 --optimize --max-x 200 --max-y 280 drawing.gcode
+//   drawbot --dry-run --optimize --output converted.gcode drawing.gcode
+//   drawbot --dry-run --scale 0.5 --rotate 90 --offset-x 200 --max-x 200 --max-y 280 drawing.gcode
+//
+// Options: --port DEVICE or --tcp HOST:PORT, --baud N, --no-stty (leave the serial line settings alone),
+//          --feed MM_PER_MIN, --max-x MM, --max-y MM, --no-validate, --optimize (redraw every stroke
+//          from its nearer end, drops everything but the drawing), --plan-feeds (travel at --feed,
+//          drawing slowed for curves), --acceleration MM_PER_S2, --tuning FILE (remembered link
+//          tuning, read before and written after the job), --metrics FILE (JSON), --output FILE
+//          (the lines that are sent), --dry-run, --wait MS (for the GRBL banner), --verbose, --quiet,
+//          --scale FACTOR, --rotate DEGREES (counter-clockwise), --mirror (left to right), --offset-x MM,
+//          --offset-y MM: fit the drawing to the paper while it streams, clipped to --max-x/--max-y
+//
+// Exit codes: 0 drawn, 1 the link was lost or the job could not start, 2 bad arguments or input,
+// 130 stopped with Ctrl-C (the pen is lifted and the machine held first).
+public final class DrawBotCli {
+    private static final int DEFAULT_BAUD = 115200;
+    private static final double DEFAULT_FEED = 800.0;   // the app's default_speed
+    private static final double DEFAULT_ACCELERATION = 10.0;   // max_speed, mm/s^2
+    private static final long BANNER_WAIT_MS = 2500;    // an Arduino resets when the port opens
+    private static final long STOP_GRACE_MS = 800;      // stop() sends ~ and $X after 500 ms
+    private static final long PROGRESS_INTERVAL_MS = 200;
+    private static final long PROGRESS_INTERVAL_PIPED_MS = 10_000;
+    private static final int MAX_SHOWN_ISSUES = 10;
+
+    private static final class Options {
+        String file, port, host;
+        int tcpPort = -1;
+        int baud = DEFAULT_BAUD;
+        boolean stty = true, validate = true, optimize = false, planFeeds = false;
+        boolean dryRun = false, verbose = false, quiet = false;
+        double feed = DEFAULT_FEED, acceleration = DEFAULT_ACCELERATION, maxX = Double.NaN, maxY = Double.NaN;
+        String tuningFile, metricsFile, outputFile;
+        long bannerWaitMs = BANNER_WAIT_MS;
+        double scale = 1, rotate = 0, offsetX = 0, offsetY = 0;
+        boolean mirror = false;
+        JobTransform transform = JobTransform.IDENTITY;
+    }
+
+    private final Options options;
+    private final boolean interactive = System.console() != null;
+    private final CountDownLatch banner = new CountDownLatch(1);
+    private final CountDownLatch done = new CountDownLatch(1);
+    private volatile int exitCode = 1;
+    private volatile boolean finished = false;
+    private long lastProgressAt = 0;
+    private int progressLength = 0;
+
+    private ScheduledExecutorService executor;
+    private Link link;
+    private GCodeStreamer streamer;
+
+    private DrawBotCli(Options options) {
+        this.options = options;
+    }
+
+    public static void main(String[] args) {
+        Options options;
+        try {
+            options = parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println("Usage: drawbot (--port DEVICE | --tcp HOST:PORT | --dry-run) [options] FILE");
+            System.exit(2);
+            return;
+        }
+        System.exit(new DrawBotCli(options).run());
+    }
+
+    private static Options parse(String[] args) {
+        Options o = new Options();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "--port": o.port = args[++i]; break;
+                    case "--tcp": {
+                        String target = args[++i];
+                        int colon = target.lastIndexOf(':');
+                        if (colon <= 0) throw new IllegalArgumentException("--tcp needs HOST:PORT");
+                        o.host = target.substring(0, colon);
+                        o.tcpPort = Integer.parseInt(target.substring(colon + 1));
+                        break;
+                    }
+                    case "--baud": o.baud = Integer.parseInt(args[++i]); break;
+                    case "--no-stty": o.stty = false; break;
+                    case "--feed": o.feed = Double.parseDouble(args[++i]); break;
+                    case "--max-x": o.maxX = Double.parseDouble(args[++i]); break;
+                    case "--max-y": o.maxY = Double.parseDouble(args[++i]); break;
+                    case "--no-validate": o.validate = false; break;
+                    case "--optimize": o.optimize = true; break;
+                    case "--plan-feeds": o.planFeeds = true; break;
+                    case "--acceleration": o.acceleration = Double.parseDouble(args[++i]); break;
+                    case "--tuning": o.tuningFile = args[++i]; break;
+                    case "--metrics": o.metricsFile = args[++i]; break;
+                    case "--output": o.outputFile = args[++i]; break;
+                    case "--dry-run": o.dryRun = true; break;
+                    case "--wait": o.bannerWaitMs = Long.parseLong(args[++i]); break;
+                    case "--verbose": o.verbose = true; break;
+                    case "--quiet": o.quiet = true; break;
+                    case "--scale": o.scale = Double.parseDouble(args[++i]); break;
+                    case "--rotate": o.rotate = Double.parseDouble(args[++i]); break;
+                    case "--mirror": o.mirror = true; break;
+                    case "--offset-x": o.offsetX = Double.parseDouble(args[++i]); break;
+                    case "--offset-y": o.offsetY = Double.parseDouble(args[++i]); break;
+                    default:
+                        if (arg.startsWith("--")) throw new IllegalArgumentException("Unknown option " + arg);
+                        if (o.file != null) throw new IllegalArgumentException("Only one file at a time");
+                        o.file = arg;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException(args[args.length - 1] + " needs a value");
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a number: " + e.getMessage());
+        }
+        if (o.file == null) throw new IllegalArgumentException("No G-code file given");
+        if (o.planFeeds && (!(o.feed > 0) || !(o.acceleration > 0))) {
+            throw new IllegalArgumentException("--plan-feeds needs a positive --feed and --acceleration");
+        }
+        if (!(o.scale > 0)) throw new IllegalArgumentException("--scale needs a positive factor");
+        o.transform = JobTransform.of(o.scale, o.mirror, o.rotate, o.offsetX, o.offsetY);
+        if (!o.transform.isIdentity() && o.maxX > 0 && o.maxY > 0) {
+            o.transform = o.transform.clippedTo(o.maxX, o.maxY);
+        }
+        if (!o.dryRun && (o.port == null) == (o.host == null)) {
+            throw new IllegalArgumentException("Give either --port or --tcp");
+        }
+        return o;
+    }
+
+    private int run() {
+        GCodeStreamer.Job job;
+        try {
+            job = load();
+        } catch (IOException e) {
+            System.err.println("Could not read " + e.getMessage());
+            return 2;
+        }
+        if (job.lines.isEmpty()) {
+            System.err.println(options.file + " has nothing to draw");
+            return 2;
+        }
+        if (options.dryRun) return 0;
+
+        try {
+            link = options.port != null
+                    ? Link.serial(options.port, options.baud, options.stty)
+                    : Link.tcp(options.host, options.tcpPort);
+        } catch (IOException e) {
+            System.err.println("Could not open " + (options.port != null ? options.port
+                    : options.host + ":" + options.tcpPort) + ": " + e.getMessage());
+            return 1;
+        }
+        System.out.println("Connected to " + link.getName());
+
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "streamer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        streamer = new GCodeStreamer(new GCodeStreamer.Transport() {
+            @Override
+            public boolean isConnected() {
+                return link.isOpen();
+            }
+
+            @Override
+            public boolean send(String data) {
+                return link.send(data);
+            }
+        }, new ExecutorScheduler(executor), null, new Listener());
+        link.startReading(data -> executor.execute(() -> streamer.onData(data)),
+                reason -> executor.execute(() -> onLinkLost(reason)));
+        Runtime.getRuntime().addShutdownHook(new Thread(this::stopOnExit, "stop-on-exit"));
+
+        try {
+            if (!banner.await(options.bannerWaitMs, TimeUnit.MILLISECONDS)) {
+                System.out.println("No GRBL banner after " + options.bannerWaitMs + " ms, starting anyway");
+            }
+            StreamTuner.Parameters tuning = loadTuning();
+            executor.execute(() -> {
+                streamer.setRememberedTuning(tuning);
+                if (!streamer.start(job, options.transform)) {
+                    System.err.println("The job could not start, the link is closed");
+                    done.countDown();
+                }
+            });
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 130;
+        }
+
+        printStats();
+        writeMetrics();
+        try {
+            link.close();
+        } catch (IOException e) {
+            // going away anyway
+        }
+        executor.shutdownNow();
+        return exitCode;
+    }
+
+    // reads, converts, optimizes, plans feeds and validates the file, in that order, and tells what came out
+    private GCodeStreamer.Job load() throws IOException {
+        Path path = Paths.get(options.file);
+        String text;
+        try {
+            text = new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IOException(options.file + ": " + e.getMessage(), e);
+        }
+
+        if (options.optimize) {
+            DrawingPartitioner partitioner = new DrawingPartitioner(GCodeStreamer.prepare(text).lines);
+            List<DrawingPartitioner.Piece> pieces = partitioner.strokeSets(1);
+            if (!pieces.isEmpty()) {
+                DrawingPartitioner.Piece piece = pieces.get(0);
+                text = piece.gCode;
+                System.out.printf(Locale.US, "Optimized: %d strokes, %.0f mm drawn, %.0f mm pen-up travel%n",
+                        piece.strokes, piece.drawLength, piece.travelLength);
+            }
+        }
+
+        // with a transform the limits apply to the transformed drawing, where it is clipped to them;
+        // feeds planned with the acceleration times the scale are the feeds of the scaled drawing
+        JobTransform transform = options.transform;
+        boolean transformed = !transform.isIdentity();
+        GCodeValidator validator = !options.validate ? null : transformed
+                ? new GCodeValidator(Double.NaN, Double.NaN, options.feed)
+                : new GCodeValidator(options.maxX, options.maxY, options.feed);
+        FeedPlanner planner = options.planFeeds
+                ? new FeedPlanner(options.feed, options.acceleration * transform.getScale()) : null;
+        GCodeStreamer.Job job = GCodeStreamer.prepare(text, planner, validator);
+        if (job.feeds != null) {
+            System.out.println("Feeds planned: " + job.feeds.feedWords + " F words, "
+                    + job.feeds.slowedSegments + " drawing moves slowed");
+        }
+        System.out.println(options.file + ": " + job.lines.size() + " lines, " + job.movementCommands
+                + " moves, estimated " + formatTime(GCodeStreamer.estimateSeconds(job.movementCommands,
+                job.lines.size())));
+        printValidation(job.validation);
+
+        if (transformed) {
+            printTransformed(job);
+        } else if (options.outputFile != null) {
+            Files.write(Paths.get(options.outputFile), job.lines, StandardCharsets.UTF_8);
+            System.out.println("Wrote " + options.outputFile);
+        }
+        return job;
+    }
+
+    // runs the job through the transform as the streamer will, writing the result to --output if given
+    private void printTransformed(GCodeStreamer.Job job) throws IOException {
+        JobTransform transform = options.transform;
+        JobTransform.Stage stage = transform.newStage();
+        List<String> out = new ArrayList<>();
+        BufferedWriter writer = options.outputFile != null
+                ? Files.newBufferedWriter(Paths.get(options.outputFile), StandardCharsets.UTF_8) : null;
+        try {
+            for (String line : job.lines) {
+                stage.apply(line, out);
+                if (writer != null) {
+                    for (String part : out) {
+                        writer.write(part);
+                        writer.newLine();
+                    }
+                }
+                out.clear();
+            }
+        } finally {
+            if (writer != null) writer.close();
+        }
+        System.out.println("Transformed: " + transform);
+        JobTransform.Bounds drawn = stage.getDrawnBounds();
+        System.out.println("Drawn: " + (drawn.isEmpty() ? "nothing" : drawn.toString()));
+        if (stage.getCutMoves() > 0) {
+            System.out.println("Cut to the work area: " + stage.getCutMoves() + " moves, the whole drawing is "
+                    + stage.getUnclippedBounds());
+        }
+        if (writer != null) System.out.println("Wrote " + options.outputFile);
+    }
+
+    private static void printValidation(GCodeValidator.Result validation) {
+        if (validation == null || validation.isClean()) return;
+        System.out.println("Checked for GRBL 1.1: " + validation.removed + " lines removed, "
+                + validation.rewritten + " rewritten, " + validation.warnings + " warnings");
+        int shown = Math.min(MAX_SHOWN_ISSUES, validation.issues.size());
+        for (int i = 0; i < shown; i++) {
+            System.out.println("  " + validation.issues.get(i));
+        }
+        int more = validation.removed + validation.rewritten + validation.warnings - shown;
+        if (more > 0) {
+            System.out.println("  ... and " + more + " more");
+        }
+    }
+
+    private final class Listener implements GCodeStreamer.Listener {
+        @Override
+        public void onLog(String message) {
+            // sent lines and replies only with --verbose, status messages always
+            if (options.verbose || message.startsWith("[")) println(message);
+        }
+
+        @Override
+        public void onReply(String line) {
+            if (line.startsWith("Grbl")) {
+                banner.countDown();
+            } else if (line.startsWith("ALARM") && !options.verbose) {
+                println("< " + line);
+            }
+        }
+
+        @Override
+        public void onProgress(int processed, int total) {
+            printProgress(false);
+        }
+
+        @Override
+        public void onRunningChanged(boolean running) {
+        }
+
+        @Override
+        public void onFinished() {
+            finished = true;
+            printProgress(true);
+            saveTuning();
+        }
+
+        @Override
+        public void onSettled() {
+            // the pen is up and the last move done
+            if (!finished) return;
+            exitCode = 0;
+            done.countDown();
+        }
+    }
+
+    // streamer thread
+    private void onLinkLost(String reason) {
+        if (done.getCount() == 0) return;
+        int line = streamer.getNextLine(), total = streamer.getTotal();
+        streamer.clear();
+        println(finished ? "Link lost after the job: " + reason
+                : "Link lost at line " + line + "/" + total + ": " + reason);
+        exitCode = finished ? 0 : 1;
+        done.countDown();
+    }
+
+    // Ctrl-C while drawing: lift the pen and hold the machine like the app's stop button
+    private void stopOnExit() {
+        if (done.getCount() == 0 || !link.isOpen()) return;
+        executor.execute(() -> {
+            println("Stopped at line " + streamer.getNextLine() + "/" + streamer.getTotal());
+            streamer.stop();
+        });
+        try {
+            Thread.sleep(STOP_GRACE_MS);
+            link.close();
+        } catch (InterruptedException | IOException e) {
+            // exiting anyway
+        }
+        exitCode = 130;
+        done.countDown();
+    }
+
+    // streamer thread; a line rewritten in place on a terminal, one every few seconds into a pipe
+    private void printProgress(boolean last) {
+        if (options.quiet) return;
+        long now = System.nanoTime();
+        long interval = interactive ? PROGRESS_INTERVAL_MS : PROGRESS_INTERVAL_PIPED_MS;
+        if (!last && now - lastProgressAt < interval * 1_000_000L) return;
+        lastProgressAt = now;
+
+        int processed = streamer.getProcessed(), total = streamer.getTotal();
+        StreamMetrics metrics = streamer.getMetrics();
+        long elapsedSeconds = metrics.getElapsedNanos(now) / 1_000_000_000L;
+        StringBuilder line = new StringBuilder(96);
+        line.append(String.format(Locale.US, "%5.1f%%  %d/%d lines  %s",
+                total > 0 ? 100.0 * processed / total : 0, processed, total, formatTime((int) elapsedSeconds)));
+        if (processed > 0 && processed < total) {
+            line.append("  ~").append(formatTime((int) (elapsedSeconds * (total - processed) / processed)))
+                    .append(" left");
+        }
+        line.append(String.format(Locale.US, "  ack p50 %.0f ms  window %d",
+                metrics.ackLatency.getPercentile(50) / 1000.0, streamer.getTuning().window));
+        long errors = metrics.errors.sum(), timeouts = metrics.timeouts.sum();
+        if (errors > 0 || timeouts > 0) {
+            line.append("  ").append(errors).append(" errors ").append(timeouts).append(" timeouts");
+        }
+
+        if (interactive) {
+            int padding = Math.max(0, progressLength - line.length());
+            progressLength = line.length();
+            System.err.print("\r" + line + spaces(padding) + (last ? "\n" : ""));
+            if (last) progressLength = 0;
+        } else {
+            System.err.println(line);
+        }
+    }
+
+    // a message on its own line, under the progress line rather than through it
+    private void println(String message) {
+        if (interactive && progressLength > 0) {
+            System.err.print("\r" + spaces(progressLength) + "\r");
+            progressLength = 0;
+            lastProgressAt = 0;
+        }
+        System.out.println(message);
+    }
+
+    private void printStats() {
+        StreamMetrics m = streamer.getMetrics();
+        double seconds = m.getElapsedNanos(System.nanoTime()) / 1e9;
+        System.out.printf(Locale.US, "%s in %s (%.1f s)%n", exitCode == 0 ? "Drawn" : "Ended",
+                formatTime((int) seconds), seconds);
+        System.out.printf(Locale.US, "lines    %d sent, %d acknowledged, %d errors, %d timeouts%n",
+                m.linesSent.sum(), m.linesAcknowledged.sum(), m.errors.sum(), m.timeouts.sum());
+        System.out.printf(Locale.US, "bytes    %d sent, %d received, %.0f B/s out%n",
+                m.bytesSent.sum(), m.bytesReceived.sum(), seconds > 0 ? m.bytesSent.sum() / seconds : 0);
+        System.out.printf(Locale.US, "ack      p50 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                m.ackLatency.getPercentile(50) / 1000.0, m.ackLatency.getPercentile(99) / 1000.0,
+                m.ackLatency.getMax() / 1000.0);
+        System.out.printf(Locale.US, "planner  up to %d lines in flight, idle in %d of %d status reports%n",
+                m.getMaxQueueDepth(), m.plannerStarvation.sum(), m.statusReports.sum());
+        System.out.println("link     " + streamer.getTuning());
+    }
+
+    private void writeMetrics() {
+        if (options.metricsFile == null) return;
+        String json = streamer.getMetrics().toJson(Paths.get(options.file).getFileName().toString(),
+                System.currentTimeMillis(), System.nanoTime());
+        try {
+            Files.write(Paths.get(options.metricsFile), json.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Could not write " + options.metricsFile + ": " + e.getMessage());
+        }
+    }
+
+    // what the last job learned about this link, in StreamTuner.Parameters.serialize() form
+    private StreamTuner.Parameters loadTuning() {
+        if (options.tuningFile == null) return null;
+        Path path = Paths.get(options.tuningFile);
+        if (!Files.exists(path)) return null;
+        try {
+            return StreamTuner.Parameters.deserialize(
+                    new String(Files.readAllBytes(path), StandardCharsets.UTF_8).trim());
+        } catch (IOException e) {
+            System.err.println("Could not read " + options.tuningFile + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // streamer thread
+    private void saveTuning() {
+        if (options.tuningFile == null || !streamer.isTuned()) return;
+        try {
+            Files.write(Paths.get(options.tuningFile),
+                    (streamer.getTuning().serialize() + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            println("Could not write " + options.tuningFile + ": " + e.getMessage());
+        }
+    }
+
+    private static String spaces(int count) {
+        StringBuilder sb = new StringBuilder(count);
+        for (int i = 0; i < count; i++) sb.append(' ');
+        return sb.toString();
+    }
+
+    private static String formatTime(int totalSeconds) {
+        int hours = totalSeconds / 3600;
+        int minutes = (totalSeconds % 3600) / 60;
+        int seconds = totalSeconds % 60;
+
+        if (hours > 0) {
+            return String.format(Locale.US, "%d:%02d:%02d", hours, minutes, seconds);
+        } else {
+            return String.format(Locale.US, "%d:%02d", minutes, seconds);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.drawbot.cli;
+
+import com.example.drawbot.GCodeStreamer;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// The streamer's timer on a single-thread executor, the desktop counterpart of the app's Handler.
+// Everything that touches the streamer runs on that thread, so the generation needs no locking:
+// cancelAll makes every task scheduled so far a no-op.
+final class ExecutorScheduler implements GCodeStreamer.Scheduler {
+    private final ScheduledExecutorService executor;
+    private int generation = 0;
+
+    ExecutorScheduler(ScheduledExecutorService executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMs) {
+        int scheduledIn = generation;
+        executor.schedule(() -> {
+            if (scheduledIn == generation) task.run();
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void cancelAll() {
+        generation++;
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.drawbot.cli;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+// The byte stream to the controller: a serial device (USB GRBL boards, /dev/ttyUSB0 or /dev/ttyACM0)
+// or a TCP socket (ser2net, WiFi serial bridges). Data arrives on a reader thread of its own.
+final class Link implements Closeable {
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+    private static final int READ_BUFFER_BYTES = 256;
+
+    private final String name;
+    private final InputStream in;
+    private final OutputStream out;
+    private final Closeable resource;
+    // a serial read that times out reports end of stream, a closed tty throws instead
+    private final boolean endOfStreamIsIdle;
+    private volatile boolean open = true;
+
+    private Link(String name, InputStream in, OutputStream out, Closeable resource, boolean endOfStreamIsIdle) {
+        this.name = name;
+        this.in = in;
+        this.out = out;
+        this.resource = resource;
+        this.endOfStreamIsIdle = endOfStreamIsIdle;
+    }
+
+    // sets the line to raw 8N1 at the baud rate with stty unless configure is false, then opens it
+    static Link serial(String device, int baud, boolean configure) throws IOException {
+        File file = new File(device);
+        if (!file.exists()) throw new IOException(device + " does not exist");
+        if (configure) {
+            // min 0 time 5: reads return after half a second without data, so the reader can notice close()
+            runStty("stty", "-F", device, String.valueOf(baud), "raw", "-echo", "-echoe", "-echok",
+                    "-ixon", "-crtscts", "cs8", "-cstopb", "-parenb", "min", "0", "time", "5");
+        }
+        FileInputStream in = new FileInputStream(file);
+        FileOutputStream out;
+        try {
+            out = new FileOutputStream(file);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+        return new Link(device, in, out, () -> {
+            try {
+                out.close();
+            } finally {
+                in.close();
+            }
+        }, true);
+    }
+
+    static Link tcp(String host, int port) throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT_MS);
+            socket.setTcpNoDelay(true);   // one short line at a time, each waits for its ok
+            return new Link(host + ":" + port, socket.getInputStream(), socket.getOutputStream(), socket, false);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static void runStty(String... command) throws IOException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        byte[] buffer = new byte[READ_BUFFER_BYTES];
+        try (InputStream stream = process.getInputStream()) {
+            int n;
+            while ((n = stream.read(buffer)) > 0) {
+                output.write(buffer, 0, n);
+            }
+        }
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException("stty failed: " + output.toString("UTF-8").trim());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while configuring the serial port", e);
+        }
+    }
+
+    String getName() {
+        return name;
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    // starts the reader thread; onClosed runs once if the other side goes away (not after close())
+    void startReading(Consumer<String> onData, Consumer<String> onClosed) {
+        Thread reader = new Thread(() -> {
+            byte[] buffer = new byte[READ_BUFFER_BYTES];
+            String reason = "connection closed";
+            try {
+                while (open) {
+                    int n = in.read(buffer);
+                    if (n > 0) {
+                        // GRBL only sends ASCII
+                        onData.accept(new String(buffer, 0, n, StandardCharsets.ISO_8859_1));
+                    } else if (n < 0 && !endOfStreamIsIdle) {
+                        break;
+                    }
+                }
+            } catch (IOException e) {
+                reason = e.getMessage() != null ? e.getMessage() : e.toString();
+            }
+            if (open) {
+                open = false;
+                onClosed.accept(reason);
+            }
+        }, "link-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    boolean send(String data) {
+        if (!open) return false;
+        try {
+            out.write(data.getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        open = false;
+        resource.close();
+    }
+}
@@ -0,0 +1,15 @@
+plugins {
+    `java-library`
+}
+
+java {
+    sourceCompatibility = JavaVersion.VERSION_11
+    targetCompatibility = JavaVersion.VERSION_11
+}
+
+// The G-code pipeline and the GRBL protocol: parsing, conversion, validation, streaming, tuning,
+// checkpoints and the job queue. Plain Java with no Android classes, so it builds, tests and
+// benchmarks on any JVM; the app supplies the Bluetooth transport, the timer and the UI.
+dependencies {
+    testImplementation(libs.junit)
+}
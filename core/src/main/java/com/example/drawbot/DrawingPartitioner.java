@@ -0,0 +1,398 @@
+package com.example.drawbot;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+// Splits one drawing into pieces that several plotters can draw at the same time (see FleetDispatcher):
+// - tiles: the strokes are clipped to a grid of page-sized rectangles laid over the drawing's bounds,
+//   and every tile is moved to its own origin, so each one starts at X0 Y0 on its own sheet
+// - interleaved stroke sets: stroke i goes to set i % sets, coordinates stay as they are
+// The input is the converted pen-plotter G-code (GCodeStreamer.prepare without a validator, so
+// nothing is clamped to one machine's work area yet). G2/G3 arcs are flattened into short lines.
+// Every piece is written with PenPlotterGCodeWriter and is sent like any other job.
+public class DrawingPartitioner {
+    // longest chord used when flattening arcs, in mm
+    private static final double ARC_CHORD_MM = 0.5;
+    // coordinates are written in 1/1000 mm, a clipped point closer than this to the last one is the same
+    private static final double SAME_POINT_MM = 0.0005;
+
+    // one polyline drawn with the pen down, points as x0, y0, x1, y1, ...
+    static final class Stroke {
+        double[] points = new double[16];
+        int size = 0;
+
+        void add(double x, double y) {
+            if (size + 2 > points.length) {
+                points = java.util.Arrays.copyOf(points, points.length * 2);
+            }
+            points[size++] = x;
+            points[size++] = y;
+        }
+
+        int pointCount() {
+            return size / 2;
+        }
+
+        double lastX() {
+            return points[size - 2];
+        }
+
+        double lastY() {
+            return points[size - 1];
+        }
+
+        Stroke reversed() {
+            Stroke r = new Stroke();
+            r.points = new double[size];
+            for (int k = 0; k < size; k += 2) {
+                r.points[k] = points[size - 2 - k];
+                r.points[k + 1] = points[size - 1 - k];
+            }
+            r.size = size;
+            return r;
+        }
+    }
+
+    public static final class Piece {
+        public final int index;
+        public final String name;
+        // where the piece's origin is in the drawing (0, 0 for stroke sets)
+        public final double originX, originY;
+        public final String gCode;
+        public final int strokes;
+        public final double drawLength, travelLength;   // mm
+
+        Piece(int index, String name, double originX, double originY, String gCode,
+              int strokes, double drawLength, double travelLength) {
+            this.index = index;
+            this.name = name;
+            this.originX = originX;
+            this.originY = originY;
+            this.gCode = gCode;
+            this.strokes = strokes;
+            this.drawLength = drawLength;
+            this.travelLength = travelLength;
+        }
+
+        // rough plot time, enough to balance pieces between plotters
+        public double estimateSeconds(double feedMmPerMin, double travelMmPerMin, double penDelayMs) {
+            return drawLength / feedMmPerMin * 60.0 + travelLength / travelMmPerMin * 60.0
+                    + strokes * 2 * penDelayMs / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final List<Stroke> strokes = new ArrayList<>();
+    private double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+    private double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+    private double feed = Double.NaN;
+
+    // reads the strokes of converted pen-plotter lines ("G1 X.. Y.. Z0" draws, "Z1" travels)
+    public DrawingPartitioner(List<String> lines) {
+        double x = 0, y = 0;
+        boolean absolute = true, metric = true, penDown = false;
+        Stroke current = null;
+        int motion = 1;
+
+        for (String raw : lines) {
+            String line = stripComment(raw);
+            if (line.isEmpty()) continue;
+
+            double nx = Double.NaN, ny = Double.NaN, nz = Double.NaN;
+            double i = 0, j = 0, r = Double.NaN;
+            int length = line.length();
+            int p = 0;
+            while (p < length) {
+                char letter = Character.toUpperCase(line.charAt(p++));
+                int start = p;
+                while (p < length && isNumberChar(line.charAt(p))) {
+                    p++;
+                }
+                if (start == p) continue;
+                double value;
+                try {
+                    value = Double.parseDouble(line.substring(start, p));
+                } catch (NumberFormatException e) {
+                    continue;
+                }
+                switch (letter) {
+                    case 'G':
+                        if (value == 0 || value == 1 || value == 2 || value == 3) motion = (int) value;
+                        else if (value == 20) metric = false;
+                        else if (value == 21) metric = true;
+                        else if (value == 90) absolute = true;
+                        else if (value == 91) absolute = false;
+                        break;
+                    case 'X': nx = value; break;
+                    case 'Y': ny = value; break;
+                    case 'Z': nz = value; break;
+                    case 'I': i = value; break;
+                    case 'J': j = value; break;
+                    case 'R': r = value; break;
+                    case 'F': feed = metric ? value : value * 25.4; break;
+                    default: break;
+                }
+            }
+
+            double scale = metric ? 1 : 25.4;
+            if (!Double.isNaN(nz)) {
+                // the dialect: Z0 = pen down, Z1 (or anything above 0) = pen up
+                boolean down = nz * scale <= 0;
+                if (!down) current = null;
+                penDown = down;
+            }
+            if (Double.isNaN(nx) && Double.isNaN(ny)) continue;
+
+            double tx = Double.isNaN(nx) ? x : (absolute ? nx * scale : x + nx * scale);
+            double ty = Double.isNaN(ny) ? y : (absolute ? ny * scale : y + ny * scale);
+            if (penDown && motion != 0) {
+                if (current == null) {
+                    current = new Stroke();
+                    current.add(x, y);
+                    strokes.add(current);
+                    include(x, y);
+                }
+                if (motion == 2 || motion == 3) {
+                    addArc(current, x, y, tx, ty, i * scale, j * scale, r * scale, motion == 2);
+                } else {
+                    current.add(tx, ty);
+                    include(tx, ty);
+                }
+            } else {
+                current = null;
+            }
+            x = tx;
+            y = ty;
+        }
+        // a pen down without any move draws nothing
+        strokes.removeIf(stroke -> stroke.pointCount() < 2);
+    }
+
+    public int getStrokeCount() {
+        return strokes.size();
+    }
+
+    // bounds of everything drawn, {minX, minY, maxX, maxY}; all 0 for an empty drawing
+    public double[] getBounds() {
+        if (strokes.isEmpty()) return new double[]{0, 0, 0, 0};
+        return new double[]{minX, minY, maxX, maxY};
+    }
+
+    public double getDrawLength() {
+        double total = 0;
+        for (Stroke stroke : strokes) {
+            total += length(stroke);
+        }
+        return total;
+    }
+
+    // tiles of tileWidth x tileHeight mm, row by row from the lower left corner of the drawing;
+    // empty tiles are left out
+    public List<Piece> tiles(double tileWidth, double tileHeight) {
+        if (!(tileWidth > 0) || !(tileHeight > 0)) {
+            throw new IllegalArgumentException("Tile size must be positive");
+        }
+        List<Piece> pieces = new ArrayList<>();
+        if (strokes.isEmpty()) return pieces;
+
+        int columns = Math.max(1, (int) Math.ceil((maxX - minX) / tileWidth - 1e-9));
+        int rows = Math.max(1, (int) Math.ceil((maxY - minY) / tileHeight - 1e-9));
+        for (int row = 0; row < rows; row++) {
+            for (int column = 0; column < columns; column++) {
+                double left = minX + column * tileWidth, bottom = minY + row * tileHeight;
+                // a line exactly on the edge between two tiles belongs to the lower left one only
+                List<Stroke> clipped = clip(left, bottom, left + tileWidth, bottom + tileHeight,
+                        column > 0, row > 0);
+                if (clipped.isEmpty()) continue;
+                String name = "tile " + (column + 1) + "," + (row + 1) + " of " + columns + "x" + rows;
+                pieces.add(write(pieces.size(), name, clipped, left, bottom));
+            }
+        }
+        return pieces;
+    }
+
+    // the strokes dealt round robin into sets, in drawing order within each set; a stroke is drawn
+    // from whichever end is closer, dealing breaks up back-and-forth fills like hatching
+    public List<Piece> strokeSets(int sets) {
+        if (sets < 1) throw new IllegalArgumentException("Need at least one set");
+        List<Piece> pieces = new ArrayList<>();
+        for (int set = 0; set < sets && set < strokes.size(); set++) {
+            List<Stroke> own = new ArrayList<>();
+            double x = 0, y = 0;
+            for (int s = set; s < strokes.size(); s += sets) {
+                Stroke stroke = strokes.get(s);
+                double toStart = Math.hypot(stroke.points[0] - x, stroke.points[1] - y);
+                double toEnd = Math.hypot(stroke.lastX() - x, stroke.lastY() - y);
+                if (toEnd < toStart) stroke = stroke.reversed();
+                own.add(stroke);
+                x = stroke.lastX();
+                y = stroke.lastY();
+            }
+            pieces.add(write(pieces.size(), "stroke set " + (set + 1) + " of " + Math.min(sets, strokes.size()),
+                    own, 0, 0));
+        }
+        return pieces;
+    }
+
+    // parts of all strokes inside the rectangle; a stroke that leaves and comes back becomes several
+    private List<Stroke> clip(double left, double bottom, double right, double top,
+                              boolean openLeft, boolean openBottom) {
+        List<Stroke> result = new ArrayList<>();
+        double[] t = new double[2];
+        for (Stroke stroke : strokes) {
+            Stroke open = null;
+            double[] p = stroke.points;
+            for (int k = 2; k < stroke.size; k += 2) {
+                double x0 = p[k - 2], y0 = p[k - 1], x1 = p[k], y1 = p[k + 1];
+                if (!clipSegment(x0, y0, x1, y1, left, bottom, right, top, openLeft, openBottom, t)) {
+                    open = null;
+                    continue;
+                }
+                double ax = x0 + (x1 - x0) * t[0], ay = y0 + (y1 - y0) * t[0];
+                double bx = x0 + (x1 - x0) * t[1], by = y0 + (y1 - y0) * t[1];
+                if (open == null || Math.abs(open.lastX() - ax) > SAME_POINT_MM
+                        || Math.abs(open.lastY() - ay) > SAME_POINT_MM) {
+                    open = new Stroke();
+                    open.add(ax, ay);
+                    result.add(open);
+                }
+                open.add(bx, by);
+                if (t[1] < 1) open = null;   // left the tile
+            }
+        }
+        // a stroke that only touches the border leaves a piece without length
+        result.removeIf(stroke -> length(stroke) < SAME_POINT_MM);
+        return result;
+    }
+
+    // Liang-Barsky: the part of the segment inside the rectangle as parameters t[0] <= t[1] in [0, 1];
+    // a segment lying on an open edge counts as outside
+    static boolean clipSegment(double x0, double y0, double x1, double y1,
+                               double left, double bottom, double right, double top,
+                               boolean openLeft, boolean openBottom, double[] t) {
+        double dx = x1 - x0, dy = y1 - y0;
+        double t0 = 0, t1 = 1;
+        double[] p = {-dx, dx, -dy, dy};
+        double[] q = {x0 - left, right - x0, y0 - bottom, top - y0};
+        for (int k = 0; k < 4; k++) {
+            if (p[k] == 0) {
+                // parallel to this edge and outside, or on it where the neighbour draws it
+                if (q[k] < 0 || (q[k] == 0 && ((k == 0 && openLeft) || (k == 2 && openBottom)))) return false;
+            } else {
+                double r = q[k] / p[k];
+                if (p[k] < 0) {
+                    if (r > t1) return false;
+                    if (r > t0) t0 = r;
+                } else {
+                    if (r < t0) return false;
+                    if (r < t1) t1 = r;
+                }
+            }
+        }
+        t[0] = t0;
+        t[1] = t1;
+        return true;
+    }
+
+    private Piece write(int index, String name, List<Stroke> own, double originX, double originY) {
+        StringWriter text = new StringWriter();
+        double travel = 0, drawn = 0, x = 0, y = 0;
+        try {
+            PenPlotterGCodeWriter writer = new PenPlotterGCodeWriter(text);
+            writer.comment(name + (originX != 0 || originY != 0
+                    ? ", origin at X" + format(originX) + " Y" + format(originY) + " of the drawing" : ""));
+            if (!Double.isNaN(feed)) {
+                text.write("G1 F" + format(feed) + "\n");
+            }
+            for (Stroke stroke : own) {
+                double[] p = stroke.points;
+                double sx = p[0] - originX, sy = p[1] - originY;
+                travel += Math.hypot(sx - x, sy - y);
+                writer.moveTo(sx, sy);
+                for (int k = 2; k < stroke.size; k += 2) {
+                    writer.lineTo(p[k] - originX, p[k + 1] - originY);
+                }
+                drawn += length(stroke);
+                x = stroke.lastX() - originX;
+                y = stroke.lastY() - originY;
+            }
+            writer.finish();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);   // a StringWriter does not throw
+        }
+        return new Piece(index, name, originX, originY, text.toString(), own.size(), drawn, travel);
+    }
+
+    private void addArc(Stroke stroke, double x0, double y0, double x1, double y1,
+                        double i, double j, double r, boolean clockwise) {
+        double cx, cy;
+        if (!Double.isNaN(r)) {
+            // radius form, center as GRBL computes it
+            double dx = x1 - x0, dy = y1 - y0;
+            double h = 4 * r * r - dx * dx - dy * dy;
+            if (h < 0) h = 0;
+            double hOverD = -Math.sqrt(h) / Math.hypot(dx, dy);
+            if (!clockwise) hOverD = -hOverD;
+            if (r < 0) hOverD = -hOverD;
+            cx = x0 + 0.5 * (dx - dy * hOverD);
+            cy = y0 + 0.5 * (dy + dx * hOverD);
+        } else {
+            cx = x0 + i;
+            cy = y0 + j;
+        }
+        double radius = Math.hypot(x0 - cx, y0 - cy);
+        double start = Math.atan2(y0 - cy, x0 - cx), end = Math.atan2(y1 - cy, x1 - cx);
+        double sweep = end - start;
+        if (clockwise && sweep >= 0) sweep -= 2 * Math.PI;
+        if (!clockwise && sweep <= 0) sweep += 2 * Math.PI;
+        int segments = Math.max(1, (int) Math.ceil(Math.abs(sweep) * radius / ARC_CHORD_MM));
+        for (int k = 1; k < segments; k++) {
+            double angle = start + sweep * k / segments;
+            double px = cx + radius * Math.cos(angle), py = cy + radius * Math.sin(angle);
+            stroke.add(px, py);
+            include(px, py);
+        }
+        stroke.add(x1, y1);
+        include(x1, y1);
+    }
+
+    private void include(double x, double y) {
+        if (x < minX) minX = x;
+        if (x > maxX) maxX = x;
+        if (y < minY) minY = y;
+        if (y > maxY) maxY = y;
+    }
+
+    static double length(Stroke stroke) {
+        double total = 0;
+        double[] p = stroke.points;
+        for (int k = 2; k < stroke.size; k += 2) {
+            total += Math.hypot(p[k] - p[k - 2], p[k + 1] - p[k - 1]);
+        }
+        return total;
+    }
+
+    private static String format(double value) {
+        StringBuilder sb = new StringBuilder();
+        PenPlotterGCodeWriter.appendThousandths(sb, Math.round(value * 1000.0));
+        return sb.toString();
+    }
+
+    private static String stripComment(String line) {
+        int semicolon = line.indexOf(';');
+        if (semicolon >= 0) line = line.substring(0, semicolon);
+        int paren = line.indexOf('(');
+        if (paren >= 0) line = line.substring(0, paren);
+        return line.trim();
+    }
+
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+';
+    }
+}
@@ -0,0 +1,306 @@
+package com.example.drawbot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Gives every move of a converted job its own feed rate instead of whatever F GRBL last had.
+// Pen-up travel runs at the machine's max rate. A pen-down segment gets the fastest feed at which
+// the machine can take the curve at both of its ends (centripetal acceleration a * radius) and
+// still speed up and slow down within its length, so tight curves of short segments draw slowly and
+// long straight lines at full speed. Curvature at a vertex is the turning angle over the mean length
+// of the two segments, which is 1/r for a flattened circle of radius r; arcs use their own radius.
+// Feeds are rounded down to steps of FEED_STEPS of the max rate and an F word is only written when
+// the value changes. An F in the job itself stays the upper limit for the drawing after it.
+// One pass with one segment of lookahead, a line is only copied when it gets or loses an F.
+public class FeedPlanner {
+    // feeds are multiples of maxRate / FEED_STEPS
+    static final int FEED_STEPS = 20;
+    // slowest planned drawing feed as a share of the max rate, below that pens start to bleed
+    static final double MIN_FEED_SHARE = 0.1;
+    private static final double SAME_POINT_MM = 0.0005;
+    private static final int MAX_FEED_WORD_LENGTH = 10;   // " F12345.67"
+
+    public static final class Result {
+        public final List<String> lines;
+        public final int feedWords;         // F words written
+        public final int slowedSegments;    // pen-down moves planned below the feed limit
+
+        Result(List<String> lines, int feedWords, int slowedSegments) {
+            this.lines = lines;
+            this.feedWords = feedWords;
+            this.slowedSegments = slowedSegments;
+        }
+    }
+
+    private final double maxRate, acceleration;
+
+    // parsed words of the current line; spans point into the line
+    private final char[] letters = new char[32];
+    private final double[] values = new double[32];
+    private final int[] starts = new int[32], ends = new int[32];
+    private int count;
+
+    // modal state in machine millimetres
+    private double x, y;
+    private boolean absolute, metric, penDown;
+    private int motion;
+    private double limit;       // the job's own F in mm/min, capped to the max rate
+    private double emitted;     // feed GRBL has now in mm/min, NaN before the first F
+
+    // the last pen-down segment, its feed waits for the speed at its end
+    private int pendingLine;
+    private boolean pendingMetric;
+    private double pendingLength, pendingStartSpeed, pendingOwnLimit, pendingLimit, pendingDx, pendingDy;
+
+    private List<String> output;
+    private int feedWords, slowedSegments;
+
+    // maxRate: travel and top drawing feed in mm/min ($110); acceleration: mm/s^2 ($120)
+    public FeedPlanner(double maxRate, double acceleration) {
+        if (!(maxRate > 0) || !(acceleration > 0)) {
+            throw new IllegalArgumentException("Max rate and acceleration must be positive");
+        }
+        this.maxRate = maxRate;
+        this.acceleration = acceleration;
+    }
+
+    public Result plan(List<String> input) {
+        // the streamer sends G21, G90 and G92 X0 Y0 Z0, then lifts the pen
+        x = y = 0;
+        absolute = true;
+        metric = true;
+        penDown = false;
+        motion = 1;
+        limit = maxRate;
+        emitted = Double.NaN;
+        pendingLine = -1;
+        feedWords = slowedSegments = 0;
+        output = new ArrayList<>(input.size());
+
+        for (String line : input) {
+            planLine(line);
+        }
+        finishPending(0);
+        Result result = new Result(output, feedWords, slowedSegments);
+        output = null;
+        return result;
+    }
+
+    private void planLine(String line) {
+        parse(line);
+        int feedWord = -1;
+        boolean axes = false, dwell = false;
+        double nx = Double.NaN, ny = Double.NaN, nz = Double.NaN;
+        double i = 0, j = 0, r = Double.NaN;
+        for (int w = 0; w < count; w++) {
+            double value = values[w];
+            switch (letters[w]) {
+                case 'G':
+                    if (value == 0 || value == 1 || value == 2 || value == 3) motion = (int) value;
+                    else if (value == 4) dwell = true;
+                    else if (value == 20) metric = false;
+                    else if (value == 21) metric = true;
+                    else if (value == 90) absolute = true;
+                    else if (value == 91) absolute = false;
+                    break;
+                case 'X': nx = value; axes = true; break;
+                case 'Y': ny = value; axes = true; break;
+                case 'Z': nz = value; axes = true; break;
+                case 'I': i = value; break;
+                case 'J': j = value; break;
+                case 'R': r = value; break;
+                case 'F': feedWord = w; break;
+                default: break;
+            }
+        }
+        double scale = metric ? 1 : 25.4;
+        if (feedWord >= 0) {
+            limit = Math.min(maxRate, values[feedWord] * scale);
+        }
+        String code = feedWord >= 0 ? withoutWord(line, feedWord) : line;
+
+        if (!axes) {
+            if (feedWord >= 0 && isOnlyMotionWord(code)) {
+                return;   // "G1 F500": the feed is planned per move now
+            }
+            // a dwell or anything else GRBL stops for ends the stroke; comments and blank lines do not
+            if (dwell || count > 0) finishPending(0);
+            output.add(code);
+            return;
+        }
+
+        if (!Double.isNaN(nz)) {
+            // the dialect: Z0 = pen down, Z1 (or anything above 0) = pen up
+            penDown = nz * scale <= 0;
+        }
+        double tx = Double.isNaN(nx) ? x : (absolute ? nx * scale : x + nx * scale);
+        double ty = Double.isNaN(ny) ? y : (absolute ? ny * scale : y + ny * scale);
+        double dx = tx - x, dy = ty - y;
+        // a full circle ends where it started
+        boolean moves = Math.abs(dx) > SAME_POINT_MM || Math.abs(dy) > SAME_POINT_MM
+                || ((motion == 2 || motion == 3) && (i != 0 || j != 0));
+
+        if (motion == 0) {
+            // rapids ignore F
+            finishPending(0);
+            output.add(code);
+        } else if (!penDown || !moves) {
+            // travel, and pen lifts or drops in place
+            finishPending(0);
+            output.add(withFeed(code, maxRate, metric));
+        } else if (motion == 2 || motion == 3) {
+            addArc(code, dx, dy, i * scale, j * scale, r * scale, motion == 2);
+        } else {
+            double length = Math.hypot(dx, dy);
+            addSegment(code, length, dx / length, dy / length, dx / length, dy / length, Double.POSITIVE_INFINITY);
+        }
+        x = tx;
+        y = ty;
+    }
+
+    private void addArc(String code, double dx, double dy, double i, double j, double r, boolean clockwise) {
+        double radius, length, startX, startY, endX, endY;
+        if (Double.isNaN(r)) {
+            // tangents are the radius turned a quarter, clockwise or counterclockwise
+            double sx = -i, sy = -j, ex = dx - i, ey = dy - j;
+            radius = Math.hypot(sx, sy);
+            double sweep = Math.atan2(ey, ex) - Math.atan2(sy, sx);
+            if (clockwise && sweep >= 0) sweep -= 2 * Math.PI;
+            if (!clockwise && sweep <= 0) sweep += 2 * Math.PI;
+            length = Math.abs(sweep) * radius;
+            double turn = clockwise ? 1 : -1;
+            startX = turn * sy / radius;
+            startY = -turn * sx / radius;
+            endX = turn * ey / radius;
+            endY = -turn * ex / radius;
+        } else {
+            // radius form: the chord is close enough for the direction at both ends
+            radius = Math.abs(r);
+            length = Math.hypot(dx, dy);
+            startX = endX = dx / length;
+            startY = endY = dy / length;
+        }
+        if (!(radius > SAME_POINT_MM) || !(length > 0)) {
+            double chord = Math.hypot(dx, dy);
+            addSegment(code, chord, dx / chord, dy / chord, dx / chord, dy / chord, Double.POSITIVE_INFINITY);
+            return;
+        }
+        addSegment(code, length, startX, startY, endX, endY, Math.sqrt(acceleration * radius));
+    }
+
+    // a pen-down move; directions are unit vectors, ownLimit the speed its own curve allows in mm/s
+    private void addSegment(String code, double length, double startX, double startY,
+                            double endX, double endY, double ownLimit) {
+        double startSpeed = 0;
+        if (pendingLine >= 0) {
+            // turning angle over the mean length of the two segments
+            double cos = Math.max(-1, Math.min(1, pendingDx * startX + pendingDy * startY));
+            double curvature = Math.acos(cos) / ((pendingLength + length) / 2);
+            startSpeed = Math.min(limit / 60, curvature > 0
+                    ? Math.sqrt(acceleration / curvature) : Double.POSITIVE_INFINITY);
+            finishPending(startSpeed);
+        }
+        output.add(code);
+        pendingLine = output.size() - 1;
+        pendingMetric = metric;
+        pendingLength = length;
+        pendingStartSpeed = startSpeed;
+        pendingOwnLimit = ownLimit;
+        pendingLimit = limit;
+        pendingDx = endX;
+        pendingDy = endY;
+    }
+
+    // the speed at its end is known now, so is the fastest speed within it
+    private void finishPending(double endSpeed) {
+        if (pendingLine < 0) return;
+        double u = pendingStartSpeed, w = Math.min(endSpeed, pendingLimit / 60);
+        double reachable = Math.sqrt((u * u + w * w + 2 * acceleration * pendingLength) / 2);
+        double feed = Math.min(pendingLimit, Math.min(reachable, pendingOwnLimit) * 60);
+        if (feed < pendingLimit) {
+            slowedSegments++;
+            double step = maxRate / FEED_STEPS;
+            feed = Math.max(Math.floor(feed / step) * step, Math.min(pendingLimit, maxRate * MIN_FEED_SHARE));
+        }
+        output.set(pendingLine, withFeed(output.get(pendingLine), feed, pendingMetric));
+        pendingLine = -1;
+    }
+
+    // adds the F word in front of any comment, unless GRBL already has that feed or the line would
+    // get too long for GRBL's buffer (the move then keeps the feed before it)
+    private String withFeed(String code, double feedMmPerMin, boolean metricUnits) {
+        if (feedMmPerMin == emitted || code.length() + MAX_FEED_WORD_LENGTH > GCodeValidator.MAX_LINE_LENGTH) {
+            return code;
+        }
+        emitted = feedMmPerMin;
+        feedWords++;
+        int end = codeEnd(code);
+        StringBuilder sb = new StringBuilder(code.length() + 8);
+        sb.append(code, 0, end);
+        if (end > 0 && code.charAt(end - 1) != ' ') sb.append(' ');
+        sb.append('F');
+        PenPlotterGCodeWriter.appendThousandths(sb,
+                Math.round((metricUnits ? feedMmPerMin : feedMmPerMin / 25.4) * 1000.0));
+        if (end < code.length()) {
+            if (code.charAt(end) != ' ') sb.append(' ');
+            sb.append(code, end, code.length());
+        }
+        return sb.toString();
+    }
+
+    private String withoutWord(String line, int word) {
+        int start = starts[word];
+        while (start > 0 && line.charAt(start - 1) == ' ') start--;
+        return (line.substring(0, start) + line.substring(ends[word])).trim();
+    }
+
+    private static boolean isOnlyMotionWord(String code) {
+        String word = code.trim();
+        return word.isEmpty() || word.equalsIgnoreCase("G0") || word.equalsIgnoreCase("G1")
+                || word.equalsIgnoreCase("G00") || word.equalsIgnoreCase("G01");
+    }
+
+    // end of the code part, before a ";" or "(" comment, without the spaces in front of it
+    private static int codeEnd(String line) {
+        int end = line.length();
+        for (int k = 0; k < line.length(); k++) {
+            char c = line.charAt(k);
+            if (c == ';' || c == '(') {
+                end = k;
+                break;
+            }
+        }
+        while (end > 0 && line.charAt(end - 1) == ' ') end--;
+        return end;
+    }
+
+    // letter/number words of the code part; words without a number and past the array are skipped
+    private void parse(String line) {
+        count = 0;
+        int codeEnd = codeEnd(line);
+        int p = 0;
+        while (p < codeEnd) {
+            char letter = Character.toUpperCase(line.charAt(p));
+            int start = p++;
+            if (letter < 'A' || letter > 'Z') continue;
+            int numberStart = p;
+            while (p < codeEnd && isNumberChar(line.charAt(p))) {
+                p++;
+            }
+            if (numberStart == p || count == letters.length) continue;
+            try {
+                values[count] = Double.parseDouble(line.substring(numberStart, p));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            letters[count] = letter;
+            starts[count] = start;
+            ends[count] = p;
+            count++;
+        }
+    }
+
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+';
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.drawbot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Hands the pieces of a partitioned drawing (DrawingPartitioner) to several plotters.
+// Every plotter gets a contiguous run of pieces with about the same estimated plot time, so
+// neighbouring tiles end up on the same machine. When a plotter finishes it takes the next piece
+// of its own run; when its run is empty it steals the last piece of the plotter with the most
+// work left, so a slow or late machine does not hold up the others. A plotter that fails is
+// dropped and its piece goes back to the front of the queue for whoever is free next.
+// Not thread safe: all calls must come from one thread (the main thread in PlotterService,
+// the event loop in the simulation).
+public class FleetDispatcher {
+    // stroke sets per plotter: one each could not be balanced between machines of different speed
+    public static final int SETS_PER_PLOTTER = 4;
+
+    public interface Plotter {
+        String getName();
+        // start drawing the piece; report the end with onFinished or onFailed
+        void start(DrawingPartitioner.Piece piece);
+    }
+
+    public interface Listener {
+        void onAssigned(Plotter plotter, DrawingPartitioner.Piece piece, boolean stolen);
+        void onAllDone(int finished, int failed);
+    }
+
+    // per plotter numbers for the log and the simulation report
+    public static final class Share {
+        public int pieces, stolen;
+        public double estimatedSeconds;
+    }
+
+    private final Map<Plotter, Deque<DrawingPartitioner.Piece>> queues = new LinkedHashMap<>();
+    private final Map<Plotter, DrawingPartitioner.Piece> running = new LinkedHashMap<>();
+    private final Map<Plotter, Share> shares = new LinkedHashMap<>();
+    private final Deque<DrawingPartitioner.Piece> orphans = new ArrayDeque<>();
+    private final Listener listener;
+    private final double feed, travel, penDelayMs;
+    private int finished, failed, steals;
+    private boolean cancelled, done;
+
+    // feed and travel in mm/min and the pen delay only weigh the pieces against each other
+    public FleetDispatcher(List<? extends Plotter> plotters, Listener listener,
+                           double feedMmPerMin, double travelMmPerMin, double penDelayMs) {
+        if (plotters.isEmpty()) throw new IllegalArgumentException("No plotters");
+        this.listener = listener;
+        this.feed = feedMmPerMin;
+        this.travel = travelMmPerMin;
+        this.penDelayMs = penDelayMs;
+        for (Plotter plotter : plotters) {
+            queues.put(plotter, new ArrayDeque<>());
+            shares.put(plotter, new Share());
+        }
+    }
+
+    // deals the pieces and starts one on every plotter
+    public void start(List<DrawingPartitioner.Piece> pieces) {
+        double total = 0;
+        for (DrawingPartitioner.Piece piece : pieces) {
+            total += cost(piece);
+        }
+        // contiguous runs: move on to the next plotter once this one has its share
+        List<Plotter> order = new ArrayList<>(queues.keySet());
+        double target = total / order.size(), assigned = 0;
+        int owner = 0;
+        for (DrawingPartitioner.Piece piece : pieces) {
+            double c = cost(piece);
+            if (owner < order.size() - 1 && assigned > 0 && assigned + c / 2 > target * (owner + 1)) {
+                owner++;
+            }
+            queues.get(order.get(owner)).addLast(piece);
+            assigned += c;
+        }
+        for (Plotter plotter : order) {
+            next(plotter);
+        }
+        checkDone();
+    }
+
+    public void onFinished(Plotter plotter) {
+        if (running.remove(plotter) == null) return;
+        finished++;
+        next(plotter);
+        checkDone();
+    }
+
+    public void onFailed(Plotter plotter) {
+        DrawingPartitioner.Piece piece = running.remove(plotter);
+        Deque<DrawingPartitioner.Piece> queue = queues.remove(plotter);
+        if (queue == null) return;
+        if (piece != null && cancelled) failed++;
+        else if (piece != null) orphans.addFirst(piece);
+        orphans.addAll(queue);
+        // hand the dropped work to plotters that are idle right now
+        for (Plotter other : new ArrayList<>(queues.keySet())) {
+            if (orphans.isEmpty()) break;
+            if (!running.containsKey(other)) next(other);
+        }
+        if (queues.isEmpty()) {
+            failed += orphans.size();
+            orphans.clear();
+        }
+        checkDone();
+    }
+
+    // gives up on everything that has not started yet; pieces being drawn still report their end
+    public void cancel() {
+        cancelled = true;
+        for (Deque<DrawingPartitioner.Piece> queue : queues.values()) {
+            failed += queue.size();
+            queue.clear();
+        }
+        failed += orphans.size();
+        orphans.clear();
+        checkDone();
+    }
+
+    public boolean isDone() {
+        return done;
+    }
+
+    // pieces that nobody has started yet
+    public boolean hasWaitingPieces() {
+        if (!orphans.isEmpty()) return true;
+        for (Deque<DrawingPartitioner.Piece> queue : queues.values()) {
+            if (!queue.isEmpty()) return true;
+        }
+        return false;
+    }
+
+    public boolean isRunning(Plotter plotter) {
+        return running.containsKey(plotter);
+    }
+
+    public int getSteals() {
+        return steals;
+    }
+
+    public Map<Plotter, Share> getShares() {
+        return shares;
+    }
+
+    private void next(Plotter plotter) {
+        Deque<DrawingPartitioner.Piece> own = queues.get(plotter);
+        if (own == null || cancelled) return;
+        DrawingPartitioner.Piece piece = orphans.pollFirst();
+        boolean stolen = piece != null;
+        if (piece == null) piece = own.pollFirst();
+        if (piece == null) {
+            Deque<DrawingPartitioner.Piece> victim = busiest(plotter);
+            if (victim != null) {
+                piece = victim.pollLast();
+                stolen = true;
+            }
+        }
+        if (piece == null) return;
+
+        if (stolen) steals++;
+        Share share = shares.get(plotter);
+        share.pieces++;
+        if (stolen) share.stolen++;
+        share.estimatedSeconds += cost(piece);
+        running.put(plotter, piece);
+        listener.onAssigned(plotter, piece, stolen);
+        plotter.start(piece);
+    }
+
+    private Deque<DrawingPartitioner.Piece> busiest(Plotter thief) {
+        Deque<DrawingPartitioner.Piece> best = null;
+        double bestCost = 0;
+        for (Map.Entry<Plotter, Deque<DrawingPartitioner.Piece>> entry : queues.entrySet()) {
+            if (entry.getKey() == thief) continue;
+            double left = 0;
+            for (DrawingPartitioner.Piece piece : entry.getValue()) {
+                left += cost(piece);
+            }
+            if (!entry.getValue().isEmpty() && (best == null || left > bestCost)) {
+                best = entry.getValue();
+                bestCost = left;
+            }
+        }
+        return best;
+    }
+
+    private void checkDone() {
+        if (done || !running.isEmpty() || hasWaitingPieces()) return;
+        done = true;
+        listener.onAllDone(finished, failed);
+    }
+
+    private double cost(DrawingPartitioner.Piece piece) {
+        return piece.estimateSeconds(feed, travel, penDelayMs);
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.drawbot;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+// A G-code file as bytes plus where each line starts, for showing files of any size. Opening one is a
+// single scan for '\n'; a line is only decoded to a String when line(i) asks for it, so a viewer pays
+// for the few lines on screen, not for the whole file. Files are memory mapped rather than copied to
+// the heap. Read-only and safe to read from several threads once made.
+public class GCodeDocument {
+    public static final GCodeDocument EMPTY = new GCodeDocument(ByteBuffer.allocate(0));
+
+    private final ByteBuffer bytes;
+    private int[] starts = new int[1024];
+    private int lineCount = 0;
+
+    private GCodeDocument(ByteBuffer bytes) {
+        this.bytes = bytes;
+        int length = bytes.limit();
+        int start = 0;
+        for (int i = 0; i < length; i++) {
+            if (bytes.get(i) == '\n') {
+                addLine(start);
+                start = i + 1;
+            }
+        }
+        if (start < length) addLine(start);
+    }
+
+    private void addLine(int start) {
+        if (lineCount == starts.length) starts = Arrays.copyOf(starts, starts.length * 2);
+        starts[lineCount++] = start;
+    }
+
+    public static GCodeDocument fromText(String text) {
+        return new GCodeDocument(ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    // reads the whole stream, e.g. a content URI that is not a plain file
+    public static GCodeDocument read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 * 1024);
+        byte[] buffer = new byte[64 * 1024];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            out.write(buffer, 0, n);
+        }
+        return new GCodeDocument(ByteBuffer.wrap(out.toByteArray()));
+    }
+
+    // maps the file; it must not be changed while the document is in use (deleting it is fine)
+    public static GCodeDocument open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) throw new IOException(file + " is larger than 2 GB");
+            return new GCodeDocument(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public int getLineCount() {
+        return lineCount;
+    }
+
+    public int getByteLength() {
+        return bytes.limit();
+    }
+
+    public boolean isEmpty() {
+        return bytes.limit() == 0;
+    }
+
+    // line i without its line ending
+    public String line(int i) {
+        if (i < 0 || i >= lineCount) throw new IndexOutOfBoundsException("line " + i + " of " + lineCount);
+        int start = starts[i];
+        int end = i + 1 < lineCount ? starts[i + 1] - 1 : bytes.limit();
+        if (end > start && bytes.get(end - 1) == '\n') end--;
+        if (end > start && bytes.get(end - 1) == '\r') end--;
+        return decode(start, end - start);
+    }
+
+    // the whole document as one String, for handing a job to the streamer
+    public String getText() {
+        return decode(0, bytes.limit());
+    }
+
+    private String decode(int offset, int length) {
+        if (bytes.hasArray()) {
+            return new String(bytes.array(), bytes.arrayOffset() + offset, length, StandardCharsets.UTF_8);
+        }
+        byte[] copy = new byte[length];
+        ByteBuffer view = bytes.duplicate();
+        view.position(offset);
+        view.get(copy);
+        return new String(copy, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,806 @@
+package com.example.drawbot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Sends a G-code job to GRBL line by line and keeps track of what the controller confirmed.
+// Has no Android dependencies: the transport, the timer and the listener are plugged in, and all
+// methods must be called from the one thread the Scheduler runs its tasks on.
+public class GCodeStreamer {
+    public static final int COMMAND_TIMEOUT_MS = 10000;
+    // private static final int INTER_COMMAND_DELAY_MS = 50; // Optimized for 28BYJ-48
+    public static final int GCODE_DELAY_MS = 75;
+    private static final int START_DELAY_MS = 1000;
+    private static final int POLL_DELAY_MS = 20;
+    private static final int STATUS_INTERVAL_MS = 1000;
+
+    public interface Transport {
+        boolean isConnected();
+        boolean send(String data);
+    }
+
+    public interface Scheduler {
+        void schedule(Runnable task, long delayMs);
+        void cancelAll();
+
+        // monotonic time in nanoseconds; a simulation can run the streamer on its own clock
+        default long nanoTime() {
+            return System.nanoTime();
+        }
+    }
+
+    public interface Listener {
+        // terminal output: sent commands, replies and status messages
+        void onLog(String message);
+        // every complete reply line from the controller, before it is handled
+        void onReply(String line);
+        void onProgress(int processed, int total);
+        void onRunningChanged(boolean running);
+        void onFinished();
+        // the lines sent after a job or by goHome were all answered: the pen is up and the
+        // machine has stopped, a queued job can start
+        void onSettled();
+    }
+
+    // converted lines of a job plus the numbers the time estimate needs
+    public static final class Job {
+        public final List<String> lines;
+        public final int movementCommands;
+        public final FeedPlanner.Result feeds;           // null if no feeds were planned
+        public final GCodeValidator.Result validation;   // null if the job was not validated
+
+        Job(List<String> lines, int movementCommands, FeedPlanner.Result feeds, GCodeValidator.Result validation) {
+            this.lines = lines;
+            this.movementCommands = movementCommands;
+            this.feeds = feeds;
+            this.validation = validation;
+        }
+    }
+
+    private final Transport transport;
+    private final Scheduler scheduler;
+    private final JobCheckpointStore checkpointStore;
+    private final Listener listener;
+
+    // queue holds job lines jobLineBase.. (a resumed job only keeps the rest)
+    private final List<String> queue = new ArrayList<>();
+    private final InFlightTracker inFlight = new InFlightTracker();
+    private final StringBuilder receiveBuffer = new StringBuilder();
+    private final JobCheckpoint checkpoint = new JobCheckpoint();
+    private final StreamMetrics metrics = new StreamMetrics();
+    private List<InFlightTracker.Entry> replayAfterReconnect = new ArrayList<>();
+    private int currentIndex = 0, commandsProcessed = 0, jobLineBase = 0, jobTotalLines = 0;
+    // the job's transform; without one (identity) every job line is sent as it is
+    private JobTransform transform = JobTransform.IDENTITY;
+    private JobTransform.Stage stage;
+    // what the stage made of job line partsJobLine, sent from partIndex on; only the last part
+    // carries the job line, so the checkpoint moves once all of them are confirmed
+    private final List<String> parts = new ArrayList<>();
+    private int partIndex = 0, partsJobLine = -1;
+    private int estimatedSeconds = 0;
+    private boolean running = false;
+    // finish() or goHome() sent lines that were not answered yet
+    private boolean settling = false;
+    private long lastSendTime = 0, firstSendTime = 0; // nanoseconds
+    // last status report that showed GRBL moving or holding; oks are late then, not lost
+    private long lastBusyStatusTime = 0;
+    // window, delay and timeout; adjusted while the job runs
+    private final StreamTuner tuner = new StreamTuner();
+    private StreamTuner.Parameters rememberedTuning = null;
+    // only the newest scheduled sendNextCommand runs, so an ok can bring the next send forward
+    private int sendTicket = 0;
+
+    private enum Ack { OK, ERROR, TIMEOUT }
+
+    public GCodeStreamer(Transport transport, Scheduler scheduler, JobCheckpointStore checkpointStore, Listener listener) {
+        this.transport = transport;
+        this.scheduler = scheduler;
+        this.checkpointStore = checkpointStore;
+        this.listener = listener;
+    }
+
+    // converts the text to pen-plotter G-code unless it was generated on the phone; empty lines are dropped
+    public static Job prepare(String gCodeText) {
+        return prepare(gCodeText, null);
+    }
+
+    // same, then fixes or removes what GRBL would reject (validator may be null)
+    public static Job prepare(String gCodeText, GCodeValidator validator) {
+        return prepare(gCodeText, null, validator);
+    }
+
+    // same, with a feed rate planned for every move before the check (planner may be null)
+    public static Job prepare(String gCodeText, FeedPlanner planner, GCodeValidator validator) {
+        List<String> lines = new ArrayList<>();
+        // files generated on the phone are already in pen-plotter format
+        boolean alreadyConverted = PenPlotterGCodeWriter.isPenPlotterGCode(gCodeText);
+
+        for (String line : gCodeText.split("\n")) {
+            String originalLine = line.trim();
+            if (originalLine.isEmpty()) {
+                continue;
+            }
+            lines.add(alreadyConverted ? originalLine : convertGCodeForPenPlotter(originalLine));
+        }
+
+        FeedPlanner.Result feeds = null;
+        if (planner != null) {
+            feeds = planner.plan(lines);
+            lines = feeds.lines;
+        }
+
+        GCodeValidator.Result validation = null;
+        if (validator != null) {
+            validation = validator.validate(lines);
+            lines = validation.lines;
+        }
+
+        int movementCommands = 0;
+        for (String line : lines) {
+            if (isMovement(line)) {
+                movementCommands++;
+            }
+        }
+        return new Job(lines, movementCommands, feeds, validation);
+    }
+
+    // where a prepared job lands with the transform: its lines go through a Stage exactly as start(job, transform)
+    // sends them, keeping only the bounds and counts, so lines the validator removed or clamped show as they will draw
+    public static JobTransform.Stage preview(Job job, JobTransform transform) {
+        JobTransform.Stage stage = transform.newStage();
+        List<String> scratch = new ArrayList<>();
+        for (String line : job.lines) {
+            stage.apply(line, scratch);
+            scratch.clear();
+        }
+        return stage;
+    }
+
+    // g code z- axis converter to fix faulty g-code from converter
+    // (hand-written instead of replaceFirst/replaceAll: this runs for every line of a file, see benchmarks/)
+    static String convertGCodeForPenPlotter(String line) {
+        String originalLine = line.trim();
+        if (originalLine.isEmpty() || originalLine.startsWith(";") || originalLine.startsWith("(")) {
+            return originalLine;
+        }
+
+        if (startsWithWord(originalLine, "G0") || startsWithWord(originalLine, "G00")) {
+            // G0/G00 -> G1, the regex used to replace "G" followed by all of its zeros
+            int zeros = 1;
+            while (zeros < originalLine.length() && originalLine.charAt(zeros) == '0') {
+                zeros++;
+            }
+            String convertedLine = removeZCoordinate("G1" + originalLine.substring(zeros));
+            return convertedLine + " Z1";
+        }
+
+        if (startsWithWord(originalLine, "G1") || startsWithWord(originalLine, "G01")) {
+            String convertedLine = removeZCoordinate(originalLine);
+            return convertedLine + " Z0";
+        }
+
+        return originalLine;
+    }
+
+    // Remove Z coordinate from G-code lines incase we have different G-Code
+    // Same result as replaceAll("(?i)\\s*Z-?[0-9]*\\.?[0-9]*", "").trim(): a Z with the whitespace
+    // before it, an optional minus, digits and one optional decimal point
+    static String removeZCoordinate(String line) {
+        int length = line.length();
+        int first = 0;
+        while (first < length && !isZ(line.charAt(first))) {
+            first++;
+        }
+        if (first == length) {
+            return line.trim();
+        }
+
+        StringBuilder sb = new StringBuilder(length);
+        int i = 0;
+        while (i < length) {
+            char c = line.charAt(i);
+            if (isRegexSpace(c)) {
+                int end = i;
+                while (end < length && isRegexSpace(line.charAt(end))) {
+                    end++;
+                }
+                if (end < length && isZ(line.charAt(end))) {
+                    i = skipZWord(line, end);
+                } else {
+                    sb.append(line, i, end);
+                    i = end;
+                }
+            } else if (isZ(c)) {
+                i = skipZWord(line, i);
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString().trim();
+    }
+
+    // index after "Z-?[0-9]*\\.?[0-9]*" starting at the Z
+    private static int skipZWord(String line, int i) {
+        int length = line.length();
+        i++;
+        if (i < length && line.charAt(i) == '-') i++;
+        while (i < length && isDigit(line.charAt(i))) i++;
+        if (i < length && line.charAt(i) == '.') i++;
+        while (i < length && isDigit(line.charAt(i))) i++;
+        return i;
+    }
+
+    private static boolean isZ(char c) {
+        return c == 'Z' || c == 'z';
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    // \s in java.util.regex
+    private static boolean isRegexSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // word followed by a space, ignoring case ("g01 " counts as "G01 ")
+    private static boolean startsWithWord(String line, String word) {
+        return line.length() > word.length() && line.charAt(word.length()) == ' '
+                && line.regionMatches(true, 0, word, 0, word.length());
+    }
+
+    static boolean isMovement(String line) {
+        return startsWithWord(line, "G0") || startsWithWord(line, "G00")
+                || startsWithWord(line, "G1") || startsWithWord(line, "G01");
+    }
+
+    public static int estimateSeconds(int movementCommands, int totalCommands) {
+        int avgSecondsPerCommand = 2; //change this to adjust speed. 0.25 is more accurate after testing
+        int commandProcessingTime = (totalCommands * GCODE_DELAY_MS) / 1000;
+
+        return (movementCommands * avgSecondsPerCommand) + commandProcessingTime + 5;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    // the lines after a job or a move home are not all answered yet; onSettled follows
+    public boolean isSettling() {
+        return settling;
+    }
+
+    public int getProcessed() {
+        return commandsProcessed;
+    }
+
+    public int getTotal() {
+        return jobTotalLines;
+    }
+
+    public int getEstimatedSeconds() {
+        return estimatedSeconds;
+    }
+
+    public StreamMetrics getMetrics() {
+        return metrics;
+    }
+
+    // parameters a previous job settled on for this device, used from the next start/resume; null to learn them again
+    public void setRememberedTuning(StreamTuner.Parameters parameters) {
+        rememberedTuning = parameters;
+    }
+
+    // current send parameters, worth keeping once the link was measured
+    public StreamTuner.Parameters getTuning() {
+        return tuner.getParameters();
+    }
+
+    public boolean isTuned() {
+        return !tuner.isWarmingUp();
+    }
+
+    // first job line that has not been confirmed yet
+    public int getNextLine() {
+        return checkpoint.nextLine();
+    }
+
+    public boolean start(Job job) {
+        return start(job, JobTransform.IDENTITY);
+    }
+
+    // same, every line goes through the transform on its way out; the job is kept and stored as it is
+    public boolean start(Job job, JobTransform transform) {
+        if (job.lines.isEmpty() || !transport.isConnected()) return false;
+
+        queue.clear();
+        queue.addAll(job.lines);
+        setTransform(transform);
+        currentIndex = 0;
+        commandsProcessed = 0;
+        replayAfterReconnect.clear();
+
+        // keep the converted job and its progress on disk so it can be resumed
+        jobLineBase = 0;
+        jobTotalLines = queue.size();
+        inFlight.clear();
+        checkpoint.totalLines = jobTotalLines;
+        checkpoint.lastAckedLine = -1;
+        checkpoint.nextLineOffset = 0;
+        checkpoint.modal.reset();
+        checkpoint.transform = transform;
+        if (checkpointStore != null) {
+            checkpointStore.startJob(queue, transform);
+        }
+
+        estimatedSeconds = estimateSeconds(job.movementCommands, queue.size());
+        metrics.reset(scheduler.nanoTime());
+        tuner.start(rememberedTuning, scheduler.nanoTime());
+        setRunning(true);
+        listener.onProgress(commandsProcessed, jobTotalLines);
+        listener.onLog("[STARTING G-CODE EXECUTION - " + queue.size() + " commands]");
+
+        // Initialize with grbl commands for better workflow
+        initializePenPlotter();
+        firstSendTime = scheduler.nanoTime() + START_DELAY_MS * 1_000_000L;
+        scheduleSend(START_DELAY_MS);
+        scheduler.schedule(this::pollStatus, STATUS_INTERVAL_MS);
+        return true;
+    }
+
+    //Initialize the DrawBot
+    private void initializePenPlotter() {
+        send("~");   // Resume from any feed hold
+        send("$X");  // Clear alarm lock
+        send("G21"); // Millimeters
+        send("G90"); // Absolute positioning
+        send("G92 X0 Y0 Z0"); // Set current position as origin
+        // no M17: stock GRBL answers error:20, it enables the steppers by itself
+        send("G1 Z1"); // Ensure pen is up initially (Z1 = pen up)
+
+        listener.onLog("[PEN PLOTTER INITIALIZED]");
+    }
+
+    private void setTransform(JobTransform transform) {
+        this.transform = transform;
+        stage = transform.isIdentity() ? null : transform.newStage();
+        parts.clear();
+        partIndex = 0;
+        partsJobLine = -1;
+    }
+
+    public JobTransform getTransform() {
+        return transform;
+    }
+
+    // continues a saved job; remaining are the lines after the last confirmed one
+    public boolean resume(JobCheckpoint saved, List<String> remaining) {
+        if (running || !transport.isConnected()) return false;
+
+        queue.clear();
+        queue.addAll(remaining);
+        checkpoint.copyFrom(saved);
+        setTransform(saved.transform);
+        jobLineBase = saved.nextLine();
+        jobTotalLines = saved.totalLines;
+        currentIndex = 0;
+        commandsProcessed = jobLineBase;
+        inFlight.clear();
+        replayAfterReconnect.clear();
+
+        estimatedSeconds = estimateSeconds(queue.size(), queue.size());
+        metrics.reset(scheduler.nanoTime());
+        tuner.start(rememberedTuning, scheduler.nanoTime());
+        setRunning(true);
+        listener.onProgress(commandsProcessed, jobTotalLines);
+        listener.onLog("[RESUMING JOB AT LINE " + jobLineBase + "/" + jobTotalLines + "]");
+
+        // GRBL keeps its work position while powered, so move back with the pen up, then restore pen and modes
+        ModalState modal = saved.modal;
+        StringBuilder position = new StringBuilder("G1 X");
+        PenPlotterGCodeWriter.appendThousandths(position, Math.round(modal.x * 1000.0));
+        position.append(" Y");
+        PenPlotterGCodeWriter.appendThousandths(position, Math.round(modal.y * 1000.0));
+        position.append(" Z1");
+        StringBuilder pen = new StringBuilder("G1 Z");
+        PenPlotterGCodeWriter.appendThousandths(pen, Math.round(modal.z * 1000.0));
+        if (!Double.isNaN(modal.feed)) {
+            pen.append(" F");
+            PenPlotterGCodeWriter.appendThousandths(pen, Math.round(modal.feed * 1000.0));
+        }
+
+        send("~");
+        send("$X");
+        if (stage != null) {
+            // the stage sends absolute millimetres and knows where the transformed position is
+            send("G21");
+            send("G90");
+            send("G1 Z1");
+            List<String> lines = new ArrayList<>();
+            stage.resumeFrom(modal, lines);
+            for (String line : lines) send(line);
+        } else {
+            send(modal.metric ? "G21" : "G20");
+            send("G90");
+            send("G1 Z1");
+            send(position.toString());
+            send(pen.toString());
+            if (!modal.absolute) {
+                send("G91");
+            }
+        }
+        firstSendTime = scheduler.nanoTime() + START_DELAY_MS * 1_000_000L;
+        scheduleSend(START_DELAY_MS);
+        scheduler.schedule(this::pollStatus, STATUS_INTERVAL_MS);
+        return true;
+    }
+
+    private void sendNextCommand() {
+        if (!running || !transport.isConnected()) {
+            return;
+        }
+
+        // oldest line unanswered for too long while GRBL is not busy: count it as processed and go on
+        // (with a full planner GRBL holds the ok back until a move finishes, however long that takes)
+        long now = scheduler.nanoTime();
+        InFlightTracker.Entry oldest = inFlight.oldest();
+        boolean busy = now - lastBusyStatusTime < 2L * STATUS_INTERVAL_MS * 1_000_000L;
+        if (oldest != null && !busy && now - oldest.sentAt > tuner.getTimeoutMs() * 1_000_000L) {
+            listener.onLog("[TIMEOUT - CONTINUING]");
+            metrics.timeouts.increment();
+            acknowledge(Ack.TIMEOUT);
+            oldest = inFlight.oldest();
+        }
+
+        // the transform may leave a line out (outside the work area) or split it into a few
+        while (stage != null && partIndex == parts.size() && currentIndex < queue.size()) {
+            parts.clear();
+            partIndex = 0;
+            partsJobLine = jobLineBase + currentIndex;
+            stage.apply(queue.get(currentIndex), parts);
+            currentIndex++;
+        }
+
+        // Check if more g-code to send (after the last ok, so the last line counts before the job ends)
+        if (currentIndex >= queue.size() && partIndex == parts.size()) {
+            if (oldest == null) {
+                finish();
+            } else {
+                scheduleSend(untilTimeout(oldest, now));
+            }
+            return;
+        }
+
+        // window full: the next ok brings the send forward, this wakeup only catches a missing one
+        String command = stage != null ? parts.get(partIndex) : queue.get(currentIndex);
+        if (!tuner.canSend(inFlight.size(), inFlight.bytes(), command.length() + 1)) {
+            scheduleSend(untilTimeout(oldest, now));
+            return;
+        }
+
+        if (stage != null) {
+            partIndex++;
+            send(command, partIndex == parts.size() ? partsJobLine : -1);
+        } else {
+            send(command, jobLineBase + currentIndex);
+            currentIndex++;
+        }
+        scheduleSend(tuner.getSendDelayMs());
+    }
+
+    private void scheduleSend(long delayMs) {
+        int ticket = ++sendTicket;
+        scheduler.schedule(() -> {
+            if (ticket == sendTicket) sendNextCommand();
+        }, delayMs);
+    }
+
+    private long untilTimeout(InFlightTracker.Entry oldest, long now) {
+        long deadline = oldest.sentAt + tuner.getTimeoutMs() * 1_000_000L;
+        return Math.max(POLL_DELAY_MS, (deadline - now) / 1_000_000L + 1);
+    }
+
+    // an ok or error made room in the window: send again as soon as the start and send delays allow
+    private void sendAfterAck() {
+        long next = Math.max(firstSendTime, lastSendTime + tuner.getSendDelayMs() * 1_000_000L);
+        long wait = next - scheduler.nanoTime();
+        scheduleSend(Math.max(0, (wait + 999_999) / 1_000_000L));
+    }
+
+    // a single command outside of the job (terminal input, settings)
+    public void send(String command) {
+        send(command, -1);
+    }
+
+    // MAIN GRBL SENDER METHOD
+    private void send(String command, int jobLine) {
+        if (!transport.isConnected()) {
+            return;
+        }
+
+        // realtime commands (~ ! ? 0x85) go out without a newline: GRBL would answer the empty line with an extra ok
+        if (InFlightTracker.isRealtime(command)) {
+            transport.send(command);
+            metrics.recordSent(command.length(), false);
+            listener.onLog("> " + (command.charAt(0) == Jogger.JOG_CANCEL ? "[JOG CANCEL]" : command));
+            return;
+        }
+
+        lastSendTime = scheduler.nanoTime();
+        inFlight.sent(command, jobLine, scheduler.nanoTime());
+        metrics.recordQueueDepth(inFlight.size());
+
+        String data = command + "\n";
+        transport.send(data);
+        metrics.recordSent(data.length(), true);
+        listener.onLog("> " + command);
+    }
+
+    // status report once a second while the job runs, used to spot an idle (starved) planner
+    private void pollStatus() {
+        if (!running || !transport.isConnected()) return;
+        requestStatus();
+        scheduler.schedule(this::pollStatus, STATUS_INTERVAL_MS);
+    }
+
+    // realtime "?" without a terminal line; the report comes back through Listener.onReply
+    public void requestStatus() {
+        if (!transport.isConnected()) return;
+        transport.send("?");
+        metrics.recordSent(1, false);
+    }
+
+    // raw data from the serial link, may contain partial or several lines
+    public void onData(String data) {
+        metrics.recordReceived(data.length());
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c == '\n') {
+                String reply = receiveBuffer.toString().trim();
+                receiveBuffer.setLength(0);
+                if (!reply.isEmpty()) {
+                    handleReply(reply);
+                }
+            } else if (c != '\r') {
+                receiveBuffer.append(c);
+            }
+        }
+    }
+
+    private void handleReply(String reply) {
+        if (reply.startsWith("<")) {
+            if (reply.startsWith("<Run") || reply.startsWith("<Hold") || reply.startsWith("<Jog")
+                    || reply.startsWith("<Home")) {
+                lastBusyStatusTime = scheduler.nanoTime();
+            }
+            // polled status reports are not shown in the terminal
+            metrics.recordStatus(running && reply.startsWith("<Idle") && currentIndex < queue.size());
+            listener.onReply(reply);
+            return;
+        }
+        listener.onLog("< " + reply);
+        listener.onReply(reply);
+
+        if (reply.equals("ok") || reply.equals("ook") || reply.equals("k")) {
+            // "ook" and "k" are oks garbled on the way back, the link is noisy
+            acknowledge(reply.equals("ok") ? Ack.OK : Ack.ERROR);
+            if (running) {
+                listener.onProgress(commandsProcessed, jobTotalLines);
+                sendAfterAck();
+            }
+            checkSettled();
+        } else if (reply.startsWith("Error:") || reply.startsWith("error")) {
+            metrics.errors.increment();
+            acknowledge(Ack.ERROR); // errors count as processed to keep progress moving
+            listener.onLog("[ERROR DETECTED - CONTINUING]");
+            if (running) {
+                sendAfterAck();
+            }
+            checkSettled();
+        }
+    }
+
+    private void checkSettled() {
+        if (!settling || running || inFlight.size() > 0) return;
+        settling = false;
+        listener.onSettled();
+    }
+
+    // GRBL answers every line in order, so the oldest sent command is the one confirmed;
+    // only job lines count towards the progress
+    private void acknowledge(Ack ack) {
+        InFlightTracker.Entry entry = inFlight.acknowledge();
+        if (entry == null) return;
+        long now = scheduler.nanoTime();
+        metrics.recordAcknowledged(now - entry.sentAt);
+        metrics.recordQueueDepth(inFlight.size());
+        if (entry.jobLine < 0 || !running) return;
+
+        boolean warmingUp = tuner.isWarmingUp();
+        int window = tuner.getWindow();
+        if (ack == Ack.OK) {
+            tuner.onAcknowledged(now - entry.sentAt, now);
+        } else if (ack == Ack.ERROR) {
+            tuner.onError(now);
+        } else {
+            tuner.onTimeout();
+        }
+        if (warmingUp && !tuner.isWarmingUp()) {
+            listener.onLog("[LINK TUNED - " + tuner.getParameters() + "]");
+        } else if (tuner.getWindow() < window) {
+            listener.onLog("[LINK ERRORS - SLOWING DOWN TO " + tuner.getParameters() + "]");
+        }
+
+        // job lines the transform left out are done with the next line that was sent
+        while (checkpoint.lastAckedLine < entry.jobLine) {
+            int jobLine = checkpoint.lastAckedLine + 1;
+            String line = queue.get(jobLine - jobLineBase);
+            commandsProcessed++;
+            checkpoint.modal.apply(line);
+            checkpoint.lastAckedLine = jobLine;
+            checkpoint.nextLineOffset += JobCheckpointStore.storedLength(line);
+        }
+        if (checkpointStore != null) {
+            checkpointStore.update(checkpoint);
+        }
+    }
+
+    private void finish() {
+        metrics.markEnd(scheduler.nanoTime());
+        // lines at the end that the transform left out were never sent, they are done as well
+        commandsProcessed = jobTotalLines;
+        if (checkpointStore != null) {
+            checkpointStore.clear();
+        }
+        setRunning(false);
+
+        settling = true;
+        send("G1 Z1");
+        send("G4 P0"); // wait until all moves are done (GRBL has no M400)
+
+        listener.onLog("[G-CODE EXECUTION COMPLETED - PEN UP (Z1)]");
+        listener.onFinished();
+    }
+
+    // user pressed stop: lift the pen, hold, then clear the hold and re-enable the motors
+    public void stop() {
+        scheduler.cancelAll();
+        settling = false;
+        if (checkpointStore != null) {
+            checkpointStore.clear();
+        }
+        replayAfterReconnect.clear();
+        if (running) metrics.markEnd(scheduler.nanoTime());
+        setRunning(false);
+        listener.onLog("DrawBot stopped");
+
+        if (transport.isConnected()) {
+            send("G1 Z1");
+            send("!");
+
+            // Wait a moment then reset and re-enable motors ($X, GRBL has no M17)
+            scheduler.schedule(() -> {
+                send("~");
+                send("$X");
+                listener.onLog("[MOTORS RE-ENABLED - Ready for new commands, pen up (Z1)]");
+            }, 500);
+        }
+    }
+
+    // connection lost mid-job: keep the checkpoint and the unanswered lines instead of throwing the progress away
+    public void suspend() {
+        if (!running) return;
+        scheduler.cancelAll();
+        replayAfterReconnect = inFlight.takeAll();
+        receiveBuffer.setLength(0);
+        if (checkpointStore != null) {
+            checkpointStore.flush();
+        }
+        setRunning(false);
+        listener.onLog("[JOB PAUSED AT LINE " + checkpoint.nextLine() + "/" + jobTotalLines
+                + " - reconnect and press Resume]");
+    }
+
+    // the link is back and GRBL kept its state: send exactly the lines that were never confirmed, then go on.
+    // GRBL may have run some of them already with only the ok lost, so they are resent only if running
+    // them twice ends in the same place; otherwise the job resumes from the checkpoint like Resume does
+    public void continueAfterReconnect() {
+        if (running || queue.isEmpty() || !transport.isConnected()) return;
+
+        List<InFlightTracker.Entry> replay = replayAfterReconnect;
+        replayAfterReconnect = new ArrayList<>();
+        if (!canReplay(replay)) {
+            listener.onLog("[RECONNECTED - UNCONFIRMED LINES ARE NOT SAFE TO SEND TWICE, RESUMING FROM CHECKPOINT]");
+            JobCheckpoint saved = new JobCheckpoint();
+            saved.copyFrom(checkpoint);
+            List<String> remaining = new ArrayList<>(queue.subList(saved.nextLine() - jobLineBase, queue.size()));
+            resume(saved, remaining);
+            return;
+        }
+        listener.onLog("[RECONNECTED - RESENDING " + replay.size() + " UNCONFIRMED LINES]");
+
+        receiveBuffer.setLength(0);
+        setRunning(true);
+
+        send("~");
+        for (InFlightTracker.Entry entry : replay) {
+            send(entry.command, entry.jobLine);
+        }
+        scheduleSend(tuner.getSendDelayMs());
+        scheduler.schedule(this::pollStatus, STATUS_INTERVAL_MS);
+    }
+
+    private boolean canReplay(List<InFlightTracker.Entry> replay) {
+        if (!checkpoint.modal.absolute) return false;
+        for (InFlightTracker.Entry entry : replay) {
+            if (!isSafeToRepeat(entry.command)) return false;
+        }
+        return true;
+    }
+
+    // false for lines that do something else the second time: $ commands, G91 (the moves after it are
+    // relative), G92 and G10 (origin), G28/G30 (home positions, and moves through a point)
+    static boolean isSafeToRepeat(String command) {
+        String line = command.trim();
+        if (line.startsWith("$")) return false;
+        int length = line.length();
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(i);
+            if (c == ';') break;
+            if (c == '(') {
+                int close = line.indexOf(')', i);
+                if (close < 0) break;
+                i = close;
+                continue;
+            }
+            if (c != 'G' && c != 'g') continue;
+            int start = i + 1, end = start;
+            while (end < length && isDigit(line.charAt(end))) end++;
+            if (end == start || end - start > 3) continue;
+            int code = Integer.parseInt(line.substring(start, end));
+            if (code == 91 || code == 92 || code == 10 || code == 28 || code == 30) return false;
+            i = end - 1;
+        }
+        return true;
+    }
+
+    public void discardReplay() {
+        replayAfterReconnect.clear();
+    }
+
+    public void goHome() {
+        listener.onLog("[MOVING TO HOME POSITION]");
+        settling = true;
+        send("~");
+        send("$X");
+        send("G1 Z1");
+        send("G1 X0 Y0 Z1");
+        send("G4 P0");
+    }
+
+    // the link dropped while no job ran: what was sent after a job or a move home will not be answered
+    public void abandonSettling() {
+        if (running) return;
+        settling = false;
+        inFlight.clear();
+    }
+
+    // forgets the loaded job without touching the saved checkpoint
+    public void clear() {
+        queue.clear();
+        setTransform(JobTransform.IDENTITY);
+        currentIndex = 0;
+        commandsProcessed = 0;
+        jobTotalLines = 0;
+        scheduler.cancelAll();
+        setRunning(false);
+    }
+
+    private void setRunning(boolean running) {
+        if (this.running == running) return;
+        if (running) settling = false;
+        this.running = running;
+        listener.onRunningChanged(running);
+    }
+}
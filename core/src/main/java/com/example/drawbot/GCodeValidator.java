@@ -0,0 +1,436 @@
+package com.example.drawbot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Checks a job against what stock GRBL 1.1 accepts before anything is sent, so no line costs
+// a round trip just to come back as an error. One pass, no regex, a line is only copied when it
+// has to change:
+// - unsupported G-codes (G29, G64, ...): line removed, dropping only the word would turn it into a move
+// - unsupported M-codes (M17, M84, M400, ...) and letters GRBL does not know (E, A, ...): word removed
+// - a word given twice: the later one removed
+// - lines GRBL cannot parse or that overflow its 80 character line buffer: removed
+// - G0/G1 targets outside the travel limits ($130/$131): clamped to the work area
+// - G1/G2/G3 before any feed rate: the default feed added, where GRBL would answer error:22
+// Comment-only lines are dropped without a note, GRBL would only answer them with ok.
+public class GCodeValidator {
+    // significant characters per line: GRBL's LINE_BUFFER_SIZE is 80 including the terminator
+    public static final int MAX_LINE_LENGTH = 79;
+    // only this many issues are kept with their text, the rest is counted
+    public static final int MAX_REPORTED_ISSUES = 100;
+
+    // GRBL 1.1 G and M codes times ten (G28.1 = 281)
+    private static final int[] G_CODES = {0, 10, 20, 30, 40, 100, 170, 180, 190, 200, 210, 280, 281, 300, 301,
+            382, 383, 384, 385, 400, 431, 490, 530, 540, 550, 560, 570, 580, 590, 610, 800, 900, 910, 911,
+            920, 921, 930, 940};
+    private static final int[] M_CODES = {0, 10, 20, 30, 40, 50, 70, 80, 90, 300, 560};
+    private static final String WORD_LETTERS = "FGIJKLMNPRSTXYZ";
+    private static final double[] POWERS_OF_TEN = new double[19];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    public enum Action { REMOVED, REWRITTEN, WARNING }
+
+    public static final class Issue {
+        public final int line;          // 1-based line of the job as it was given
+        public final Action action;
+        public final String original;
+        public final String message;
+
+        Issue(int line, Action action, String original, String message) {
+            this.line = line;
+            this.action = action;
+            this.original = original;
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "line " + line + " " + action.name().toLowerCase() + ": " + message + " (" + original + ")";
+        }
+    }
+
+    public static final class Result {
+        public final List<String> lines;
+        public final List<Issue> issues;    // the first MAX_REPORTED_ISSUES
+        public final int removed, rewritten, warnings;
+
+        Result(List<String> lines, List<Issue> issues, int removed, int rewritten, int warnings) {
+            this.lines = lines;
+            this.issues = issues;
+            this.removed = removed;
+            this.rewritten = rewritten;
+            this.warnings = warnings;
+        }
+
+        public boolean isClean() {
+            return removed == 0 && rewritten == 0 && warnings == 0;
+        }
+    }
+
+    private final double maxX, maxY, defaultFeed;
+
+    // parsed words of the current line; spans point into the line
+    private final char[] letters = new char[32];
+    private final double[] values = new double[32];
+    private final int[] starts = new int[32], ends = new int[32];
+    private final boolean[] dropped = new boolean[32];
+    private int count;
+
+    // modal state while going through the job, in machine millimetres
+    private double posX, posY, offsetX, offsetY;
+    private boolean absolute, metric, feedSet;
+    private int motion;
+
+    private List<Issue> issues;
+    private int removed, rewritten, warnings, lineNumber;
+
+    // maxX/maxY: travel from the start position in mm, NaN if unknown;
+    // defaultFeed: mm/min added to the first feed-less G1, NaN to only warn
+    public GCodeValidator(double maxX, double maxY, double defaultFeed) {
+        this.maxX = maxX;
+        this.maxY = maxY;
+        this.defaultFeed = defaultFeed;
+    }
+
+    public Result validate(List<String> input) {
+        // the streamer sends G21, G90 and G92 X0 Y0 Z0 before the job
+        posX = posY = offsetX = offsetY = 0;
+        absolute = true;
+        metric = true;
+        feedSet = false;
+        motion = 0;
+        issues = new ArrayList<>();
+        removed = rewritten = warnings = 0;
+
+        List<String> output = new ArrayList<>(input.size());
+        for (int i = 0; i < input.size(); i++) {
+            lineNumber = i + 1;
+            String line = validateLine(input.get(i));
+            if (line != null) output.add(line);
+        }
+        return new Result(output, issues, removed, rewritten, warnings);
+    }
+
+    // the line to send (the same instance if nothing changed), or null to leave it out
+    private String validateLine(String raw) {
+        String line = raw.trim();
+        if (line.isEmpty()) return null;
+        if (line.charAt(0) == '$') {
+            if (isSystemCommand(line)) return line;
+            return remove(raw, "not a GRBL $ command");
+        }
+
+        String error = parse(line);
+        if (error != null) return remove(raw, error);
+        if (count == 0) return null;   // comments only
+
+        boolean changed = false;
+        boolean hasFeed = false, hasAxis = false, nonModalAxis = false, machineCoordinates = false;
+        int lineMotion = motion;
+        boolean lineAbsolute = absolute, lineMetric = metric, setOrigin = false;
+        int xWord = -1, yWord = -1;
+
+        for (int w = 0; w < count; w++) {
+            char letter = letters[w];
+            double value = values[w];
+            if (WORD_LETTERS.indexOf(letter) < 0) {
+                changed |= drop(w, raw, "GRBL has no " + letter + " word");
+                continue;
+            }
+            if (letter != 'G' && letter != 'M' && isRepeated(w)) {
+                changed |= drop(w, raw, letter + " given twice");
+                continue;
+            }
+            switch (letter) {
+                case 'G': {
+                    int code = (int) Math.round(value * 10);
+                    if (Arrays.binarySearch(G_CODES, code) < 0) {
+                        return remove(raw, "G" + format(value) + " is not supported by GRBL");
+                    }
+                    if (code == 0 || code == 10 || code == 20 || code == 30) lineMotion = code / 10;
+                    else if (code == 200) lineMetric = false;
+                    else if (code == 210) lineMetric = true;
+                    else if (code == 900) lineAbsolute = true;
+                    else if (code == 910) lineAbsolute = false;
+                    else if (code == 530) machineCoordinates = true;
+                    else if (code == 920) setOrigin = true;
+                    else if (code == 100 || code == 280 || code == 300 || code == 40) nonModalAxis = true;
+                    else if (code == 921) offsetX = offsetY = 0;
+                    break;
+                }
+                case 'M': {
+                    int code = (int) Math.round(value * 10);
+                    if (Arrays.binarySearch(M_CODES, code) < 0) {
+                        changed |= drop(w, raw, "M" + format(value) + " is not supported by GRBL");
+                    }
+                    break;
+                }
+                case 'F':
+                    hasFeed = true;
+                    break;
+                case 'X':
+                    xWord = w;
+                    hasAxis = true;
+                    break;
+                case 'Y':
+                    yWord = w;
+                    hasAxis = true;
+                    break;
+                case 'Z':
+                    hasAxis = true;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // any word left at all?
+        boolean empty = true;
+        for (int w = 0; w < count && empty; w++) {
+            if (!dropped[w]) empty = false;
+        }
+        if (empty) {
+            // nothing left of the line: what was noted as a dropped word removed it
+            for (int i = issues.size() - 1; i >= 0 && issues.get(i).line == lineNumber; i--) {
+                Issue issue = issues.get(i);
+                issues.set(i, new Issue(issue.line, Action.REMOVED, issue.original, issue.message));
+            }
+            removed++;
+            return null;
+        }
+
+        motion = lineMotion;
+        absolute = lineAbsolute;
+        metric = lineMetric;
+        double scale = metric ? 1.0 : 25.4;
+
+        String[] replacement = null;
+        if (setOrigin) {
+            // G92: the current position gets the given work coordinates
+            if (xWord >= 0) offsetX = posX - values[xWord] * scale;
+            if (yWord >= 0) offsetY = posY - values[yWord] * scale;
+        } else if (hasAxis && !nonModalAxis) {
+            if (motion != 0 && !feedSet && !hasFeed) {
+                if (!Double.isNaN(defaultFeed)) {
+                    replacement = new String[count + 1];
+                    replacement[count] = "F" + format(defaultFeed);
+                    changed = true;
+                    note(Action.REWRITTEN, raw, "no feed rate set yet, added F" + format(defaultFeed));
+                } else {
+                    note(Action.WARNING, raw, "no feed rate set yet, GRBL answers error:22");
+                }
+                feedSet = true;
+            }
+
+            double targetX = posX, targetY = posY;
+            if (xWord >= 0) targetX = target(posX, offsetX, values[xWord] * scale, machineCoordinates);
+            if (yWord >= 0) targetY = target(posY, offsetY, values[yWord] * scale, machineCoordinates);
+
+            if (motion <= 1) {
+                double clampedX = clamp(targetX, maxX), clampedY = clamp(targetY, maxY);
+                if (clampedX != targetX || clampedY != targetY) {
+                    if (replacement == null) replacement = new String[count];
+                    if (clampedX != targetX) {
+                        replacement[xWord] = "X" + format(word(clampedX, posX, offsetX, scale, machineCoordinates));
+                    }
+                    if (clampedY != targetY) {
+                        replacement[yWord] = "Y" + format(word(clampedY, posY, offsetY, scale, machineCoordinates));
+                    }
+                    changed = true;
+                    note(Action.REWRITTEN, raw, "outside the work area, clamped to X0.." + format(maxX)
+                            + " Y0.." + format(maxY));
+                    targetX = clampedX;
+                    targetY = clampedY;
+                }
+            } else if (clamp(targetX, maxX) != targetX || clamp(targetY, maxY) != targetY) {
+                note(Action.WARNING, raw, "arc ends outside the work area");
+            }
+            posX = targetX;
+            posY = targetY;
+        }
+        if (hasFeed) feedSet = true;
+
+        if (!changed) {
+            if (significantLength(line) > MAX_LINE_LENGTH) return remove(raw, "longer than GRBL's line buffer");
+            return line;
+        }
+
+        StringBuilder sb = new StringBuilder(line.length() + 8);
+        for (int w = 0; w < count; w++) {
+            if (dropped[w]) continue;
+            if (sb.length() > 0) sb.append(' ');
+            if (replacement != null && replacement[w] != null) {
+                sb.append(replacement[w]);
+            } else {
+                sb.append(line, starts[w], ends[w]);
+            }
+        }
+        if (replacement != null && replacement.length > count) {
+            sb.append(' ').append(replacement[count]);
+        }
+        String result = sb.toString();
+        if (significantLength(result) > MAX_LINE_LENGTH) return remove(raw, "longer than GRBL's line buffer");
+        rewritten++;
+        return result;
+    }
+
+    // splits the line into words; returns an error message, or null
+    private String parse(String line) {
+        count = 0;
+        int i = 0, length = line.length();
+        while (i < length) {
+            char c = line.charAt(i);
+            if (c <= ' ') {
+                i++;
+            } else if (c == '(') {
+                int close = line.indexOf(')', i);
+                if (close < 0) return "comment is not closed";
+                i = close + 1;
+            } else if (c == ';') {
+                break;
+            } else if (Character.isLetter(c)) {
+                if (count == letters.length) return "too many words";
+                int start = i++;
+                while (i < length && line.charAt(i) == ' ') i++;
+                boolean negative = false;
+                if (i < length && (line.charAt(i) == '-' || line.charAt(i) == '+')) {
+                    negative = line.charAt(i) == '-';
+                    i++;
+                }
+                // digits collected as an integer plus the number of decimals, no substring/parseDouble per word
+                long mantissa = 0;
+                int digits = 0, decimals = -1;
+                while (i < length) {
+                    char d = line.charAt(i);
+                    if (d >= '0' && d <= '9') {
+                        if (digits < 18) mantissa = mantissa * 10 + (d - '0');
+                        else if (decimals < 0) return "number too long after " + c;
+                        else decimals--;   // drop precision beyond 18 digits
+                        digits++;
+                        if (decimals >= 0) decimals++;
+                    } else if (d == '.' && decimals < 0) {
+                        decimals = 0;
+                    } else {
+                        break;
+                    }
+                    i++;
+                }
+                if (digits == 0) return "bad number after " + c;
+                double value = decimals > 0 ? mantissa / POWERS_OF_TEN[Math.min(decimals, 18)] : mantissa;
+                letters[count] = Character.toUpperCase(c);
+                values[count] = negative ? -value : value;
+                starts[count] = start;
+                ends[count] = i;
+                dropped[count] = false;
+                count++;
+            } else {
+                return "unexpected '" + c + "'";
+            }
+        }
+        return null;
+    }
+
+    private boolean isRepeated(int w) {
+        for (int other = 0; other < w; other++) {
+            if (letters[other] == letters[w] && !dropped[other]) return true;
+        }
+        return false;
+    }
+
+    private boolean drop(int w, String raw, String message) {
+        dropped[w] = true;
+        note(Action.REWRITTEN, raw, message);
+        return true;
+    }
+
+    private String remove(String raw, String message) {
+        removed++;
+        addIssue(Action.REMOVED, raw, message);
+        return null;
+    }
+
+    private void note(Action action, String raw, String message) {
+        if (action == Action.WARNING) warnings++;
+        addIssue(action, raw, message);
+    }
+
+    private void addIssue(Action action, String raw, String message) {
+        if (issues.size() < MAX_REPORTED_ISSUES) {
+            issues.add(new Issue(lineNumber, action, raw.trim(), message));
+        }
+    }
+
+    private double target(double position, double offset, double word, boolean machineCoordinates) {
+        if (machineCoordinates) return word;
+        return absolute ? word + offset : position + word;
+    }
+
+    // the X/Y word that moves to machine position target
+    private double word(double target, double position, double offset, double scale, boolean machineCoordinates) {
+        if (machineCoordinates) return target / scale;
+        return (absolute ? target - offset : target - position) / scale;
+    }
+
+    private static double clamp(double value, double max) {
+        if (Double.isNaN(max)) return value;
+        return Math.max(0, Math.min(max, value));
+    }
+
+    // $ commands of GRBL 1.1: $$ $# $G $I $N $C $X $H $SLP $J=.. $RST=.. $Nx=.. $n=value
+    static boolean isSystemCommand(String line) {
+        String command = line.toUpperCase();
+        switch (command) {
+            case "$": case "$$": case "$#": case "$G": case "$I": case "$N": case "$C": case "$X": case "$H":
+            case "$SLP":
+                return true;
+            default:
+                break;
+        }
+        if (command.startsWith("$J=") || command.startsWith("$RST=") || command.startsWith("$I=")) return true;
+        if (command.startsWith("$N0=") || command.startsWith("$N1=")) return true;
+
+        int eq = command.indexOf('=');
+        if (eq < 2) return false;
+        for (int i = 1; i < eq; i++) {
+            if (command.charAt(i) < '0' || command.charAt(i) > '9') return false;
+        }
+        try {
+            Double.parseDouble(command.substring(eq + 1));
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    // characters GRBL keeps in its line buffer: no whitespace, no comments
+    private static int significantLength(String line) {
+        int length = 0;
+        boolean inComment = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (inComment) {
+                if (c == ')') inComment = false;
+            } else if (c == '(') {
+                inComment = true;
+            } else if (c == ';') {
+                break;
+            } else if (c > ' ') {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    private static String format(double value) {
+        StringBuilder sb = new StringBuilder();
+        PenPlotterGCodeWriter.appendThousandths(sb, Math.round(value * 1000.0));
+        return sb.toString();
+    }
+}
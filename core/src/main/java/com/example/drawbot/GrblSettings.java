@@ -0,0 +1,99 @@
+package com.example.drawbot;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+// GRBL "$$" settings as a typed map: setting number ($100 -> 100) to numeric value.
+public class GrblSettings {
+    // GRBL prints three decimals, anything closer than this is the same value
+    private static final double EPSILON = 0.0005;
+
+    private final TreeMap<Integer, Double> values = new TreeMap<>();
+
+    public GrblSettings() {
+    }
+
+    public GrblSettings(Map<Integer, Double> values) {
+        this.values.putAll(values);
+    }
+
+    // parses one reply line like "$100=65.000" or "$100=65.000 (x, step/mm)", returns false for other lines
+    public boolean parseLine(String line) {
+        String l = line.trim();
+        if (l.length() < 4 || l.charAt(0) != '$') return false;
+        int eq = l.indexOf('=');
+        if (eq < 2) return false;
+
+        int end = eq + 1;
+        while (end < l.length() && " (".indexOf(l.charAt(end)) < 0) {
+            end++;
+        }
+        try {
+            int number = Integer.parseInt(l.substring(1, eq));
+            double value = Double.parseDouble(l.substring(eq + 1, end));
+            values.put(number, value);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    public Double get(int number) {
+        return values.get(number);
+    }
+
+    public void put(int number, double value) {
+        values.put(number, value);
+    }
+
+    public boolean isEmpty() {
+        return values.isEmpty();
+    }
+
+    public Map<Integer, Double> asMap() {
+        return Collections.unmodifiableMap(values);
+    }
+
+    // settings from desired that are missing here or have another value, in the order of desired
+    public LinkedHashMap<Integer, Double> diff(Map<Integer, Double> desired) {
+        LinkedHashMap<Integer, Double> changes = new LinkedHashMap<>();
+        for (Map.Entry<Integer, Double> entry : desired.entrySet()) {
+            Double current = values.get(entry.getKey());
+            if (current == null || Math.abs(current - entry.getValue()) > EPSILON) {
+                changes.put(entry.getKey(), entry.getValue());
+            }
+        }
+        return changes;
+    }
+
+    // compact form for SharedPreferences: "100=65.0;101=65.0"
+    public String serialize() {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<Integer, Double> entry : values.entrySet()) {
+            if (sb.length() > 0) sb.append(';');
+            sb.append(entry.getKey()).append('=').append(entry.getValue());
+        }
+        return sb.toString();
+    }
+
+    public static GrblSettings deserialize(String text) {
+        GrblSettings settings = new GrblSettings();
+        if (text == null || text.isEmpty()) return settings;
+        for (String part : text.split(";")) {
+            settings.parseLine("$" + part);
+        }
+        return settings;
+    }
+
+    // value as GRBL expects it in a "$n=value" command
+    public static String format(double value) {
+        if (value == Math.rint(value)) {
+            return String.valueOf((long) value) + ".0";
+        }
+        StringBuilder sb = new StringBuilder();
+        PenPlotterGCodeWriter.appendThousandths(sb, Math.round(value * 1000.0));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.drawbot;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Reads the controller settings with "$$" and writes only the values that differ, one at a time.
+// Every write waits for its "ok" before the next one is sent, so each EEPROM write is confirmed.
+public class GrblSettingsSync {
+    public interface Sender {
+        boolean send(String line);
+    }
+
+    public interface Listener {
+        void onSettingsRead(GrblSettings current, int changes);
+        void onSettingWritten(int number, double value, int written, int total);
+        void onComplete(GrblSettings result, int written);
+        void onError(String message);
+    }
+
+    private enum State { IDLE, READING, WRITING, DONE, FAILED }
+
+    private final Sender sender;
+    private final Listener listener;
+    private final LinkedHashMap<Integer, Double> desired;
+    private final StringBuilder lineBuffer = new StringBuilder();
+
+    private State state = State.IDLE;
+    private GrblSettings current = new GrblSettings();
+    private final List<Map.Entry<Integer, Double>> pending = new ArrayList<>();
+    private int written = 0;
+    private long lastActivity = 0;
+
+    public GrblSettingsSync(Map<Integer, Double> desired, Sender sender, Listener listener) {
+        this.desired = new LinkedHashMap<>(desired);
+        this.sender = sender;
+        this.listener = listener;
+    }
+
+    public void start(long now) {
+        state = State.READING;
+        current = new GrblSettings();
+        lineBuffer.setLength(0);
+        lastActivity = now;
+        if (!sender.send("$$\n")) {
+            fail("Could not send $$");
+        }
+    }
+
+    public boolean isRunning() {
+        return state == State.READING || state == State.WRITING;
+    }
+
+    // true if the controller did not answer in time; the sync is failed in that case
+    public boolean checkTimeout(long now, long timeoutMs) {
+        if (isRunning() && now - lastActivity > timeoutMs) {
+            fail(state == State.READING ? "No reply to $$" : "No ok for setting write");
+            return true;
+        }
+        return false;
+    }
+
+    // raw data from the serial link, may contain partial or several lines
+    public void onData(String data, long now) {
+        if (!isRunning()) return;
+        lastActivity = now;
+
+        for (int i = 0; i < data.length(); i++) {
+            char c = data.charAt(i);
+            if (c == '\n') {
+                String line = lineBuffer.toString().trim();
+                lineBuffer.setLength(0);
+                if (!line.isEmpty()) {
+                    onLine(line);
+                    if (!isRunning()) return;
+                }
+            } else if (c != '\r') {
+                lineBuffer.append(c);
+            }
+        }
+    }
+
+    private void onLine(String line) {
+        boolean ok = line.equals("ok");
+        boolean error = line.startsWith("error") || line.startsWith("Error") || line.startsWith("ALARM");
+
+        if (state == State.READING) {
+            if (ok) {
+                if (current.isEmpty()) {
+                    fail("Controller sent no settings");
+                    return;
+                }
+                LinkedHashMap<Integer, Double> changes = current.diff(desired);
+                pending.clear();
+                pending.addAll(changes.entrySet());
+                written = 0;
+                listener.onSettingsRead(current, pending.size());
+                state = State.WRITING;
+                writeNext();
+            } else if (error) {
+                fail("$$ failed: " + line);
+            } else {
+                current.parseLine(line);
+            }
+        } else if (state == State.WRITING) {
+            if (ok) {
+                Map.Entry<Integer, Double> done = pending.get(written);
+                current.put(done.getKey(), done.getValue());
+                written++;
+                listener.onSettingWritten(done.getKey(), done.getValue(), written, pending.size());
+                writeNext();
+            } else if (error) {
+                fail("$" + pending.get(written).getKey() + " rejected: " + line);
+            }
+            // status reports and [MSG:...] lines are ignored while waiting
+        }
+    }
+
+    private void writeNext() {
+        if (written >= pending.size()) {
+            state = State.DONE;
+            listener.onComplete(current, written);
+            return;
+        }
+        Map.Entry<Integer, Double> next = pending.get(written);
+        if (!sender.send("$" + next.getKey() + "=" + GrblSettings.format(next.getValue()) + "\n")) {
+            fail("Could not send $" + next.getKey());
+        }
+    }
+
+    private void fail(String message) {
+        state = State.FAILED;
+        listener.onError(message);
+    }
+}
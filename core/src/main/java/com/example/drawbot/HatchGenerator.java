@@ -0,0 +1,203 @@
+package com.example.drawbot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Tone shading with hatch lines: darker areas get more layers at different angles (cross hatching).
+// Scanlines run serpentine so the pen mostly goes back and forth instead of returning to one side,
+// and bands of scanlines are computed in parallel. Like ImageTracer it only uses plain int arrays.
+public class HatchGenerator {
+    private static final int FIXED = 16; // segment end points are stored in 1/16 px
+    private static final int LINES_PER_BAND = 24;
+
+    // one hatch layer per angle, drawn where darkness (255 - brightness) exceeds its threshold
+    private static final int[] LAYER_ANGLES = {45, 135, 0, 90};
+    private static final int[] LAYER_THRESHOLDS = {50, 110, 165, 215};
+
+    private double lineSpacingMm = 1.0;
+    private double minSegmentMm = 0.6;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    int linesPerBand = LINES_PER_BAND; // scanlines per parallel task, only changed by tests
+
+    public void setLineSpacingMm(double lineSpacingMm) {
+        this.lineSpacingMm = Math.max(0.1, lineSpacingMm);
+    }
+
+    public void setMinSegmentMm(double minSegmentMm) {
+        this.minSegmentMm = minSegmentMm;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    // writes the hatching for the image, returns the number of hatch segments
+    public int generate(int[] argb, int width, int height, double mmPerPixel,
+                        PenPlotterGCodeWriter out) throws IOException, InterruptedException {
+        int[] darkness = new int[width * height];
+        for (int i = 0; i < darkness.length; i++) {
+            int c = argb[i];
+            int a = c >>> 24;
+            int l = (((c >> 16) & 0xFF) * 77 + ((c >> 8) & 0xFF) * 150 + (c & 0xFF) * 29) >> 8;
+            darkness[i] = 255 - (l * a + 255 * (255 - a)) / 255;
+        }
+
+        double spacingPx = lineSpacingMm / mmPerPixel;
+        double minSegmentPx = minSegmentMm / mmPerPixel;
+        int segments = 0;
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            for (int layer = 0; layer < LAYER_ANGLES.length; layer++) {
+                Layer l = new Layer(darkness, width, height, LAYER_ANGLES[layer], LAYER_THRESHOLDS[layer],
+                        spacingPx, minSegmentPx);
+
+                List<Callable<int[]>> bands = new ArrayList<>();
+                for (int first = 0; first < l.lineCount; first += linesPerBand) {
+                    int from = first, to = Math.min(l.lineCount, first + linesPerBand);
+                    bands.add(() -> l.band(from, to));
+                }
+
+                // bands come back in order, so serpentine direction continues across band borders
+                for (Future<int[]> future : pool.invokeAll(bands)) {
+                    int[] s;
+                    try {
+                        s = future.get();
+                    } catch (ExecutionException e) {
+                        throw new IllegalStateException("Hatching failed", e.getCause());
+                    }
+                    for (int k = 0; k + 3 < s.length; k += 4) {
+                        l.write(out, s[k], s[k + 1], s[k + 2], s[k + 3], mmPerPixel);
+                        segments++;
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        out.finish();
+        return segments;
+    }
+
+    private static final class Layer {
+        final int[] darkness;
+        final int width, height, threshold;
+        final double ux, uy, nx, ny; // scan direction and scanline normal
+        final double spacing, minSegment, tMin, tMax, sMin;
+        final int lineCount;
+
+        // pen position of the last segment in fixed point, -1 = pen up
+        int penX = -1, penY = -1;
+
+        Layer(int[] darkness, int width, int height, int angleDeg, int threshold,
+              double spacing, double minSegment) {
+            this.darkness = darkness;
+            this.width = width;
+            this.height = height;
+            this.threshold = threshold;
+            this.spacing = spacing;
+            this.minSegment = minSegment;
+
+            double a = Math.toRadians(angleDeg);
+            ux = Math.cos(a);
+            uy = Math.sin(a);
+            nx = -uy;
+            ny = ux;
+
+            // project the image corners to find the range of scanlines and positions along them
+            double[] cx = {0, width, 0, width}, cy = {0, 0, height, height};
+            double tLo = Double.MAX_VALUE, tHi = -Double.MAX_VALUE, sLo = Double.MAX_VALUE, sHi = -Double.MAX_VALUE;
+            for (int i = 0; i < 4; i++) {
+                double t = cx[i] * ux + cy[i] * uy, s = cx[i] * nx + cy[i] * ny;
+                tLo = Math.min(tLo, t);
+                tHi = Math.max(tHi, t);
+                sLo = Math.min(sLo, s);
+                sHi = Math.max(sHi, s);
+            }
+            tMin = tLo;
+            tMax = tHi;
+            sMin = sLo + spacing / 2;
+            lineCount = Math.max(0, (int) Math.floor((sHi - sMin) / spacing) + 1);
+        }
+
+        // segments of scanlines [from, to) as x0, y0, x1, y1 in fixed point, already in drawing order
+        int[] band(int from, int to) {
+            ImageTracer.IntList segments = new ImageTracer.IntList();
+            ImageTracer.IntList line = new ImageTracer.IntList();
+
+            for (int i = from; i < to; i++) {
+                double s = sMin + i * spacing;
+                line.clear();
+                double start = Double.NaN;
+
+                // sample every half pixel along the scanline
+                for (double t = tMin; t <= tMax + 0.5; t += 0.5) {
+                    boolean dark = isDark(s, t);
+                    if (dark && Double.isNaN(start)) {
+                        start = t;
+                    } else if (!dark && !Double.isNaN(start)) {
+                        addSegment(line, s, start, t - 0.5);
+                        start = Double.NaN;
+                    }
+                }
+                if (!Double.isNaN(start)) {
+                    addSegment(line, s, start, tMax);
+                }
+
+                // serpentine: every other scanline is drawn backwards
+                if ((i & 1) == 0) {
+                    for (int k = 0; k < line.size; k++) segments.add(line.data[k]);
+                } else {
+                    for (int k = line.size - 4; k >= 0; k -= 4) {
+                        segments.add(line.data[k + 2]);
+                        segments.add(line.data[k + 3]);
+                        segments.add(line.data[k]);
+                        segments.add(line.data[k + 1]);
+                    }
+                }
+            }
+            return segments.toArray();
+        }
+
+        private boolean isDark(double s, double t) {
+            int x = (int) (t * ux + s * nx);
+            int y = (int) (t * uy + s * ny);
+            return x >= 0 && y >= 0 && x < width && y < height && darkness[y * width + x] > threshold;
+        }
+
+        private void addSegment(ImageTracer.IntList line, double s, double t0, double t1) {
+            if (t1 - t0 < minSegment) return;
+            line.add((int) Math.round((t0 * ux + s * nx) * FIXED));
+            line.add((int) Math.round((t0 * uy + s * ny) * FIXED));
+            line.add((int) Math.round((t1 * ux + s * nx) * FIXED));
+            line.add((int) Math.round((t1 * uy + s * ny) * FIXED));
+        }
+
+        // joins to the previous segment without lifting the pen if the connector stays in a dark area
+        void write(PenPlotterGCodeWriter out, int x0, int y0, int x1, int y1, double mmPerPixel) throws IOException {
+            double scale = mmPerPixel / FIXED;
+            boolean connect = false;
+            if (penX >= 0) {
+                double dx = (x0 - penX) / (double) FIXED, dy = (y0 - penY) / (double) FIXED;
+                if (dx * dx + dy * dy <= 4 * spacing * spacing) {
+                    int mx = (x0 + penX) / (2 * FIXED), my = (y0 + penY) / (2 * FIXED);
+                    connect = mx >= 0 && my >= 0 && mx < width && my < height && darkness[my * width + mx] > threshold;
+                }
+            }
+            if (connect) {
+                out.lineTo(x0 * scale, (height * FIXED - y0) * scale);
+            } else {
+                out.moveTo(x0 * scale, (height * FIXED - y0) * scale);
+            }
+            out.lineTo(x1 * scale, (height * FIXED - y1) * scale);
+            penX = x1;
+            penY = y1;
+        }
+    }
+}
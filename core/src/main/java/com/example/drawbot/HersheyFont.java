@@ -0,0 +1,219 @@
+package com.example.drawbot;
+
+// Single-stroke (Hershey-style) vector font for plotting labels and addresses.
+// Glyphs use Hershey's encoding: the first two chars are the left/right bounds, then x/y pairs
+// relative to 'R', " R" lifts the pen. y grows downwards in the encoding, baseline is 'R',
+// capitals are 12 units high. The strings are decoded once into short arrays and reused.
+public final class HersheyFont {
+    public static final int CAP_HEIGHT = 12;
+    public static final int DESCENDER = 5;
+    public static final short PEN_UP = Short.MIN_VALUE;
+
+    private static final int LETTER_SPACING = 2;
+    private static final int FIRST_ASCII = 32;
+
+    // printable ASCII 32..126
+    private static final String[] ASCII_GLYPHS = {
+            "RX", // space
+            "RTSFSN RSQSR", // !
+            "RWSFSI RVFVI", // "
+            "RZUFSR RYFWR RRJZJ RRNZN", // #
+            "RZZHXGTGRIRKTLXMZNZPXQTQRP RVEVS", // $
+            "RZRRZF RRGSFTFUGUHTISIRHRG RWPXOYOZPZQYRXRWQWP", // %
+            "R[[RTJTHUFWFXHXIRNRPTRWR[M", // &
+            "RTSFSI", // '
+            "RUUESHRLSPUS", // (
+            "RURETHULTPRS", // )
+            "RXUFUL RRGXK RXGRK", // *
+            "RZVIVQ RRMZM", // +
+            "RTSQSRRT", // ,
+            "RXRMXM", // -
+            "RTSQSR", // .
+            "RYRSYE", // /
+            "RZUFSGRIROSQURWRYQZOZIYGWFUF RSPYH", // 0
+            "RZSHVFVR", // 1
+            "RZRISGUFWFYGZIZJYLRRZR", // 2
+            "RZRFZFVKXKZMZOYQWRURSQRP", // 3
+            "RZXRXFROZO", // 4
+            "RZYFSFRKTJWJYKZMZOYQWRURSQRP", // 5
+            "RZYGWFUFSGRJROSQURWRYQZOZNYLWKUKSLRN", // 6
+            "RZRFZFUR", // 7
+            "RZUFSGSJUKWKYJYGWFUF RUKSLRNRPSQURWRYQZPZNYLWK", // 8
+            "RZZJYLWMUMSLRJRISGUFWFYGZIZNYQWRURSQ", // 9
+            "RTSKSL RSQSR", // :
+            "RTSKSL RSQSRRT", // ;
+            "RZZIRMZQ", // <
+            "RZRKZK RROZO", // =
+            "RZRIZMRQ", // >
+            "RYRISGUFWFYGYJVLVN RVQVR", // ?
+            "R[YNYJ RYKXJVJUKUMVNXNYM RYN[M[JZHXGUGSHRJROSQURYR", // @
+            "RZRRVFZR RSOYO", // A
+            "RZRRRFWFYGZIYKWLRL RWLYMZOYQWRRR", // B
+            "RZZHXFUFSGRIROSQURXRZP", // C
+            "RZRRRFVFXGYHZJZNYPXQVRRR", // D
+            "RZZFRFRRZR RRLWL", // E
+            "RZZFRFRR RRLWL", // F
+            "RZZHXFUFSGRIROSQURXRZPZMWM", // G
+            "RZRRRF RZRZF RRLZL", // H
+            "RTSFSR", // I
+            "RXXFXOWQURTRRQRO", // J
+            "RZRRRF RZFRN RUKZR", // K
+            "RYRFRRYR", // L
+            "R\\RRRFWR\\F\\R", // M
+            "RZRRRFZRZF", // N
+            "RZUFSGRIROSQURWRYQZOZIYGWFUF", // O
+            "RZRRRFWFYGZIZJYLWMRM", // P
+            "RZUFSGRIROSQURWRYQZOZIYGWFUF RWOZS", // Q
+            "RZRRRFWFYGZIZJYLWMRM RVMZR", // R
+            "RZZHXFTFRHRJTLXLZNZPXRTRRP", // S
+            "RZRFZF RVFVR", // T
+            "RZRFROSQURWRYQZOZF", // U
+            "RZRFVRZF", // V
+            "R\\RFTRWIZR\\F", // W
+            "RZRFZR RZFRR", // X
+            "RZRFVLZF RVLVR", // Y
+            "RZRFZFRRZR", // Z
+            "RUUERERSUS", // [
+            "RYREYS", // \
+            "RUREUEUSRS", // ]
+            "RZRJVFZJ", // ^
+            "RZRTZT", // _
+            "RTRFTH", // `
+            "RXXKXR RXMWLVKTKSLRNROSQTRVRWQXP", // a
+            "RXRFRR RRMSLTKVKWLXNXOWQVRTRSQRP", // b
+            "RXXLWKTKSLRNROSQTRWRXQ", // c
+            "RXXFXR RXMWLVKTKSLRNROSQTRVRWQXP", // d
+            "RXRNXNXMWLVKTKSLRNROSQTRVRXQ", // e
+            "RWWFUFTGTR RRKVK", // f
+            "RXXKXTWVVWTWSV RXMWLVKTKSLRNROSQTRVRWQXP", // g
+            "RXRFRR RRNSLUKWKXMXR", // h
+            "RTSKSR RSGSH", // i
+            "RUUKUUTWRW RUGUH", // j
+            "RXRFRR RXKRP RTNXR", // k
+            "RTSFSR", // l
+            "R\\RKRR RRNSLUKVLWNWR RWNXLZK[L\\N\\R", // m
+            "RXRKRR RRNSLUKWKXMXR", // n
+            "RXTKSLRNROSQTRVRWQXOXNWLVKTK", // o
+            "RXRKRW RRMSLTKVKWLXNXOWQVRTRSQRP", // p
+            "RXXKXW RXMWLVKTKSLRNROSQTRVRWQXP", // q
+            "RWRKRR RRNSLUKWK", // r
+            "RXXLWKSKRLRMSNWOXPXQWRSRRQ", // s
+            "RWTFTQURWR RRKVK", // t
+            "RXRKRPSRURWQXO RXKXR", // u
+            "RXRKURXK", // v
+            "RZRKTRVLXRZK", // w
+            "RXRKXR RXKRR", // x
+            "RXRKUR RXKURTUSWRW", // y
+            "RXRKXKRRXR", // z
+            "RUUETFTKRLTMTRUS", // {
+            "RTSESS", // |
+            "RURESFSKULSMSRRS", // }
+            "RZRMTKXMZK" // ~
+    };
+
+    private static final char[] EXTRA_CHARS = {'\u00C4', '\u00D6', '\u00DC', '\u00E4', '\u00F6', '\u00FC', '\u00DF'};
+    private static final String[] EXTRA_GLYPHS = {
+            "RZRRVFZR RSOYO RTCTD RXCXD", // A umlaut
+            "RZUFSGRIROSQURWRYQZOZIYGWFUF RTCTD RXCXD", // O umlaut
+            "RZRFROSQURWRYQZOZF RTCTD RXCXD", // U umlaut
+            "RXXKXR RXMWLVKTKSLRNROSQTRVRWQXP RSHSI RWHWI", // a umlaut
+            "RXTKSLRNROSQTRVRWQXOXNWLVKTK RSHSI RWHWI", // o umlaut
+            "RXRKRPSRURWQXO RXKXR RSHSI RWHWI", // u umlaut
+            "RXRRRHSFVFWGWIUKWLXNXPWQURTR" // sharp s
+    };
+
+    // pairs that look too loose with plain advances, value in font units
+    private static final String[] KERNING_PAIRS = {
+            "AV", "AW", "AY", "AT", "VA", "WA", "YA", "TA", "LT", "LV", "LW", "LY",
+            "T.", "T,", "V.", "V,", "W.", "W,", "Y.", "Y,", "F.", "F,", "P.", "P,"
+    };
+    private static final String[] KERNING_PAIRS_SMALL = {
+            "Ta", "Te", "To", "Tr", "Tu", "Ty", "Va", "Ve", "Vo", "Wa", "We", "Wo",
+            "Ya", "Ye", "Yo", "r.", "r,", "v.", "v,", "y.", "y,", "Av", "Aw", "Ay"
+    };
+
+    private HersheyFont() {
+    }
+
+    // points of the glyph as x, y pairs in font units (y up, baseline 0), strokes separated by PEN_UP
+    public static short[] glyph(char c) {
+        return Tables.GLYPHS[slot(c)];
+    }
+
+    public static int advance(char c) {
+        return Tables.ADVANCES[slot(c)];
+    }
+
+    public static int kerning(char left, char right) {
+        if (left >= 128 || right >= 128) return 0;
+        return Tables.KERNING[(left << 7) | right];
+    }
+
+    public static boolean isSupported(char c) {
+        if (c >= FIRST_ASCII && c < FIRST_ASCII + ASCII_GLYPHS.length) return true;
+        for (char extra : EXTRA_CHARS) {
+            if (extra == c) return true;
+        }
+        return false;
+    }
+
+    private static int slot(char c) {
+        if (c >= FIRST_ASCII && c < FIRST_ASCII + ASCII_GLYPHS.length) {
+            return c - FIRST_ASCII;
+        }
+        for (int i = 0; i < EXTRA_CHARS.length; i++) {
+            if (EXTRA_CHARS[i] == c) return ASCII_GLYPHS.length + i;
+        }
+        return '?' - FIRST_ASCII;
+    }
+
+    // decoded when first used; class initialisation runs once and publishes the final fields
+    // to every thread, so reading them needs no lock
+    private static final class Tables {
+        static final short[][] GLYPHS;
+        static final byte[] ADVANCES;
+        static final byte[] KERNING;
+
+        static {
+            int count = ASCII_GLYPHS.length + EXTRA_GLYPHS.length;
+            short[][] decoded = new short[count][];
+            byte[] widths = new byte[count];
+            for (int i = 0; i < count; i++) {
+                String encoded = i < ASCII_GLYPHS.length ? ASCII_GLYPHS[i] : EXTRA_GLYPHS[i - ASCII_GLYPHS.length];
+                decoded[i] = decode(encoded);
+                widths[i] = (byte) (encoded.charAt(1) - encoded.charAt(0) + LETTER_SPACING);
+            }
+
+            byte[] kern = new byte[128 * 128];
+            for (String pair : KERNING_PAIRS) {
+                kern[(pair.charAt(0) << 7) | pair.charAt(1)] = -2;
+            }
+            for (String pair : KERNING_PAIRS_SMALL) {
+                kern[(pair.charAt(0) << 7) | pair.charAt(1)] = -1;
+            }
+
+            ADVANCES = widths;
+            KERNING = kern;
+            GLYPHS = decoded;
+        }
+    }
+
+    private static short[] decode(String encoded) {
+        short[] points = new short[encoded.length() - 2];
+        int n = 0;
+        int left = encoded.charAt(0) - 'R';
+        for (int i = 2; i + 1 < encoded.length(); i += 2) {
+            char cx = encoded.charAt(i), cy = encoded.charAt(i + 1);
+            if (cx == ' ' && cy == 'R') {
+                points[n++] = PEN_UP;
+                points[n++] = PEN_UP;
+            } else {
+                points[n++] = (short) (cx - 'R' - left);
+                points[n++] = (short) ('R' - cy);
+            }
+        }
+        short[] result = new short[n];
+        System.arraycopy(points, 0, result, 0, n);
+        return result;
+    }
+}
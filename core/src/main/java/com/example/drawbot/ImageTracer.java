@@ -0,0 +1,532 @@
+package com.example.drawbot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Turns a photo into pen strokes: grayscale -> Sobel edges (thinned) -> contour tracing.
+// Works on plain int arrays (ARGB pixels as from Bitmap.getPixels or ImageIO), so it also runs on a desktop JVM.
+// The image is split into tiles that are processed in parallel, contours are stitched across tile borders afterwards.
+public class ImageTracer {
+    private static final byte NO_EDGE = 0, EDGE = 1, TRACED = 2;
+    private static final int STITCH_RADIUS = 2;
+
+    private int tileSize = 128;
+    private int edgeThreshold = 80;
+    private double simplifyTolerancePx = 0.8;
+    private int minPathPixels = 6;
+    private int threads = Runtime.getRuntime().availableProcessors();
+
+    public void setTileSize(int tileSize) {
+        this.tileSize = Math.max(16, tileSize);
+    }
+
+    // gradient magnitude (0..1442) above which a pixel counts as edge
+    public void setEdgeThreshold(int edgeThreshold) {
+        this.edgeThreshold = edgeThreshold;
+    }
+
+    public void setSimplifyTolerancePx(double simplifyTolerancePx) {
+        this.simplifyTolerancePx = simplifyTolerancePx;
+    }
+
+    public void setMinPathPixels(int minPathPixels) {
+        this.minPathPixels = minPathPixels;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = Math.max(1, threads);
+    }
+
+    // returns polylines as interleaved pixel coordinates x0, y0, x1, y1, ...
+    public List<int[]> trace(int[] argb, int width, int height) throws InterruptedException {
+        if (argb.length < width * height) {
+            throw new IllegalArgumentException("Pixel array too small for " + width + "x" + height);
+        }
+
+        int tilesX = (width + tileSize - 1) / tileSize;
+        int tilesY = (height + tileSize - 1) / tileSize;
+        int[] luma = new int[width * height];
+        int[] magnitude = new int[width * height];
+        byte[] direction = new byte[width * height];
+        byte[] edges = new byte[width * height];
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            // every phase reads neighbours from other tiles, so phases are separated by invokeAll
+            runTiles(pool, tilesX, tilesY, width, height, (x0, y0, x1, y1) -> {
+                grayscale(argb, luma, width, x0, y0, x1, y1);
+                return null;
+            });
+            runTiles(pool, tilesX, tilesY, width, height, (x0, y0, x1, y1) -> {
+                sobel(luma, magnitude, direction, width, height, x0, y0, x1, y1);
+                return null;
+            });
+            runTiles(pool, tilesX, tilesY, width, height, (x0, y0, x1, y1) -> {
+                thinEdges(magnitude, direction, edges, width, height, x0, y0, x1, y1);
+                return null;
+            });
+            List<List<int[]>> tileChains = runTiles(pool, tilesX, tilesY, width, height,
+                    (x0, y0, x1, y1) -> traceTile(edges, width, x0, y0, x1, y1));
+
+            List<int[]> chains = new ArrayList<>();
+            for (List<int[]> list : tileChains) {
+                chains.addAll(list);
+            }
+
+            List<int[]> paths = new ArrayList<>();
+            for (int[] merged : stitch(chains, width, height)) {
+                if (merged.length >= minPathPixels) {
+                    paths.add(simplify(merged, width));
+                }
+            }
+            return paths;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // writes the paths nearest-first so the pen travels as little as possible; y is flipped (plotter origin bottom-left)
+    public static void writeGCode(List<int[]> paths, int height, double mmPerPixel,
+                                  PenPlotterGCodeWriter out) throws IOException {
+        boolean[] done = new boolean[paths.size()];
+        double penX = 0, penY = height;
+
+        for (int n = 0; n < paths.size(); n++) {
+            int best = -1;
+            boolean reversed = false;
+            double bestDist = Double.MAX_VALUE;
+            for (int i = 0; i < paths.size(); i++) {
+                if (done[i]) continue;
+                int[] p = paths.get(i);
+                double ds = dist2(penX, penY, p[0], p[1]);
+                double de = dist2(penX, penY, p[p.length - 2], p[p.length - 1]);
+                if (ds < bestDist) {
+                    bestDist = ds;
+                    best = i;
+                    reversed = false;
+                }
+                if (de < bestDist) {
+                    bestDist = de;
+                    best = i;
+                    reversed = true;
+                }
+            }
+            done[best] = true;
+            int[] p = paths.get(best);
+            int points = p.length / 2;
+            for (int k = 0; k < points; k++) {
+                int idx = reversed ? points - 1 - k : k;
+                double x = p[idx * 2] * mmPerPixel;
+                double y = (height - p[idx * 2 + 1]) * mmPerPixel;
+                if (k == 0) out.moveTo(x, y);
+                else out.lineTo(x, y);
+            }
+            int last = reversed ? 0 : points - 1;
+            penX = p[last * 2];
+            penY = p[last * 2 + 1];
+        }
+        out.finish();
+    }
+
+    private static double dist2(double ax, double ay, double bx, double by) {
+        double dx = ax - bx, dy = ay - by;
+        return dx * dx + dy * dy;
+    }
+
+    // ---- tiling ----
+
+    private interface TileTask<T> {
+        T run(int x0, int y0, int x1, int y1) throws Exception;
+    }
+
+    private <T> List<T> runTiles(ExecutorService pool, int tilesX, int tilesY, int width, int height,
+                                 TileTask<T> task) throws InterruptedException {
+        List<Callable<T>> jobs = new ArrayList<>(tilesX * tilesY);
+        for (int ty = 0; ty < tilesY; ty++) {
+            for (int tx = 0; tx < tilesX; tx++) {
+                int x0 = tx * tileSize, y0 = ty * tileSize;
+                int x1 = Math.min(width, x0 + tileSize), y1 = Math.min(height, y0 + tileSize);
+                jobs.add(() -> task.run(x0, y0, x1, y1));
+            }
+        }
+        List<T> results = new ArrayList<>(jobs.size());
+        for (Future<T> future : pool.invokeAll(jobs)) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Tile processing failed", e.getCause());
+            }
+        }
+        return results;
+    }
+
+    // ---- pixel stages ----
+
+    private static void grayscale(int[] argb, int[] luma, int width, int x0, int y0, int x1, int y1) {
+        for (int y = y0; y < y1; y++) {
+            int row = y * width;
+            for (int x = x0; x < x1; x++) {
+                int c = argb[row + x];
+                int a = (c >>> 24);
+                int l = (((c >> 16) & 0xFF) * 77 + ((c >> 8) & 0xFF) * 150 + (c & 0xFF) * 29) >> 8;
+                // transparent areas count as white paper
+                luma[row + x] = (l * a + 255 * (255 - a)) / 255;
+            }
+        }
+    }
+
+    private static void sobel(int[] luma, int[] magnitude, byte[] direction, int width, int height,
+                              int x0, int y0, int x1, int y1) {
+        for (int y = y0; y < y1; y++) {
+            int ym = Math.max(0, y - 1) * width, yc = y * width, yp = Math.min(height - 1, y + 1) * width;
+            for (int x = x0; x < x1; x++) {
+                int xm = Math.max(0, x - 1), xp = Math.min(width - 1, x + 1);
+                int gx = (luma[ym + xp] + 2 * luma[yc + xp] + luma[yp + xp])
+                        - (luma[ym + xm] + 2 * luma[yc + xm] + luma[yp + xm]);
+                int gy = (luma[yp + xm] + 2 * luma[yp + x] + luma[yp + xp])
+                        - (luma[ym + xm] + 2 * luma[ym + x] + luma[ym + xp]);
+                int ax = Math.abs(gx), ay = Math.abs(gy);
+                magnitude[yc + x] = ax + ay;
+
+                // gradient direction quantised to 0 = horizontal, 1 = 45, 2 = vertical, 3 = 135 degrees
+                byte dir;
+                if (ay * 5 < ax * 2) dir = 0;
+                else if (ax * 5 < ay * 2) dir = 2;
+                else dir = (byte) ((gx > 0) == (gy > 0) ? 1 : 3);
+                direction[yc + x] = dir;
+            }
+        }
+    }
+
+    // non-maximum suppression keeps one pixel wide ridges, otherwise every edge is traced twice
+    private void thinEdges(int[] magnitude, byte[] direction, byte[] edges, int width, int height,
+                           int x0, int y0, int x1, int y1) {
+        for (int y = y0; y < y1; y++) {
+            for (int x = x0; x < x1; x++) {
+                int i = y * width + x;
+                int m = magnitude[i];
+                if (m < edgeThreshold || x == 0 || y == 0 || x == width - 1 || y == height - 1) {
+                    edges[i] = NO_EDGE;
+                    continue;
+                }
+                int a, b;
+                switch (direction[i]) {
+                    case 0:
+                        a = magnitude[i - 1];
+                        b = magnitude[i + 1];
+                        break;
+                    case 2:
+                        a = magnitude[i - width];
+                        b = magnitude[i + width];
+                        break;
+                    case 1:
+                        a = magnitude[i - width - 1];
+                        b = magnitude[i + width + 1];
+                        break;
+                    default:
+                        a = magnitude[i - width + 1];
+                        b = magnitude[i + width - 1];
+                        break;
+                }
+                edges[i] = (m >= a && m > b) ? EDGE : NO_EDGE;
+            }
+        }
+    }
+
+    // ---- contour tracing inside one tile ----
+
+    private static final int[] DX = {1, 0, -1, 0, 1, -1, -1, 1};
+    private static final int[] DY = {0, 1, 0, -1, 1, 1, -1, -1};
+
+    private static List<int[]> traceTile(byte[] edges, int width, int x0, int y0, int x1, int y1) {
+        List<int[]> chains = new ArrayList<>();
+        IntList forward = new IntList(), backward = new IntList();
+
+        // first start at chain ends (one neighbour), then pick up whatever is left (closed loops)
+        for (int pass = 0; pass < 2; pass++) {
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    int i = y * width + x;
+                    if (edges[i] != EDGE) continue;
+                    if (pass == 0 && countNeighbours(edges, width, x, y, x0, y0, x1, y1) != 1) continue;
+
+                    edges[i] = TRACED;
+                    forward.clear();
+                    backward.clear();
+                    forward.add(i);
+                    follow(edges, width, i, x0, y0, x1, y1, forward);
+                    follow(edges, width, i, x0, y0, x1, y1, backward);
+
+                    int[] chain = new int[backward.size + forward.size];
+                    for (int k = 0; k < backward.size; k++) {
+                        chain[k] = backward.data[backward.size - 1 - k];
+                    }
+                    System.arraycopy(forward.data, 0, chain, backward.size, forward.size);
+                    chains.add(chain);
+                }
+            }
+        }
+        return chains;
+    }
+
+    private static int countNeighbours(byte[] edges, int width, int x, int y, int x0, int y0, int x1, int y1) {
+        int count = 0;
+        for (int d = 0; d < 8; d++) {
+            int nx = x + DX[d], ny = y + DY[d];
+            if (nx >= x0 && nx < x1 && ny >= y0 && ny < y1 && edges[ny * width + nx] != NO_EDGE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void follow(byte[] edges, int width, int start, int x0, int y0, int x1, int y1, IntList out) {
+        int current = start;
+        while (true) {
+            int cx = current % width, cy = current / width;
+            int next = -1;
+            // straight neighbours first, diagonal steps would skip pixels of the ridge
+            for (int d = 0; d < 8 && next < 0; d++) {
+                int nx = cx + DX[d], ny = cy + DY[d];
+                if (nx >= x0 && nx < x1 && ny >= y0 && ny < y1 && edges[ny * width + nx] == EDGE) {
+                    next = ny * width + nx;
+                }
+            }
+            if (next < 0) return;
+            edges[next] = TRACED;
+            out.add(next);
+            current = next;
+        }
+    }
+
+    // ---- stitching across tile borders ----
+
+    private List<int[]> stitch(List<int[]> chains, int width, int height) {
+        int n = chains.size();
+        int[] link = new int[n * 2]; // endpoint id (chain * 2 + end) -> linked endpoint id or -1
+        java.util.Arrays.fill(link, -1);
+
+        // border pixel index -> first endpoint id on it
+        IntIntMap borderEnds = new IntIntMap(n * 2);
+        for (int c = 0; c < n; c++) {
+            int[] chain = chains.get(c);
+            for (int end = 0; end < 2; end++) {
+                int p = end == 0 ? chain[0] : chain[chain.length - 1];
+                if (isTileBorder(p, width)) {
+                    borderEnds.putIfAbsent(p, c * 2 + end);
+                }
+            }
+        }
+
+        for (int c = 0; c < n; c++) {
+            int[] chain = chains.get(c);
+            for (int end = 0; end < 2; end++) {
+                int e = c * 2 + end;
+                if (link[e] >= 0) continue;
+                int p = end == 0 ? chain[0] : chain[chain.length - 1];
+                if (!isTileBorder(p, width)) continue;
+
+                // thinning can leave a one pixel gap right at the border, so look two pixels around
+                int px = p % width, py = p / width;
+                int best = -1, bestDist = Integer.MAX_VALUE;
+                for (int ny = py - STITCH_RADIUS; ny <= py + STITCH_RADIUS; ny++) {
+                    for (int nx = px - STITCH_RADIUS; nx <= px + STITCH_RADIUS; nx++) {
+                        if (nx < 0 || ny < 0 || nx >= width || ny >= height) continue;
+                        if (sameTile(px, py, nx, ny)) continue;
+                        int o = borderEnds.get(ny * width + nx);
+                        if (o < 0) continue;
+                        // one-pixel chains have both ends on the same pixel
+                        if (link[o] >= 0 && chains.get(o >> 1).length == 1) o ^= 1;
+                        if (link[o] >= 0 || (o >> 1) == c) continue;
+                        int dist = (nx - px) * (nx - px) + (ny - py) * (ny - py);
+                        if (dist < bestDist) {
+                            bestDist = dist;
+                            best = o;
+                        }
+                    }
+                }
+                if (best >= 0) {
+                    link[e] = best;
+                    link[best] = e;
+                }
+            }
+        }
+
+        List<int[]> merged = new ArrayList<>();
+        boolean[] used = new boolean[n];
+        IntList path = new IntList();
+        // open paths first (start at an unlinked end), the rest are closed loops
+        for (int pass = 0; pass < 2; pass++) {
+            for (int c = 0; c < n; c++) {
+                if (used[c]) continue;
+                int startEnd;
+                if (link[c * 2] < 0) startEnd = c * 2;
+                else if (link[c * 2 + 1] < 0) startEnd = c * 2 + 1;
+                else if (pass == 1) startEnd = c * 2;
+                else continue;
+
+                path.clear();
+                int e = startEnd;
+                while (e >= 0 && !used[e >> 1]) {
+                    int chainIndex = e >> 1;
+                    int[] chain = chains.get(chainIndex);
+                    used[chainIndex] = true;
+                    if ((e & 1) == 0) {
+                        for (int p : chain) path.add(p);
+                        e = link[chainIndex * 2 + 1];
+                    } else {
+                        for (int k = chain.length - 1; k >= 0; k--) path.add(chain[k]);
+                        e = link[chainIndex * 2];
+                    }
+                }
+                if (e == startEnd || (path.size > 2 && touching(path.data[0], path.data[path.size - 1], width))) {
+                    path.add(path.data[0]); // closed loop, stitched or traced within one tile
+                }
+                merged.add(path.toArray());
+            }
+        }
+        return merged;
+    }
+
+    private static boolean touching(int a, int b, int width) {
+        return Math.abs(a % width - b % width) <= 1 && Math.abs(a / width - b / width) <= 1;
+    }
+
+    private boolean isTileBorder(int p, int width) {
+        int x = p % width % tileSize, y = p / width % tileSize;
+        return x < STITCH_RADIUS || y < STITCH_RADIUS
+                || x >= tileSize - STITCH_RADIUS || y >= tileSize - STITCH_RADIUS;
+    }
+
+    private boolean sameTile(int ax, int ay, int bx, int by) {
+        return ax / tileSize == bx / tileSize && ay / tileSize == by / tileSize;
+    }
+
+    // ---- Ramer-Douglas-Peucker on pixel indices ----
+
+    private int[] simplify(int[] pixels, int width) {
+        int n = pixels.length;
+        boolean[] keep = new boolean[n];
+        keep[0] = true;
+        keep[n - 1] = true;
+
+        IntList stack = new IntList();
+        stack.add(0);
+        stack.add(n - 1);
+        double tol2 = simplifyTolerancePx * simplifyTolerancePx;
+
+        while (stack.size > 0) {
+            int last = stack.data[--stack.size];
+            int first = stack.data[--stack.size];
+            if (last - first < 2) continue;
+
+            double ax = pixels[first] % width, ay = pixels[first] / width;
+            double bx = pixels[last] % width, by = pixels[last] / width;
+            double dx = bx - ax, dy = by - ay;
+            double len2 = dx * dx + dy * dy;
+
+            int farthest = -1;
+            double maxDist = tol2;
+            for (int k = first + 1; k < last; k++) {
+                double px = pixels[k] % width, py = pixels[k] / width;
+                double d2;
+                if (len2 == 0) {
+                    d2 = dist2(px, py, ax, ay);
+                } else {
+                    double cross = (px - ax) * dy - (py - ay) * dx;
+                    d2 = cross * cross / len2;
+                }
+                if (d2 > maxDist) {
+                    maxDist = d2;
+                    farthest = k;
+                }
+            }
+            if (farthest >= 0) {
+                keep[farthest] = true;
+                stack.add(first);
+                stack.add(farthest);
+                stack.add(farthest);
+                stack.add(last);
+            }
+        }
+
+        IntList out = new IntList();
+        for (int k = 0; k < n; k++) {
+            if (keep[k]) {
+                out.add(pixels[k] % width);
+                out.add(pixels[k] / width);
+            }
+        }
+        return out.toArray();
+    }
+
+    // growable int array, avoids boxing in the hot loops
+    static final class IntList {
+        int[] data = new int[64];
+        int size = 0;
+
+        void add(int value) {
+            if (size == data.length) {
+                int[] grown = new int[size * 2];
+                System.arraycopy(data, 0, grown, 0, size);
+                data = grown;
+            }
+            data[size++] = value;
+        }
+
+        void clear() {
+            size = 0;
+        }
+
+        int[] toArray() {
+            int[] result = new int[size];
+            System.arraycopy(data, 0, result, 0, size);
+            return result;
+        }
+    }
+
+    // open addressing with linear probing, non-negative keys and values, no removal; keeps the
+    // endpoint lookup free of boxed Integers
+    static final class IntIntMap {
+        private final int[] keys, values;
+        private final int mask;
+
+        IntIntMap(int expected) {
+            int capacity = 16;
+            while (capacity < expected * 2) capacity <<= 1;
+            keys = new int[capacity];
+            values = new int[capacity];
+            java.util.Arrays.fill(keys, -1);
+            mask = capacity - 1;
+        }
+
+        void putIfAbsent(int key, int value) {
+            int i = slot(key);
+            while (keys[i] >= 0) {
+                if (keys[i] == key) return;
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+        }
+
+        // -1 if the key is not in the map
+        int get(int key) {
+            for (int i = slot(key); keys[i] >= 0; i = (i + 1) & mask) {
+                if (keys[i] == key) return values[i];
+            }
+            return -1;
+        }
+
+        private int slot(int key) {
+            int h = key * 0x9E3779B9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+    }
+}
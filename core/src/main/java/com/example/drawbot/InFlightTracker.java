@@ -0,0 +1,68 @@
+package com.example.drawbot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+// Commands that were written to the controller but not answered yet, oldest first.
+// GRBL answers every line with ok/error in order, so the oldest entry is always the one confirmed next.
+public class InFlightTracker {
+    public static final class Entry {
+        public final String command;
+        public final int jobLine;   // index into the job, -1 for commands that are not part of it
+        public final long sentAt;   // System.nanoTime() when it was written
+
+        Entry(String command, int jobLine, long sentAt) {
+            this.command = command;
+            this.jobLine = jobLine;
+            this.sentAt = sentAt;
+        }
+    }
+
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    private int bytes = 0;
+
+    public void sent(String command, int jobLine, long now) {
+        // realtime commands (~ ! ? and jog cancel) are not answered with ok
+        if (isRealtime(command)) return;
+        entries.add(new Entry(command, jobLine, now));
+        bytes += command.length() + 1;
+    }
+
+    // removes and returns the command the next ok/error belongs to, null if nothing is in flight
+    public Entry acknowledge() {
+        Entry entry = entries.poll();
+        if (entry != null) bytes -= entry.command.length() + 1;
+        return entry;
+    }
+
+    // oldest unanswered command, null if nothing is in flight
+    public Entry oldest() {
+        return entries.peek();
+    }
+
+    // everything still unanswered, in send order; the tracker is empty afterwards
+    public List<Entry> takeAll() {
+        List<Entry> unanswered = new ArrayList<>(entries);
+        clear();
+        return unanswered;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // bytes GRBL still holds in its receive buffer for these commands, newlines included
+    public int bytes() {
+        return bytes;
+    }
+
+    public void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    public static boolean isRealtime(String command) {
+        return command.length() == 1 && "~!?\u0085".indexOf(command.charAt(0)) >= 0;
+    }
+}
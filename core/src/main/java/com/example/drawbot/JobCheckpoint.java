@@ -0,0 +1,89 @@
+package com.example.drawbot;
+
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+// Progress of a running job: which line the controller confirmed last, where the next line starts
+// in the job file, and the modal state / pen position at that point, plus the transform the job is
+// drawn with. Stored as one fixed-size record.
+public class JobCheckpoint {
+    static final int RECORD_SIZE = 136;
+    private static final int MAGIC = 0x44424350; // "DBCP"
+    private static final int VERSION = 2;
+
+    public long jobId;
+    public int totalLines;
+    public int lastAckedLine = -1;   // index into the job, -1 = nothing confirmed yet
+    public long nextLineOffset;      // byte offset of line lastAckedLine + 1 in the job file
+    public final ModalState modal = new ModalState();
+    public JobTransform transform = JobTransform.IDENTITY;
+
+    public int nextLine() {
+        return lastAckedLine + 1;
+    }
+
+    public void copyFrom(JobCheckpoint other) {
+        jobId = other.jobId;
+        totalLines = other.totalLines;
+        lastAckedLine = other.lastAckedLine;
+        nextLineOffset = other.nextLineOffset;
+        modal.copyFrom(other.modal);
+        transform = other.transform;
+    }
+
+    void encode(ByteBuffer buffer) {
+        int start = buffer.position();
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(jobId);
+        buffer.putInt(totalLines);
+        buffer.putInt(lastAckedLine);
+        buffer.putLong(nextLineOffset);
+        buffer.put((byte) (modal.absolute ? 1 : 0));
+        buffer.put((byte) (modal.metric ? 1 : 0));
+        buffer.putShort((short) 0);
+        buffer.putDouble(modal.feed);
+        buffer.putDouble(modal.x);
+        buffer.putDouble(modal.y);
+        buffer.putDouble(modal.z);
+        buffer.putDouble(transform.a);
+        buffer.putDouble(transform.b);
+        buffer.putDouble(transform.c);
+        buffer.putDouble(transform.d);
+        buffer.putDouble(transform.e);
+        buffer.putDouble(transform.f);
+        buffer.putDouble(transform.clipWidth);
+        buffer.putDouble(transform.clipHeight);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset() + start, buffer.position() - start);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    // null if the record is missing, from another version or torn by a crash mid-write
+    static JobCheckpoint decode(ByteBuffer buffer) {
+        if (buffer.remaining() < RECORD_SIZE) return null;
+        int start = buffer.position();
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), buffer.arrayOffset() + start, RECORD_SIZE - 4);
+        if (buffer.getInt(start + RECORD_SIZE - 4) != (int) crc.getValue()) return null;
+        if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) return null;
+
+        JobCheckpoint checkpoint = new JobCheckpoint();
+        checkpoint.jobId = buffer.getLong();
+        checkpoint.totalLines = buffer.getInt();
+        checkpoint.lastAckedLine = buffer.getInt();
+        checkpoint.nextLineOffset = buffer.getLong();
+        checkpoint.modal.absolute = buffer.get() != 0;
+        checkpoint.modal.metric = buffer.get() != 0;
+        buffer.getShort();
+        checkpoint.modal.feed = buffer.getDouble();
+        checkpoint.modal.x = buffer.getDouble();
+        checkpoint.modal.y = buffer.getDouble();
+        checkpoint.modal.z = buffer.getDouble();
+        checkpoint.transform = new JobTransform(buffer.getDouble(), buffer.getDouble(), buffer.getDouble(),
+                buffer.getDouble(), buffer.getDouble(), buffer.getDouble(), buffer.getDouble(), buffer.getDouble());
+        return checkpoint;
+    }
+}
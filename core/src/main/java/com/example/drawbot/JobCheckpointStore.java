@@ -0,0 +1,273 @@
+package com.example.drawbot;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// Persists the running job and its checkpoint so a job can continue after a disconnect or app death.
+// All file work happens on one background thread; update() only copies a few fields and returns,
+// and writes are coalesced to at most one small positional write every MIN_WRITE_INTERVAL_MS.
+public class JobCheckpointStore {
+    private static final long MIN_WRITE_INTERVAL_MS = 250;
+    private static final String JOB_FILE = "current_job.gcode";
+    private static final String CHECKPOINT_FILE = "current_job.checkpoint";
+    private static final String JOB_TEMP_FILE = "current_job.gcode.tmp";
+
+    private final File jobFile, jobTempFile, checkpointFile;
+    private final ScheduledExecutorService executor;
+    private final boolean ownsExecutor;
+
+    // latest state handed over by the sender, guarded by this
+    private final JobCheckpoint latest = new JobCheckpoint();
+    private boolean writeScheduled = false;
+    private long lastWriteTime = 0;
+
+    // only touched on the executor thread
+    private final JobCheckpoint writing = new JobCheckpoint();
+    private final ByteBuffer record = ByteBuffer.allocate(JobCheckpoint.RECORD_SIZE);
+    private FileChannel channel;
+
+    public JobCheckpointStore(File directory) {
+        this(directory, Executors.newSingleThreadScheduledExecutor(), true);
+    }
+
+    // stores of several plotters can share one file thread; it must be single threaded, and
+    // close() leaves it running
+    public JobCheckpointStore(File directory, ScheduledExecutorService sharedExecutor) {
+        this(directory, sharedExecutor, false);
+    }
+
+    private JobCheckpointStore(File directory, ScheduledExecutorService executor, boolean ownsExecutor) {
+        jobFile = new File(directory, JOB_FILE);
+        jobTempFile = new File(directory, JOB_TEMP_FILE);
+        checkpointFile = new File(directory, CHECKPOINT_FILE);
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+    // moves a stored job from one directory to another, e.g. into a per-device directory;
+    // false if there was nothing to move or the target already has a job
+    public static boolean moveStoredJob(File fromDirectory, File toDirectory) {
+        File job = new File(fromDirectory, JOB_FILE), checkpoint = new File(fromDirectory, CHECKPOINT_FILE);
+        File targetJob = new File(toDirectory, JOB_FILE), targetCheckpoint = new File(toDirectory, CHECKPOINT_FILE);
+        if (!job.exists() || !checkpoint.exists() || targetJob.exists() || targetCheckpoint.exists()) return false;
+        if (!toDirectory.isDirectory() && !toDirectory.mkdirs()) return false;
+        return job.renameTo(targetJob) && checkpoint.renameTo(targetCheckpoint);
+    }
+
+    // saves the (already converted) job lines, untransformed, and the transform they are drawn with;
+    // the old checkpoint is removed first so it can never point into the new job file. The job file is
+    // replaced by a rename, never rewritten in place, so whoever has the previous one open or mapped
+    // (the job viewer) keeps reading a whole file.
+    public void startJob(List<String> lines, JobTransform transform) {
+        String[] copy = lines.toArray(new String[0]);
+        synchronized (this) {
+            latest.jobId = 0;
+            latest.transform = transform;
+            latest.totalLines = copy.length;
+            latest.lastAckedLine = -1;
+            latest.nextLineOffset = 0;
+            latest.modal.reset();
+        }
+        executor.execute(() -> {
+            closeChannel();
+            checkpointFile.delete();
+
+            CRC32 crc = new CRC32();
+            try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(jobTempFile), StandardCharsets.UTF_8), 64 * 1024)) {
+                for (String line : copy) {
+                    out.write(line);
+                    out.write('\n');
+                    crc.update(line.getBytes(StandardCharsets.UTF_8));
+                }
+            } catch (IOException e) {
+                jobTempFile.delete();
+                jobFile.delete();
+                return;
+            }
+            if (!jobTempFile.renameTo(jobFile)) {
+                jobTempFile.delete();
+                jobFile.delete();
+                return;
+            }
+            synchronized (this) {
+                latest.jobId = jobId(crc.getValue(), copy.length);
+            }
+            writeNow(false);
+        });
+    }
+
+    // called by the sender for every confirmed line; cheap, never blocks on I/O
+    public void update(JobCheckpoint checkpoint) {
+        long delay;
+        synchronized (this) {
+            long jobId = latest.jobId;
+            latest.copyFrom(checkpoint);
+            latest.jobId = jobId;
+            if (writeScheduled) return;
+            writeScheduled = true;
+            delay = Math.max(0, MIN_WRITE_INTERVAL_MS - (System.currentTimeMillis() - lastWriteTime));
+        }
+        executor.schedule(() -> writeNow(false), delay, TimeUnit.MILLISECONDS);
+    }
+
+    // writes the latest state right away and forces it to disk (connection lost, activity closing)
+    public void flush() {
+        executor.execute(() -> writeNow(true));
+    }
+
+    public void clear() {
+        synchronized (this) {
+            latest.totalLines = 0;
+        }
+        executor.execute(() -> {
+            closeChannel();
+            checkpointFile.delete();
+            jobFile.delete();
+        });
+    }
+
+    // reads the stored checkpoint, null if there is no unfinished job or the job file is not the one it
+    // was written for
+    public JobCheckpoint load() {
+        if (!checkpointFile.exists() || !jobFile.exists()) return null;
+        try (RandomAccessFile file = new RandomAccessFile(checkpointFile, "r")) {
+            byte[] data = new byte[JobCheckpoint.RECORD_SIZE];
+            file.readFully(data);
+            JobCheckpoint checkpoint = JobCheckpoint.decode(ByteBuffer.wrap(data));
+            if (checkpoint == null || checkpoint.nextLineOffset > jobFile.length()
+                    || checkpoint.nextLine() >= checkpoint.totalLines || !matchesJobFile(checkpoint)) {
+                return null;
+            }
+            return checkpoint;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // lines after the last confirmed one; seeks straight to the stored offset instead of reading the whole job
+    public List<String> readRemainingLines(JobCheckpoint checkpoint) throws IOException {
+        List<String> lines = new ArrayList<>(Math.max(0, checkpoint.totalLines - checkpoint.nextLine()));
+        try (RandomAccessFile file = new RandomAccessFile(jobFile, "r")) {
+            file.seek(checkpoint.nextLineOffset);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    Channels.newInputStream(file.getChannel()), StandardCharsets.UTF_8), 64 * 1024);
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        }
+        return lines;
+    }
+
+    // the stored job, one converted line per line; line i of it is job line i of the checkpoint.
+    // It appears shortly after startJob and may lag behind it, so check its line count before use.
+    public File getJobFile() {
+        return jobFile;
+    }
+
+    public void close() {
+        executor.execute(this::closeChannel);
+        if (ownsExecutor) executor.shutdown();
+    }
+
+    // bytes a line takes in the job file, including its newline
+    public static int storedLength(String line) {
+        int bytes = 1;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                bytes += 4;
+                i++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    // the job file has the line count and CRC startJob stored as the job id; one pass over the bytes, the
+    // CRC of everything between the newlines is the CRC of the lines one after the other
+    private boolean matchesJobFile(JobCheckpoint checkpoint) throws IOException {
+        CRC32 crc = new CRC32();
+        long lines = 0;
+        byte[] buffer = new byte[64 * 1024];
+        try (FileInputStream in = new FileInputStream(jobFile)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                int start = 0;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        crc.update(buffer, start, i - start);
+                        start = i + 1;
+                        lines++;
+                    }
+                }
+                crc.update(buffer, start, read - start);
+            }
+        }
+        return lines == checkpoint.totalLines && jobId(crc.getValue(), lines) == checkpoint.jobId;
+    }
+
+    private static long jobId(long crc, long lines) {
+        return crc ^ (lines << 32);
+    }
+
+    private void writeNow(boolean force) {
+        synchronized (this) {
+            writeScheduled = false;
+            lastWriteTime = System.currentTimeMillis();
+            if (latest.totalLines == 0 || latest.jobId == 0) return; // job file not written yet or cleared
+            writing.copyFrom(latest);
+        }
+        try {
+            if (channel == null) {
+                channel = new RandomAccessFile(checkpointFile, "rw").getChannel();
+            }
+            record.clear();
+            writing.encode(record);
+            record.flip();
+            while (record.hasRemaining()) {
+                channel.write(record, record.position());
+            }
+            if (force) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            closeChannel();
+        }
+    }
+
+    private void closeChannel() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // nothing left to do
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.drawbot;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+// The jobs waiting for one plotter, kept on disk so the queue survives the app being closed:
+// every job's text in its own file and a small index with the order, names and paused flags.
+// The index is written to a temporary file and renamed, so a crash leaves the old or the new
+// order, never half of one. Thread safe: getEntries, isEmpty and next only read an immutable snapshot and
+// never wait for the disk, so the plotter thread can ask at any time; changes write the files on the
+// calling thread, so make them from a background thread (PlotterConnection uses its preparation thread).
+public class JobQueue {
+    private static final String INDEX_FILE = "queue.index";
+
+    // one queued job; immutable, a change replaces the entry
+    public static final class Entry {
+        public final long id;
+        public final String name;
+        public final boolean paused;
+        // filled in once the job was prepared, -1 before
+        public final int lines, estimatedSeconds;
+
+        Entry(long id, String name, boolean paused, int lines, int estimatedSeconds) {
+            this.id = id;
+            this.name = name;
+            this.paused = paused;
+            this.lines = lines;
+            this.estimatedSeconds = estimatedSeconds;
+        }
+
+        Entry withPaused(boolean paused) {
+            return new Entry(id, name, paused, lines, estimatedSeconds);
+        }
+
+        Entry withEstimate(int lines, int estimatedSeconds) {
+            return new Entry(id, name, paused, lines, estimatedSeconds);
+        }
+    }
+
+    private final File directory;
+    // replaced as a whole on every change, after the index was written
+    private volatile List<Entry> entries = Collections.emptyList();
+    private long nextId = 1;
+
+    // does not touch the disk, call load() on a background thread before using the queue
+    public JobQueue(File directory) {
+        this.directory = directory;
+    }
+
+    public List<Entry> getEntries() {
+        return entries;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    // the first job that is not paused, null if there is none
+    public Entry next() {
+        for (Entry entry : entries) {
+            if (!entry.paused) return entry;
+        }
+        return null;
+    }
+
+    public Entry add(String name, String gCodeText) throws IOException {
+        long id;
+        synchronized (this) {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                throw new IOException("Could not create " + directory);
+            }
+            id = nextId++;
+        }
+        // a large job takes a while to write, other changes need not wait for it
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(jobFile(id)), StandardCharsets.UTF_8)) {
+            out.write(gCodeText);
+        }
+        Entry entry = new Entry(id, clean(name), false, -1, -1);
+        synchronized (this) {
+            List<Entry> changed = new ArrayList<>(entries);
+            changed.add(entry);
+            save(changed);
+        }
+        return entry;
+    }
+
+    public String readText(long id) throws IOException {
+        File file = jobFile(id);
+        StringBuilder text = new StringBuilder((int) Math.min(Integer.MAX_VALUE, file.length()));
+        try (InputStreamReader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            char[] buffer = new char[8192];
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                text.append(buffer, 0, read);
+            }
+        }
+        return text.toString();
+    }
+
+    public synchronized boolean remove(long id) throws IOException {
+        int index = indexOf(id);
+        if (index < 0) return false;
+        List<Entry> changed = new ArrayList<>(entries);
+        changed.remove(index);
+        save(changed);
+        //noinspection ResultOfMethodCallIgnored
+        jobFile(id).delete();
+        return true;
+    }
+
+    // moves a job up (negative) or down (positive) by that many places
+    public synchronized boolean move(long id, int places) throws IOException {
+        int index = indexOf(id);
+        if (index < 0) return false;
+        int target = Math.max(0, Math.min(entries.size() - 1, index + places));
+        if (target == index) return false;
+        List<Entry> changed = new ArrayList<>(entries);
+        changed.add(target, changed.remove(index));
+        save(changed);
+        return true;
+    }
+
+    // a paused job stays in its place and is skipped until it is resumed
+    public synchronized boolean setPaused(long id, boolean paused) throws IOException {
+        int index = indexOf(id);
+        if (index < 0 || entries.get(index).paused == paused) return false;
+        List<Entry> changed = new ArrayList<>(entries);
+        changed.set(index, changed.get(index).withPaused(paused));
+        save(changed);
+        return true;
+    }
+
+    public synchronized void setEstimate(long id, int lines, int estimatedSeconds) throws IOException {
+        int index = indexOf(id);
+        if (index < 0) return;
+        List<Entry> changed = new ArrayList<>(entries);
+        changed.set(index, changed.get(index).withEstimate(lines, estimatedSeconds));
+        save(changed);
+    }
+
+    private int indexOf(long id) {
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.get(i).id == id) return i;
+        }
+        return -1;
+    }
+
+    private File jobFile(long id) {
+        return new File(directory, id + ".gcode");
+    }
+
+    // writes the changed entries as the index and makes them the queue; the queue stays as it was if the
+    // index cannot be written. Index lines: id, paused (0/1), lines, estimated seconds and name, separated by tabs
+    private void save(List<Entry> changed) throws IOException {
+        File temporary = new File(directory, INDEX_FILE + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temporary);
+             Writer out = new OutputStreamWriter(stream, StandardCharsets.UTF_8)) {
+            for (Entry entry : changed) {
+                out.write(entry.id + "\t" + (entry.paused ? 1 : 0) + "\t" + entry.lines + "\t"
+                        + entry.estimatedSeconds + "\t" + entry.name + "\n");
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+        if (!temporary.renameTo(new File(directory, INDEX_FILE))) {
+            throw new IOException("Could not replace the queue index");
+        }
+        entries = Collections.unmodifiableList(changed);
+    }
+
+    // reads the queue left by the last session and deletes job files the index does not know,
+    // e.g. from a crash between writing a job and the index
+    public synchronized void load() {
+        List<Entry> loaded = new ArrayList<>();
+        File index = new File(directory, INDEX_FILE);
+        if (index.exists()) {
+            readIndex(index, loaded);
+        }
+        entries = Collections.unmodifiableList(loaded);
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(".gcode"));
+        if (files == null) return;
+        for (File file : files) {
+            String name = file.getName();
+            boolean known = false;
+            for (Entry entry : loaded) {
+                known |= name.equals(entry.id + ".gcode");
+            }
+            //noinspection ResultOfMethodCallIgnored
+            if (!known) file.delete();
+        }
+    }
+
+    private void readIndex(File index, List<Entry> loaded) {
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(index), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] parts = line.split("\t", 5);
+                if (parts.length < 5) continue;
+                try {
+                    long id = Long.parseLong(parts[0]);
+                    // a job whose text is gone cannot be drawn
+                    if (!jobFile(id).exists()) continue;
+                    loaded.add(new Entry(id, parts[4], "1".equals(parts[1]),
+                            Integer.parseInt(parts[2]), Integer.parseInt(parts[3])));
+                    nextId = Math.max(nextId, id + 1);
+                } catch (NumberFormatException e) {
+                    // a damaged line loses that job, not the queue
+                }
+            }
+        } catch (IOException e) {
+            loaded.clear();
+        }
+    }
+
+    private static String clean(String name) {
+        String single = name == null ? "" : name.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ').trim();
+        return single.isEmpty() ? "Job" : single;
+    }
+}
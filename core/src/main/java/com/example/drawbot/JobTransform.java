@@ -0,0 +1,469 @@
+package com.example.drawbot;
+
+import java.util.List;
+import java.util.Locale;
+
+// Fits a job to the paper while it streams: a 2D affine transform (scale, mirror, rotate, offset) and
+// an optional clip to the work area, applied line by line by a Stage just before GCodeStreamer sends
+// each line. The job itself (queue, job file, checkpoint) stays as it was, so no second copy is made.
+// - a pen-down move is cut to the part inside the work area; where it enters, a pen-up move to the
+//   entry point is sent first, and a move entirely outside sends nothing
+// - a pen-up move outside the work area goes to the nearest point on its edge
+// - G2/G3 arcs are flattened into short lines like DrawingPartitioner does, a cut or mirrored arc
+//   would need its own rules
+// - output is always absolute millimetres: G20/G21/G90/G91/G92 of the job are followed here and
+//   not sent, the streamer already sent G21 G90
+// Z stays as it is; the dialect is "Z0 draws, Z1 (anything above 0) travels".
+public class JobTransform {
+    public static final JobTransform IDENTITY = new JobTransform(1, 0, 0, 1, 0, 0, Double.NaN, Double.NaN);
+    // longest chord used when flattening arcs, in mm
+    private static final double ARC_CHORD_MM = 0.5;
+    // coordinates are written in 1/1000 mm, points closer than this are the same
+    private static final double SAME_POINT_MM = 0.0005;
+
+    // x' = a x + b y + e, y' = c x + d y + f, in mm
+    public final double a, b, c, d, e, f;
+    // work area from X0 Y0 the drawing is clipped to, NaN if it is not clipped
+    public final double clipWidth, clipHeight;
+
+    public JobTransform(double a, double b, double c, double d, double e, double f,
+                        double clipWidth, double clipHeight) {
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.d = d;
+        this.e = e;
+        this.f = f;
+        this.clipWidth = clipWidth;
+        this.clipHeight = clipHeight;
+    }
+
+    // scales about the origin, then mirrors left to right (x -> -x), then rotates counter-clockwise,
+    // then moves by the offset; not clipped
+    public static JobTransform of(double scale, boolean mirror, double rotationDegrees, double offsetX, double offsetY) {
+        if (!(scale > 0)) throw new IllegalArgumentException("Scale must be positive");
+        double radians = Math.toRadians(rotationDegrees);
+        double cos = Math.cos(radians), sin = Math.sin(radians);
+        if (rotationDegrees % 90 == 0) {
+            // exact for quarter turns, so a rotated drawing keeps its round numbers
+            cos = Math.rint(cos);
+            sin = Math.rint(sin);
+        }
+        double m = mirror ? -1 : 1;
+        return new JobTransform(cos * m * scale, -sin * scale, sin * m * scale, cos * scale, offsetX, offsetY,
+                Double.NaN, Double.NaN);
+    }
+
+    // the same transform, clipped to a width x height work area; NaN for no clipping
+    public JobTransform clippedTo(double width, double height) {
+        return new JobTransform(a, b, c, d, e, f, width, height);
+    }
+
+    public boolean isIdentity() {
+        return a == 1 && b == 0 && c == 0 && d == 1 && e == 0 && f == 0 && !isClipped();
+    }
+
+    public boolean isClipped() {
+        return clipWidth > 0 && clipHeight > 0;
+    }
+
+    // how much lengths grow; the same for every direction unless the matrix was given by hand
+    public double getScale() {
+        return Math.sqrt(Math.abs(a * d - b * c));
+    }
+
+    public Stage newStage() {
+        return new Stage();
+    }
+
+    @Override
+    public String toString() {
+        // + 0.0 turns the -0.0 of a mirror or quarter turn into 0.0
+        String text = String.format(Locale.US, "x' = %.4g x %+.4g y %+.3f, y' = %.4g x %+.4g y %+.3f",
+                a + 0.0, b + 0.0, e + 0.0, c + 0.0, d + 0.0, f + 0.0);
+        return isClipped() ? text + String.format(Locale.US, ", clipped to %.1f x %.1f mm", clipWidth, clipHeight)
+                : text;
+    }
+
+    // Extents of what a Stage drew, in machine mm; empty until the first pen-down move.
+    public static final class Bounds {
+        public double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+        public double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+
+        public boolean isEmpty() {
+            return minX > maxX;
+        }
+
+        public double getWidth() {
+            return isEmpty() ? 0 : maxX - minX;
+        }
+
+        public double getHeight() {
+            return isEmpty() ? 0 : maxY - minY;
+        }
+
+        void include(double x, double y) {
+            if (x < minX) minX = x;
+            if (x > maxX) maxX = x;
+            if (y < minY) minY = y;
+            if (y > maxY) maxY = y;
+        }
+
+        @Override
+        public String toString() {
+            if (isEmpty()) return "nothing drawn";
+            return String.format(Locale.US, "X %.1f..%.1f Y %.1f..%.1f mm (%.1f x %.1f mm)",
+                    tenths(minX), tenths(maxX), tenths(minY), tenths(maxY), tenths(getWidth()), tenths(getHeight()));
+        }
+
+        // rounded first so a point a hair below the edge does not show as -0.0
+        private static double tenths(double mm) {
+            return Math.round(mm * 10) / 10.0;
+        }
+    }
+
+    // One job's way through the transform. Follows the job's modal state and position (in its own mm,
+    // before the transform) and where the machine really is, which differs while the drawing is
+    // outside the work area. Not thread-safe; the streamer uses it on its own thread.
+    public final class Stage {
+        // the job
+        private boolean absolute = true, metric = true;
+        private int motion = 1;
+        private double x = 0, y = 0, z = 1, offsetX = 0, offsetY = 0;
+        private double feed = Double.NaN;   // mm/min
+        // the machine, after the transform; NaN while unknown (after a G28 or $H). The streamer
+        // starts a job with G92 X0 Y0 Z0 and the pen up.
+        private double machineX = 0, machineY = 0, machineZ = 1, machineFeed = Double.NaN;
+
+        private final Bounds drawn = new Bounds(), unclipped = new Bounds();
+        private int cutMoves = 0;
+
+        // parsed words of the current line; spans point into the line
+        private final char[] letters = new char[32];
+        private final double[] values = new double[32];
+        private final int[] starts = new int[32], ends = new int[32];
+        private int count;
+
+        private Stage() {
+        }
+
+        // what was drawn so far, after clipping
+        public Bounds getDrawnBounds() {
+            return drawn;
+        }
+
+        // what would have been drawn without the clip
+        public Bounds getUnclippedBounds() {
+            return unclipped;
+        }
+
+        // pen-down moves cut at the edge of the work area or left out entirely
+        public int getCutMoves() {
+            return cutMoves;
+        }
+
+        // the lines to send for one job line, added to out; none if nothing of it is left
+        public void apply(String raw, List<String> out) {
+            String line = raw.trim();
+            if (line.isEmpty()) return;
+            if (line.charAt(0) == '$') {
+                // homing and jogging move the machine somewhere this stage does not know
+                if (line.startsWith("$H") || line.startsWith("$J")) machineX = machineY = Double.NaN;
+                out.add(line);
+                return;
+            }
+            parse(line);
+            if (count == 0) return;
+
+            boolean setOrigin = false, asIs = false, elsewhere = false;
+            int lineMotion = motion;
+            double nx = Double.NaN, ny = Double.NaN, nz = Double.NaN, nf = Double.NaN;
+            double i = 0, j = 0, r = Double.NaN;
+            StringBuilder rest = new StringBuilder();
+            for (int w = 0; w < count; w++) {
+                double value = values[w];
+                switch (letters[w]) {
+                    case 'G':
+                        if (value == 0 || value == 1 || value == 2 || value == 3) lineMotion = (int) value;
+                        else if (value == 20) metric = false;
+                        else if (value == 21) metric = true;
+                        else if (value == 90) absolute = true;
+                        else if (value == 91) absolute = false;
+                        else if (value == 92) setOrigin = true;
+                        else if (value == 10 || value == 28.1 || value == 30.1) asIs = true;
+                        else if (value == 28 || value == 30 || value == 53) asIs = elsewhere = true;
+                        else appendWord(rest, line, w);   // G4 P.., G17, G94, ...
+                        break;
+                    case 'X': nx = value; break;
+                    case 'Y': ny = value; break;
+                    case 'Z': nz = value; break;
+                    case 'F': nf = value; break;
+                    case 'I': i = value; break;
+                    case 'J': j = value; break;
+                    case 'R': r = value; break;
+                    case 'N': break;
+                    default: appendWord(rest, line, w); break;
+                }
+            }
+            double scale = metric ? 1 : 25.4;
+
+            if (setOrigin) {
+                // G92: the current position gets the given coordinates, nothing moves
+                if (!Double.isNaN(nx)) offsetX = x - nx * scale;
+                if (!Double.isNaN(ny)) offsetY = y - ny * scale;
+                if (!Double.isNaN(nz)) z = nz * scale;
+                return;
+            }
+            if (asIs) {
+                // coordinates GRBL keeps or moves to in its own system; the axis words stay with them
+                out.add(line);
+                if (elsewhere) machineX = machineY = Double.NaN;
+                return;
+            }
+            motion = lineMotion;
+            if (!Double.isNaN(nf)) feed = nf * scale;
+            if (!Double.isNaN(nz)) z = absolute ? nz * scale : z + nz * scale;
+
+            if (Double.isNaN(nx) && Double.isNaN(ny)) {
+                moveZ(rest, out);
+                return;
+            }
+            double tx = Double.isNaN(nx) ? x : (absolute ? nx * scale + offsetX : x + nx * scale);
+            double ty = Double.isNaN(ny) ? y : (absolute ? ny * scale + offsetY : y + ny * scale);
+            if (motion == 2 || motion == 3) {
+                arc(tx, ty, i * scale, j * scale, r * scale, motion == 2, rest, out);
+            } else {
+                segment(tx, ty, rest, out);
+            }
+        }
+
+        // takes the machine from wherever it is to the state of a checkpoint of this job: pen up over
+        // the transformed position (on the edge of the work area if it is outside), then the pen and
+        // feed as they were
+        public void resumeFrom(ModalState modal, List<String> out) {
+            absolute = modal.absolute;
+            metric = modal.metric;
+            double scale = metric ? 1 : 25.4;
+            x = modal.x * scale;
+            y = modal.y * scale;
+            z = modal.z * scale;
+            feed = Double.isNaN(modal.feed) ? Double.NaN : modal.feed * scale;
+            offsetX = offsetY = 0;
+
+            machineX = clampX(transformX(x, y));
+            machineY = clampY(transformY(x, y));
+            machineZ = 1;
+            machineFeed = Double.NaN;
+            StringBuilder travel = new StringBuilder("G1");
+            appendAxis(travel, 'X', machineX);
+            appendAxis(travel, 'Y', machineY);
+            appendAxis(travel, 'Z', 1);
+            out.add(travel.toString());
+            moveZ(new StringBuilder(), out);
+        }
+
+        // a line without X or Y: the pen goes down only where the machine is on the drawing
+        private void moveZ(StringBuilder rest, List<String> out) {
+            boolean down = z <= 0;
+            boolean inPlace = samePoint(machineX, machineY, transformX(x, y), transformY(x, y));
+            StringBuilder sb = new StringBuilder();
+            if (z != machineZ && (!down || inPlace)) {
+                sb.append(motion == 0 ? "G0" : "G1");
+                appendAxis(sb, 'Z', z);
+                machineZ = z;
+            }
+            appendFeed(sb);
+            appendRest(sb, rest);
+            if (sb.length() > 0) out.add(sb.toString());
+        }
+
+        private void segment(double tx, double ty, StringBuilder rest, List<String> out) {
+            double x0 = transformX(x, y), y0 = transformY(x, y);
+            double x1 = transformX(tx, ty), y1 = transformY(tx, ty);
+            x = tx;
+            y = ty;
+            String word = motion == 0 ? "G0" : "G1";
+
+            if (z > 0) {
+                // travel: to the nearest point of the work area, the pen is up anyway
+                double cx = clampX(x1), cy = clampY(y1);
+                if (samePoint(machineX, machineY, cx, cy) && z == machineZ) {
+                    flush(rest, out);
+                    return;
+                }
+                StringBuilder sb = new StringBuilder(word);
+                appendAxis(sb, 'X', cx);
+                appendAxis(sb, 'Y', cy);
+                if (z != machineZ) appendAxis(sb, 'Z', z);
+                appendFeed(sb);
+                appendRest(sb, rest);
+                out.add(sb.toString());
+                machineX = cx;
+                machineY = cy;
+                machineZ = z;
+                return;
+            }
+
+            unclipped.include(x0, y0);
+            unclipped.include(x1, y1);
+            double ax = x0, ay = y0, bx = x1, by = y1;
+            if (isClipped()) {
+                double[] t = new double[2];
+                if (!DrawingPartitioner.clipSegment(x0, y0, x1, y1, 0, 0, clipWidth, clipHeight, false, false, t)) {
+                    cutMoves++;
+                    flush(rest, out);
+                    return;
+                }
+                if (t[0] > 0 || t[1] < 1) cutMoves++;
+                ax = x0 + (x1 - x0) * t[0];
+                ay = y0 + (y1 - y0) * t[0];
+                bx = x0 + (x1 - x0) * t[1];
+                by = y0 + (y1 - y0) * t[1];
+            }
+            if (!samePoint(machineX, machineY, ax, ay)) {
+                // the machine is elsewhere (the drawing was outside): lift, go to where it enters
+                StringBuilder travel = new StringBuilder("G1");
+                appendAxis(travel, 'X', ax);
+                appendAxis(travel, 'Y', ay);
+                if (!(machineZ > 0)) appendAxis(travel, 'Z', 1);
+                out.add(travel.toString());
+                machineZ = 1;
+            }
+            StringBuilder sb = new StringBuilder(word);
+            appendAxis(sb, 'X', bx);
+            appendAxis(sb, 'Y', by);
+            if (z != machineZ) appendAxis(sb, 'Z', z);
+            appendFeed(sb);
+            appendRest(sb, rest);
+            out.add(sb.toString());
+            machineX = bx;
+            machineY = by;
+            machineZ = z;
+            drawn.include(ax, ay);
+            drawn.include(bx, by);
+        }
+
+        private void arc(double tx, double ty, double i, double j, double r, boolean clockwise,
+                         StringBuilder rest, List<String> out) {
+            double x0 = x, y0 = y, cx, cy;
+            if (!Double.isNaN(r)) {
+                // radius form, center as GRBL computes it
+                double dx = tx - x0, dy = ty - y0;
+                double h = 4 * r * r - dx * dx - dy * dy;
+                if (h < 0) h = 0;
+                double hOverD = -Math.sqrt(h) / Math.hypot(dx, dy);
+                if (!clockwise) hOverD = -hOverD;
+                if (r < 0) hOverD = -hOverD;
+                cx = x0 + 0.5 * (dx - dy * hOverD);
+                cy = y0 + 0.5 * (dy + dx * hOverD);
+            } else {
+                cx = x0 + i;
+                cy = y0 + j;
+            }
+            double radius = Math.hypot(x0 - cx, y0 - cy);
+            double start = Math.atan2(y0 - cy, x0 - cx), end = Math.atan2(ty - cy, tx - cx);
+            double sweep = end - start;
+            if (clockwise && sweep >= 0) sweep -= 2 * Math.PI;
+            if (!clockwise && sweep <= 0) sweep += 2 * Math.PI;
+            int segments = Math.max(1, (int) Math.ceil(Math.abs(sweep) * radius * getScale() / ARC_CHORD_MM));
+            int saved = motion;
+            motion = 1;
+            for (int k = 1; k < segments; k++) {
+                double angle = start + sweep * k / segments;
+                segment(cx + radius * Math.cos(angle), cy + radius * Math.sin(angle), rest, out);
+                rest.setLength(0);
+            }
+            segment(tx, ty, rest, out);
+            motion = saved;
+        }
+
+        // a line that moved nothing still carries its feed and other words, if it has any
+        private void flush(StringBuilder rest, List<String> out) {
+            StringBuilder sb = new StringBuilder();
+            appendRest(sb, rest);
+            if (sb.length() > 0) out.add(sb.toString());
+        }
+
+        // F only where it changes; a feed that came with a line left out goes with the next one sent
+        private void appendFeed(StringBuilder sb) {
+            if (Double.isNaN(feed) || feed == machineFeed) return;
+            appendAxis(sb, 'F', feed);
+            machineFeed = feed;
+        }
+
+        private void appendRest(StringBuilder sb, StringBuilder rest) {
+            if (rest.length() == 0) return;
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(rest);
+        }
+
+        private void appendWord(StringBuilder sb, String line, int w) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(line, starts[w], ends[w]);
+        }
+
+        private void appendAxis(StringBuilder sb, char letter, double value) {
+            if (sb.length() > 0) sb.append(' ');
+            sb.append(letter);
+            PenPlotterGCodeWriter.appendThousandths(sb, Math.round(value * 1000.0));
+        }
+
+        private double transformX(double px, double py) {
+            return a * px + b * py + e;
+        }
+
+        private double transformY(double px, double py) {
+            return c * px + d * py + f;
+        }
+
+        private double clampX(double value) {
+            return isClipped() ? Math.max(0, Math.min(clipWidth, value)) : value;
+        }
+
+        private double clampY(double value) {
+            return isClipped() ? Math.max(0, Math.min(clipHeight, value)) : value;
+        }
+
+        private boolean samePoint(double x0, double y0, double x1, double y1) {
+            return Math.abs(x0 - x1) <= SAME_POINT_MM && Math.abs(y0 - y1) <= SAME_POINT_MM;
+        }
+
+        // splits the line into words; stops at a comment, skips what is not a word
+        private void parse(String line) {
+            count = 0;
+            int p = 0, length = line.length();
+            while (p < length && count < letters.length) {
+                char letter = line.charAt(p);
+                if (letter == ';') break;
+                if (letter == '(') {
+                    int close = line.indexOf(')', p);
+                    if (close < 0) break;
+                    p = close + 1;
+                    continue;
+                }
+                if (!Character.isLetter(letter)) {
+                    p++;
+                    continue;
+                }
+                int start = p++;
+                while (p < length && line.charAt(p) == ' ') p++;
+                int number = p;
+                while (p < length && isNumberChar(line.charAt(p))) p++;
+                if (number == p) continue;
+                try {
+                    values[count] = Double.parseDouble(line.substring(number, p));
+                } catch (NumberFormatException ex) {
+                    continue;
+                }
+                letters[count] = Character.toUpperCase(letter);
+                starts[count] = start;
+                ends[count] = p;
+                count++;
+            }
+        }
+    }
+
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+';
+    }
+}
@@ -0,0 +1,121 @@
+package com.example.drawbot;
+
+// Press-and-hold jogging with GRBL 1.1's $J= command. While a direction is held, short relative jog
+// segments are sent so that GRBL has two to three of them planned; release sends the jog cancel byte
+// 0x85, which stops the jog and flushes every jog block GRBL has planned. A jog line still in GRBL's
+// serial buffer is not flushed by it and would start a new jog after the cancel, so only one jog line
+// is ever unanswered, and if it was when the button came up, its ok is followed by a second cancel.
+// With one line at a time a segment has to last longer than the ok round trip or the machine stops
+// between segments, so segments are SEGMENT_MS or twice the measured round trip, whichever is longer;
+// what is planned is cancelled anyway, so longer segments do not move the pen further after release.
+// All methods must be called on the streamer's thread.
+public class Jogger {
+    public static final char JOG_CANCEL = 0x85;
+    static final long SEGMENT_MS = 100;
+    // segments planned ahead before the next is sent
+    static final double AHEAD_SEGMENTS = 2.5;
+
+    public interface Output {
+        // a line GRBL answers with ok or error
+        void send(String line);
+        // a realtime byte, acted on the moment GRBL receives it
+        void sendRealtime(char command);
+        // a jog line was rejected, e.g. error:15 when it would leave the work area with soft limits on
+        void onRejected(String error);
+    }
+
+    private final Output output;
+    private final GCodeStreamer.Scheduler scheduler;
+
+    private boolean holding = false, unanswered = false, cancelAfterOk = false;
+    private double dx, dy, feed;
+    private long plannedUntil = 0;   // when the jog segments GRBL has are done, nanoseconds
+    private long sentAt = 0, roundTrip = 0;
+    private int hold = 0;            // ticks of an earlier hold stop themselves
+    private int segments = 0;
+
+    public Jogger(Output output, GCodeStreamer.Scheduler scheduler) {
+        this.output = output;
+        this.scheduler = scheduler;
+    }
+
+    // starts moving in the direction (dx, dy), normalised here, at feed mm/min until release
+    public void press(double dx, double dy, double feed) {
+        double length = Math.hypot(dx, dy);
+        if (!(length > 0) || !(feed > 0)) return;
+        if (holding) release();
+        this.dx = dx / length;
+        this.dy = dy / length;
+        this.feed = feed;
+        holding = true;
+        plannedUntil = scheduler.nanoTime();
+        int current = ++hold;
+        tick(current);
+    }
+
+    public void release() {
+        if (!holding) return;
+        holding = false;
+        output.sendRealtime(JOG_CANCEL);
+        // the line on its way can still start a jog once GRBL reads it
+        cancelAfterOk = unanswered;
+    }
+
+    public boolean isHolding() {
+        return holding;
+    }
+
+    // jog segments sent since this jogger was made
+    public int getSegments() {
+        return segments;
+    }
+
+    // every ok or error; the first one after a jog line is its answer
+    public void onReply(String line) {
+        if (!unanswered) return;
+        boolean ok = line.equals("ok") || line.equals("ook") || line.equals("k");
+        if (!ok && !line.startsWith("error")) return;
+        unanswered = false;
+        long sample = scheduler.nanoTime() - sentAt;
+        roundTrip = roundTrip == 0 ? sample : (roundTrip * 3 + sample) / 4;
+        if (!ok) {
+            holding = false;
+            cancelAfterOk = false;
+            output.onRejected(line);
+            return;
+        }
+        if (cancelAfterOk) {
+            cancelAfterOk = false;
+            output.sendRealtime(JOG_CANCEL);
+            return;
+        }
+        sendIfDue();
+    }
+
+    private void tick(int current) {
+        if (!holding || current != hold) return;
+        sendIfDue();
+        scheduler.schedule(() -> tick(current), SEGMENT_MS / 2);
+    }
+
+    private long segmentNanos() {
+        return Math.max(SEGMENT_MS * 1_000_000L, 2 * roundTrip);
+    }
+
+    private void sendIfDue() {
+        long now = scheduler.nanoTime();
+        long segment = segmentNanos();
+        if (!holding || unanswered || plannedUntil - now > AHEAD_SEGMENTS * segment) return;
+        double distance = feed / 60.0 * segment / 1e9;
+        StringBuilder line = new StringBuilder("$J=G91 G21");
+        long x = Math.round(dx * distance * 1000.0), y = Math.round(dy * distance * 1000.0);
+        if (x != 0) PenPlotterGCodeWriter.appendThousandths(line.append(" X"), x);
+        if (y != 0) PenPlotterGCodeWriter.appendThousandths(line.append(" Y"), y);
+        PenPlotterGCodeWriter.appendThousandths(line.append(" F"), Math.round(feed * 1000.0));
+        output.send(line.toString());
+        unanswered = true;
+        sentAt = now;
+        segments++;
+        plannedUntil = Math.max(plannedUntil, now) + segment;
+    }
+}
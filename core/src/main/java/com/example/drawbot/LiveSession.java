@@ -0,0 +1,387 @@
+package com.example.drawbot;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+// Draws along with a finger. Touch points are simplified as they arrive (StrokeSimplifier) and go
+// out as short G1 moves, but only while the moves on their way (sent and not yet reached by the pen)
+// add up to less than `aheadMs` of drawing at the feed. GRBL answers a move as soon as it is planned,
+// so counting unanswered lines would still let its 15-block planner fill up; limiting what the pen
+// has left to draw keeps it a fixed time behind the finger, whatever the length of the moves. Where
+// the pen is comes from a status report every STATUS_INTERVAL_MS, so aheadMs has to cover a status
+// round trip or the pen stops between moves.
+// When the finger is faster than the pen the waiting moves are thinned out, the flattest corner
+// first (Visvalingam), instead of piling up.
+//
+// End to end latency is measured per vertex from the moment its touch point was sampled: until GRBL
+// answered the move (queued) and until a status report showed the pen there (drawn, good to a
+// status interval). All methods must be called on the streamer's thread; the statistics can be read
+// from any thread.
+public class LiveSession {
+    public static final long DEFAULT_AHEAD_MS = 250;
+    public static final double TOLERANCE_MM = 0.25;
+    public static final double MIN_SEGMENT_MM = 0.4;
+    public static final long HOLD_MS = 50;
+    static final long STATUS_INTERVAL_MS = 100;
+    // waiting moves beyond this are thinned out
+    static final int MAX_WAITING = 6;
+    // moves on their way at least (the pen does not stop at the end of one while the next is sent)
+    // and at most (one less than GRBL's planner blocks)
+    static final int MIN_ON_THE_WAY = 2, MAX_ON_THE_WAY = 14;
+    // a status position this close to a move counts as on it
+    private static final double REACH_MM = 0.3;
+    // after stop, how long status reports are still read for the moves already sent
+    private static final long DRAIN_MS = 5000;
+
+    public interface Output {
+        // one line, GRBL answers it with ok or error
+        void send(String line);
+        // realtime "?", answered with a status report instead of ok
+        void requestStatus();
+    }
+
+    private static final class Move {
+        final String command;
+        final double x, y;      // where the pen is after it
+        final long touchNanos;  // when its touch point was sampled, -1 for setup lines
+        final boolean draw;     // pen-down segment that may be thinned out
+
+        Move(String command, double x, double y, long touchNanos, boolean draw) {
+            this.command = command;
+            this.x = x;
+            this.y = y;
+            this.touchNanos = touchNanos;
+            this.draw = draw;
+        }
+    }
+
+    private final Output output;
+    private final GCodeStreamer.Scheduler scheduler;
+    private final double feed;
+    private final double aheadMm;
+    private final StrokeSimplifier simplifier;
+
+    private final ArrayDeque<Move> waiting = new ArrayDeque<>();
+    private final ArrayDeque<Move> unanswered = new ArrayDeque<>();
+    // sent moves in order, until the pen got there
+    private final ArrayDeque<Move> onTheWay = new ArrayDeque<>();
+    private double queuedX = 0, queuedY = 0;    // end of the last queued move
+    private double sentX = 0, sentY = 0;        // end of the last sent move
+    private double reachedX = 0, reachedY = 0;  // end of the last move the pen got to
+    private double wcoX = 0, wcoY = 0;          // GRBL's work coordinate offset (G92)
+    private boolean active = false, penDown = false;
+    private int stroke = 0;
+    private long stoppedAt = 0;
+
+    // end to end latency in microseconds
+    public final LatencyHistogram queuedLatency = new LatencyHistogram();
+    public final LatencyHistogram drawnLatency = new LatencyHistogram();
+    private volatile int samples = 0, movesSent = 0, thinnedOut = 0;
+    private volatile double penX = 0, penY = 0;
+    private volatile long oldestUndrawnTouch = -1;
+
+    // feed: mm/min for drawing and travel; aheadMs: drawing time the pen may have left on its way
+    public LiveSession(Output output, GCodeStreamer.Scheduler scheduler, double feed, long aheadMs) {
+        this.output = output;
+        this.scheduler = scheduler;
+        this.feed = feed;
+        this.aheadMm = feed / 60.0 * aheadMs / 1000.0;
+        simplifier = new StrokeSimplifier(TOLERANCE_MM, MIN_SEGMENT_MM, HOLD_MS * 1_000_000L,
+                (x, y, nanos) -> queue(move("G1", x, y, '0'), x, y, nanos, true));
+    }
+
+    // the pen position becomes X0 Y0 with the pen up, as at the start of a job
+    public void start() {
+        if (active) return;
+        active = true;
+        output.send("~");
+        queue("$X");
+        queue("G21");
+        queue("G90");
+        queue("G92 X0 Y0 Z0");
+        StringBuilder up = new StringBuilder("G1 Z1 F");
+        PenPlotterGCodeWriter.appendThousandths(up, Math.round(feed * 1000.0));
+        queue(up.toString());
+        pump();
+        scheduler.schedule(this::pollStatus, STATUS_INTERVAL_MS);
+    }
+
+    // drops what has not been sent and lifts the pen
+    public void stop() {
+        if (!active) return;
+        active = false;
+        if (simplifier.isActive()) simplifier.end(queuedX, queuedY, scheduler.nanoTime());
+        waiting.clear();
+        output.send("G1 Z1");
+        unanswered.add(new Move("G1 Z1", queuedX, queuedY, -1, false));
+        penDown = false;
+        stoppedAt = scheduler.nanoTime();
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    // x, y in mm of the work area; nanos on the scheduler's clock
+    public void touchDown(double x, double y, long nanos) {
+        if (!active) return;
+        samples++;
+        if (simplifier.isActive()) simplifier.end(queuedX, queuedY, nanos);
+        if (penDown) {
+            queue("G1 Z1", queuedX, queuedY, -1, false);
+        }
+        queue(move("G1", x, y, '1'), x, y, nanos, false);
+        queue("G1 Z0", x, y, nanos, false);
+        penDown = true;
+        simplifier.begin(x, y);
+        pump();
+        int current = ++stroke;
+        scheduler.schedule(() -> holdCheck(current), HOLD_MS);
+    }
+
+    public void touchMove(double x, double y, long nanos) {
+        if (!active || !simplifier.isActive()) return;
+        samples++;
+        simplifier.add(x, y, nanos);
+        pump();
+    }
+
+    public void touchUp(double x, double y, long nanos) {
+        if (!active || !simplifier.isActive()) return;
+        samples++;
+        simplifier.end(x, y, nanos);
+        queue("G1 Z1", queuedX, queuedY, -1, false);
+        penDown = false;
+        pump();
+    }
+
+    // every complete line from GRBL
+    public void onReply(String line) {
+        if (line.startsWith("<")) {
+            onStatus(line);
+        } else if (line.equals("ok") || line.equals("ook") || line.equals("k") || line.startsWith("error")) {
+            // "ook" and "k" are garbled oks, as in GCodeStreamer
+            Move answered = unanswered.poll();
+            if (answered != null && answered.touchNanos >= 0) {
+                queuedLatency.record((scheduler.nanoTime() - answered.touchNanos) / 1000);
+            }
+            pump();
+        }
+    }
+
+    private void queue(String command) {
+        queue(command, queuedX, queuedY, -1, false);
+    }
+
+    private void queue(String command, double x, double y, long touchNanos, boolean draw) {
+        waiting.add(new Move(command, x, y, touchNanos, draw));
+        queuedX = x;
+        queuedY = y;
+        if (waiting.size() > MAX_WAITING) thinOut();
+    }
+
+    // sends waiting moves while the pen has less than aheadMm left to draw; setup lines always go
+    private void pump() {
+        while (!waiting.isEmpty()) {
+            Move next = waiting.peek();
+            if (next.touchNanos >= 0 && onTheWay.size() >= MIN_ON_THE_WAY
+                    && (onTheWay.size() >= MAX_ON_THE_WAY || distanceAhead() >= aheadMm)) {
+                return;
+            }
+            waiting.poll();
+            output.send(next.command);
+            unanswered.add(next);
+            movesSent++;
+            sentX = next.x;
+            sentY = next.y;
+            if (next.touchNanos >= 0) {
+                onTheWay.add(next);
+                if (oldestUndrawnTouch < 0) oldestUndrawnTouch = next.touchNanos;
+            }
+        }
+    }
+
+    // path from the last reported pen position through the moves on their way
+    private double distanceAhead() {
+        double distance = 0, fromX = penX, fromY = penY;
+        for (Move move : onTheWay) {
+            distance += Math.hypot(move.x - fromX, move.y - fromY);
+            fromX = move.x;
+            fromY = move.y;
+        }
+        return distance;
+    }
+
+    // removes waiting pen-down vertices, the one whose triangle with its neighbours is smallest first,
+    // until the backlog fits again; the stroke keeps its ends
+    private void thinOut() {
+        List<Move> moves = new ArrayList<>(waiting);
+        while (moves.size() > MAX_WAITING) {
+            int best = -1;
+            double bestArea = Double.POSITIVE_INFINITY;
+            for (int i = 0; i + 1 < moves.size(); i++) {
+                Move current = moves.get(i), next = moves.get(i + 1);
+                if (!current.draw || !next.draw) continue;
+                double px, py;
+                if (i > 0) {
+                    Move previous = moves.get(i - 1);
+                    if (!previous.draw && previous.touchNanos < 0) continue;
+                    px = previous.x;
+                    py = previous.y;
+                } else {
+                    px = sentX;
+                    py = sentY;
+                }
+                double area = Math.abs((current.x - px) * (next.y - py) - (next.x - px) * (current.y - py));
+                if (area < bestArea) {
+                    bestArea = area;
+                    best = i;
+                }
+            }
+            if (best < 0) break;
+            moves.remove(best);
+            thinnedOut++;
+        }
+        waiting.clear();
+        waiting.addAll(moves);
+    }
+
+    private void pollStatus() {
+        if (!active && (onTheWay.isEmpty() || scheduler.nanoTime() - stoppedAt > DRAIN_MS * 1_000_000L)) return;
+        output.requestStatus();
+        scheduler.schedule(this::pollStatus, STATUS_INTERVAL_MS);
+    }
+
+    // a slow finger: send the point the simplifier is holding back
+    private void holdCheck(int current) {
+        if (!active || current != stroke || !simplifier.isActive()) return;
+        simplifier.flush(scheduler.nanoTime());
+        pump();
+        scheduler.schedule(() -> holdCheck(current), HOLD_MS / 2);
+    }
+
+    // "<Run|MPos:1.000,2.000,1.000|FS:800,0|WCO:0.000,0.000,0.000>": moves the pen is past are drawn
+    private void onStatus(String report) {
+        boolean idle = report.startsWith("<Idle");
+        double[] mpos = field(report, "MPos:"), wpos = field(report, "WPos:"), wco = field(report, "WCO:");
+        if (wco != null) {
+            wcoX = wco[0];
+            wcoY = wco[1];
+        }
+        double x, y;
+        if (wpos != null) {
+            x = wpos[0];
+            y = wpos[1];
+        } else if (mpos != null) {
+            x = mpos[0] - wcoX;
+            y = mpos[1] - wcoY;
+        } else {
+            return;
+        }
+        penX = x;
+        penY = y;
+
+        long now = scheduler.nanoTime();
+        int drawn = 0;
+        if (idle && unanswered.isEmpty()) {
+            drawn = onTheWay.size();
+        } else {
+            // the first move whose segment the pen is on; the ones before it are done
+            double fromX = reachedX, fromY = reachedY;
+            int index = 0;
+            for (Iterator<Move> it = onTheWay.iterator(); it.hasNext(); index++) {
+                Move move = it.next();
+                if (Math.hypot(x - move.x, y - move.y) <= REACH_MM) {
+                    drawn = index + 1;
+                    break;
+                }
+                if (distanceToSegment(x, y, fromX, fromY, move.x, move.y) <= REACH_MM) {
+                    drawn = index;
+                    break;
+                }
+                fromX = move.x;
+                fromY = move.y;
+            }
+        }
+        for (int i = 0; i < drawn; i++) {
+            Move move = onTheWay.poll();
+            reachedX = move.x;
+            reachedY = move.y;
+            drawnLatency.record((now - move.touchNanos) / 1000);
+        }
+        Move oldest = onTheWay.peek();
+        oldestUndrawnTouch = oldest != null ? oldest.touchNanos : -1;
+        if (drawn > 0) pump();
+    }
+
+    private static double[] field(String report, String name) {
+        int start = report.indexOf(name);
+        if (start < 0) return null;
+        start += name.length();
+        int end = start;
+        while (end < report.length() && report.charAt(end) != '|' && report.charAt(end) != '>') end++;
+        String[] parts = report.substring(start, end).split(",");
+        if (parts.length < 2) return null;
+        try {
+            return new double[]{Double.parseDouble(parts[0]), Double.parseDouble(parts[1])};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static double distanceToSegment(double x, double y, double x0, double y0, double x1, double y1) {
+        double dx = x1 - x0, dy = y1 - y0;
+        double lengthSquared = dx * dx + dy * dy;
+        double t = lengthSquared > 0 ? Math.max(0, Math.min(1, ((x - x0) * dx + (y - y0) * dy) / lengthSquared)) : 0;
+        return Math.hypot(x - x0 - t * dx, y - y0 - t * dy);
+    }
+
+    private static String move(String motion, double x, double y, char z) {
+        StringBuilder sb = new StringBuilder(32).append(motion).append(" X");
+        PenPlotterGCodeWriter.appendThousandths(sb, Math.round(x * 1000.0));
+        sb.append(" Y");
+        PenPlotterGCodeWriter.appendThousandths(sb, Math.round(y * 1000.0));
+        return sb.append(" Z").append(z).toString();
+    }
+
+    public int getSamples() {
+        return samples;
+    }
+
+    public int getMovesSent() {
+        return movesSent;
+    }
+
+    // vertices dropped because the pen could not keep up
+    public int getThinnedOut() {
+        return thinnedOut;
+    }
+
+    // last position reported by GRBL, in mm of the work area
+    public double getPenX() {
+        return penX;
+    }
+
+    public double getPenY() {
+        return penY;
+    }
+
+    // how long the oldest touch point not drawn yet has been waiting, 0 if the pen is there
+    public long getLagNanos(long nowNanos) {
+        long oldest = oldestUndrawnTouch;
+        return oldest < 0 ? 0 : nowNanos - oldest;
+    }
+
+    public String getSummary() {
+        return String.format(Locale.US,
+                "%d touch points, %d lines sent, %d thinned out; touch to queued p50 %.0f ms p95 %.0f ms, "
+                        + "touch to drawn p50 %.0f ms p95 %.0f ms max %.0f ms",
+                samples, movesSent, thinnedOut,
+                queuedLatency.getPercentile(50) / 1000.0, queuedLatency.getPercentile(95) / 1000.0,
+                drawnLatency.getPercentile(50) / 1000.0, drawnLatency.getPercentile(95) / 1000.0,
+                drawnLatency.getMax() / 1000.0);
+    }
+}
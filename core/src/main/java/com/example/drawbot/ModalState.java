@@ -0,0 +1,106 @@
+package com.example.drawbot;
+
+// Tracks the GRBL modal state and pen position from the lines the controller has confirmed.
+// Only what a resume needs: G90/G91, G20/G21, feed rate and the X/Y/Z position.
+public class ModalState {
+    public boolean absolute = true;
+    public boolean metric = true;
+    public double feed = Double.NaN;
+    public double x = 0, y = 0, z = 1; // pen starts up (Z1)
+
+    public void reset() {
+        absolute = true;
+        metric = true;
+        feed = Double.NaN;
+        x = 0;
+        y = 0;
+        z = 1;
+    }
+
+    public void copyFrom(ModalState other) {
+        absolute = other.absolute;
+        metric = other.metric;
+        feed = other.feed;
+        x = other.x;
+        y = other.y;
+        z = other.z;
+    }
+
+    // applies one G-code line, comments and unknown words are ignored
+    public void apply(String line) {
+        // system commands ($X, $J=...) never change the modal state
+        if (line.startsWith("$")) return;
+
+        int len = line.length();
+        int i = 0;
+        boolean setOrigin = false;
+        double nx = Double.NaN, ny = Double.NaN, nz = Double.NaN;
+
+        while (i < len) {
+            char c = Character.toUpperCase(line.charAt(i));
+            if (c == ';') break;
+            if (c == '(') {
+                int close = line.indexOf(')', i);
+                if (close < 0) break;
+                i = close + 1;
+                continue;
+            }
+            if (c < 'A' || c > 'Z') {
+                i++;
+                continue;
+            }
+
+            int start = ++i;
+            while (i < len && isNumberChar(line.charAt(i))) {
+                i++;
+            }
+            if (start == i) continue;
+
+            double value;
+            try {
+                value = Double.parseDouble(line.substring(start, i).trim());
+            } catch (NumberFormatException e) {
+                continue;
+            }
+
+            switch (c) {
+                case 'G':
+                    if (value == 90) absolute = true;
+                    else if (value == 91) absolute = false;
+                    else if (value == 20) metric = false;
+                    else if (value == 21) metric = true;
+                    else if (value == 92) setOrigin = true;
+                    break;
+                case 'F':
+                    feed = value;
+                    break;
+                case 'X':
+                    nx = value;
+                    break;
+                case 'Y':
+                    ny = value;
+                    break;
+                case 'Z':
+                    nz = value;
+                    break;
+                default:
+                    break;
+            }
+        }
+
+        // G92 sets the given axes as the new position, the machine does not move
+        if (setOrigin || absolute) {
+            if (!Double.isNaN(nx)) x = nx;
+            if (!Double.isNaN(ny)) y = ny;
+            if (!Double.isNaN(nz)) z = nz;
+        } else {
+            if (!Double.isNaN(nx)) x += nx;
+            if (!Double.isNaN(ny)) y += ny;
+            if (!Double.isNaN(nz)) z += nz;
+        }
+    }
+
+    private static boolean isNumberChar(char c) {
+        return (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+' || c == ' ';
+    }
+}
@@ -0,0 +1,110 @@
+package com.example.drawbot;
+
+import java.io.IOException;
+import java.io.Writer;
+
+// Writes pen strokes straight in the dialect convertGCodeForPenPlotter produces:
+// "G1 X.. Y.. Z1" = pen up travel, "G1 X.. Y.. Z0" = pen down drawing.
+// Files starting with HEADER are sent by the terminal without converting them again.
+public class PenPlotterGCodeWriter {
+    public static final String HEADER = "; DrawBot pen-plotter G-code";
+
+    private final Writer out;
+    private final StringBuilder line = new StringBuilder(40);
+
+    // last emitted position in 1/1000 mm, so rounding never produces duplicate lines
+    private long lastX = Long.MIN_VALUE, lastY = Long.MIN_VALUE;
+    private boolean penDown = false;
+    private int travelMoves = 0, drawMoves = 0;
+
+    public PenPlotterGCodeWriter(Writer out) throws IOException {
+        this.out = out;
+        out.write(HEADER);
+        out.write('\n');
+    }
+
+    public static boolean isPenPlotterGCode(String text) {
+        return text.startsWith(HEADER);
+    }
+
+    // pen up and travel to (x, y)
+    public void moveTo(double x, double y) throws IOException {
+        long ix = Math.round(x * 1000.0);
+        long iy = Math.round(y * 1000.0);
+        if (ix == lastX && iy == lastY) {
+            penDown = false;
+            return;
+        }
+        penDown = false;
+        emit(ix, iy, '1');
+        travelMoves++;
+    }
+
+    // pen down and draw to (x, y)
+    public void lineTo(double x, double y) throws IOException {
+        long ix = Math.round(x * 1000.0);
+        long iy = Math.round(y * 1000.0);
+        if (ix == lastX && iy == lastY && penDown) {
+            return;
+        }
+        penDown = true;
+        emit(ix, iy, '0');
+        drawMoves++;
+    }
+
+    public void comment(String text) throws IOException {
+        out.write("; ");
+        out.write(text);
+        out.write('\n');
+    }
+
+    // lifts the pen at the end of the drawing and flushes the output
+    public void finish() throws IOException {
+        if (penDown && lastX != Long.MIN_VALUE) {
+            line.setLength(0);
+            line.append("G1 Z1\n");
+            out.write(line.toString());
+            penDown = false;
+        }
+        out.flush();
+    }
+
+    public int getTravelMoves() {
+        return travelMoves;
+    }
+
+    public int getDrawMoves() {
+        return drawMoves;
+    }
+
+    private void emit(long ix, long iy, char z) throws IOException {
+        line.setLength(0);
+        line.append("G1 X");
+        appendThousandths(line, ix);
+        line.append(" Y");
+        appendThousandths(line, iy);
+        line.append(" Z").append(z).append('\n');
+        out.write(line.toString());
+        lastX = ix;
+        lastY = iy;
+    }
+
+    // formats a value given in 1/1000 mm without String.format (slow and locale dependent)
+    static void appendThousandths(StringBuilder sb, long value) {
+        if (value < 0) {
+            sb.append('-');
+            value = -value;
+        }
+        sb.append(value / 1000);
+        int frac = (int) (value % 1000);
+        if (frac != 0) {
+            sb.append('.');
+            if (frac < 100) sb.append('0');
+            if (frac < 10) sb.append('0');
+            while (frac % 10 == 0) {
+                frac /= 10;
+            }
+            sb.append(frac);
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.drawbot;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+// Counters of one streaming job. The streamer thread writes, the diagnostics screen reads at any time;
+// everything is a LongAdder, an atomic or a volatile, so neither side ever waits for the other.
+public class StreamMetrics {
+    // send -> ok latency in microseconds
+    public final LatencyHistogram ackLatency = new LatencyHistogram();
+
+    public final LongAdder linesSent = new LongAdder();
+    public final LongAdder linesAcknowledged = new LongAdder();
+    public final LongAdder bytesSent = new LongAdder();
+    public final LongAdder bytesReceived = new LongAdder();
+    public final LongAdder timeouts = new LongAdder();
+    public final LongAdder errors = new LongAdder();
+    public final LongAdder statusReports = new LongAdder();
+    // status reports that showed GRBL idle while the job still had lines to send
+    public final LongAdder plannerStarvation = new LongAdder();
+
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private volatile long startNanos = 0, endNanos = 0;
+
+    public void reset(long nowNanos) {
+        ackLatency.reset();
+        linesSent.reset();
+        linesAcknowledged.reset();
+        bytesSent.reset();
+        bytesReceived.reset();
+        timeouts.reset();
+        errors.reset();
+        statusReports.reset();
+        plannerStarvation.reset();
+        queueDepth.set(0);
+        maxQueueDepth.set(0);
+        startNanos = nowNanos;
+        endNanos = 0;
+    }
+
+    public void markEnd(long nowNanos) {
+        endNanos = nowNanos;
+    }
+
+    public void recordSent(int bytes, boolean line) {
+        bytesSent.add(bytes);
+        if (line) linesSent.increment();
+    }
+
+    public void recordReceived(int bytes) {
+        bytesReceived.add(bytes);
+    }
+
+    public void recordAcknowledged(long latencyNanos) {
+        linesAcknowledged.increment();
+        ackLatency.record(latencyNanos / 1000);
+    }
+
+    public void recordQueueDepth(int depth) {
+        queueDepth.set(depth);
+        int currentMax;
+        while (depth > (currentMax = maxQueueDepth.get())) {
+            if (maxQueueDepth.compareAndSet(currentMax, depth)) break;
+        }
+    }
+
+    public void recordStatus(boolean starved) {
+        statusReports.increment();
+        if (starved) plannerStarvation.increment();
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    // job time so far, or of the whole job once it ended
+    public long getElapsedNanos(long nowNanos) {
+        if (startNanos == 0) return 0;
+        return (endNanos != 0 ? endNanos : nowNanos) - startNanos;
+    }
+
+    public String toJson(String job, long wallClockMillis, long nowNanos) {
+        double seconds = getElapsedNanos(nowNanos) / 1e9;
+        StringBuilder sb = new StringBuilder(512);
+        sb.append("{\n");
+        sb.append("  \"job\": \"").append(escape(job)).append("\",\n");
+        sb.append("  \"finishedAt\": ").append(wallClockMillis).append(",\n");
+        sb.append("  \"durationSeconds\": ").append(format(seconds)).append(",\n");
+        sb.append("  \"linesSent\": ").append(linesSent.sum()).append(",\n");
+        sb.append("  \"linesAcknowledged\": ").append(linesAcknowledged.sum()).append(",\n");
+        sb.append("  \"bytesSent\": ").append(bytesSent.sum()).append(",\n");
+        sb.append("  \"bytesReceived\": ").append(bytesReceived.sum()).append(",\n");
+        sb.append("  \"bytesSentPerSecond\": ").append(format(rate(bytesSent.sum(), seconds))).append(",\n");
+        sb.append("  \"bytesReceivedPerSecond\": ").append(format(rate(bytesReceived.sum(), seconds))).append(",\n");
+        sb.append("  \"maxQueueDepth\": ").append(maxQueueDepth.get()).append(",\n");
+        sb.append("  \"timeouts\": ").append(timeouts.sum()).append(",\n");
+        sb.append("  \"errors\": ").append(errors.sum()).append(",\n");
+        sb.append("  \"statusReports\": ").append(statusReports.sum()).append(",\n");
+        sb.append("  \"plannerStarvation\": ").append(plannerStarvation.sum()).append(",\n");
+        sb.append("  \"ackLatencyMicros\": {");
+        sb.append("\"count\": ").append(ackLatency.getCount());
+        sb.append(", \"mean\": ").append(format(ackLatency.getMean()));
+        sb.append(", \"p50\": ").append(ackLatency.getPercentile(50));
+        sb.append(", \"p90\": ").append(ackLatency.getPercentile(90));
+        sb.append(", \"p99\": ").append(ackLatency.getPercentile(99));
+        sb.append(", \"p999\": ").append(ackLatency.getPercentile(99.9));
+        sb.append(", \"max\": ").append(ackLatency.getMax());
+        sb.append("}\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static double rate(long amount, double seconds) {
+        return seconds > 0 ? amount / seconds : 0;
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.US, "%.3f", value);
+    }
+
+    private static String escape(String text) {
+        StringBuilder sb = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format(Locale.US, "\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
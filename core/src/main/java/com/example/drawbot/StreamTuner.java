@@ -0,0 +1,192 @@
+package com.example.drawbot;
+
+// Picks how aggressively GCodeStreamer sends, from what the link actually does.
+// A job starts with the parameters remembered for the device, or with the old fixed values
+// (one line in flight, 75 ms between lines, 10 s timeout) for an unknown one. During the first
+// seconds it measures the time to each ok and counts errors and timeouts; if the link looks clean
+// it drops the fixed delay and lets several lines be in flight, then keeps adapting:
+// - the window grows by one line after a run of clean acks and halves on every error or timeout
+// - the timeout follows the measured latency (TCP style srtt + 4 * rttvar, and at least twice the
+//   slowest ok seen); GCodeStreamer only applies it while status reports do not show GRBL busy
+// The byte budget is GRBL's character counting: never more than RX_BUFFER_BYTES unanswered,
+// so its 128 byte serial buffer cannot overflow whatever the window is.
+// Not thread safe, it lives on the streamer thread like GCodeStreamer.
+public class StreamTuner {
+    public static final int RX_BUFFER_BYTES = 127;
+    public static final int MAX_WINDOW = 15;    // GRBL plans 15 blocks, more lines in flight only wait in its buffer
+
+    private static final long WARMUP_NANOS = 5_000_000_000L;
+    private static final int WARMUP_MIN_SAMPLES = 20;
+    private static final double WARMUP_MAX_ERROR_RATE = 0.02;
+    private static final int FIRST_WINDOW = 4;
+    private static final int CLEAN_ACKS_TO_GROW = 50;
+    private static final int MIN_TIMEOUT_MS = 2000;
+    private static final int MAX_TIMEOUT_MS = 30000;
+
+    public static final class Parameters {
+        public final int window;        // job lines that may be unanswered at the same time
+        public final int sendDelayMs;   // pause after each line
+        public final int timeoutMs;     // give up waiting for an ok after this long
+
+        public Parameters(int window, int sendDelayMs, int timeoutMs) {
+            this.window = window;
+            this.sendDelayMs = sendDelayMs;
+            this.timeoutMs = timeoutMs;
+        }
+
+        // compact form for SharedPreferences: "window=4;delay=0;timeout=3000"
+        public String serialize() {
+            return "window=" + window + ";delay=" + sendDelayMs + ";timeout=" + timeoutMs;
+        }
+
+        // null if the text is missing or not in serialize() form
+        public static Parameters deserialize(String text) {
+            if (text == null || text.isEmpty()) return null;
+            int window = -1, delay = -1, timeout = -1;
+            for (String part : text.split(";")) {
+                int eq = part.indexOf('=');
+                if (eq < 0) return null;
+                try {
+                    int value = Integer.parseInt(part.substring(eq + 1));
+                    switch (part.substring(0, eq)) {
+                        case "window": window = value; break;
+                        case "delay": delay = value; break;
+                        case "timeout": timeout = value; break;
+                        default: break;
+                    }
+                } catch (NumberFormatException e) {
+                    return null;
+                }
+            }
+            if (window < 1 || delay < 0 || timeout < 1) return null;
+            return new Parameters(Math.min(window, MAX_WINDOW), delay, timeout);
+        }
+
+        @Override
+        public String toString() {
+            return "window " + window + ", delay " + sendDelayMs + " ms, timeout " + timeoutMs + " ms";
+        }
+    }
+
+    public static final Parameters DEFAULTS = new Parameters(1, GCodeStreamer.GCODE_DELAY_MS,
+            GCodeStreamer.COMMAND_TIMEOUT_MS);
+
+    private int window, sendDelayMs, timeoutMs, timeoutFloorMs;
+    private boolean warmingUp;
+    private long startNanos;
+    private int samples, errors, timeouts, cleanAcks;
+    private double srttMs, rttvarMs, maxLatencyMs;
+
+    public StreamTuner() {
+        start(null, 0);
+    }
+
+    // a new job; remembered are the parameters a previous job settled on for this device, or null
+    public void start(Parameters remembered, long nowNanos) {
+        Parameters p = remembered != null ? remembered : DEFAULTS;
+        window = p.window;
+        sendDelayMs = p.sendDelayMs;
+        timeoutMs = p.timeoutMs;
+        timeoutFloorMs = MIN_TIMEOUT_MS;
+        warmingUp = remembered == null;
+        startNanos = nowNanos;
+        samples = 0;
+        errors = 0;
+        timeouts = 0;
+        cleanAcks = 0;
+        srttMs = 0;
+        rttvarMs = 0;
+        maxLatencyMs = 0;
+    }
+
+    public boolean canSend(int linesInFlight, int bytesInFlight, int bytes) {
+        if (linesInFlight == 0) return true;
+        return linesInFlight < window && bytesInFlight + bytes <= RX_BUFFER_BYTES;
+    }
+
+    public void onAcknowledged(long latencyNanos, long nowNanos) {
+        double latencyMs = latencyNanos / 1e6;
+        if (samples == 0) {
+            srttMs = latencyMs;
+            rttvarMs = latencyMs / 2;
+        } else {
+            rttvarMs = 0.75 * rttvarMs + 0.25 * Math.abs(srttMs - latencyMs);
+            srttMs = 0.875 * srttMs + 0.125 * latencyMs;
+        }
+        samples++;
+        maxLatencyMs = Math.max(maxLatencyMs, latencyMs);
+
+        if (warmingUp) {
+            finishWarmupIfDue(nowNanos);
+        } else {
+            updateTimeout();
+            if (++cleanAcks >= CLEAN_ACKS_TO_GROW && window < MAX_WINDOW) {
+                window++;
+                sendDelayMs = 0;   // the delay only paces stop-and-wait
+                cleanAcks = 0;
+            }
+        }
+    }
+
+    // error reply to a job line, or a garbled ok
+    public void onError(long nowNanos) {
+        errors++;
+        if (warmingUp) {
+            finishWarmupIfDue(nowNanos);
+        } else {
+            backOff();
+        }
+    }
+
+    public void onTimeout() {
+        timeouts++;
+        // an ok that never came: wait longer from now on, for the rest of the job
+        timeoutMs = Math.min(MAX_TIMEOUT_MS, timeoutMs * 2);
+        timeoutFloorMs = timeoutMs;
+        if (!warmingUp) backOff();
+    }
+
+    private void finishWarmupIfDue(long nowNanos) {
+        if (nowNanos - startNanos < WARMUP_NANOS || samples + errors < WARMUP_MIN_SAMPLES) return;
+        warmingUp = false;
+        double errorRate = (double) errors / (samples + errors);
+        if (timeouts == 0 && errorRate <= WARMUP_MAX_ERROR_RATE) {
+            window = FIRST_WINDOW;
+            sendDelayMs = 0;
+        }
+        updateTimeout();
+    }
+
+    private void backOff() {
+        cleanAcks = 0;
+        window = Math.max(1, window / 2);
+        if (window == 1) {
+            sendDelayMs = GCodeStreamer.GCODE_DELAY_MS;
+        }
+    }
+
+    private void updateTimeout() {
+        double wanted = Math.max(srttMs + 4 * rttvarMs, 2 * maxLatencyMs);
+        timeoutMs = (int) Math.min(MAX_TIMEOUT_MS, Math.max(timeoutFloorMs, wanted));
+    }
+
+    public boolean isWarmingUp() {
+        return warmingUp;
+    }
+
+    public Parameters getParameters() {
+        return new Parameters(window, sendDelayMs, timeoutMs);
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public int getSendDelayMs() {
+        return sendDelayMs;
+    }
+
+    public int getTimeoutMs() {
+        return timeoutMs;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.drawbot;
+
+import java.util.Arrays;
+
+// Simplifies a stroke while it is still being drawn, for touch input. Points since the last vertex
+// are collected as long as they all stay within the tolerance of the straight line from that vertex
+// to the newest point; when one does not, the point before it becomes a vertex (Opheim style, one
+// pass, nothing already emitted is taken back). A point held back longer than holdNanos is emitted
+// anyway, so a slowly moving finger is still followed closely. Vertices closer than minSegment to
+// the previous one are not emitted, they only cost GRBL a planner block.
+public class StrokeSimplifier {
+    public interface Sink {
+        // nanos: when the touch point that became this vertex was sampled
+        void vertex(double x, double y, long nanos);
+    }
+
+    private final double tolerance, minSegment;
+    private final long holdNanos;
+    private final Sink sink;
+
+    private double anchorX, anchorY;
+    // points collected since the anchor
+    private double[] xs = new double[32], ys = new double[32];
+    private long[] times = new long[32];
+    private int count = 0;
+    private boolean active = false;
+
+    public StrokeSimplifier(double tolerance, double minSegment, long holdNanos, Sink sink) {
+        this.tolerance = tolerance;
+        this.minSegment = minSegment;
+        this.holdNanos = holdNanos;
+        this.sink = sink;
+    }
+
+    // the first point of a stroke; the caller moves there itself
+    public void begin(double x, double y) {
+        anchorX = x;
+        anchorY = y;
+        count = 0;
+        active = true;
+    }
+
+    public void add(double x, double y, long nanos) {
+        if (!active) return;
+        if (count > 0 && !allWithin(x, y)) {
+            // the path bent at the last collected point
+            emit(count - 1);
+        }
+        collect(x, y, nanos);
+    }
+
+    // emits the newest point if the oldest collected one has waited longer than the hold time
+    public void flush(long nowNanos) {
+        if (!active || count == 0 || nowNanos - times[0] < holdNanos) return;
+        emit(count - 1);
+    }
+
+    // the last point of the stroke, always emitted unless it is where the pen already is
+    public void end(double x, double y, long nanos) {
+        if (!active) return;
+        add(x, y, nanos);
+        if (count > 0) {
+            int last = count - 1;
+            if (Math.hypot(xs[last] - anchorX, ys[last] - anchorY) > 1e-9) {
+                sink.vertex(xs[last], ys[last], times[last]);
+            }
+        }
+        count = 0;
+        active = false;
+    }
+
+    public boolean isActive() {
+        return active;
+    }
+
+    // every collected point within the tolerance of the segment anchor -> (x, y)
+    private boolean allWithin(double x, double y) {
+        double dx = x - anchorX, dy = y - anchorY;
+        double lengthSquared = dx * dx + dy * dy;
+        for (int i = 0; i < count; i++) {
+            double px = xs[i] - anchorX, py = ys[i] - anchorY;
+            double t = lengthSquared > 0 ? Math.max(0, Math.min(1, (px * dx + py * dy) / lengthSquared)) : 0;
+            if (Math.hypot(px - t * dx, py - t * dy) > tolerance) return false;
+        }
+        return true;
+    }
+
+    // point i becomes the new anchor; the ones after it stay collected
+    private void emit(int i) {
+        double x = xs[i], y = ys[i];
+        if (Math.hypot(x - anchorX, y - anchorY) >= minSegment) {
+            sink.vertex(x, y, times[i]);
+            anchorX = x;
+            anchorY = y;
+        }
+        int rest = count - i - 1;
+        System.arraycopy(xs, i + 1, xs, 0, rest);
+        System.arraycopy(ys, i + 1, ys, 0, rest);
+        System.arraycopy(times, i + 1, times, 0, rest);
+        count = rest;
+    }
+
+    private void collect(double x, double y, long nanos) {
+        if (count == xs.length) {
+            xs = Arrays.copyOf(xs, count * 2);
+            ys = Arrays.copyOf(ys, count * 2);
+            times = Arrays.copyOf(times, count * 2);
+        }
+        xs[count] = x;
+        ys[count] = y;
+        times[count] = nanos;
+        count++;
+    }
+}
@@ -0,0 +1,396 @@
+package com.example.drawbot;
+
+import java.io.IOException;
+
+// Flattens SVG geometry into straight pen moves: path data ("d" attribute), arcs and ellipses.
+// Coordinates come in user units and are mapped to millimetres by the current transform before
+// flattening, so the tolerance holds on paper whatever the SVG's scale. Knows nothing about XML,
+// SvgToGcodeConverter reads the elements and hands their geometry over.
+public class SvgPathFlattener {
+    public interface Sink {
+        void moveTo(double x, double y) throws IOException;
+
+        void lineTo(double x, double y) throws IOException;
+    }
+
+    private static final double KAPPA = 0.5522847498307936; // circle approximation with cubic curves
+    private static final int MAX_SUBDIVISION_DEPTH = 16;
+
+    private final Sink sink;
+    private double toleranceMm = 0.05;
+
+    // user units to millimetres (a, b, c, d, e, f like SVG matrix())
+    private double[] ctm = {1, 0, 0, 1, 0, 0};
+
+    // current pen position in mm, start point of the next curve
+    private double startX, startY;
+
+    public SvgPathFlattener(Sink sink) {
+        this.sink = sink;
+    }
+
+    public void setToleranceMm(double toleranceMm) {
+        this.toleranceMm = Math.max(0.001, toleranceMm);
+    }
+
+    public void setTransform(double[] ctm) {
+        this.ctm = ctm;
+    }
+
+    // draws the path data of a <path> element
+    public void path(String d) throws IOException {
+        new PathDataParser(d).run();
+    }
+
+    public void ellipse(double cx, double cy, double rx, double ry) throws IOException {
+        double kx = rx * KAPPA, ky = ry * KAPPA;
+        moveTo(cx + rx, cy);
+        cubicTo(cx + rx, cy + ky, cx + kx, cy + ry, cx, cy + ry);
+        cubicTo(cx - kx, cy + ry, cx - rx, cy + ky, cx - rx, cy);
+        cubicTo(cx - rx, cy - ky, cx - kx, cy - ry, cx, cy - ry);
+        cubicTo(cx + kx, cy - ry, cx + rx, cy - ky, cx + rx, cy);
+    }
+
+    // ---- drawing primitives in user units, transformed before flattening ----
+
+    public void moveTo(double ux, double uy) throws IOException {
+        double x = tx(ux, uy), y = ty(ux, uy);
+        sink.moveTo(x, y);
+        startX = x;
+        startY = y;
+    }
+
+    public void lineTo(double ux, double uy) throws IOException {
+        double x = tx(ux, uy), y = ty(ux, uy);
+        sink.lineTo(x, y);
+        startX = x;
+        startY = y;
+    }
+
+    public void cubicTo(double ux1, double uy1, double ux2, double uy2, double ux3, double uy3) throws IOException {
+        // affine transforms keep Bezier curves intact, so flattening happens in millimetres
+        flattenCubic(startX, startY,
+                tx(ux1, uy1), ty(ux1, uy1),
+                tx(ux2, uy2), ty(ux2, uy2),
+                tx(ux3, uy3), ty(ux3, uy3));
+    }
+
+    // Adaptive subdivision: straight parts end up as one segment, tight curves get split until the
+    // control polygon stays within the tolerance (flatness test from Roger Willcocks / Hain).
+    private void flattenCubic(double x0, double y0, double x1, double y1,
+                              double x2, double y2, double x3, double y3) throws IOException {
+        double limit = 16.0 * toleranceMm * toleranceMm;
+        double[] stack = new double[(MAX_SUBDIVISION_DEPTH + 1) * 8];
+        int[] depth = new int[MAX_SUBDIVISION_DEPTH + 1];
+        int top = 0;
+        stack[0] = x0; stack[1] = y0; stack[2] = x1; stack[3] = y1;
+        stack[4] = x2; stack[5] = y2; stack[6] = x3; stack[7] = y3;
+        depth[0] = 0;
+
+        while (top >= 0) {
+            int o = top * 8;
+            double ax = stack[o], ay = stack[o + 1], bx = stack[o + 2], by = stack[o + 3];
+            double cx = stack[o + 4], cy = stack[o + 5], dx = stack[o + 6], dy = stack[o + 7];
+            int level = depth[top];
+
+            double ux = 3.0 * bx - 2.0 * ax - dx, uy = 3.0 * by - 2.0 * ay - dy;
+            double vx = 3.0 * cx - 2.0 * dx - ax, vy = 3.0 * cy - 2.0 * dy - ay;
+            ux *= ux; uy *= uy; vx *= vx; vy *= vy;
+            if (ux < vx) ux = vx;
+            if (uy < vy) uy = vy;
+
+            if (ux + uy <= limit || level >= MAX_SUBDIVISION_DEPTH) {
+                sink.lineTo(dx, dy);
+                top--;
+                continue;
+            }
+
+            // de Casteljau split at t = 0.5, second half is pushed first so the first half is drawn first
+            double abx = (ax + bx) * 0.5, aby = (ay + by) * 0.5;
+            double bcx = (bx + cx) * 0.5, bcy = (by + cy) * 0.5;
+            double cdx = (cx + dx) * 0.5, cdy = (cy + dy) * 0.5;
+            double abcx = (abx + bcx) * 0.5, abcy = (aby + bcy) * 0.5;
+            double bcdx = (bcx + cdx) * 0.5, bcdy = (bcy + cdy) * 0.5;
+            double mx = (abcx + bcdx) * 0.5, my = (abcy + bcdy) * 0.5;
+
+            stack[o] = mx; stack[o + 1] = my; stack[o + 2] = bcdx; stack[o + 3] = bcdy;
+            stack[o + 4] = cdx; stack[o + 5] = cdy; stack[o + 6] = dx; stack[o + 7] = dy;
+            depth[top] = level + 1;
+
+            top++;
+            o = top * 8;
+            stack[o] = ax; stack[o + 1] = ay; stack[o + 2] = abx; stack[o + 3] = aby;
+            stack[o + 4] = abcx; stack[o + 5] = abcy; stack[o + 6] = mx; stack[o + 7] = my;
+            depth[top] = level + 1;
+        }
+        startX = x3;
+        startY = y3;
+    }
+
+    private double tx(double x, double y) {
+        return ctm[0] * x + ctm[2] * y + ctm[4];
+    }
+
+    private double ty(double x, double y) {
+        return ctm[1] * x + ctm[3] * y + ctm[5];
+    }
+
+    // ---- path data ("d" attribute) ----
+
+    private final class PathDataParser {
+        private final String d;
+        private int pos = 0;
+
+        // current point, subpath start and last control point in user units
+        private double cx, cy, sx, sy, lastCtrlX, lastCtrlY;
+        private char lastCommand = ' ';
+
+        PathDataParser(String d) {
+            this.d = d;
+        }
+
+        void run() throws IOException {
+            char command = ' ';
+            while (true) {
+                skipSeparators();
+                if (pos >= d.length()) break;
+
+                char c = d.charAt(pos);
+                if (Character.isLetter(c) && c != 'e' && c != 'E') {
+                    command = c;
+                    pos++;
+                } else if (command == ' ' || command == 'Z' || command == 'z') {
+                    break; // stray numbers without a command that takes them
+                }
+
+                int before = pos;
+                if (!execute(command) || (pos == before && command != 'Z' && command != 'z')) break;
+
+                // implicit repeats: M is followed by implicit L
+                if (command == 'M') command = 'L';
+                else if (command == 'm') command = 'l';
+            }
+        }
+
+        private boolean execute(char command) throws IOException {
+            boolean rel = Character.isLowerCase(command);
+            double ox = rel ? cx : 0, oy = rel ? cy : 0;
+
+            switch (Character.toUpperCase(command)) {
+                case 'M': {
+                    double x = ox + nextNumber(), y = oy + nextNumber();
+                    if (Double.isNaN(x) || Double.isNaN(y)) return false;
+                    moveTo(x, y);
+                    cx = sx = x;
+                    cy = sy = y;
+                    break;
+                }
+                case 'L': {
+                    double x = ox + nextNumber(), y = oy + nextNumber();
+                    if (Double.isNaN(x) || Double.isNaN(y)) return false;
+                    line(x, y);
+                    break;
+                }
+                case 'H': {
+                    double x = ox + nextNumber();
+                    if (Double.isNaN(x)) return false;
+                    line(x, cy);
+                    break;
+                }
+                case 'V': {
+                    double y = oy + nextNumber();
+                    if (Double.isNaN(y)) return false;
+                    line(cx, y);
+                    break;
+                }
+                case 'C': {
+                    double x1 = ox + nextNumber(), y1 = oy + nextNumber();
+                    double x2 = ox + nextNumber(), y2 = oy + nextNumber();
+                    double x = ox + nextNumber(), y = oy + nextNumber();
+                    if (Double.isNaN(x) || Double.isNaN(y)) return false;
+                    cubic(x1, y1, x2, y2, x, y);
+                    break;
+                }
+                case 'S': {
+                    boolean smooth = "CcSs".indexOf(lastCommand) >= 0;
+                    double x1 = smooth ? 2 * cx - lastCtrlX : cx;
+                    double y1 = smooth ? 2 * cy - lastCtrlY : cy;
+                    double x2 = ox + nextNumber(), y2 = oy + nextNumber();
+                    double x = ox + nextNumber(), y = oy + nextNumber();
+                    if (Double.isNaN(x) || Double.isNaN(y)) return false;
+                    cubic(x1, y1, x2, y2, x, y);
+                    break;
+                }
+                case 'Q': {
+                    double qx = ox + nextNumber(), qy = oy + nextNumber();
+                    double x = ox + nextNumber(), y = oy + nextNumber();
+                    if (Double.isNaN(x) || Double.isNaN(y)) return false;
+                    quad(qx, qy, x, y);
+                    break;
+                }
+                case 'T': {
+                    boolean smooth = "QqTt".indexOf(lastCommand) >= 0;
+                    double qx = smooth ? 2 * cx - lastCtrlX : cx;
+                    double qy = smooth ? 2 * cy - lastCtrlY : cy;
+                    double x = ox + nextNumber(), y = oy + nextNumber();
+                    if (Double.isNaN(x) || Double.isNaN(y)) return false;
+                    quad(qx, qy, x, y);
+                    break;
+                }
+                case 'A': {
+                    double rx = nextNumber(), ry = nextNumber(), rotation = nextNumber();
+                    double largeArc = nextFlag(), sweep = nextFlag();
+                    double x = ox + nextNumber(), y = oy + nextNumber();
+                    if (Double.isNaN(rx + ry + rotation + largeArc + sweep + x + y)) return false;
+                    arc(rx, ry, rotation, largeArc != 0, sweep != 0, x, y);
+                    break;
+                }
+                case 'Z':
+                    line(sx, sy);
+                    break;
+                default:
+                    return false;
+            }
+            lastCommand = command;
+            return true;
+        }
+
+        private void line(double x, double y) throws IOException {
+            lineTo(x, y);
+            cx = x;
+            cy = y;
+        }
+
+        private void cubic(double x1, double y1, double x2, double y2, double x, double y) throws IOException {
+            cubicTo(x1, y1, x2, y2, x, y);
+            lastCtrlX = x2;
+            lastCtrlY = y2;
+            cx = x;
+            cy = y;
+        }
+
+        private void quad(double qx, double qy, double x, double y) throws IOException {
+            // degree elevation, the flattener only knows cubic curves
+            cubicTo(cx + 2.0 / 3.0 * (qx - cx), cy + 2.0 / 3.0 * (qy - cy),
+                    x + 2.0 / 3.0 * (qx - x), y + 2.0 / 3.0 * (qy - y), x, y);
+            lastCtrlX = qx;
+            lastCtrlY = qy;
+            cx = x;
+            cy = y;
+        }
+
+        // SVG endpoint arc -> center parameterisation -> cubic segments of at most 90 degrees
+        private void arc(double rx, double ry, double rotationDeg, boolean largeArc, boolean sweep,
+                         double x, double y) throws IOException {
+            rx = Math.abs(rx);
+            ry = Math.abs(ry);
+            if (rx == 0 || ry == 0 || (x == cx && y == cy)) {
+                line(x, y);
+                return;
+            }
+
+            double phi = Math.toRadians(rotationDeg);
+            double cos = Math.cos(phi), sin = Math.sin(phi);
+            double dx2 = (cx - x) / 2.0, dy2 = (cy - y) / 2.0;
+            double x1p = cos * dx2 + sin * dy2;
+            double y1p = -sin * dx2 + cos * dy2;
+
+            double lambda = (x1p * x1p) / (rx * rx) + (y1p * y1p) / (ry * ry);
+            if (lambda > 1) {
+                double s = Math.sqrt(lambda);
+                rx *= s;
+                ry *= s;
+            }
+
+            double num = rx * rx * ry * ry - rx * rx * y1p * y1p - ry * ry * x1p * x1p;
+            double den = rx * rx * y1p * y1p + ry * ry * x1p * x1p;
+            double coef = Math.sqrt(Math.max(0, num / den));
+            if (largeArc == sweep) coef = -coef;
+            double cxp = coef * rx * y1p / ry;
+            double cyp = -coef * ry * x1p / rx;
+
+            double centerX = cos * cxp - sin * cyp + (cx + x) / 2.0;
+            double centerY = sin * cxp + cos * cyp + (cy + y) / 2.0;
+
+            double theta1 = Math.atan2((y1p - cyp) / ry, (x1p - cxp) / rx);
+            double theta2 = Math.atan2((-y1p - cyp) / ry, (-x1p - cxp) / rx);
+            double delta = theta2 - theta1;
+            if (sweep && delta < 0) delta += 2 * Math.PI;
+            else if (!sweep && delta > 0) delta -= 2 * Math.PI;
+
+            int segments = (int) Math.ceil(Math.abs(delta) / (Math.PI / 2) - 1e-9);
+            double step = delta / segments;
+            double k = 4.0 / 3.0 * Math.tan(step / 4.0);
+            double t = theta1;
+
+            for (int i = 0; i < segments; i++) {
+                double c1 = Math.cos(t), s1 = Math.sin(t);
+                double c2 = Math.cos(t + step), s2 = Math.sin(t + step);
+
+                double ex1 = rx * (c1 - k * s1), ey1 = ry * (s1 + k * c1);
+                double ex2 = rx * (c2 + k * s2), ey2 = ry * (s2 - k * c2);
+                double ex3 = rx * c2, ey3 = ry * s2;
+
+                double px3 = (i == segments - 1) ? x : centerX + cos * ex3 - sin * ey3;
+                double py3 = (i == segments - 1) ? y : centerY + sin * ex3 + cos * ey3;
+                cubicTo(centerX + cos * ex1 - sin * ey1, centerY + sin * ex1 + cos * ey1,
+                        centerX + cos * ex2 - sin * ey2, centerY + sin * ex2 + cos * ey2,
+                        px3, py3);
+                t += step;
+            }
+            cx = x;
+            cy = y;
+        }
+
+        private double nextFlag() {
+            skipSeparators();
+            if (pos < d.length()) {
+                char c = d.charAt(pos);
+                if (c == '0' || c == '1') {
+                    pos++;
+                    return c - '0';
+                }
+            }
+            return Double.NaN;
+        }
+
+        private double nextNumber() {
+            skipSeparators();
+            int start = pos;
+            int len = d.length();
+            if (pos < len && (d.charAt(pos) == '-' || d.charAt(pos) == '+')) pos++;
+            boolean dot = false;
+            while (pos < len) {
+                char c = d.charAt(pos);
+                if (c >= '0' && c <= '9') {
+                    pos++;
+                } else if (c == '.' && !dot) {
+                    dot = true;
+                    pos++;
+                } else if ((c == 'e' || c == 'E') && pos > start) {
+                    pos++;
+                    if (pos < len && (d.charAt(pos) == '-' || d.charAt(pos) == '+')) pos++;
+                } else {
+                    break;
+                }
+            }
+            if (pos == start) return Double.NaN;
+            try {
+                return Double.parseDouble(d.substring(start, pos));
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+        }
+
+        private void skipSeparators() {
+            while (pos < d.length()) {
+                char c = d.charAt(pos);
+                if (c == ' ' || c == ',' || c == '\n' || c == '\r' || c == '\t') {
+                    pos++;
+                } else {
+                    break;
+                }
+            }
+        }
+    }
+}
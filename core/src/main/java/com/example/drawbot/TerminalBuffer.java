@@ -0,0 +1,55 @@
+package com.example.drawbot;
+
+import java.util.ArrayDeque;
+
+// Text of the terminal view, limited to the last maxLines lines.
+// Appending only drops the oldest line from the front of the buffer instead of splitting and
+// rebuilding the whole text for every message.
+public class TerminalBuffer {
+    private final int maxLines;
+    private final StringBuilder text = new StringBuilder();
+    // length of every line in text including its '\n', oldest first
+    private final ArrayDeque<Integer> lineLengths = new ArrayDeque<>();
+
+    public TerminalBuffer(int maxLines) {
+        this.maxLines = maxLines;
+    }
+
+    public void append(String message) {
+        // messages with line breaks inside still count as separate lines
+        int start = 0;
+        int newline;
+        while ((newline = message.indexOf('\n', start)) >= 0) {
+            appendLine(message, start, newline);
+            start = newline + 1;
+        }
+        appendLine(message, start, message.length());
+
+        int excess = 0;
+        while (lineLengths.size() > maxLines) {
+            excess += lineLengths.poll();
+        }
+        if (excess > 0) {
+            text.delete(0, excess);
+        }
+    }
+
+    private void appendLine(String message, int start, int end) {
+        text.append(message, start, end).append('\n');
+        lineLengths.add(end - start + 1);
+    }
+
+    public int getLineCount() {
+        return lineLengths.size();
+    }
+
+    public void clear() {
+        text.setLength(0);
+        lineLengths.clear();
+    }
+
+    @Override
+    public String toString() {
+        return text.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.drawbot;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Lays out text with HersheyFont (kerning, word wrap) and writes it as pen strokes.
+// The text block sits above the origin: the last line's descenders end at Y0, lines grow upwards.
+public class TextToolpath {
+    private double charHeightMm = 7.0;
+    private double lineWidthMm = 180.0;
+    private double lineSpacing = 1.7; // line distance as multiple of the character height
+
+    public void setCharHeightMm(double charHeightMm) {
+        this.charHeightMm = Math.max(0.5, charHeightMm);
+    }
+
+    public void setLineWidthMm(double lineWidthMm) {
+        this.lineWidthMm = Math.max(1.0, lineWidthMm);
+    }
+
+    public void setLineSpacing(double lineSpacing) {
+        this.lineSpacing = Math.max(1.0, lineSpacing);
+    }
+
+    // writes the text and returns the number of laid out lines
+    public int render(String text, PenPlotterGCodeWriter out) throws IOException {
+        List<String> lines = wrap(text);
+        double scale = charHeightMm / HersheyFont.CAP_HEIGHT;
+        double lineHeightMm = charHeightMm * lineSpacing;
+
+        for (int i = 0; i < lines.size(); i++) {
+            double baseline = (lines.size() - 1 - i) * lineHeightMm + HersheyFont.DESCENDER * scale;
+            writeLine(lines.get(i), baseline, scale, out);
+        }
+        out.finish();
+        return lines.size();
+    }
+
+    // greedy word wrap, words longer than a line are broken between characters
+    public List<String> wrap(String text) {
+        int maxUnits = (int) (lineWidthMm / charHeightMm * HersheyFont.CAP_HEIGHT);
+        List<String> lines = new ArrayList<>();
+        StringBuilder line = new StringBuilder();
+
+        for (String paragraph : text.replace("\r", "").split("\n", -1)) {
+            line.setLength(0);
+            int lineUnits = 0;
+
+            for (String word : paragraph.split(" +")) {
+                if (word.isEmpty()) continue;
+                int wordUnits = measure(word);
+                int spaceUnits = line.length() == 0 ? 0 : HersheyFont.advance(' ');
+
+                if (line.length() > 0 && lineUnits + spaceUnits + wordUnits > maxUnits) {
+                    lines.add(line.toString());
+                    line.setLength(0);
+                    lineUnits = 0;
+                    spaceUnits = 0;
+                }
+
+                if (wordUnits > maxUnits) {
+                    for (int i = 0; i < word.length(); i++) {
+                        char c = word.charAt(i);
+                        int charUnits = HersheyFont.advance(c);
+                        if (line.length() > 0 && lineUnits + charUnits > maxUnits) {
+                            lines.add(line.toString());
+                            line.setLength(0);
+                            lineUnits = 0;
+                        }
+                        line.append(c);
+                        lineUnits += charUnits;
+                    }
+                    continue;
+                }
+
+                if (spaceUnits > 0) {
+                    line.append(' ');
+                }
+                line.append(word);
+                lineUnits += spaceUnits + wordUnits;
+            }
+            lines.add(line.toString());
+        }
+
+        // drop trailing empty lines so the block ends on the last written line
+        while (!lines.isEmpty() && lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        return lines;
+    }
+
+    // width of a string in font units, kerning included
+    public static int measure(CharSequence text) {
+        int units = 0;
+        char previous = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            units += HersheyFont.advance(c) + HersheyFont.kerning(previous, c);
+            previous = c;
+        }
+        return units;
+    }
+
+    private void writeLine(String line, double baseline, double scale, PenPlotterGCodeWriter out) throws IOException {
+        int penUnits = 0;
+        char previous = 0;
+
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            penUnits += HersheyFont.kerning(previous, c);
+            previous = c;
+
+            short[] points = HersheyFont.glyph(c);
+            boolean strokeStart = true;
+            for (int k = 0; k + 1 < points.length; k += 2) {
+                if (points[k] == HersheyFont.PEN_UP) {
+                    strokeStart = true;
+                    continue;
+                }
+                double x = (penUnits + points[k]) * scale;
+                double y = baseline + points[k + 1] * scale;
+                if (strokeStart) {
+                    out.moveTo(x, y);
+                    strokeStart = false;
+                } else {
+                    out.lineTo(x, y);
+                }
+            }
+            penUnits += HersheyFont.advance(c);
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.drawbot;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class DrawingPartitionerTest {
+    // an L: along the bottom from (10, 10) to (250, 10), then up to (250, 300)
+    private static final List<String> L_SHAPE = Arrays.asList(
+            "G1 X10 Y10 Z1", "G1 Z0", "G1 X250 Y10", "G1 X250 Y300", "G1 Z1");
+
+    private static DrawingPartitioner read(DrawingPartitioner.Piece piece) {
+        return new DrawingPartitioner(Arrays.asList(piece.gCode.split("\n")));
+    }
+
+    @Test
+    public void readsStrokesBoundsAndLength() {
+        DrawingPartitioner partitioner = new DrawingPartitioner(L_SHAPE);
+        assertEquals(1, partitioner.getStrokeCount());
+        assertArrayEquals(new double[]{10, 10, 250, 300}, partitioner.getBounds(), 1e-9);
+        assertEquals(530, partitioner.getDrawLength(), 1e-9);
+    }
+
+    @Test
+    public void tilesAreClippedAndRebasedToTheirOrigin() {
+        List<DrawingPartitioner.Piece> pieces = new DrawingPartitioner(L_SHAPE).tiles(100, 100);
+
+        // 3x3 grid from the lower left corner, the four tiles the L misses are left out
+        assertEquals(5, pieces.size());
+        String[] names = {"tile 1,1 of 3x3", "tile 2,1 of 3x3", "tile 3,1 of 3x3", "tile 3,2 of 3x3", "tile 3,3 of 3x3"};
+        double[][] origins = {{10, 10}, {110, 10}, {210, 10}, {210, 110}, {210, 210}};
+        double[][] bounds = {{0, 0, 100, 0}, {0, 0, 100, 0}, {0, 0, 40, 100}, {40, 0, 40, 100}, {40, 0, 40, 90}};
+        double total = 0;
+        for (int i = 0; i < pieces.size(); i++) {
+            DrawingPartitioner.Piece piece = pieces.get(i);
+            assertEquals(i, piece.index);
+            assertEquals(names[i], piece.name);
+            assertEquals(origins[i][0], piece.originX, 1e-9);
+            assertEquals(origins[i][1], piece.originY, 1e-9);
+            DrawingPartitioner drawn = read(piece);
+            assertEquals(piece.name, 1, drawn.getStrokeCount());
+            assertArrayEquals(piece.name, bounds[i], drawn.getBounds(), 1e-6);
+            assertEquals(piece.drawLength, drawn.getDrawLength(), 1e-6);
+            total += piece.drawLength;
+        }
+        assertEquals(530, total, 1e-6);
+    }
+
+    @Test
+    public void aLineOnASharedEdgeIsDrawnOnce() {
+        // the vertical line lies on the edge between the two tiles
+        DrawingPartitioner partitioner = new DrawingPartitioner(Arrays.asList(
+                "G1 X0 Y0 Z1", "G1 Z0", "G1 X200 Y0", "G1 Z1",
+                "G1 X100 Y0", "G1 Z0", "G1 X100 Y50", "G1 Z1"));
+        List<DrawingPartitioner.Piece> pieces = partitioner.tiles(100, 100);
+
+        assertEquals(2, pieces.size());
+        assertEquals(2, pieces.get(0).strokes);
+        assertEquals(150, pieces.get(0).drawLength, 1e-6);
+        assertEquals(1, pieces.get(1).strokes);
+        assertEquals(100, pieces.get(1).drawLength, 1e-6);
+    }
+
+    @Test
+    public void clipSegmentLeavesALineOnAnOpenEdgeOutside() {
+        double[] t = new double[2];
+        assertTrue(DrawingPartitioner.clipSegment(-50, 5, 50, 5, 0, 0, 10, 10, true, true, t));
+        assertArrayEquals(new double[]{0.5, 0.6}, t, 1e-9);
+        assertTrue(DrawingPartitioner.clipSegment(0, 0, 0, 10, 0, 0, 10, 10, false, false, t));
+        assertFalse(DrawingPartitioner.clipSegment(0, 0, 0, 10, 0, 0, 10, 10, true, false, t));
+        assertFalse(DrawingPartitioner.clipSegment(0, 0, 10, 0, 0, 0, 10, 10, false, true, t));
+    }
+
+    @Test
+    public void strokeSetsDealStrokesRoundRobin() {
+        // three short strokes side by side
+        DrawingPartitioner partitioner = new DrawingPartitioner(Arrays.asList(
+                "G1 X0 Y0 Z1", "G1 Z0", "G1 X0 Y10", "G1 Z1",
+                "G1 X20 Y0", "G1 Z0", "G1 X20 Y20", "G1 Z1",
+                "G1 X40 Y0", "G1 Z0", "G1 X40 Y30", "G1 Z1"));
+        List<DrawingPartitioner.Piece> pieces = partitioner.strokeSets(2);
+
+        assertEquals(2, pieces.size());
+        assertEquals("stroke set 1 of 2", pieces.get(0).name);
+        assertEquals(2, pieces.get(0).strokes);
+        assertEquals(40, pieces.get(0).drawLength, 1e-6);
+        assertEquals(1, pieces.get(1).strokes);
+        assertEquals(20, pieces.get(1).drawLength, 1e-6);
+        assertEquals(0, pieces.get(1).originX, 0);
+        // more sets than strokes gives one set per stroke
+        assertEquals(3, partitioner.strokeSets(5).size());
+    }
+}
@@ -0,0 +1,127 @@
+package com.example.drawbot;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+// A GCodeStreamer's link, timer and listener on a virtual clock: every line sent is answered ok a
+// millisecond later and status requests get an idle report. Nothing runs until run() is called.
+class FakeController implements GCodeStreamer.Transport, GCodeStreamer.Scheduler, GCodeStreamer.Listener {
+    private static final long MS = 1_000_000L;
+
+    final List<String> sent = new ArrayList<>();
+    final List<String> log = new ArrayList<>();
+    boolean connected = true;
+    boolean finished = false;
+    int settled = 0;
+    GCodeStreamer streamer;
+
+    private final PriorityQueue<long[]> due = new PriorityQueue<>(Comparator.comparingLong((long[] t) -> t[0])
+            .thenComparingLong(t -> t[1]));
+    private final List<Runnable> tasks = new ArrayList<>();
+    private long now = 0;
+    private int answered = 0;
+
+    GCodeStreamer createStreamer(JobCheckpointStore store) {
+        streamer = new GCodeStreamer(this, this, store, this);
+        return streamer;
+    }
+
+    // runs the clock for up to ms; answers at most oks lines (-1 for all of them)
+    void run(int oks, long ms) {
+        int given = 0;
+        for (long end = now + ms * MS; now < end && !finished; now += MS) {
+            while (!due.isEmpty() && due.peek()[0] <= now) {
+                tasks.get((int) due.poll()[1]).run();
+            }
+            while (answered < sent.size()) {
+                String line = sent.get(answered);
+                if (line.equals("?")) {
+                    answered++;
+                    streamer.onData("<Idle|MPos:0.000,0.000,0.000|FS:0,0>\r\n");
+                    continue;
+                }
+                if (InFlightTracker.isRealtime(line)) {
+                    answered++;
+                    continue;
+                }
+                if (oks >= 0 && given == oks) return;
+                answered++;
+                given++;
+                streamer.onData("ok\r\n");
+            }
+        }
+    }
+
+    // lines sent but not answered yet, realtime commands left out
+    List<String> unanswered() {
+        List<String> lines = new ArrayList<>();
+        for (String line : sent.subList(answered, sent.size())) {
+            if (!InFlightTracker.isRealtime(line)) lines.add(line);
+        }
+        return lines;
+    }
+
+    // the link dropped: what was sent but not answered is lost with it
+    void drop() {
+        answered = sent.size();
+        connected = false;
+    }
+
+    @Override
+    public boolean isConnected() {
+        return connected;
+    }
+
+    @Override
+    public boolean send(String data) {
+        for (String line : data.split("\n")) {
+            if (!line.trim().isEmpty()) sent.add(line.trim());
+        }
+        return connected;
+    }
+
+    @Override
+    public void schedule(Runnable task, long delayMs) {
+        due.add(new long[]{now + delayMs * MS, tasks.size()});
+        tasks.add(task);
+    }
+
+    @Override
+    public void cancelAll() {
+        due.clear();
+    }
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    @Override
+    public void onLog(String message) {
+        log.add(message);
+    }
+
+    @Override
+    public void onReply(String line) {
+    }
+
+    @Override
+    public void onProgress(int processed, int total) {
+    }
+
+    @Override
+    public void onRunningChanged(boolean running) {
+    }
+
+    @Override
+    public void onFinished() {
+        finished = true;
+    }
+
+    @Override
+    public void onSettled() {
+        settled++;
+    }
+}
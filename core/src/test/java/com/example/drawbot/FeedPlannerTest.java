@@ -0,0 +1,94 @@
+package com.example.drawbot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FeedPlannerTest {
+    private static final double MAX_RATE = 3000, ACCELERATION = 100;
+
+    private static FeedPlanner.Result plan(String... lines) {
+        return new FeedPlanner(MAX_RATE, ACCELERATION).plan(Arrays.asList(lines));
+    }
+
+    // the F word of a line, NaN if it has none
+    private static double feed(String line) {
+        int f = line.indexOf('F');
+        if (f < 0) return Double.NaN;
+        int end = line.indexOf(' ', f);
+        return Double.parseDouble(line.substring(f + 1, end < 0 ? line.length() : end));
+    }
+
+    @Test
+    public void travelRunsAtTheMaxRateAndLongLinesKeepIt() {
+        FeedPlanner.Result result = plan("G1 X10 Y0 Z1", "G1 Z0", "G1 X300 Y0 Z0", "G1 Z1");
+
+        assertEquals(Arrays.asList("G1 X10 Y0 Z1 F3000", "G1 Z0", "G1 X300 Y0 Z0", "G1 Z1"), result.lines);
+        assertEquals(1, result.feedWords);
+        assertEquals(0, result.slowedSegments);
+    }
+
+    @Test
+    public void theJobsFeedIsTheLimit() {
+        FeedPlanner.Result result = plan("G1 F500", "G1 X100 Y0 Z0", "G1 X100 Y100 Z1");
+
+        // "G1 F500" alone is dropped, the drawing gets 500, the travel the max rate again
+        assertEquals(Arrays.asList("G1 X100 Y0 Z0 F500", "G1 X100 Y100 Z1 F3000"), result.lines);
+        assertEquals(0, result.slowedSegments);
+    }
+
+    @Test
+    public void tightCurvesAreSlowedInFeedSteps() {
+        // a circle of radius 1 mm in 36 segments: about sqrt(100 * 1) mm/s = 600 mm/min
+        List<String> lines = new ArrayList<>();
+        lines.add("G1 X1 Y0 Z1");
+        for (int k = 1; k <= 36; k++) {
+            double angle = Math.toRadians(k * 10);
+            lines.add(String.format(java.util.Locale.US, "G1 X%.3f Y%.3f Z0", Math.cos(angle), Math.sin(angle)));
+        }
+        FeedPlanner.Result result = new FeedPlanner(MAX_RATE, ACCELERATION).plan(lines);
+
+        assertEquals(36, result.slowedSegments);
+        double step = MAX_RATE / FeedPlanner.FEED_STEPS;
+        double first = feed(result.lines.get(1));
+        assertTrue("feed " + first, first >= MAX_RATE * FeedPlanner.MIN_FEED_SHARE && first <= 600);
+        for (String line : result.lines) {
+            double f = feed(line);
+            if (!Double.isNaN(f)) assertEquals(line, 0, f % step, 1e-9);
+        }
+    }
+
+    @Test
+    public void theFeedOnlyChangesWhereItHasTo() {
+        FeedPlanner.Result result = plan("G1 X0 Y0 Z0", "G1 X100 Y0", "G1 X200 Y0", "G1 X300 Y0");
+
+        for (int i = 1; i < result.lines.size(); i++) {
+            assertTrue(result.lines.get(i), Double.isNaN(feed(result.lines.get(i))));
+        }
+    }
+
+    @Test
+    public void rapidsAndCommentsStayAsTheyAre() {
+        FeedPlanner.Result result = plan("G0 X10 Y10", "G1 X20 Y20 Z1 ; over there", "M5");
+
+        assertEquals(Arrays.asList("G0 X10 Y10", "G1 X20 Y20 Z1 F3000 ; over there", "M5"), result.lines);
+    }
+
+    @Test
+    public void inchesAreWrittenInInches() {
+        FeedPlanner.Result result = plan("G20", "G1 X1 Y0 Z1");
+
+        // 3000 mm/min in inches per minute, to the thousandth
+        assertEquals("G1 X1 Y0 Z1 F118.11", result.lines.get(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsAPositiveRate() {
+        new FeedPlanner(0, 100);
+    }
+}
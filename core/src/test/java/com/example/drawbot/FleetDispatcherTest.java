@@ -0,0 +1,185 @@
+package com.example.drawbot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class FleetDispatcherTest {
+    private static final class FakePlotter implements FleetDispatcher.Plotter {
+        final String name;
+        final List<Integer> started = new ArrayList<>();
+
+        FakePlotter(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void start(DrawingPartitioner.Piece piece) {
+            started.add(piece.index);
+        }
+    }
+
+    private static final class Recorder implements FleetDispatcher.Listener {
+        final List<String> assigned = new ArrayList<>();
+        int[] done;
+
+        @Override
+        public void onAssigned(FleetDispatcher.Plotter plotter, DrawingPartitioner.Piece piece, boolean stolen) {
+            assigned.add(plotter.getName() + " " + piece.index + (stolen ? " stolen" : ""));
+        }
+
+        @Override
+        public void onAllDone(int finished, int failed) {
+            assertNull("onAllDone called twice", done);
+            done = new int[]{finished, failed};
+        }
+    }
+
+    private final Recorder recorder = new Recorder();
+
+    // at 60 mm/min, no travel and no pen delay a piece costs its draw length in seconds
+    private FleetDispatcher dispatcher(FakePlotter... plotters) {
+        return new FleetDispatcher(Arrays.asList(plotters), recorder, 60, 60, 0);
+    }
+
+    private static List<DrawingPartitioner.Piece> pieces(double... seconds) {
+        List<DrawingPartitioner.Piece> pieces = new ArrayList<>();
+        for (int i = 0; i < seconds.length; i++) {
+            pieces.add(new DrawingPartitioner.Piece(i, "piece " + i, 0, 0, "", 1, seconds[i], 0));
+        }
+        return pieces;
+    }
+
+    @Test
+    public void dealsContiguousRunsOfAboutEqualCost() {
+        FakePlotter a = new FakePlotter("A"), b = new FakePlotter("B"), c = new FakePlotter("C");
+        FleetDispatcher fleet = dispatcher(a, b, c);
+        fleet.start(pieces(1, 1, 1, 1, 1, 1, 1, 1, 1));
+
+        assertEquals(Arrays.asList("A 0", "B 3", "C 6"), recorder.assigned);
+        for (int i = 0; i < 2; i++) {
+            fleet.onFinished(a);
+            fleet.onFinished(b);
+            fleet.onFinished(c);
+        }
+        assertEquals(Arrays.asList(0, 1, 2), a.started);
+        assertEquals(Arrays.asList(3, 4, 5), b.started);
+        assertEquals(Arrays.asList(6, 7, 8), c.started);
+        assertEquals(0, fleet.getSteals());
+    }
+
+    @Test
+    public void costDecidesTheRunLength() {
+        FakePlotter a = new FakePlotter("A"), b = new FakePlotter("B");
+        FleetDispatcher fleet = dispatcher(a, b);
+        // the first piece is worth as much as the other four together
+        fleet.start(pieces(8, 2, 2, 2, 2));
+
+        assertEquals(Arrays.asList(0), a.started);
+        assertEquals(Arrays.asList(1), b.started);
+        fleet.onFinished(b);
+        fleet.onFinished(b);
+        fleet.onFinished(b);
+        assertEquals(Arrays.asList(1, 2, 3, 4), b.started);
+        assertFalse(fleet.hasWaitingPieces());
+    }
+
+    @Test
+    public void anIdlePlotterStealsTheLastPieceOfTheBusiest() {
+        FakePlotter a = new FakePlotter("A"), b = new FakePlotter("B"), c = new FakePlotter("C");
+        FleetDispatcher fleet = dispatcher(a, b, c);
+        fleet.start(pieces(1, 1, 1, 1, 1, 1, 1, 1, 1));
+        fleet.onFinished(c);   // C is left with 8 queued, B still has 4 and 5
+        fleet.onFinished(a);
+        fleet.onFinished(a);
+        fleet.onFinished(a);   // A's own run is done
+
+        assertEquals(Arrays.asList(0, 1, 2, 5), a.started);
+        assertEquals("A 5 stolen", recorder.assigned.get(recorder.assigned.size() - 1));
+        assertEquals(1, fleet.getSteals());
+        assertEquals(1, fleet.getShares().get(a).stolen);
+        assertEquals(4, fleet.getShares().get(a).pieces);
+        assertEquals(4, fleet.getShares().get(a).estimatedSeconds, 1e-9);
+
+        // B keeps the front of its run
+        fleet.onFinished(b);
+        assertEquals(Arrays.asList(3, 4), b.started);
+    }
+
+    @Test
+    public void aFailedPlottersPieceGoesToAnIdlePlotter() {
+        FakePlotter a = new FakePlotter("A"), b = new FakePlotter("B");
+        FleetDispatcher fleet = dispatcher(a, b);
+        fleet.start(pieces(1, 1));
+        fleet.onFinished(b);   // B is idle, nothing left to take
+        assertFalse(fleet.isRunning(b));
+
+        fleet.onFailed(a);
+        assertEquals(Arrays.asList(1, 0), b.started);
+        assertEquals("B 0 stolen", recorder.assigned.get(recorder.assigned.size() - 1));
+        assertTrue(fleet.isRunning(b));
+
+        // A is dropped: a late report from it changes nothing
+        fleet.onFinished(a);
+        assertFalse(fleet.isDone());
+        fleet.onFinished(b);
+        assertArrayEquals(new int[]{2, 0}, recorder.done);
+    }
+
+    @Test
+    public void aFailedPlottersRunWaitsForTheNextFreePlotter() {
+        FakePlotter a = new FakePlotter("A"), b = new FakePlotter("B");
+        FleetDispatcher fleet = dispatcher(a, b);
+        fleet.start(pieces(1, 1, 1, 1));
+        fleet.onFailed(a);   // B is busy, so 0 and then 1 wait for it
+
+        fleet.onFinished(b);
+        fleet.onFinished(b);
+        fleet.onFinished(b);
+        fleet.onFinished(b);
+        assertEquals(Arrays.asList(2, 0, 1, 3), b.started);
+        assertArrayEquals(new int[]{4, 0}, recorder.done);
+    }
+
+    @Test
+    public void whenTheLastPlotterFailsEverythingLeftFails() {
+        FakePlotter a = new FakePlotter("A");
+        FleetDispatcher fleet = dispatcher(a);
+        fleet.start(pieces(1, 1, 1));
+        fleet.onFinished(a);
+        fleet.onFailed(a);
+
+        assertTrue(fleet.isDone());
+        assertArrayEquals(new int[]{1, 2}, recorder.done);
+    }
+
+    @Test
+    public void cancelFailsTheWaitingPiecesAndWaitsForTheRunningOnes() {
+        FakePlotter a = new FakePlotter("A"), b = new FakePlotter("B");
+        FleetDispatcher fleet = dispatcher(a, b);
+        fleet.start(pieces(1, 1, 1, 1, 1, 1));
+        fleet.cancel();
+
+        assertFalse(fleet.hasWaitingPieces());
+        assertFalse(fleet.isDone());
+        fleet.onFinished(a);
+        assertEquals(Arrays.asList(0), a.started);
+        assertFalse(fleet.isDone());
+        fleet.onFailed(b);
+        assertTrue(fleet.isDone());
+        assertArrayEquals(new int[]{1, 5}, recorder.done);
+    }
+}
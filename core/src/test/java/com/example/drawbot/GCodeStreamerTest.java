@@ -0,0 +1,211 @@
+package com.example.drawbot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GCodeStreamerTest {
+    // absolute moves only: drawing them twice ends in the same place
+    private static String absoluteJob(int strokes) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < strokes; i++) {
+            sb.append("G1 X").append(i).append(" Y0 Z1 F1000\n");
+            sb.append("G1 Z0\n");
+            sb.append("G1 X").append(i).append(" Y50\n");
+            sb.append("G1 Z1\n");
+        }
+        return sb.toString();
+    }
+
+    // the link drops after oks answers, then comes back; returns the lines sent after reconnecting
+    private static List<String> dropAndReconnect(FakeController controller, GCodeStreamer.Job job, int oks,
+                                                 List<String> inFlight) {
+        GCodeStreamer streamer = controller.createStreamer(null);
+        assertTrue(streamer.start(job));
+        controller.run(oks, 5000);
+        inFlight.addAll(controller.unanswered());
+        controller.drop();
+        streamer.suspend();
+        controller.connected = true;
+        int before = controller.sent.size();
+        streamer.continueAfterReconnect();
+        return controller.sent.subList(before, controller.sent.size());
+    }
+
+    @Test
+    public void reconnectResendsUnconfirmedAbsoluteLines() {
+        FakeController controller = new FakeController();
+        List<String> inFlight = new ArrayList<>();
+        List<String> after = dropAndReconnect(controller, GCodeStreamer.prepare(absoluteJob(20)), 30, inFlight);
+
+        assertFalse("nothing was in flight", inFlight.isEmpty());
+        assertEquals("~", after.get(0));
+        assertEquals(inFlight, after.subList(1, after.size()));
+
+        controller.run(-1, 60_000);
+        assertTrue(controller.finished);
+    }
+
+    @Test
+    public void reconnectAfterRelativeMovesResumesFromCheckpoint() {
+        StringBuilder sb = new StringBuilder("G91\n");
+        for (int i = 0; i < 40; i++) {
+            sb.append("G1 X1 Y0 F1000\n");
+        }
+        GCodeStreamer.Job job = GCodeStreamer.prepare(sb.toString());
+        FakeController controller = new FakeController();
+        List<String> inFlight = new ArrayList<>();
+        List<String> after = dropAndReconnect(controller, job, 20, inFlight);
+
+        assertFalse(inFlight.isEmpty());
+        // back to the confirmed position with the pen up, then relative mode again and the next line
+        assertEquals("~", after.get(0));
+        assertEquals("$X", after.get(1));
+        assertTrue(after.contains("G91"));
+        assertTrue(controller.log.stream().anyMatch(m -> m.contains("RESUMING FROM CHECKPOINT")));
+        assertFalse(controller.log.stream().anyMatch(m -> m.contains("RESENDING")));
+
+        controller.run(-1, 60_000);
+        assertTrue(controller.finished);
+    }
+
+    @Test
+    public void reconnectWhileTheOriginIsUnconfirmedDoesNotResendIt() {
+        FakeController controller = new FakeController();
+        List<String> inFlight = new ArrayList<>();
+        List<String> after = dropAndReconnect(controller, GCodeStreamer.prepare(absoluteJob(20)), 0, inFlight);
+
+        assertTrue(inFlight.contains("G92 X0 Y0 Z0"));
+        assertFalse(after.contains("G92 X0 Y0 Z0"));
+        assertTrue(controller.log.stream().anyMatch(m -> m.contains("RESUMING FROM CHECKPOINT")));
+
+        controller.run(-1, 60_000);
+        assertTrue(controller.finished);
+    }
+
+    @Test
+    public void convertsRapidsToPenUpAndFeedsToPenDown() {
+        assertEquals("G1 X10 Y20 Z1", GCodeStreamer.convertGCodeForPenPlotter("G0 X10 Y20"));
+        assertEquals("G1 X10 Z1", GCodeStreamer.convertGCodeForPenPlotter("G00 X10 Z5"));
+        assertEquals("G1 X1 Y2 F500 Z0", GCodeStreamer.convertGCodeForPenPlotter("G1 X1 Y2 Z-1.5 F500"));
+        assertEquals("g01 x1 Z0", GCodeStreamer.convertGCodeForPenPlotter("  g01 x1 z.5 "));
+        // everything else is left alone
+        assertEquals("G2 X10 Y0 I5 J0", GCodeStreamer.convertGCodeForPenPlotter("G2 X10 Y0 I5 J0"));
+        assertEquals("G10 L20 P1 X0", GCodeStreamer.convertGCodeForPenPlotter("G10 L20 P1 X0"));
+        assertEquals("M5", GCodeStreamer.convertGCodeForPenPlotter("M5"));
+        assertEquals("; G0 X1", GCodeStreamer.convertGCodeForPenPlotter("; G0 X1"));
+        assertEquals("(G1 X1)", GCodeStreamer.convertGCodeForPenPlotter("(G1 X1)"));
+    }
+
+    @Test
+    public void prepareConvertsAndCountsMoves() {
+        GCodeStreamer.Job job = GCodeStreamer.prepare("G0 X0 Y0\n\n  G1 X10 Y0 F1000\nG1 X10 Y10\nM5\n");
+
+        assertEquals(Arrays.asList("G1 X0 Y0 Z1", "G1 X10 Y0 F1000 Z0", "G1 X10 Y10 Z0", "M5"), job.lines);
+        assertEquals(3, job.movementCommands);
+        assertNull(job.feeds);
+        assertNull(job.validation);
+    }
+
+    @Test
+    public void prepareLeavesPenPlotterFilesAsTheyAre() {
+        String text = PenPlotterGCodeWriter.HEADER + "\nG1 X5 Y5 Z1\nG1 Z0\nG1 X10 Y5\n";
+        GCodeStreamer.Job job = GCodeStreamer.prepare(text);
+
+        assertEquals(Arrays.asList(PenPlotterGCodeWriter.HEADER, "G1 X5 Y5 Z1", "G1 Z0", "G1 X10 Y5"), job.lines);
+        assertEquals(3, job.movementCommands);
+    }
+
+    @Test
+    public void preparePlansFeedsBeforeValidating() {
+        GCodeStreamer.Job job = GCodeStreamer.prepare("G0 X10 Y0\nG1 X500 Y0\nG29\n",
+                new FeedPlanner(3000, 100), new GCodeValidator(200, 200, 1000));
+
+        // the planned feed keeps the validator from adding its default one
+        assertEquals(Arrays.asList("G1 X10 Y0 Z1 F3000", "G1 X200 Y0 Z0"), job.lines);
+        assertEquals(1, job.feeds.feedWords);
+        assertEquals(1, job.validation.removed);
+        assertEquals(1, job.validation.rewritten);
+        assertEquals(2, job.movementCommands);
+    }
+
+    @Test
+    public void previewSeesTheJobAsItIsSent() {
+        // the last move is one GRBL cannot parse, the validator drops it
+        String text = "G0 X10 Y10\nG1 X20 Y10 F500\nG1 X80 Y80 @\n";
+        JobTransform transform = JobTransform.of(2, false, 0, 0, 0).clippedTo(100, 100);
+        GCodeStreamer.Job job = GCodeStreamer.prepare(text, new GCodeValidator(Double.NaN, Double.NaN, 1000));
+        JobTransform.Stage preview = GCodeStreamer.preview(job, transform);
+
+        assertEquals(1, job.validation.removed);
+        assertEquals(40, preview.getDrawnBounds().maxX, 1e-9);
+        assertEquals(20, preview.getDrawnBounds().maxY, 1e-9);
+        assertEquals(0, preview.getCutMoves());
+
+        // the streamer sends the same lines through the same transform
+        FakeController controller = new FakeController();
+        GCodeStreamer streamer = controller.createStreamer(null);
+        assertTrue(streamer.start(job, transform));
+        controller.run(-1, 60_000);
+        assertTrue(controller.finished);
+        assertFalse(controller.sent.stream().anyMatch(line -> line.contains("X160")));
+    }
+
+    @Test
+    public void settlesOnceThePenIsUpAfterAJob() {
+        FakeController controller = new FakeController();
+        GCodeStreamer streamer = controller.createStreamer(null);
+        assertTrue(streamer.start(GCodeStreamer.prepare(absoluteJob(3))));
+        while (!controller.finished) {
+            controller.run(1, 1000);
+        }
+
+        // the job is over but the pen lift is not confirmed: nothing may start yet
+        assertFalse(streamer.isRunning());
+        assertTrue(streamer.isSettling());
+        assertEquals(Arrays.asList("G1 Z1", "G4 P0"), controller.unanswered());
+        assertEquals(0, controller.settled);
+
+        controller.finished = false;
+        controller.run(-1, 100);
+        assertFalse(streamer.isSettling());
+        assertEquals(1, controller.settled);
+    }
+
+    @Test
+    public void aLostLinkAbandonsTheSettle() {
+        FakeController controller = new FakeController();
+        GCodeStreamer streamer = controller.createStreamer(null);
+        streamer.goHome();
+        assertTrue(streamer.isSettling());
+
+        controller.drop();
+        streamer.abandonSettling();
+        assertFalse(streamer.isSettling());
+        assertEquals(0, controller.settled);
+    }
+
+    @Test
+    public void onlyLinesThatEndTheSameTwiceAreSafeToRepeat() {
+        assertTrue(GCodeStreamer.isSafeToRepeat("G1 X10 Y20 Z0 F800"));
+        assertTrue(GCodeStreamer.isSafeToRepeat("G90"));
+        assertTrue(GCodeStreamer.isSafeToRepeat("G21 G90 (G91 in a comment)"));
+        assertTrue(GCodeStreamer.isSafeToRepeat("G4 P0"));
+        assertFalse(GCodeStreamer.isSafeToRepeat("G91"));
+        assertFalse(GCodeStreamer.isSafeToRepeat("g91 g1 x1"));
+        assertFalse(GCodeStreamer.isSafeToRepeat("G92 X0 Y0 Z0"));
+        assertFalse(GCodeStreamer.isSafeToRepeat("G28"));
+        assertFalse(GCodeStreamer.isSafeToRepeat("G28.1"));
+        assertFalse(GCodeStreamer.isSafeToRepeat("G30"));
+        assertFalse(GCodeStreamer.isSafeToRepeat("G10 L20 P1 X0"));
+        assertFalse(GCodeStreamer.isSafeToRepeat("$X"));
+        assertFalse(GCodeStreamer.isSafeToRepeat("$J=G91 X1 F100"));
+    }
+}
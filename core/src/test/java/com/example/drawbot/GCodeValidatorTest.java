@@ -0,0 +1,145 @@
+package com.example.drawbot;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class GCodeValidatorTest {
+    private static GCodeValidator.Result validate(String... lines) {
+        return new GCodeValidator(100, 100, 1000).validate(Arrays.asList(lines));
+    }
+
+    @Test
+    public void cleanJobKeepsItsLines() {
+        List<String> input = Arrays.asList("G21", "G90", "G1 X10 Y10 F500", "G2 X20 Y10 I5 J0", "M5", "$H");
+        GCodeValidator.Result result = new GCodeValidator(100, 100, 1000).validate(input);
+
+        assertTrue(result.isClean());
+        assertEquals(input, result.lines);
+        for (int i = 0; i < input.size(); i++) {
+            assertSame(input.get(i), result.lines.get(i));
+        }
+    }
+
+    @Test
+    public void commentsAndBlankLinesAreDroppedWithoutANote() {
+        GCodeValidator.Result result = validate("; header", "", "(just a comment)", "G1 X1 F500 ; go");
+
+        assertEquals(Collections.singletonList("G1 X1 F500 ; go"), result.lines);
+        assertTrue(result.isClean());
+    }
+
+    @Test
+    public void unsupportedGCodeRemovesTheLine() {
+        GCodeValidator.Result result = validate("G29", "G64 P0.1", "G1 X1 F500");
+
+        assertEquals(Collections.singletonList("G1 X1 F500"), result.lines);
+        assertEquals(2, result.removed);
+        GCodeValidator.Issue issue = result.issues.get(0);
+        assertEquals(1, issue.line);
+        assertEquals(GCodeValidator.Action.REMOVED, issue.action);
+        assertEquals("G29", issue.original);
+        assertEquals(2, result.issues.get(1).line);
+    }
+
+    @Test
+    public void unknownWordsAreDropped() {
+        GCodeValidator.Result result = validate("G1 X10 Y10 F500 M84", "G1 X20 E5", "G1 X1 X2", "M17");
+
+        assertEquals(Arrays.asList("G1 X10 Y10 F500", "G1 X20", "G1 X1"), result.lines);
+        assertEquals(3, result.rewritten);
+        // nothing is left of M17
+        assertEquals(1, result.removed);
+        assertEquals(GCodeValidator.Action.REMOVED, result.issues.get(3).action);
+    }
+
+    @Test
+    public void movesOutsideTheWorkAreaAreClamped() {
+        GCodeValidator.Result result = validate("G1 X150 Y-5 F500", "G91", "G1 X-200", "G90", "G0 X50 Y50");
+
+        assertEquals(Arrays.asList("G1 X100 Y0 F500", "G91", "G1 X-100", "G90", "G0 X50 Y50"), result.lines);
+        assertEquals(2, result.rewritten);
+    }
+
+    @Test
+    public void clampingFollowsTheG92Origin() {
+        // X0 is now 50 mm right of where the job started
+        GCodeValidator.Result result = validate("G1 X50 F500", "G92 X0 Y0", "G1 X40", "G1 X80");
+
+        assertEquals(Arrays.asList("G1 X50 F500", "G92 X0 Y0", "G1 X40", "G1 X50"), result.lines);
+        assertEquals(1, result.rewritten);
+    }
+
+    @Test
+    public void arcsOutsideTheWorkAreaOnlyWarn() {
+        GCodeValidator.Result result = validate("G1 X90 Y50 F500", "G2 X110 Y50 I10 J0");
+
+        assertEquals(Arrays.asList("G1 X90 Y50 F500", "G2 X110 Y50 I10 J0"), result.lines);
+        assertEquals(1, result.warnings);
+        assertEquals(0, result.rewritten);
+    }
+
+    @Test
+    public void firstFeedlessCutGetsTheDefaultFeed() {
+        GCodeValidator.Result result = validate("G0 X5", "G1 X10 Y10", "G1 X20");
+
+        assertEquals(Arrays.asList("G0 X5", "G1 X10 Y10 F1000", "G1 X20"), result.lines);
+        assertEquals(1, result.rewritten);
+
+        GCodeValidator.Result warned = new GCodeValidator(100, 100, Double.NaN)
+                .validate(Collections.singletonList("G1 X10 Y10"));
+        assertEquals(Collections.singletonList("G1 X10 Y10"), warned.lines);
+        assertEquals(1, warned.warnings);
+        assertEquals(GCodeValidator.Action.WARNING, warned.issues.get(0).action);
+    }
+
+    @Test
+    public void unlimitedWithNaNTravel() {
+        GCodeValidator.Result result = new GCodeValidator(Double.NaN, Double.NaN, 1000)
+                .validate(Collections.singletonList("G1 X5000 Y-20 F500"));
+
+        assertTrue(result.isClean());
+    }
+
+    @Test
+    public void linesGrblCannotTakeAreRemoved() {
+        StringBuilder longLine = new StringBuilder("G4 P1");
+        for (int i = 0; i < 30; i++) {
+            longLine.append(" G17");
+        }
+        GCodeValidator.Result result = validate("G1 X1 @", "G1 X", "G1 (open comment", longLine.toString(),
+                "G1 X1 F500 ; a comment does not count towards the line buffer, however long it gets ...........");
+
+        assertEquals(1, result.lines.size());
+        assertEquals(4, result.removed);
+        assertEquals("longer than GRBL's line buffer", result.issues.get(3).message);
+    }
+
+    @Test
+    public void onlyGrblSystemCommandsPass() {
+        GCodeValidator.Result result = validate("$H", "$X", "$$", "$110=5000", "$J=G91 X1 F100", "$FOO", "$1x=5");
+
+        assertEquals(Arrays.asList("$H", "$X", "$$", "$110=5000", "$J=G91 X1 F100"), result.lines);
+        assertEquals(2, result.removed);
+        assertTrue(GCodeValidator.isSystemCommand("$rst=*"));
+        assertFalse(GCodeValidator.isSystemCommand("$1=abc"));
+    }
+
+    @Test
+    public void onlyTheFirstIssuesAreKept() {
+        String[] lines = new String[GCodeValidator.MAX_REPORTED_ISSUES + 20];
+        Arrays.fill(lines, "G29");
+        GCodeValidator.Result result = validate(lines);
+
+        assertTrue(result.lines.isEmpty());
+        assertEquals(lines.length, result.removed);
+        assertEquals(GCodeValidator.MAX_REPORTED_ISSUES, result.issues.size());
+    }
+}
@@ -0,0 +1,181 @@
+package com.example.drawbot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GrblSettingsSyncTest {
+    private static final String SETTINGS = "$100=65.000\r\n$101=65.0004 (y, step/mm)\r\n"
+            + "[MSG:Caution: Unlocked]\r\n$N0=\r\n$110=2500.000\r\n";
+
+    // the controller side: lines sent and everything the listener heard
+    private static final class Link implements GrblSettingsSync.Sender, GrblSettingsSync.Listener {
+        final List<String> sent = new ArrayList<>();
+        final List<String> events = new ArrayList<>();
+        boolean connected = true;
+        GrblSettings result;
+        String error;
+
+        @Override
+        public boolean send(String line) {
+            sent.add(line);
+            return connected;
+        }
+
+        @Override
+        public void onSettingsRead(GrblSettings current, int changes) {
+            events.add("read " + current.asMap().size() + ", " + changes + " to write");
+        }
+
+        @Override
+        public void onSettingWritten(int number, double value, int written, int total) {
+            events.add("$" + number + "=" + GrblSettings.format(value) + " " + written + "/" + total);
+        }
+
+        @Override
+        public void onComplete(GrblSettings result, int written) {
+            events.add("done, " + written + " written");
+            this.result = result;
+        }
+
+        @Override
+        public void onError(String message) {
+            events.add("error: " + message);
+            error = message;
+        }
+    }
+
+    private static Map<Integer, Double> desired() {
+        Map<Integer, Double> desired = new LinkedHashMap<>();
+        desired.put(100, 80.0);
+        desired.put(101, 65.0);
+        desired.put(110, 3000.0);
+        desired.put(120, 10.0);
+        return desired;
+    }
+
+    @Test
+    public void readsThenWritesOnlyTheDifferencesOneOkAtATime() {
+        Link link = new Link();
+        GrblSettingsSync sync = new GrblSettingsSync(desired(), link, link);
+        sync.start(0);
+        assertEquals(Collections.singletonList("$$\n"), link.sent);
+
+        // the reply comes in pieces that do not end at line ends
+        sync.onData(SETTINGS.substring(0, 20), 10);
+        sync.onData(SETTINGS.substring(20) + "o", 20);
+        assertEquals(1, link.sent.size());
+        sync.onData("k\r\n", 30);
+        assertEquals(Arrays.asList("$$\n", "$100=80.0\n"), link.sent);
+
+        // status reports and messages while a write is waiting change nothing
+        sync.onData("<Idle|MPos:0.000,0.000,0.000|FS:0,0>\r\n[MSG:Pgm End]\r\n", 40);
+        assertEquals(2, link.sent.size());
+        sync.onData("ok\r\n", 50);
+        sync.onData("ok\r\n", 60);
+        sync.onData("ok\r\n", 70);
+
+        assertEquals(Arrays.asList("$$\n", "$100=80.0\n", "$110=3000.0\n", "$120=10.0\n"), link.sent);
+        assertEquals(Arrays.asList("read 3, 3 to write", "$100=80.0 1/3", "$110=3000.0 2/3", "$120=10.0 3/3",
+                "done, 3 written"), link.events);
+        assertFalse(sync.isRunning());
+        assertEquals(80.0, link.result.get(100), 0);
+        assertEquals(65.0004, link.result.get(101), 0);
+        assertEquals(10.0, link.result.get(120), 0);
+    }
+
+    @Test
+    public void nothingToWriteCompletesRightAway() {
+        Link link = new Link();
+        Map<Integer, Double> desired = new LinkedHashMap<>();
+        desired.put(100, 65.0);
+        desired.put(101, 65.0);
+        GrblSettingsSync sync = new GrblSettingsSync(desired, link, link);
+        sync.start(0);
+        sync.onData(SETTINGS + "ok\n", 10);
+
+        assertEquals(Collections.singletonList("$$\n"), link.sent);
+        assertEquals(Arrays.asList("read 3, 0 to write", "done, 0 written"), link.events);
+    }
+
+    @Test
+    public void aRejectedWriteStopsTheSync() {
+        Link link = new Link();
+        GrblSettingsSync sync = new GrblSettingsSync(desired(), link, link);
+        sync.start(0);
+        sync.onData(SETTINGS + "ok\r\n", 10);
+        // the rest of the data after the error is not looked at
+        sync.onData("error:9\r\nok\r\n", 20);
+
+        assertEquals("$100 rejected: error:9", link.error);
+        assertFalse(sync.isRunning());
+        assertEquals(2, link.sent.size());
+        assertNull(link.result);
+        sync.onData("ok\r\n", 30);
+        assertEquals(2, link.sent.size());
+    }
+
+    @Test
+    public void errorsWhileReadingFailTheSync() {
+        Link link = new Link();
+        GrblSettingsSync sync = new GrblSettingsSync(desired(), link, link);
+        sync.start(0);
+        sync.onData("error:8\r\n", 10);
+        assertEquals("$$ failed: error:8", link.error);
+
+        Link alarm = new Link();
+        sync = new GrblSettingsSync(desired(), alarm, alarm);
+        sync.start(0);
+        sync.onData("ALARM:1\r\n", 10);
+        assertEquals("$$ failed: ALARM:1", alarm.error);
+
+        Link empty = new Link();
+        sync = new GrblSettingsSync(desired(), empty, empty);
+        sync.start(0);
+        sync.onData("[MSG:nothing here]\r\nok\r\n", 10);
+        assertEquals("Controller sent no settings", empty.error);
+    }
+
+    @Test
+    public void timesOutWithoutAnAnswer() {
+        Link link = new Link();
+        GrblSettingsSync sync = new GrblSettingsSync(desired(), link, link);
+        sync.start(0);
+        assertFalse(sync.checkTimeout(2000, 2000));
+        assertTrue(sync.checkTimeout(2001, 2000));
+        assertEquals("No reply to $$", link.error);
+        assertFalse(sync.isRunning());
+
+        Link writing = new Link();
+        sync = new GrblSettingsSync(desired(), writing, writing);
+        sync.start(0);
+        sync.onData(SETTINGS + "ok\r\n", 1000);
+        // every answer restarts the clock
+        assertFalse(sync.checkTimeout(2500, 2000));
+        assertTrue(sync.checkTimeout(3500, 2000));
+        assertEquals("No ok for setting write", writing.error);
+        // a failed or finished sync never times out again
+        assertFalse(sync.checkTimeout(10_000, 2000));
+    }
+
+    @Test
+    public void failsWhenNothingCanBeSent() {
+        Link link = new Link();
+        link.connected = false;
+        GrblSettingsSync sync = new GrblSettingsSync(desired(), link, link);
+        sync.start(0);
+
+        assertEquals("Could not send $$", link.error);
+        assertFalse(sync.isRunning());
+    }
+}
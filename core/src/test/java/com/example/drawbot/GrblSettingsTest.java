@@ -0,0 +1,71 @@
+package com.example.drawbot;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class GrblSettingsTest {
+    @Test
+    public void parsesSettingLinesAndSkipsTheRest() {
+        GrblSettings settings = new GrblSettings();
+
+        assertTrue(settings.parseLine("$100=65.000"));
+        assertTrue(settings.parseLine("  $110=3000.000 (x max rate, mm/min)"));
+        assertTrue(settings.parseLine("$13=0"));
+        for (String junk : Arrays.asList("ok", "$$", "[MSG:'$H'|'$X' to unlock]", "<Idle|MPos:0.000,0.000,0.000>",
+                "$N0=", "$1x=5", "$120=fast", "$=5", "Grbl 1.1h ['$' for help]", "")) {
+            assertFalse(junk, settings.parseLine(junk));
+        }
+        assertEquals(3, settings.asMap().size());
+        assertEquals(65.0, settings.get(100), 0);
+        assertEquals(3000.0, settings.get(110), 0);
+        assertNull(settings.get(101));
+    }
+
+    @Test
+    public void diffIgnoresWhatGrblRoundsAway() {
+        GrblSettings settings = new GrblSettings();
+        settings.put(100, 65.0);
+        settings.put(101, 65.0004);
+        settings.put(110, 2999.0);
+        Map<Integer, Double> desired = new LinkedHashMap<>();
+        desired.put(110, 3000.0);
+        desired.put(101, 65.0);
+        desired.put(100, 65.0);
+        desired.put(120, 10.0);
+
+        LinkedHashMap<Integer, Double> changes = settings.diff(desired);
+        // in the order of desired: changed values and missing ones
+        assertEquals(Arrays.asList(110, 120), Arrays.asList(changes.keySet().toArray()));
+        assertEquals(3000.0, changes.get(110), 0);
+    }
+
+    @Test
+    public void serializeRoundTrip() {
+        GrblSettings settings = new GrblSettings();
+        settings.put(110, 3000.0);
+        settings.put(100, 65.25);
+
+        assertEquals("100=65.25;110=3000.0", settings.serialize());
+        assertEquals(settings.asMap(), GrblSettings.deserialize(settings.serialize()).asMap());
+        assertTrue(GrblSettings.deserialize("").isEmpty());
+        assertTrue(GrblSettings.deserialize(null).isEmpty());
+        assertEquals(1, GrblSettings.deserialize("100=1.0;junk;101=x").asMap().size());
+    }
+
+    @Test
+    public void formatsValuesTheWayGrblTakesThem() {
+        assertEquals("65.0", GrblSettings.format(65));
+        assertEquals("0.0", GrblSettings.format(0));
+        assertEquals("65.125", GrblSettings.format(65.125));
+        assertEquals("0.013", GrblSettings.format(0.0125));
+        assertEquals("-1.5", GrblSettings.format(-1.5));
+    }
+}
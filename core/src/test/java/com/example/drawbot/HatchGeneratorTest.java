@@ -0,0 +1,109 @@
+package com.example.drawbot;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class HatchGeneratorTest {
+    private static final double MM_PER_PIXEL = 0.5;
+
+    private static String hatch(int[] argb, int width, int height, int threads, int linesPerBand)
+            throws IOException, InterruptedException {
+        HatchGenerator generator = new HatchGenerator();
+        generator.setLineSpacingMm(1.0);
+        generator.setThreads(threads);
+        generator.linesPerBand = linesPerBand;
+        StringWriter text = new StringWriter();
+        generator.generate(argb, width, height, MM_PER_PIXEL, new PenPlotterGCodeWriter(text));
+        return text.toString();
+    }
+
+    private static int[] filled(int width, int height, int argb) {
+        int[] pixels = new int[width * height];
+        Arrays.fill(pixels, argb);
+        return pixels;
+    }
+
+    // drawn strokes as x0, y0, x1, y1 in mm
+    private static List<double[]> strokes(String gcode) {
+        List<double[]> strokes = new ArrayList<>();
+        double x = 0, y = 0;
+        for (String line : gcode.split("\n")) {
+            if (!line.startsWith("G1 X")) continue;
+            String[] words = line.split(" ");
+            double nx = Double.parseDouble(words[1].substring(1));
+            double ny = Double.parseDouble(words[2].substring(1));
+            if (words[3].equals("Z0")) strokes.add(new double[]{x, y, nx, ny});
+            x = nx;
+            y = ny;
+        }
+        return strokes;
+    }
+
+    @Test
+    public void bandsAndThreadsDoNotChangeTheOutput() throws Exception {
+        BufferedImage image;
+        try (InputStream in = HatchGeneratorTest.class.getResourceAsStream("/images/shapes.png")) {
+            image = ImageIO.read(in);
+        }
+        int w = image.getWidth(), h = image.getHeight();
+        int[] argb = image.getRGB(0, 0, w, h, null, 0, w);
+
+        String oneBand = hatch(argb, w, h, 1, Integer.MAX_VALUE);
+        assertTrue(strokes(oneBand).size() > 100);
+        assertEquals(oneBand, hatch(argb, w, h, 1, 24));
+        assertEquals(oneBand, hatch(argb, w, h, 4, 24));
+        assertEquals(oneBand, hatch(argb, w, h, 8, 5));
+    }
+
+    @Test
+    public void everyOtherHatchLineRunsBackwards() throws Exception {
+        // darkness 80 only reaches the first (45 degree) layer
+        int gray = 0xFF000000 | (175 << 16) | (175 << 8) | 175;
+        List<double[]> strokes = strokes(hatch(filled(80, 80, gray), 80, 80, 4, 7));
+
+        List<double[]> hatchLines = new ArrayList<>();
+        for (double[] s : strokes) {
+            if (Math.hypot(s[2] - s[0], s[3] - s[1]) > 3.0) hatchLines.add(s);
+        }
+        assertTrue(hatchLines.size() > 20);
+        for (int i = 1; i < hatchLines.size(); i++) {
+            double[] a = hatchLines.get(i - 1), b = hatchLines.get(i);
+            double dot = (a[2] - a[0]) * (b[2] - b[0]) + (a[3] - a[1]) * (b[3] - b[1]);
+            assertTrue("hatch line " + i + " runs the same way as the one before", dot < 0);
+        }
+    }
+
+    @Test
+    public void aSolidAreaIsHatchedWithFewPenLifts() throws Exception {
+        int gray = 0xFF000000 | (175 << 16) | (175 << 8) | 175;
+        String gcode = hatch(filled(80, 80, gray), 80, 80, 1, 24);
+        int lifts = 0;
+        for (String line : gcode.split("\n")) {
+            if (line.endsWith("Z1")) lifts++;
+        }
+        // neighbouring hatch lines are joined with the pen down, it only lifts where an edge cuts the connector
+        int hatchLines = strokes(gcode).size() / 2;
+        assertTrue("pen lifted " + lifts + " times for " + hatchLines + " lines", lifts * 3 < hatchLines);
+    }
+
+    @Test
+    public void whiteAndTransparentImagesAreNotHatched() throws Exception {
+        HatchGenerator generator = new HatchGenerator();
+        PenPlotterGCodeWriter out = new PenPlotterGCodeWriter(new StringWriter());
+        assertEquals(0, generator.generate(filled(40, 30, 0xFFFFFFFF), 40, 30, MM_PER_PIXEL, out));
+        assertEquals(0, generator.generate(filled(40, 30, 0x00000000), 40, 30, MM_PER_PIXEL, out));
+        assertEquals(0, out.getDrawMoves());
+    }
+}
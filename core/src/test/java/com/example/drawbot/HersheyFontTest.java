@@ -0,0 +1,62 @@
+package com.example.drawbot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HersheyFontTest {
+    private static final short UP = HersheyFont.PEN_UP;
+
+    @Test
+    public void decodesAGlyphIntoStrokes() {
+        // "RZRRRF RZRZF RRLZL": two uprights and the bar, y flipped so the baseline is 0
+        assertArrayEquals(new short[]{0, 0, 0, 12, UP, UP, 8, 0, 8, 12, UP, UP, 0, 6, 8, 6},
+                HersheyFont.glyph('H'));
+        assertEquals(10, HersheyFont.advance('H'));
+    }
+
+    @Test
+    public void everyGlyphStaysInsideItsCell() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = 32; c < 127; c++) chars.append(c);
+        chars.append("\u00c4\u00d6\u00dc\u00e4\u00f6\u00fc\u00df");
+
+        for (int i = 0; i < chars.length(); i++) {
+            char c = chars.charAt(i);
+            assertTrue(HersheyFont.isSupported(c));
+            short[] points = HersheyFont.glyph(c);
+            assertEquals(0, points.length % 2);
+            for (int k = 0; k < points.length; k += 2) {
+                if (points[k] == UP) {
+                    assertEquals(UP, points[k + 1]);
+                    continue;
+                }
+                String where = "'" + c + "' point " + k / 2;
+                assertTrue(where, points[k] >= 0 && points[k] <= HersheyFont.advance(c));
+                assertTrue(where, points[k + 1] >= -HersheyFont.DESCENDER
+                        && points[k + 1] <= HersheyFont.CAP_HEIGHT + 3);
+            }
+        }
+    }
+
+    @Test
+    public void unsupportedCharactersDrawAsQuestionMarks() {
+        assertFalse(HersheyFont.isSupported('\u20ac'));
+        assertSame(HersheyFont.glyph('?'), HersheyFont.glyph('\u20ac'));
+        assertEquals(HersheyFont.advance('?'), HersheyFont.advance('\t'));
+    }
+
+    @Test
+    public void kerningTightensKnownPairsOnly() {
+        assertEquals(-2, HersheyFont.kerning('A', 'V'));
+        assertEquals(-2, HersheyFont.kerning('T', '.'));
+        assertEquals(-1, HersheyFont.kerning('T', 'o'));
+        assertEquals(0, HersheyFont.kerning('V', 'V'));
+        assertEquals(0, HersheyFont.kerning('A', '\u00d6'));
+        assertEquals(0, HersheyFont.kerning((char) 0, 'A'));
+    }
+}
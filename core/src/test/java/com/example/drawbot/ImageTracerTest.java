@@ -0,0 +1,167 @@
+package com.example.drawbot;
+
+import org.junit.Test;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+// square.png: 96 x 96, a black square from 24 to 72 on white.
+// shapes.png: 160 x 120, a black disc (x 20..80, y 30..90) and a triangle (x 100..150, y 20..100).
+public class ImageTracerTest {
+    private static final int SINGLE_TILE = 1024;
+
+    private static final class Image {
+        final int[] argb;
+        final int width, height;
+
+        Image(int[] argb, int width, int height) {
+            this.argb = argb;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private static Image load(String name) throws IOException {
+        try (InputStream in = ImageTracerTest.class.getResourceAsStream("/images/" + name)) {
+            BufferedImage image = ImageIO.read(in);
+            int w = image.getWidth(), h = image.getHeight();
+            return new Image(image.getRGB(0, 0, w, h, null, 0, w), w, h);
+        }
+    }
+
+    private static List<int[]> trace(Image image, int tileSize) throws InterruptedException {
+        ImageTracer tracer = new ImageTracer();
+        tracer.setTileSize(tileSize);
+        tracer.setThreads(4);
+        return tracer.trace(image.argb, image.width, image.height);
+    }
+
+    // minX, minY, maxX, maxY over all points
+    private static int[] bounds(List<int[]> paths) {
+        int[] b = {Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MIN_VALUE, Integer.MIN_VALUE};
+        for (int[] p : paths) {
+            for (int i = 0; i < p.length; i += 2) {
+                b[0] = Math.min(b[0], p[i]);
+                b[1] = Math.min(b[1], p[i + 1]);
+                b[2] = Math.max(b[2], p[i]);
+                b[3] = Math.max(b[3], p[i + 1]);
+            }
+        }
+        return b;
+    }
+
+    private static boolean isClosed(int[] p) {
+        return p.length >= 6 && p[0] == p[p.length - 2] && p[1] == p[p.length - 1];
+    }
+
+    private static void assertBounds(int[] expected, int[] actual, int slack) {
+        for (int i = 0; i < 4; i++) {
+            assertTrue("bound " + i + ": " + actual[i] + " instead of " + expected[i],
+                    Math.abs(expected[i] - actual[i]) <= slack);
+        }
+    }
+
+    @Test
+    public void squareIsOneClosedOutline() throws Exception {
+        List<int[]> paths = trace(load("square.png"), 32);
+        assertEquals(1, paths.size());
+        assertTrue(isClosed(paths.get(0)));
+        assertBounds(new int[]{24, 24, 72, 72}, bounds(paths), 1);
+    }
+
+    @Test
+    public void shapesGiveTheDiscAsALoopAndTheTriangleAsOpenStrokes() throws Exception {
+        List<int[]> paths = trace(load("shapes.png"), 32);
+        assertTrue("strokes: " + paths.size(), paths.size() >= 2 && paths.size() <= 4);
+        int loops = 0;
+        for (int[] p : paths) {
+            if (isClosed(p)) {
+                loops++;
+                assertBounds(new int[]{20, 30, 80, 90}, bounds(List.of(p)), 1);
+            }
+        }
+        assertEquals(1, loops);
+        assertBounds(new int[]{20, 20, 150, 100}, bounds(paths), 1);
+    }
+
+    @Test
+    public void tiledAndSingleTileTracesCoverTheSameContours() throws Exception {
+        for (String name : new String[]{"square.png", "shapes.png"}) {
+            Image image = load(name);
+            List<int[]> whole = trace(image, SINGLE_TILE);
+            for (int tileSize : new int[]{16, 32, 50}) {
+                List<int[]> tiled = trace(image, tileSize);
+                String where = name + " in " + tileSize + " px tiles";
+                assertEquals(where, countLoops(whole), countLoops(tiled));
+                // strokes may be split differently where thinning leaves a corner, but every drawn
+                // pixel of one trace lies on the other, within the simplify tolerance
+                boolean[] a = rasterize(whole, image.width, image.height);
+                boolean[] b = rasterize(tiled, image.width, image.height);
+                assertCovered(where, a, b, image.width, image.height);
+                assertCovered(where, b, a, image.width, image.height);
+            }
+        }
+    }
+
+    private static int countLoops(List<int[]> paths) {
+        int loops = 0;
+        for (int[] p : paths) {
+            if (isClosed(p)) loops++;
+        }
+        return loops;
+    }
+
+    private static boolean[] rasterize(List<int[]> paths, int width, int height) {
+        boolean[] drawn = new boolean[width * height];
+        for (int[] p : paths) {
+            for (int i = 0; i + 3 < p.length; i += 2) {
+                int steps = Math.max(Math.abs(p[i + 2] - p[i]), Math.abs(p[i + 3] - p[i + 1]));
+                for (int s = 0; s <= steps; s++) {
+                    double t = steps == 0 ? 0 : (double) s / steps;
+                    int x = (int) Math.round(p[i] + (p[i + 2] - p[i]) * t);
+                    int y = (int) Math.round(p[i + 1] + (p[i + 3] - p[i + 1]) * t);
+                    drawn[y * width + x] = true;
+                }
+            }
+        }
+        return drawn;
+    }
+
+    private static void assertCovered(String where, boolean[] from, boolean[] on, int width, int height) {
+        int radius = 2;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (!from[y * width + x]) continue;
+                boolean near = false;
+                for (int ny = Math.max(0, y - radius); ny <= Math.min(height - 1, y + radius) && !near; ny++) {
+                    for (int nx = Math.max(0, x - radius); nx <= Math.min(width - 1, x + radius) && !near; nx++) {
+                        near = on[ny * width + nx];
+                    }
+                }
+                assertTrue(where + ": pixel " + x + "," + y + " is only in one trace", near);
+            }
+        }
+    }
+
+    @Test
+    public void intIntMapKeepsTheFirstValueAcrossCollisions() {
+        ImageTracer.IntIntMap map = new ImageTracer.IntIntMap(1000);
+        // keys one tile row apart, as border pixels of a wide image are
+        for (int i = 0; i < 1000; i++) {
+            map.putIfAbsent(i * 4096, i);
+            map.putIfAbsent(i * 4096, -5);
+        }
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, map.get(i * 4096));
+        }
+        assertEquals(-1, map.get(7));
+        assertEquals(-1, map.get(4096 * 1000));
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.drawbot;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class InFlightTrackerTest {
+    @Test
+    public void countsEveryLineWithItsNewline() {
+        InFlightTracker tracker = new InFlightTracker();
+        tracker.sent("G1 X10", 0, 100);
+        tracker.sent("M5", 1, 200);
+
+        assertEquals(2, tracker.size());
+        assertEquals(7 + 3, tracker.bytes());
+        assertEquals("G1 X10", tracker.oldest().command);
+        assertEquals(100, tracker.oldest().sentAt);
+    }
+
+    @Test
+    public void realtimeCommandsAreNotTracked() {
+        InFlightTracker tracker = new InFlightTracker();
+        tracker.sent("?", -1, 0);
+        tracker.sent("~", -1, 0);
+        tracker.sent("!", -1, 0);
+        tracker.sent("\u0085", -1, 0);
+
+        assertEquals(0, tracker.size());
+        assertEquals(0, tracker.bytes());
+        assertNull(tracker.oldest());
+        assertTrue(InFlightTracker.isRealtime("?"));
+        assertFalse(InFlightTracker.isRealtime("??"));
+        assertFalse(InFlightTracker.isRealtime("$X"));
+    }
+
+    @Test
+    public void acknowledgeFreesTheOldestLine() {
+        InFlightTracker tracker = new InFlightTracker();
+        tracker.sent("G21", -1, 0);
+        tracker.sent("G1 X1 Y1 Z0", 5, 0);
+
+        InFlightTracker.Entry first = tracker.acknowledge();
+        assertEquals("G21", first.command);
+        assertEquals(-1, first.jobLine);
+        assertEquals(12, tracker.bytes());
+        assertEquals(5, tracker.acknowledge().jobLine);
+        assertEquals(0, tracker.bytes());
+
+        // an ok nothing was waiting for changes nothing
+        assertNull(tracker.acknowledge());
+        assertEquals(0, tracker.bytes());
+    }
+
+    @Test
+    public void takeAllEmptiesTheTrackerInSendOrder() {
+        InFlightTracker tracker = new InFlightTracker();
+        tracker.sent("G1 X1", 0, 0);
+        tracker.sent("G1 X2", 1, 0);
+        tracker.sent("G1 X3", 2, 0);
+        tracker.acknowledge();
+
+        List<InFlightTracker.Entry> unanswered = tracker.takeAll();
+        assertEquals(2, unanswered.size());
+        assertEquals("G1 X2", unanswered.get(0).command);
+        assertEquals("G1 X3", unanswered.get(1).command);
+        assertEquals(0, tracker.size());
+        assertEquals(0, tracker.bytes());
+
+        tracker.sent("G1 X4", 3, 0);
+        tracker.clear();
+        assertEquals(0, tracker.size());
+        assertEquals(0, tracker.bytes());
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.drawbot;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class JobCheckpointStoreTest {
+    private static final List<String> JOB = Arrays.asList(
+            "; caf\u00e9 sketch", "G1 X0 Y0 Z1", "G1 Z0", "G1 X10 Y0", "G1 X10 Y10", "G1 Z1");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void shutDown() {
+        executor.shutdownNow();
+    }
+
+    private void drain() throws Exception {
+        executor.submit(() -> { }).get();
+    }
+
+    // a store with JOB written and line lastAcked confirmed
+    private JobCheckpointStore storeAt(int lastAcked) throws Exception {
+        JobTransform transform = JobTransform.of(2, false, 0, 5, 5);
+        JobCheckpointStore store = new JobCheckpointStore(folder.getRoot(), executor);
+        store.startJob(JOB, transform);
+        drain();
+        JobCheckpoint checkpoint = new JobCheckpoint();
+        checkpoint.transform = transform;
+        checkpoint.totalLines = JOB.size();
+        checkpoint.lastAckedLine = lastAcked;
+        for (int i = 0; i <= lastAcked; i++) {
+            checkpoint.nextLineOffset += JobCheckpointStore.storedLength(JOB.get(i));
+            checkpoint.modal.apply(JOB.get(i));
+        }
+        store.update(checkpoint);
+        store.flush();
+        drain();
+        return store;
+    }
+
+    private void replaceJobFile(JobCheckpointStore store, List<String> lines) throws Exception {
+        try (FileOutputStream out = new FileOutputStream(store.getJobFile())) {
+            for (String line : lines) {
+                out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+            }
+        }
+    }
+
+    @Test
+    public void resumesAfterTheLastConfirmedLine() throws Exception {
+        JobCheckpointStore store = storeAt(2);
+        JobCheckpoint loaded = store.load();
+
+        assertNotNull(loaded);
+        assertEquals(3, loaded.nextLine());
+        assertEquals(2, loaded.transform.getScale(), 1e-12);
+        assertEquals(0, loaded.modal.z, 0);
+        assertEquals(JOB.subList(3, JOB.size()), store.readRemainingLines(loaded));
+    }
+
+    @Test
+    public void aCheckpointOfAnotherJobIsNotResumed() throws Exception {
+        JobCheckpointStore store = storeAt(2);
+
+        // same line count, other content
+        List<String> other = Arrays.asList(
+                "; other sketch", "G1 X0 Y0 Z1", "G1 Z0", "G1 X20 Y0", "G1 X20 Y20", "G1 Z1");
+        replaceJobFile(store, other);
+        assertNull(store.load());
+
+        // the same lines plus one
+        replaceJobFile(store, Arrays.asList(JOB.get(0), JOB.get(1), JOB.get(2), JOB.get(3), JOB.get(4),
+                JOB.get(5), "M5"));
+        assertNull(store.load());
+
+        replaceJobFile(store, JOB);
+        assertNotNull(store.load());
+    }
+
+    @Test
+    public void nothingToResumeAfterClear() throws Exception {
+        JobCheckpointStore store = storeAt(2);
+        store.clear();
+        drain();
+
+        assertNull(store.load());
+    }
+
+    @Test
+    public void aNewJobStartsFromItsFirstLine() throws Exception {
+        JobCheckpointStore store = storeAt(2);
+        store.startJob(Arrays.asList("G1 X1 Y1 Z1", "G1 Z0"), JobTransform.IDENTITY);
+        drain();
+
+        JobCheckpoint loaded = store.load();
+        assertNotNull(loaded);
+        assertEquals(0, loaded.nextLine());
+        assertEquals(2, loaded.totalLines);
+        assertEquals(new File(folder.getRoot(), "current_job.gcode"), store.getJobFile());
+    }
+}
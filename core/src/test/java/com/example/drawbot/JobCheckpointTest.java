@@ -0,0 +1,106 @@
+package com.example.drawbot;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JobCheckpointTest {
+    private static JobCheckpoint sample() {
+        JobCheckpoint checkpoint = new JobCheckpoint();
+        checkpoint.jobId = 0x1234_5678_9abcL;
+        checkpoint.totalLines = 4200;
+        checkpoint.lastAckedLine = 1999;
+        checkpoint.nextLineOffset = 65_432;
+        checkpoint.modal.absolute = false;
+        checkpoint.modal.metric = false;
+        checkpoint.modal.feed = 12.5;
+        checkpoint.modal.x = 3.25;
+        checkpoint.modal.y = -1.5;
+        checkpoint.modal.z = 0;
+        checkpoint.transform = JobTransform.of(1.5, true, 90, 10, 20).clippedTo(200, 150);
+        return checkpoint;
+    }
+
+    private static byte[] encode(JobCheckpoint checkpoint) {
+        ByteBuffer buffer = ByteBuffer.allocate(JobCheckpoint.RECORD_SIZE);
+        checkpoint.encode(buffer);
+        assertEquals(JobCheckpoint.RECORD_SIZE, buffer.position());
+        return buffer.array();
+    }
+
+    @Test
+    public void roundTripKeepsEveryField() {
+        JobCheckpoint original = sample();
+        JobCheckpoint decoded = JobCheckpoint.decode(ByteBuffer.wrap(encode(original)));
+
+        assertNotNull(decoded);
+        assertEquals(original.jobId, decoded.jobId);
+        assertEquals(original.totalLines, decoded.totalLines);
+        assertEquals(original.lastAckedLine, decoded.lastAckedLine);
+        assertEquals(2000, decoded.nextLine());
+        assertEquals(original.nextLineOffset, decoded.nextLineOffset);
+        assertFalse(decoded.modal.absolute);
+        assertFalse(decoded.modal.metric);
+        assertEquals(12.5, decoded.modal.feed, 0);
+        assertEquals(3.25, decoded.modal.x, 0);
+        assertEquals(-1.5, decoded.modal.y, 0);
+        assertEquals(0, decoded.modal.z, 0);
+
+        JobTransform expected = original.transform, transform = decoded.transform;
+        assertEquals(expected.a, transform.a, 0);
+        assertEquals(expected.b, transform.b, 0);
+        assertEquals(expected.c, transform.c, 0);
+        assertEquals(expected.d, transform.d, 0);
+        assertEquals(expected.e, transform.e, 0);
+        assertEquals(expected.f, transform.f, 0);
+        assertEquals(200, transform.clipWidth, 0);
+        assertEquals(150, transform.clipHeight, 0);
+    }
+
+    @Test
+    public void identityAndUnknownFeedSurviveTheRoundTrip() {
+        JobCheckpoint original = new JobCheckpoint();
+        JobCheckpoint decoded = JobCheckpoint.decode(ByteBuffer.wrap(encode(original)));
+
+        assertNotNull(decoded);
+        assertEquals(-1, decoded.lastAckedLine);
+        assertTrue(Double.isNaN(decoded.modal.feed));
+        assertTrue(decoded.transform.isIdentity());
+        assertFalse(decoded.transform.isClipped());
+    }
+
+    @Test
+    public void decodesFromTheBufferPosition() {
+        ByteBuffer buffer = ByteBuffer.allocate(8 + JobCheckpoint.RECORD_SIZE);
+        buffer.position(8);
+        sample().encode(buffer);
+        buffer.position(8);
+
+        JobCheckpoint decoded = JobCheckpoint.decode(buffer);
+        assertNotNull(decoded);
+        assertEquals(1999, decoded.lastAckedLine);
+    }
+
+    @Test
+    public void anyFlippedBitFailsTheCrc() {
+        byte[] record = encode(sample());
+        for (int i = 0; i < record.length; i++) {
+            byte[] torn = record.clone();
+            torn[i] ^= 0x10;
+            assertNull("byte " + i, JobCheckpoint.decode(ByteBuffer.wrap(torn)));
+        }
+    }
+
+    @Test
+    public void shortRecordIsRejected() {
+        byte[] record = encode(sample());
+        assertNull(JobCheckpoint.decode(ByteBuffer.wrap(record, 0, record.length - 1)));
+        assertNull(JobCheckpoint.decode(ByteBuffer.allocate(0)));
+    }
+}
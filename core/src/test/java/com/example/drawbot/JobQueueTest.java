@@ -0,0 +1,147 @@
+package com.example.drawbot;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JobQueueTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<String> names(JobQueue queue) {
+        List<String> names = new ArrayList<>();
+        for (JobQueue.Entry entry : queue.getEntries()) {
+            names.add(entry.name + (entry.paused ? " (paused)" : ""));
+        }
+        return names;
+    }
+
+    private static void write(File file, String text) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private JobQueue reloaded(File directory) {
+        JobQueue queue = new JobQueue(directory);
+        queue.load();
+        return queue;
+    }
+
+    @Test
+    public void jobsSurviveAReload() throws IOException {
+        File directory = new File(folder.getRoot(), "queue");
+        JobQueue queue = new JobQueue(directory);
+        queue.load();
+        JobQueue.Entry first = queue.add("spiral", "G1 X1 Y1\n");
+        JobQueue.Entry second = queue.add("hatch", "G1 X2 Y2\n");
+        queue.setEstimate(second.id, 120, 300);
+        queue.setPaused(first.id, true);
+
+        JobQueue again = reloaded(directory);
+        assertEquals(Arrays.asList("spiral (paused)", "hatch"), names(again));
+        JobQueue.Entry hatch = again.getEntries().get(1);
+        assertEquals(second.id, hatch.id);
+        assertEquals(120, hatch.lines);
+        assertEquals(300, hatch.estimatedSeconds);
+        assertEquals(-1, again.getEntries().get(0).lines);
+        assertEquals("G1 X1 Y1\n", again.readText(first.id));
+
+        // ids go on after the highest one, a new job never reuses an old file
+        assertTrue(again.add("sketch", "M5\n").id > second.id);
+    }
+
+    @Test
+    public void movesAreClampedToTheQueue() throws IOException {
+        JobQueue queue = reloaded(folder.getRoot());
+        JobQueue.Entry a = queue.add("a", "");
+        queue.add("b", "");
+        JobQueue.Entry c = queue.add("c", "");
+
+        assertTrue(queue.move(c.id, -1));
+        assertEquals(Arrays.asList("a", "c", "b"), names(queue));
+        assertTrue(queue.move(a.id, 10));
+        assertEquals(Arrays.asList("c", "b", "a"), names(queue));
+        assertFalse(queue.move(c.id, -5));
+        assertFalse(queue.move(12345, 1));
+        assertEquals(Arrays.asList("c", "b", "a"), names(reloaded(folder.getRoot())));
+    }
+
+    @Test
+    public void pausedJobsAreSkippedInPlace() throws IOException {
+        JobQueue queue = reloaded(folder.getRoot());
+        JobQueue.Entry a = queue.add("a", "");
+        JobQueue.Entry b = queue.add("b", "");
+
+        assertEquals(a.id, queue.next().id);
+        assertTrue(queue.setPaused(a.id, true));
+        assertFalse(queue.setPaused(a.id, true));
+        assertEquals(b.id, queue.next().id);
+        assertTrue(queue.setPaused(b.id, true));
+        assertNull(queue.next());
+        assertFalse(queue.isEmpty());
+        assertTrue(queue.setPaused(a.id, false));
+        assertEquals(a.id, queue.next().id);
+    }
+
+    @Test
+    public void removeDeletesTheJobFile() throws IOException {
+        JobQueue queue = reloaded(folder.getRoot());
+        JobQueue.Entry a = queue.add("a", "G1 X1\n");
+
+        assertTrue(new File(folder.getRoot(), a.id + ".gcode").exists());
+        assertTrue(queue.remove(a.id));
+        assertFalse(queue.remove(a.id));
+        assertTrue(queue.isEmpty());
+        assertFalse(new File(folder.getRoot(), a.id + ".gcode").exists());
+        assertTrue(reloaded(folder.getRoot()).isEmpty());
+    }
+
+    @Test
+    public void entriesAreASnapshot() throws IOException {
+        JobQueue queue = reloaded(folder.getRoot());
+        queue.add("a", "");
+        List<JobQueue.Entry> before = queue.getEntries();
+        queue.add("b", "");
+
+        assertEquals(1, before.size());
+        assertEquals(2, queue.getEntries().size());
+    }
+
+    @Test
+    public void loadDropsWhatDoesNotBelongTogether() throws IOException {
+        File directory = folder.getRoot();
+        write(new File(directory, "1.gcode"), "G1 X1\n");
+        write(new File(directory, "3.gcode"), "G1 X3\n");
+        // 2 has lost its file, a damaged line, and 3 is not in the index (a crash before the index was written)
+        write(new File(directory, "queue.index"), "1\t0\t-1\t-1\tone\n2\t0\t-1\t-1\ttwo\nx\t0\t-1\t-1\tbad\nshort\n");
+
+        JobQueue queue = reloaded(directory);
+        assertEquals(Arrays.asList("one"), names(queue));
+        assertFalse(new File(directory, "3.gcode").exists());
+        assertTrue(queue.add("next", "").id > 1);
+    }
+
+    @Test
+    public void namesAreKeptOnOneLine() throws IOException {
+        JobQueue queue = reloaded(folder.getRoot());
+        queue.add("two\tparts\nhere", "");
+        queue.add("  ", "");
+        queue.add(null, "");
+
+        assertEquals(Arrays.asList("two parts here", "Job", "Job"), names(reloaded(folder.getRoot())));
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.drawbot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class JobTransformTest {
+    private static List<String> run(JobTransform.Stage stage, String... lines) {
+        List<String> out = new ArrayList<>();
+        for (String line : lines) {
+            stage.apply(line, out);
+        }
+        return out;
+    }
+
+    @Test
+    public void quarterTurnsAndMirrorsKeepRoundNumbers() {
+        JobTransform turned = JobTransform.of(1, false, 90, 0, 0);
+        assertEquals(Arrays.asList("G1 X0 Y10"), run(turned.newStage(), "G1 X10 Y0 Z1"));
+
+        JobTransform mirrored = JobTransform.of(1, true, 0, 100, 0);
+        assertEquals(Arrays.asList("G1 X90 Y0"), run(mirrored.newStage(), "G1 X10 Y0 Z1"));
+
+        assertTrue(JobTransform.of(1, false, 0, 0, 0).isIdentity());
+        assertEquals(2, JobTransform.of(2, true, 30, 5, 5).getScale(), 1e-12);
+    }
+
+    @Test
+    public void scalesMovesAndTracksTheDrawnBounds() {
+        JobTransform.Stage stage = JobTransform.of(2, false, 0, 5, 5).newStage();
+        List<String> out = run(stage, "G1 X10 Y0 Z1 F1000", "G1 Z0", "G1 X20 Y0 Z0", "G1 X20 Y10 Z0", "G1 Z1");
+
+        assertEquals(Arrays.asList("G1 X25 Y5 F1000", "G1 Z0", "G1 X45 Y5", "G1 X45 Y25", "G1 Z1"), out);
+        JobTransform.Bounds drawn = stage.getDrawnBounds();
+        assertEquals(25, drawn.minX, 1e-9);
+        assertEquals(45, drawn.maxX, 1e-9);
+        assertEquals(5, drawn.minY, 1e-9);
+        assertEquals(25, drawn.maxY, 1e-9);
+        assertEquals("X 25.0..45.0 Y 5.0..25.0 mm (20.0 x 20.0 mm)", drawn.toString());
+        assertEquals(0, stage.getCutMoves());
+    }
+
+    @Test
+    public void clipsAtTheWorkAreaAndTravelsToWhereTheDrawingComesBack() {
+        JobTransform.Stage stage = JobTransform.IDENTITY.clippedTo(100, 100).newStage();
+        List<String> out = run(stage,
+                "G1 X-50 Y50 Z1",   // outside: waits on the edge
+                "G1 Z0",            // the pen stays up until the drawing enters
+                "G1 X50 Y50 Z0",    // enters at X0
+                "G1 X150 Y50 Z0",   // leaves at X100
+                "G1 X150 Y80 Z0",   // outside entirely
+                "G1 X50 Y80 Z0");   // comes back in at X100 Y80
+
+        assertEquals(Arrays.asList("G1 X0 Y50", "G1 X50 Y50 Z0", "G1 X100 Y50",
+                "G1 X100 Y80 Z1", "G1 X50 Y80 Z0"), out);
+        assertEquals(4, stage.getCutMoves());
+        assertEquals(0, stage.getDrawnBounds().minX, 1e-9);
+        assertEquals(100, stage.getDrawnBounds().maxX, 1e-9);
+        assertEquals(-50, stage.getUnclippedBounds().minX, 1e-9);
+        assertEquals(150, stage.getUnclippedBounds().maxX, 1e-9);
+    }
+
+    @Test
+    public void followsRelativeMovesAndTheG92Origin() {
+        JobTransform.Stage stage = JobTransform.of(1, false, 0, 10, 0).newStage();
+        List<String> out = run(stage, "G1 X5 Y5 Z1", "G92 X0 Y0", "G1 X1 Y0 Z1", "G91", "G1 X1 Y1");
+
+        // G92 and G91 only change what later coordinates mean, the machine gets absolute targets
+        assertEquals(Arrays.asList("G1 X15 Y5", "G1 X16 Y5", "G1 X17 Y6"), out);
+    }
+
+    @Test
+    public void arcsAreFlattenedIntoShortLines() {
+        JobTransform.Stage stage = JobTransform.of(1, false, 0, 50, 50).newStage();
+        List<String> out = run(stage, "G1 X10 Y0 Z1", "G1 Z0", "G3 X-10 Y0 I-10 J0 Z0");
+
+        // half a circle of radius 10 is 31.4 mm, in chords of at most 0.5 mm
+        assertEquals(2 + 63, out.size());
+        assertEquals("G1 X40 Y50", out.get(out.size() - 1));
+        assertEquals(60, stage.getDrawnBounds().maxY, 0.01);
+    }
+
+    @Test
+    public void homingAndMachineMovesPassThrough() {
+        JobTransform.Stage stage = JobTransform.of(2, false, 0, 0, 0).newStage();
+        List<String> out = run(stage, "$H", "G28", "G10 L20 P1 X0", "G1 X1 Y1 Z1");
+
+        // after homing the machine could be anywhere, so the travel is sent even to where it was
+        assertEquals(Arrays.asList("$H", "G28", "G10 L20 P1 X0", "G1 X2 Y2"), out);
+    }
+
+    @Test
+    public void resumeGoesBackWithThePenUpFirst() {
+        ModalState modal = new ModalState();
+        modal.x = 20;
+        modal.y = 30;
+        modal.z = 0;
+        modal.feed = 800;
+        List<String> out = new ArrayList<>();
+        JobTransform.Stage stage = JobTransform.of(2, false, 0, 0, 0).clippedTo(100, 100).newStage();
+        stage.resumeFrom(modal, out);
+        assertEquals(Arrays.asList("G1 X40 Y60 Z1", "G1 Z0 F800"), out);
+
+        // the job continues from there
+        assertEquals(Arrays.asList("G1 X50 Y60"), run(stage, "G1 X25 Y30"));
+    }
+
+    @Test
+    public void resumeOutsideTheWorkAreaKeepsThePenUp() {
+        ModalState modal = new ModalState();
+        modal.x = 80;
+        modal.y = 30;
+        modal.z = 0;
+        modal.feed = 800;
+        List<String> out = new ArrayList<>();
+        JobTransform.of(2, false, 0, 0, 0).clippedTo(100, 100).newStage().resumeFrom(modal, out);
+
+        assertEquals(Arrays.asList("G1 X100 Y60 Z1", "F800"), out);
+    }
+}
@@ -0,0 +1,199 @@
+package com.example.drawbot;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StreamTunerTest {
+    private static final long MS = 1_000_000L;
+
+    // a new device, then count acks of latencyMs, one every 300 ms; returns the time after the last
+    private static long warmUp(StreamTuner tuner, int acks, long latencyMs) {
+        tuner.start(null, 0);
+        long now = 0;
+        for (int i = 0; i < acks; i++) {
+            now += 300 * MS;
+            tuner.onAcknowledged(latencyMs * MS, now);
+        }
+        return now;
+    }
+
+    @Test
+    public void anUnknownDeviceStartsWithTheOldFixedValues() {
+        StreamTuner tuner = new StreamTuner();
+        tuner.start(null, 0);
+
+        assertTrue(tuner.isWarmingUp());
+        assertEquals(1, tuner.getWindow());
+        assertEquals(GCodeStreamer.GCODE_DELAY_MS, tuner.getSendDelayMs());
+        assertEquals(GCodeStreamer.COMMAND_TIMEOUT_MS, tuner.getTimeoutMs());
+    }
+
+    @Test
+    public void aCleanWarmUpOpensTheFirstWindow() {
+        StreamTuner tuner = new StreamTuner();
+        warmUp(tuner, 19, 10);
+        // five seconds are over but one sample is missing
+        assertTrue(tuner.isWarmingUp());
+
+        tuner.onAcknowledged(10 * MS, 6000 * MS);
+        assertFalse(tuner.isWarmingUp());
+        assertEquals(4, tuner.getWindow());
+        assertEquals(0, tuner.getSendDelayMs());
+        // fast acks give the lowest timeout
+        assertEquals(2000, tuner.getTimeoutMs());
+    }
+
+    @Test
+    public void warmUpTakesItsTimeHoweverManyAcksCome() {
+        StreamTuner tuner = new StreamTuner();
+        tuner.start(null, 0);
+        for (int i = 1; i <= 100; i++) {
+            tuner.onAcknowledged(5 * MS, i * 10 * MS);
+        }
+        assertTrue(tuner.isWarmingUp());
+        assertEquals(1, tuner.getWindow());
+    }
+
+    @Test
+    public void errorsDuringWarmUpKeepStopAndWait() {
+        StreamTuner tuner = new StreamTuner();
+        long now = warmUp(tuner, 18, 10);
+        tuner.onError(now + MS);
+        tuner.onAcknowledged(10 * MS, 6000 * MS);
+
+        assertFalse(tuner.isWarmingUp());
+        assertEquals(1, tuner.getWindow());
+        assertEquals(GCodeStreamer.GCODE_DELAY_MS, tuner.getSendDelayMs());
+    }
+
+    @Test
+    public void cleanAcksGrowTheWindowAndErrorsHalveIt() {
+        StreamTuner tuner = new StreamTuner();
+        long now = warmUp(tuner, 20, 10);
+        assertEquals(4, tuner.getWindow());
+
+        for (int i = 0; i < 49; i++) {
+            tuner.onAcknowledged(10 * MS, now += MS);
+        }
+        assertEquals(4, tuner.getWindow());
+        tuner.onAcknowledged(10 * MS, now += MS);
+        assertEquals(5, tuner.getWindow());
+
+        tuner.onError(now += MS);
+        assertEquals(2, tuner.getWindow());
+        assertEquals(0, tuner.getSendDelayMs());
+        tuner.onError(now += MS);
+        assertEquals(1, tuner.getWindow());
+        assertEquals(GCodeStreamer.GCODE_DELAY_MS, tuner.getSendDelayMs());
+        tuner.onError(now + MS);
+        assertEquals(1, tuner.getWindow());
+    }
+
+    @Test
+    public void theWindowStopsAtWhatGrblCanPlan() {
+        StreamTuner tuner = new StreamTuner();
+        long now = warmUp(tuner, 20, 10);
+        for (int i = 0; i < 50 * 20; i++) {
+            tuner.onAcknowledged(10 * MS, now += MS);
+        }
+        assertEquals(StreamTuner.MAX_WINDOW, tuner.getWindow());
+    }
+
+    @Test
+    public void aTimeoutRaisesTheFloorForTheRestOfTheJob() {
+        StreamTuner tuner = new StreamTuner();
+        long now = warmUp(tuner, 20, 10);
+        assertEquals(2000, tuner.getTimeoutMs());
+
+        tuner.onTimeout();
+        assertEquals(4000, tuner.getTimeoutMs());
+        assertEquals(2, tuner.getWindow());
+        // fast acks afterwards do not bring it down again
+        for (int i = 0; i < 100; i++) {
+            tuner.onAcknowledged(10 * MS, now += MS);
+        }
+        assertEquals(4000, tuner.getTimeoutMs());
+
+        for (int i = 0; i < 5; i++) {
+            tuner.onTimeout();
+        }
+        assertEquals(30000, tuner.getTimeoutMs());
+    }
+
+    @Test
+    public void theTimeoutFollowsTheSlowestOk() {
+        StreamTuner tuner = new StreamTuner();
+        long now = warmUp(tuner, 20, 10);
+        tuner.onAcknowledged(1500 * MS, now + MS);
+
+        assertEquals(3000, tuner.getTimeoutMs());
+    }
+
+    @Test
+    public void aTimeoutDuringWarmUpKeepsStopAndWait() {
+        StreamTuner tuner = new StreamTuner();
+        tuner.start(null, 0);
+        tuner.onTimeout();
+        assertEquals(20000, tuner.getTimeoutMs());
+        assertEquals(1, tuner.getWindow());
+
+        long now = 0;
+        for (int i = 0; i < 20; i++) {
+            tuner.onAcknowledged(10 * MS, now += 300 * MS);
+        }
+        assertFalse(tuner.isWarmingUp());
+        assertEquals(1, tuner.getWindow());
+        assertEquals(20000, tuner.getTimeoutMs());
+    }
+
+    @Test
+    public void rememberedParametersSkipTheWarmUp() {
+        StreamTuner tuner = new StreamTuner();
+        tuner.start(new StreamTuner.Parameters(6, 0, 3000), 0);
+
+        assertFalse(tuner.isWarmingUp());
+        assertEquals(6, tuner.getWindow());
+        assertEquals(3000, tuner.getTimeoutMs());
+    }
+
+    @Test
+    public void sendsWithinTheWindowAndGrblsBuffer() {
+        StreamTuner tuner = new StreamTuner();
+        tuner.start(new StreamTuner.Parameters(4, 0, 3000), 0);
+
+        // one line always goes, whatever its length
+        assertTrue(tuner.canSend(0, 0, 200));
+        assertTrue(tuner.canSend(3, 100, 27));
+        assertFalse(tuner.canSend(3, 100, 28));
+        assertFalse(tuner.canSend(4, 10, 10));
+    }
+
+    @Test
+    public void parametersRoundTrip() {
+        StreamTuner.Parameters parameters = new StreamTuner.Parameters(4, 0, 3000);
+        assertEquals("window=4;delay=0;timeout=3000", parameters.serialize());
+
+        StreamTuner.Parameters read = StreamTuner.Parameters.deserialize(parameters.serialize());
+        assertEquals(4, read.window);
+        assertEquals(0, read.sendDelayMs);
+        assertEquals(3000, read.timeoutMs);
+        // unknown keys are skipped, a window above the maximum is cut
+        read = StreamTuner.Parameters.deserialize("timeout=5000;speed=9;window=99;delay=75");
+        assertEquals(StreamTuner.MAX_WINDOW, read.window);
+        assertEquals(75, read.sendDelayMs);
+        assertEquals(5000, read.timeoutMs);
+    }
+
+    @Test
+    public void parametersThatAreNotSerializedFormAreRejected() {
+        for (String text : new String[]{null, "", "window=4;delay=0", "window=0;delay=0;timeout=3000",
+                "window=4;delay=-1;timeout=3000", "window=4;delay=0;timeout=0", "window=four;delay=0;timeout=3000",
+                "window;delay=0;timeout=3000", "window=4,delay=0,timeout=3000"}) {
+            assertNull(text, StreamTuner.Parameters.deserialize(text));
+        }
+    }
+}
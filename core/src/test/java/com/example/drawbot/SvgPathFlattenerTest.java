@@ -0,0 +1,130 @@
+package com.example.drawbot;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SvgPathFlattenerTest {
+    private static final double TOLERANCE = 0.05;
+
+    // moves as {0 = move / 1 = line, x, y}
+    private static final class Recorder implements SvgPathFlattener.Sink {
+        final List<double[]> moves = new ArrayList<>();
+
+        @Override
+        public void moveTo(double x, double y) {
+            moves.add(new double[]{0, x, y});
+        }
+
+        @Override
+        public void lineTo(double x, double y) {
+            moves.add(new double[]{1, x, y});
+        }
+
+        String text() {
+            StringBuilder b = new StringBuilder();
+            for (double[] m : moves) {
+                if (b.length() > 0) b.append(' ');
+                b.append(m[0] == 0 ? 'M' : 'L').append(fmt(m[1])).append(',').append(fmt(m[2]));
+            }
+            return b.toString();
+        }
+
+        private static String fmt(double v) {
+            return v == Math.rint(v) ? String.valueOf((long) v) : String.valueOf(v);
+        }
+    }
+
+    private static Recorder flatten(String d) throws Exception {
+        Recorder recorder = new Recorder();
+        SvgPathFlattener flattener = new SvgPathFlattener(recorder);
+        flattener.setToleranceMm(TOLERANCE);
+        flattener.path(d);
+        return recorder;
+    }
+
+    @Test
+    public void straightCommandsAbsoluteAndRelative() throws Exception {
+        assertEquals("M10,10 L20,10 L20,30 L10,30 L10,10",
+                flatten("M10 10 H20 V30 L10 30 Z").text());
+        assertEquals("M10,10 L20,10 L20,30 L10,30 L10,10",
+                flatten("m10,10 h10 v20 l-10,0 z").text());
+    }
+
+    @Test
+    public void numbersWithoutSeparatorsAndImplicitLines() throws Exception {
+        // "M" followed by more pairs draws lines, "-" and a second "." start a new number
+        assertEquals("M1,2 L3,-4 L0.5,0.5 L1500,-1", flatten("M1 2 3-4 .5.5 1.5e3-1").text());
+        assertEquals("M1,1 L2,2 L3,3", flatten("m1 1 1 1 1 1").text());
+    }
+
+    @Test
+    public void brokenDataStopsTheParserAtTheError() throws Exception {
+        assertEquals("M0,0 L5,5", flatten("M0 0 L5 5 L7 x 9 9").text());
+        assertEquals("", flatten("10 10 L5 5").text());
+        assertEquals("M0,0", flatten("M0 0 A 5 5 0 2 1 10 0").text());
+    }
+
+    @Test
+    public void curvesStayWithinTheTolerance() throws Exception {
+        Recorder recorder = new Recorder();
+        SvgPathFlattener flattener = new SvgPathFlattener(recorder);
+        flattener.setToleranceMm(TOLERANCE);
+        flattener.ellipse(0, 0, 40, 40);
+
+        List<double[]> moves = recorder.moves;
+        assertTrue(moves.size() > 16);
+        for (int i = 1; i < moves.size(); i++) {
+            double[] a = moves.get(i - 1), b = moves.get(i);
+            assertEquals(40.0, Math.hypot(b[1], b[2]), 0.02);
+            // the chord's middle is where a segment is furthest from the circle
+            assertEquals(40.0, Math.hypot((a[1] + b[1]) / 2, (a[2] + b[2]) / 2), TOLERANCE + 0.02);
+        }
+        double[] last = moves.get(moves.size() - 1);
+        assertEquals(40.0, last[1], 1e-9);
+        assertEquals(0.0, last[2], 1e-9);
+    }
+
+    @Test
+    public void straightCubicsAreOneSegment() throws Exception {
+        assertEquals("M0,0 L30,0", flatten("M0 0 C10 0 20 0 30 0").text());
+        // Q and T are raised to cubics, a flat one stays a single segment too
+        assertEquals("M0,0 L10,0 L20,0", flatten("M0 0 Q5 0 10 0 T20 0").text());
+    }
+
+    @Test
+    public void arcsFollowTheirCircle() throws Exception {
+        List<double[]> moves = flatten("M0 0 A10 10 0 0 1 20 0").moves;
+        double lowest = 0;
+        for (double[] m : moves) {
+            assertEquals(10.0, Math.hypot(m[1] - 10, m[2]), 0.02);
+            lowest = Math.min(lowest, m[2]);
+        }
+        assertEquals(-10.0, lowest, 0.02);
+        double[] end = moves.get(moves.size() - 1);
+        assertEquals(20.0, end[1], 0.0);
+        assertEquals(0.0, end[2], 0.0);
+
+        // the other sweep takes the other half, a radius too small is scaled up to reach the end point
+        double highest = 0;
+        for (double[] m : flatten("M0 0 A1 1 0 0 0 20 0").moves) {
+            assertEquals(10.0, Math.hypot(m[1] - 10, m[2]), 0.02);
+            highest = Math.max(highest, m[2]);
+        }
+        assertEquals(10.0, highest, 0.02);
+    }
+
+    @Test
+    public void theTransformAppliesBeforeFlattening() throws Exception {
+        Recorder recorder = new Recorder();
+        SvgPathFlattener flattener = new SvgPathFlattener(recorder);
+        // mirrored about Y and scaled by 2, like the root transform of a page 100 mm high
+        flattener.setTransform(new double[]{2, 0, 0, -2, 5, 100});
+        flattener.path("M0 0 L10 20");
+        assertEquals("M5,100 L25,60", recorder.text());
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.drawbot;
+
+import org.junit.Test;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TextToolpathTest {
+
+    @Test
+    public void measureIncludesKerning() {
+        int plain = HersheyFont.advance('A') + HersheyFont.advance('V');
+        assertEquals(plain - 2, TextToolpath.measure("AV"));
+        assertEquals(HersheyFont.advance('V') * 2, TextToolpath.measure("VV"));
+        assertEquals(0, TextToolpath.measure(""));
+    }
+
+    @Test
+    public void wrappedLinesFitTheLineWidth() {
+        TextToolpath toolpath = new TextToolpath();
+        toolpath.setCharHeightMm(6.0);
+        toolpath.setLineWidthMm(60.0); // 120 font units
+        int maxUnits = 120;
+
+        String text = "The quick brown fox jumps over the lazy dog. AVATAR WAVY TOYOTA";
+        List<String> lines = toolpath.wrap(text);
+        assertTrue(lines.size() > 1);
+        StringBuilder joined = new StringBuilder();
+        for (String line : lines) {
+            assertTrue("'" + line + "' is too wide", TextToolpath.measure(line) <= maxUnits);
+            if (joined.length() > 0) joined.append(' ');
+            joined.append(line);
+        }
+        assertEquals(text, joined.toString());
+
+        // the next word would not have fitted on the line before
+        for (int i = 0; i + 1 < lines.size(); i++) {
+            String next = lines.get(i + 1).split(" ")[0];
+            assertTrue(TextToolpath.measure(lines.get(i) + " " + next) > maxUnits);
+        }
+    }
+
+    @Test
+    public void kerningLetsATightPairFit() {
+        TextToolpath toolpath = new TextToolpath();
+        toolpath.setCharHeightMm(12.0);
+        // exactly as wide as "AVAVAV" with kerning, two units short without
+        toolpath.setLineWidthMm(TextToolpath.measure("AVAVAV"));
+        assertEquals(Arrays.asList("AVAVAV"), toolpath.wrap("AVAVAV"));
+        assertEquals(Arrays.asList("VVVVV", "V"), toolpath.wrap("VVVVVV"));
+    }
+
+    @Test
+    public void longWordsBreakAndParagraphsStay() {
+        TextToolpath toolpath = new TextToolpath();
+        toolpath.setCharHeightMm(12.0);
+        toolpath.setLineWidthMm(30.0);
+        assertEquals(Arrays.asList("HHH", "HH", "", "HI"), toolpath.wrap("HHHHH\n\nHI\n\n"));
+    }
+
+    @Test
+    public void rendersInsideTheLineWidth() throws Exception {
+        TextToolpath toolpath = new TextToolpath();
+        toolpath.setCharHeightMm(5.0);
+        toolpath.setLineWidthMm(50.0);
+        StringWriter text = new StringWriter();
+        assertEquals(3, toolpath.render("Hello plotter world, this wraps", new PenPlotterGCodeWriter(text)));
+
+        double maxX = 0, minY = Double.MAX_VALUE;
+        for (String line : text.toString().split("\n")) {
+            if (!line.startsWith("G1 X")) continue;
+            String[] words = line.split(" ");
+            maxX = Math.max(maxX, Double.parseDouble(words[1].substring(1)));
+            minY = Math.min(minY, Double.parseDouble(words[2].substring(1)));
+        }
+        assertTrue("drawn up to x " + maxX, maxX <= 50.0);
+        assertTrue("descender below the origin at y " + minY, minY >= 0.0);
+    }
+}
@@ -21,4 +21,7 @@ dependencyResolutionManagement {
 
 rootProject.name = "DrawBot"
 include(":app")
+include(":core")
+include(":cli")
+include(":benchmarks")
  
\ No newline at end of file